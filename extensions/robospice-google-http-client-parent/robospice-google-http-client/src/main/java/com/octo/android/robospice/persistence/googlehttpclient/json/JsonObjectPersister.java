@@ -16,6 +16,7 @@ import com.octo.android.robospice.persistence.exception.CacheCreationException;
 import com.octo.android.robospice.persistence.exception.CacheLoadingException;
 import com.octo.android.robospice.persistence.exception.CacheSavingException;
 import com.octo.android.robospice.persistence.file.InFileObjectPersister;
+import com.octo.android.robospice.persistence.file.WriteBehindQueue;
 
 public final class JsonObjectPersister<T> extends InFileObjectPersister<T> {
 
@@ -55,7 +56,7 @@ public final class JsonObjectPersister<T> extends InFileObjectPersister<T> {
         } catch (FileNotFoundException e) {
             // Should not occur (we test before if file exists)
             // Do not throw, file is not cached
-            Ln.w("file " + file.getAbsolutePath() + " does not exists", e);
+            Ln.w(e, "file %s does not exists", file.getAbsolutePath());
             return null;
         } catch (Exception e) {
             throw new CacheLoadingException(e);
@@ -67,19 +68,12 @@ public final class JsonObjectPersister<T> extends InFileObjectPersister<T> {
 
         try {
             if (isAsyncSaveEnabled()) {
-                Thread t = new Thread() {
+                saveDataToCacheFileAsync(cacheKey, data, new WriteBehindQueue.Writer() {
                     @Override
-                    public void run() {
-                        try {
-                            saveData(data, cacheKey);
-                        } catch (IOException e) {
-                            Ln.e(e, "An error occured on saving request " + cacheKey + " data asynchronously");
-                        } catch (CacheSavingException e) {
-                            Ln.e(e, "An error occured on saving request " + cacheKey + " data asynchronously");
-                        }
-                    };
-                };
-                t.start();
+                    public void write() throws IOException, CacheSavingException {
+                        saveData(data, cacheKey);
+                    }
+                });
             } else {
                 saveData(data, cacheKey);
             }
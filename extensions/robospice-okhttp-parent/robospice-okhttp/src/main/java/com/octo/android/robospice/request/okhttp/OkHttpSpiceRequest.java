@@ -1,11 +1,17 @@
 package com.octo.android.robospice.request.okhttp;
 
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import com.octo.android.robospice.exception.RequestCancelledException;
 import com.octo.android.robospice.request.SpiceRequest;
 import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.OkUrlFactory;
 
 /**
  * A simplified {@link SpiceRequest} that makes it even easier to use a
- * OkHttpClient.
+ * OkHttpClient. Connections opened with {@link #openConnection(URL)} are
+ * disconnected when the request is cancelled.
  * @author SNI
  * @param <T>
  *            the result type of this request.
@@ -13,6 +19,8 @@ import com.squareup.okhttp.OkHttpClient;
 public abstract class OkHttpSpiceRequest<T> extends SpiceRequest<T> {
 
     private OkHttpClient okHttpClient;
+    /** The last connection opened by this request, if any. */
+    private volatile HttpURLConnection httpURLConnection;
 
     public OkHttpSpiceRequest(Class<T> clazz) {
         super(clazz);
@@ -25,4 +33,37 @@ public abstract class OkHttpSpiceRequest<T> extends SpiceRequest<T> {
     public OkHttpClient getOkHttpClient() {
         return okHttpClient;
     }
+
+    /**
+     * Opens a connection with the OkHttpClient of this request. It will be
+     * disconnected if the request is cancelled, which makes its pending I/O
+     * fail.
+     * @param url
+     *            the url to connect to.
+     * @return the connection.
+     * @throws RequestCancelledException
+     *             if the request is already cancelled.
+     */
+    protected HttpURLConnection openConnection(URL url) throws RequestCancelledException {
+        httpURLConnection = new OkUrlFactory(getOkHttpClient()).open(url);
+        if (isCancelled()) {
+            throw new RequestCancelledException("Request cancelled before download started");
+        }
+        return httpURLConnection;
+    }
+
+    /** Disconnects the last connection opened by this request. */
+    @Override
+    protected Runnable prepareNetworkOperationAbort() {
+        final HttpURLConnection connection = httpURLConnection;
+        if (connection == null) {
+            return null;
+        }
+        return new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        };
+    }
 }
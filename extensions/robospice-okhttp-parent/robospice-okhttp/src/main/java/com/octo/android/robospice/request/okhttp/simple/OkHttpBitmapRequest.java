@@ -9,7 +9,6 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 
-import com.squareup.okhttp.OkUrlFactory;
 import org.apache.commons.io.IOUtils;
 
 import roboguice.util.temp.Ln;
@@ -88,8 +87,7 @@ public class OkHttpBitmapRequest extends OkHttpSpiceRequest<Bitmap> implements I
     @Override
     public Bitmap loadDataFromNetwork() throws Exception {
         try {
-            OkUrlFactory urlFactory = new OkUrlFactory(getOkHttpClient());
-            HttpURLConnection connection = urlFactory.open(new URL(url));
+            HttpURLConnection connection = openConnection(new URL(url));
             processStream(connection.getContentLength(), connection.getInputStream());
 
             if (width != -1 && height != -1) {
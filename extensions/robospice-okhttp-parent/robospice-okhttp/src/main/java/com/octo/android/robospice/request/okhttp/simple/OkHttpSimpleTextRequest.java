@@ -1,7 +1,6 @@
 package com.octo.android.robospice.request.okhttp.simple;
 
 import com.octo.android.robospice.request.okhttp.OkHttpSpiceRequest;
-import com.squareup.okhttp.OkUrlFactory;
 import org.apache.commons.io.IOUtils;
 import roboguice.util.temp.Ln;
 
@@ -24,9 +23,8 @@ public class OkHttpSimpleTextRequest extends OkHttpSpiceRequest<String> {
     @Override
     public String loadDataFromNetwork() throws Exception {
         try {
-            Ln.d("Call web service " + url);
-            OkUrlFactory urlFactory = new OkUrlFactory(getOkHttpClient());
-            HttpURLConnection connection = urlFactory.open(new URL(url));
+            Ln.d("Call web service %s", url);
+            HttpURLConnection connection = openConnection(new URL(url));
             return IOUtils.toString(connection.getInputStream());
         } catch (final MalformedURLException e) {
             Ln.e(e, "Unable to create URL");
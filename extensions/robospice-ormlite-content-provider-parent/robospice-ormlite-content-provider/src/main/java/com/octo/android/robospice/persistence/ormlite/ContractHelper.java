@@ -26,7 +26,7 @@ public final class ContractHelper {
                 Class<?> contractClass = getContractClassForClass(clazz);
                 uri = getContentUri(contractClass);
             } catch (Exception e) {
-                Ln.v("Contract class not found for " + clazz.getName());
+                Ln.v("Contract class not found for %s", clazz.getName());
             }
             mapHandledClassesToNotificationUri.put(clazz, uri);
         }
@@ -20,6 +20,7 @@ import com.octo.android.robospice.persistence.exception.CacheCreationException;
 import com.octo.android.robospice.persistence.exception.CacheLoadingException;
 import com.octo.android.robospice.persistence.exception.CacheSavingException;
 import com.octo.android.robospice.persistence.file.InFileObjectPersister;
+import com.octo.android.robospice.persistence.file.WriteBehindQueue;
 
 public class RetrofitObjectPersister<T> extends InFileObjectPersister<T> {
 
@@ -51,19 +52,12 @@ public class RetrofitObjectPersister<T> extends InFileObjectPersister<T> {
 
         try {
             if (isAsyncSaveEnabled()) {
-                Thread t = new Thread() {
+                saveDataToCacheFileAsync(cacheKey, data, new WriteBehindQueue.Writer() {
                     @Override
-                    public void run() {
-                        try {
-                            saveData(data, cacheKey);
-                        } catch (IOException e) {
-                            Ln.e(e, "An error occured on saving request " + cacheKey + " data asynchronously");
-                        } catch (CacheSavingException e) {
-                            Ln.e(e, "An error occured on saving request " + cacheKey + " data asynchronously");
-                        }
-                    };
-                };
-                t.start();
+                    public void write() throws IOException, CacheSavingException {
+                        saveData(data, cacheKey);
+                    }
+                });
             } else {
                 saveData(data, cacheKey);
             }
@@ -117,7 +111,7 @@ public class RetrofitObjectPersister<T> extends InFileObjectPersister<T> {
         } catch (FileNotFoundException e) {
             // Should not occur (we test before if file exists)
             // Do not throw, file is not cached
-            Ln.w("file " + file.getAbsolutePath() + " does not exists", e);
+            Ln.w(e, "file %s does not exists", file.getAbsolutePath());
             return null;
         } catch (Exception e) {
             throw new CacheLoadingException(e);
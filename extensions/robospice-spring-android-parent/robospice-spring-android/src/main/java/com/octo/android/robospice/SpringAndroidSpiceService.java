@@ -4,8 +4,11 @@ import java.util.Set;
 
 import org.springframework.web.client.RestTemplate;
 
+import roboguice.util.temp.Ln;
+
 import com.octo.android.robospice.request.CachedSpiceRequest;
 import com.octo.android.robospice.request.listener.RequestListener;
+import com.octo.android.robospice.request.springandroid.CancellableClientHttpRequestFactory;
 import com.octo.android.robospice.request.springandroid.SpringAndroidSpiceRequest;
 
 /**
@@ -13,7 +16,10 @@ import com.octo.android.robospice.request.springandroid.SpringAndroidSpiceReques
  * from spring android into every {@link SpringAndroidSpiceRequest} it has to
  * execute. Developpers will have to implement {@link #createRestTemplate()} in
  * addition to the usual {@link #createCacheManager(android.app.Application)}
- * methods to create a {@link RestTemplate} and configure it.
+ * methods to create a {@link RestTemplate} and configure it. <br/>
+ * The request factory of this {@link RestTemplate} is decorated by a
+ * {@link CancellableClientHttpRequestFactory}, so that cancelled requests abort
+ * their download. This is not possible if it has interceptors.
  * @author sni
  */
 public abstract class SpringAndroidSpiceService extends SpiceService {
@@ -24,6 +30,11 @@ public abstract class SpringAndroidSpiceService extends SpiceService {
     public void onCreate() {
         super.onCreate();
         restTemplate = createRestTemplate();
+        if (restTemplate.getInterceptors().isEmpty()) {
+            restTemplate.setRequestFactory(new CancellableClientHttpRequestFactory(restTemplate.getRequestFactory()));
+        } else {
+            Ln.d("RestTemplate has interceptors, its requests can't be aborted when cancelled.");
+        }
     }
 
     public abstract RestTemplate createRestTemplate();
@@ -15,6 +15,7 @@ import com.octo.android.robospice.persistence.exception.CacheCreationException;
 import com.octo.android.robospice.persistence.exception.CacheLoadingException;
 import com.octo.android.robospice.persistence.exception.CacheSavingException;
 import com.octo.android.robospice.persistence.file.InFileObjectPersister;
+import com.octo.android.robospice.persistence.file.WriteBehindQueue;
 
 public abstract class SpringAndroidObjectPersister<T> extends InFileObjectPersister<T> {
 
@@ -48,7 +49,7 @@ public abstract class SpringAndroidObjectPersister<T> extends InFileObjectPersis
         } catch (FileNotFoundException e) {
             // Should not occur (we test before if file exists)
             // Do not throw, file is not cached
-            Ln.w("file " + file.getAbsolutePath() + " does not exists", e);
+            Ln.w(e, "file %s does not exists", file.getAbsolutePath());
             return null;
         } catch (CacheLoadingException e) {
             throw e;
@@ -64,19 +65,12 @@ public abstract class SpringAndroidObjectPersister<T> extends InFileObjectPersis
 
         try {
             if (isAsyncSaveEnabled()) {
-                Thread t = new Thread() {
+                saveDataToCacheFileAsync(cacheKey, data, new WriteBehindQueue.Writer() {
                     @Override
-                    public void run() {
-                        try {
-                            saveData(data, cacheKey);
-                        } catch (IOException e) {
-                            Ln.e(e, "An error occured on saving request " + cacheKey + " data asynchronously");
-                        } catch (CacheSavingException e) {
-                            Ln.e(e, "An error occured on saving request " + cacheKey + " data asynchronously");
-                        }
-                    };
-                };
-                t.start();
+                    public void write() throws IOException, CacheSavingException {
+                        saveData(data, cacheKey);
+                    }
+                });
             } else {
                 saveData(data, cacheKey);
             }
@@ -0,0 +1,226 @@
+package com.octo.android.robospice.request.springandroid;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import roboguice.util.temp.Ln;
+
+/**
+ * A {@link ClientHttpRequestFactory} that can abort the exchange in progress
+ * in a given thread. It decorates the factory of a
+ * {@link org.springframework.web.client.RestTemplate}, so that
+ * {@link SpringAndroidSpiceRequest}s can abort their network operation when
+ * they are cancelled :
+ * <ul>
+ * <li>once a response is received, it is closed, which disconnects its
+ * connection and makes the pending read fail.</li>
+ * <li>before, while connecting or waiting for headers, the underlying
+ * {@link HttpURLConnection} is disconnected, or the underlying
+ * {@link HttpUriRequest} is aborted. They are looked up in the requests of
+ * the decorated factory, as spring doesn't expose them.</li>
+ * </ul>
+ */
+public class CancellableClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    /** Fields holding the connection of the requests of each class. */
+    private static final ConcurrentMap<Class<?>, Field> MAP_CLASS_TO_CONNECTION_FIELD = new ConcurrentHashMap<Class<?>, Field>();
+
+    private final ClientHttpRequestFactory delegate;
+    /** The exchange in progress in each thread. */
+    private final ConcurrentMap<Thread, CancellableClientHttpRequest> mapThreadToRequest = new ConcurrentHashMap<Thread, CancellableClientHttpRequest>();
+
+    public CancellableClientHttpRequestFactory(ClientHttpRequestFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        // a thread starting a new exchange is done with its previous one.
+        final CancellableClientHttpRequest request = new CancellableClientHttpRequest(delegate.createRequest(uri, httpMethod));
+        mapThreadToRequest.put(Thread.currentThread(), request);
+        return request;
+    }
+
+    /**
+     * Prepares the abort of the exchange in progress in a thread, if any. The
+     * exchange is captured, and will fail if it is not executed yet, but its
+     * connection is only closed by the returned abort, that may block.
+     * @param thread
+     *            the thread executing the request to abort.
+     * @return the abort of the exchange, null if there is none.
+     */
+    public Runnable prepareAbort(Thread thread) {
+        final CancellableClientHttpRequest request = mapThreadToRequest.remove(thread);
+        if (request == null) {
+            return null;
+        }
+        request.isAborted = true;
+        return new Runnable() {
+            @Override
+            public void run() {
+                request.abort();
+            }
+        };
+    }
+
+    public ClientHttpRequestFactory getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Aborts the connection of a request of the decorated factory, if it can
+     * be found.
+     */
+    private static void abortConnection(ClientHttpRequest request) {
+        final Field connectionField = getConnectionField(request.getClass());
+        if (connectionField == null) {
+            Ln.d("Connection of %s can't be aborted.", request.getClass().getSimpleName());
+            return;
+        }
+        try {
+            final Object connection = connectionField.get(request);
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            } else if (connection instanceof HttpUriRequest) {
+                ((HttpUriRequest) connection).abort();
+            }
+        } catch (final IllegalAccessException e) {
+            Ln.d(e, "Connection of %s can't be aborted.", request.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return the field of clazz, or of its super classes, holding a
+     *         {@link HttpURLConnection} or a {@link HttpUriRequest}. Null if
+     *         there is none.
+     */
+    private static Field getConnectionField(Class<?> clazz) {
+        Field connectionField = MAP_CLASS_TO_CONNECTION_FIELD.get(clazz);
+        if (connectionField != null) {
+            return connectionField;
+        }
+        for (Class<?> currentClass = clazz; currentClass != null; currentClass = currentClass.getSuperclass()) {
+            for (final Field field : currentClass.getDeclaredFields()) {
+                if (HttpURLConnection.class.isAssignableFrom(field.getType()) || HttpUriRequest.class.isAssignableFrom(field.getType())) {
+                    try {
+                        field.setAccessible(true);
+                    } catch (final SecurityException e) {
+                        Ln.d(e, "Field %s can't be accessed.", field.getName());
+                        return null;
+                    }
+                    MAP_CLASS_TO_CONNECTION_FIELD.put(clazz, field);
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    private final class CancellableClientHttpRequest implements ClientHttpRequest {
+        private final ClientHttpRequest request;
+        private final Thread thread;
+        private volatile ClientHttpResponse response;
+        private volatile boolean isAborted;
+
+        private CancellableClientHttpRequest(ClientHttpRequest request) {
+            this.request = request;
+            this.thread = Thread.currentThread();
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            boolean isExecuted = false;
+            try {
+                if (isAborted) {
+                    throw new IOException("Request aborted before execution");
+                }
+                response = createReleasingResponse(request.execute());
+                // the connection may have been aborted while it was not
+                // known to be connected.
+                if (isAborted) {
+                    response.close();
+                    throw new IOException("Request aborted during execution");
+                }
+                isExecuted = true;
+                return response;
+            } finally {
+                if (!isExecuted) {
+                    release();
+                }
+            }
+        }
+
+        private void abort() {
+            final ClientHttpResponse currentResponse = response;
+            if (currentResponse != null) {
+                currentResponse.close();
+            } else {
+                abortConnection(request);
+            }
+        }
+
+        /**
+         * @return a response that releases this exchange once closed. It is a
+         *         proxy, as the methods of {@link ClientHttpResponse} vary
+         *         between versions of spring.
+         */
+        private ClientHttpResponse createReleasingResponse(final ClientHttpResponse delegateResponse) {
+            return (ClientHttpResponse) Proxy.newProxyInstance(ClientHttpResponse.class.getClassLoader(), new Class<?>[] {ClientHttpResponse.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        try {
+                            return method.invoke(delegateResponse, args);
+                        } catch (final InvocationTargetException e) {
+                            throw e.getCause();
+                        } finally {
+                            if ("close".equals(method.getName())) {
+                                release();
+                            }
+                        }
+                    }
+                });
+        }
+
+        /** Forgets this exchange, once it is over. */
+        private void release() {
+            mapThreadToRequest.remove(thread, this);
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return request.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return request.getURI();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return request.getHeaders();
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return request.getBody();
+        }
+    }
+}
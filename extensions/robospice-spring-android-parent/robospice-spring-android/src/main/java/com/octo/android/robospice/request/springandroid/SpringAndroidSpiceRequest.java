@@ -1,11 +1,20 @@
 package com.octo.android.robospice.request.springandroid;
 
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
-import roboguice.util.temp.Ln;
-
 import com.octo.android.robospice.request.SpiceRequest;
 
+/**
+ * A {@link SpiceRequest} that uses a {@link RestTemplate}. If the request
+ * factory of this {@link RestTemplate} is a
+ * {@link CancellableClientHttpRequestFactory}, as set up by
+ * {@link com.octo.android.robospice.SpringAndroidSpiceService}, cancelling the
+ * request aborts the response it is reading.
+ * @author sni
+ * @param <RESULT>
+ *            the result type of this request.
+ */
 public abstract class SpringAndroidSpiceRequest<RESULT> extends SpiceRequest<RESULT> {
 
     private RestTemplate restTemplate;
@@ -23,16 +32,16 @@ public abstract class SpringAndroidSpiceRequest<RESULT> extends SpiceRequest<RES
     }
 
     @Override
-    /**
-     * This method doesn't really work within the Spring Android module : once the request is 
-     * loading data from network, there is no way to interrupt it. This is weakness of the spring android framework,
-     * and seems to come from even deeper. The IO operations on which it relies don't support the interrupt flag
-     * properly.
-     * Nevertheless, there are still some opportunities to cancel the request, basically during cache operations.
-     */
-    public void cancel() {
-        super.cancel();
-        Ln.w(SpringAndroidSpiceRequest.class.getName(), "Cancel can't be invoked directly on "
-            + SpringAndroidSpiceRequest.class.getName() + " requests. You must call SpiceManager.cancelAllRequests().");
+    protected Runnable prepareNetworkOperationAbort() {
+        final Thread networkThread = getNetworkThread();
+        final RestTemplate currentRestTemplate = restTemplate;
+        if (networkThread == null || currentRestTemplate == null) {
+            return null;
+        }
+        final ClientHttpRequestFactory requestFactory = currentRestTemplate.getRequestFactory();
+        if (requestFactory instanceof CancellableClientHttpRequestFactory) {
+            return ((CancellableClientHttpRequestFactory) requestFactory).prepareAbort(networkThread);
+        }
+        return null;
     }
 }
@@ -297,7 +297,7 @@ public abstract class BaseSpiceArrayAdapter<T> extends ArrayAdapter<T> {
 
                 File tempThumbnailImageFile = bitmapRequest.getCacheFile();
                 tempThumbnailImageFileName = tempThumbnailImageFile.getAbsolutePath();
-                Ln.d("Filename : " + tempThumbnailImageFileName);
+                Ln.d("Filename : %s", tempThumbnailImageFileName);
 
                 if (!tempThumbnailImageFile.exists()) {
                     if (isNetworkFetchingAllowed) {
@@ -0,0 +1,35 @@
+package android.app;
+
+import java.io.File;
+
+import android.content.Context;
+
+/**
+ * JVM implementation of the Android application, so that benchmarks can run
+ * outside of Android. Its cache directory is created in the temporary
+ * directory of the JVM.
+ */
+public class Application extends Context {
+
+    private static final String PACKAGE_NAME = "com.octo.android.robospice.benchmark";
+
+    private final File cacheDir = new File(System.getProperty("java.io.tmpdir"), PACKAGE_NAME + "/cache");
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public String getPackageName() {
+        return PACKAGE_NAME;
+    }
+
+    @Override
+    public File getCacheDir() {
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IllegalStateException("Can't create cache directory " + cacheDir);
+        }
+        return cacheDir;
+    }
+}
@@ -0,0 +1,9 @@
+package android.app;
+
+/**
+ * JVM implementation of the Android notification, so that benchmarks can run
+ * outside of Android. Services hosted in process are never promoted to
+ * foreground, it only exists for the signatures of {@link Service}.
+ */
+public class Notification {
+}
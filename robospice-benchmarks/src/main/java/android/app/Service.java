@@ -0,0 +1,54 @@
+package android.app;
+
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.os.IBinder;
+
+/**
+ * JVM implementation of the Android service, so that benchmarks can run
+ * outside of Android. Only the lifecycle of services hosted in process is
+ * supported : they are attached to the application, created, and never
+ * started, bound or promoted to foreground.
+ */
+public abstract class Service extends ContextWrapper {
+
+    public static final int START_NOT_STICKY = 2;
+
+    public Service() {
+        super(null);
+    }
+
+    public final Application getApplication() {
+        return (Application) getApplicationContext();
+    }
+
+    public void onCreate() {
+    }
+
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_NOT_STICKY;
+    }
+
+    public abstract IBinder onBind(Intent intent);
+
+    public void onRebind(Intent intent) {
+    }
+
+    public boolean onUnbind(Intent intent) {
+        return false;
+    }
+
+    public void onDestroy() {
+    }
+
+    public final void startForeground(int id, Notification notification) {
+        throw new UnsupportedOperationException("Services can't be promoted to foreground outside of Android");
+    }
+
+    public final void stopForeground(boolean removeNotification) {
+    }
+
+    public final void stopSelf() {
+        throw new UnsupportedOperationException("Services can't be stopped outside of Android");
+    }
+}
@@ -0,0 +1,9 @@
+package android.content;
+
+/**
+ * JVM implementation of the Android component name, so that benchmarks can
+ * run outside of Android. It only exists for the signatures of
+ * {@link ServiceConnection}.
+ */
+public final class ComponentName {
+}
@@ -0,0 +1,17 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * JVM implementation of the Android context, so that benchmarks can run
+ * outside of Android. Only the methods RoboSpice uses on the benchmarked paths
+ * are available.
+ */
+public abstract class Context {
+
+    public abstract Context getApplicationContext();
+
+    public abstract String getPackageName();
+
+    public abstract File getCacheDir();
+}
@@ -0,0 +1,42 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * JVM implementation of the Android context wrapper, so that benchmarks can
+ * run outside of Android. It delegates to the context it is attached to.
+ */
+public class ContextWrapper extends Context {
+
+    private Context base;
+
+    public ContextWrapper(Context base) {
+        this.base = base;
+    }
+
+    protected void attachBaseContext(Context base) {
+        if (this.base != null) {
+            throw new IllegalStateException("Base context already set");
+        }
+        this.base = base;
+    }
+
+    public Context getBaseContext() {
+        return base;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return base.getApplicationContext();
+    }
+
+    @Override
+    public String getPackageName() {
+        return base.getPackageName();
+    }
+
+    @Override
+    public File getCacheDir() {
+        return base.getCacheDir();
+    }
+}
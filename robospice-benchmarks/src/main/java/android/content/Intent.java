@@ -0,0 +1,9 @@
+package android.content;
+
+/**
+ * JVM implementation of the Android intent, so that benchmarks can run outside
+ * of Android. Services hosted in process never receive intents, it only
+ * exists for the signatures of {@link android.app.Service}.
+ */
+public class Intent {
+}
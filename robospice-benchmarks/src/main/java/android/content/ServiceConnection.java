@@ -0,0 +1,15 @@
+package android.content;
+
+import android.os.IBinder;
+
+/**
+ * JVM implementation of the Android service connection, so that benchmarks
+ * can run outside of Android. Services hosted in process are never bound, it
+ * is never called.
+ */
+public interface ServiceConnection {
+
+    void onServiceConnected(ComponentName name, IBinder service);
+
+    void onServiceDisconnected(ComponentName name);
+}
@@ -0,0 +1,8 @@
+package android.os;
+
+/**
+ * JVM implementation of the Android binder, so that benchmarks can run outside
+ * of Android. It has no method : services hosted in process are never bound.
+ */
+public class Binder implements IBinder {
+}
@@ -0,0 +1,29 @@
+package android.os;
+
+/**
+ * JVM implementation of the Android build information, so that benchmarks can
+ * run outside of Android. The JVM behaves as a KitKat device.
+ */
+public final class Build {
+
+    private Build() {
+    }
+
+    public static final class VERSION {
+        public static final int SDK_INT = VERSION_CODES.KITKAT;
+
+        private VERSION() {
+        }
+    }
+
+    public static final class VERSION_CODES {
+        public static final int GINGERBREAD = 9;
+        public static final int HONEYCOMB = 11;
+        public static final int JELLY_BEAN = 16;
+        public static final int KITKAT = 19;
+        public static final int O = 26;
+
+        private VERSION_CODES() {
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package android.os;
+
+/**
+ * JVM implementation of the Android handler, so that benchmarks can run
+ * outside of Android. Only posting runnables is supported.
+ */
+public class Handler {
+
+    private final Looper looper;
+
+    public Handler(Looper looper) {
+        this.looper = looper;
+    }
+
+    public final Looper getLooper() {
+        return looper;
+    }
+
+    public final boolean post(Runnable runnable) {
+        return postAtTime(runnable, SystemClock.uptimeMillis());
+    }
+
+    public final boolean postDelayed(Runnable runnable, long delayMillis) {
+        return postAtTime(runnable, SystemClock.uptimeMillis() + delayMillis);
+    }
+
+    public final boolean postAtTime(Runnable runnable, long uptimeMillis) {
+        looper.post(runnable, uptimeMillis);
+        return true;
+    }
+}
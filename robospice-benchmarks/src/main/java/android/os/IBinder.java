@@ -0,0 +1,9 @@
+package android.os;
+
+/**
+ * JVM implementation of the Android binder interface, so that benchmarks can
+ * run outside of Android. It has no method : services hosted in process are
+ * never bound.
+ */
+public interface IBinder {
+}
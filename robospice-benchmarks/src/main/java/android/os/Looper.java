@@ -0,0 +1,46 @@
+package android.os;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM implementation of the Android looper, so that benchmarks can run outside
+ * of Android. Only the main looper exists : a daemon thread that runs the
+ * messages posted by {@link Handler}s in order.
+ */
+public final class Looper {
+
+    private static final Looper MAIN_LOOPER = new Looper("main");
+
+    private final ScheduledExecutorService messageQueue;
+    private volatile Thread thread;
+
+    private Looper(final String threadName) {
+        messageQueue = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN_LOOPER;
+    }
+
+    public static Looper myLooper() {
+        return Thread.currentThread() == MAIN_LOOPER.thread ? MAIN_LOOPER : null;
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    void post(Runnable runnable, long uptimeMillis) {
+        messageQueue.schedule(runnable, uptimeMillis - SystemClock.uptimeMillis(), TimeUnit.MILLISECONDS);
+    }
+}
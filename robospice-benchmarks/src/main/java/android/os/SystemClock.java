@@ -0,0 +1,23 @@
+package android.os;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM implementation of the Android clock, so that benchmarks can run outside
+ * of Android. Uptime is measured from the loading of this class.
+ */
+public final class SystemClock {
+
+    private static final long START_TIME = System.nanoTime();
+
+    private SystemClock() {
+    }
+
+    public static long uptimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - START_TIME);
+    }
+
+    public static long elapsedRealtime() {
+        return uptimeMillis();
+    }
+}
@@ -0,0 +1,42 @@
+package android.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * JVM implementation of the Android logger, so that benchmarks can run outside
+ * of Android. Logs are written to the standard error stream.
+ */
+public final class Log {
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    private static final String PRIORITY_LETTERS = "??VDIWEA";
+
+    private Log() {
+    }
+
+    public static int println(int priority, String tag, String msg) {
+        final String line = PRIORITY_LETTERS.charAt(priority) + "/" + tag + ": " + msg;
+        System.err.println(line);
+        return line.length();
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println(ERROR, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static String getStackTraceString(Throwable tr) {
+        if (tr == null) {
+            return "";
+        }
+        final StringWriter stringWriter = new StringWriter();
+        tr.printStackTrace(new PrintWriter(stringWriter));
+        return stringWriter.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package com.octo.android.robospice;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import roboguice.util.temp.Ln;
+import android.app.Application;
+import android.util.Log;
+
+import com.octo.android.robospice.loadtest.LoadTestSpiceService;
+import com.octo.android.robospice.persistence.exception.SpiceException;
+import com.octo.android.robospice.request.SpiceRequest;
+import com.octo.android.robospice.request.listener.RequestListener;
+
+/**
+ * Measures the latency between {@link SpiceManager#execute} and the beginning
+ * of {@link SpiceRequest#loadDataFromNetwork()}, once the {@link SpiceManager}
+ * is attached to a {@link LoadTestSpiceService} hosted in process. Several
+ * threads execute requests at the same time, as sending them to the service
+ * used to be serialized. Run it on a previous revision to compare.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class SpiceManagerBenchmark {
+
+    private static final int THREAD_COUNT = 4;
+    private static final long REQUEST_START_TIME_OUT = 5000;
+
+    private SpiceManager spiceManager;
+    private final RequestListener<String> requestListener = new RequestListener<String>() {
+        @Override
+        public void onRequestFailure(SpiceException spiceException) {
+        }
+
+        @Override
+        public void onRequestSuccess(String result) {
+        }
+    };
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        // logs as in release builds
+        Ln.getConfig().setLoggingLevel(Log.INFO);
+        LoadTestSpiceService.setThreadCount(THREAD_COUNT);
+        spiceManager = new SpiceManager(LoadTestSpiceService.class, true);
+        spiceManager.start(new Application());
+        // first request waits for the service to be attached.
+        executeAndAwaitStart();
+    }
+
+    @TearDown
+    public void tearDown() {
+        spiceManager.shouldStop();
+    }
+
+    @Benchmark
+    public long executeAndAwaitStart() throws InterruptedException {
+        final StartLatchSpiceRequest request = new StartLatchSpiceRequest();
+        final long submitTime = System.nanoTime();
+        spiceManager.execute(request, requestListener);
+        if (!request.startLatch.await(REQUEST_START_TIME_OUT, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Request not started after " + REQUEST_START_TIME_OUT + " ms");
+        }
+        return request.startTime - submitTime;
+    }
+
+    // ============================================================================================
+    // INNER CLASSES
+    // ============================================================================================
+
+    private static final class StartLatchSpiceRequest extends SpiceRequest<String> {
+        private final CountDownLatch startLatch = new CountDownLatch(1);
+        private volatile long startTime;
+
+        private StartLatchSpiceRequest() {
+            super(String.class);
+            setRetryPolicy(null);
+        }
+
+        @Override
+        public String loadDataFromNetwork() throws Exception {
+            startTime = System.nanoTime();
+            startLatch.countDown();
+            return null;
+        }
+    }
+}
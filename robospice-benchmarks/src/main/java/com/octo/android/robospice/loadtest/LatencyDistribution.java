@@ -0,0 +1,89 @@
+package com.octo.android.robospice.loadtest;
+
+import java.util.Random;
+
+/**
+ * Distribution of the network latencies of the stub requests of a load test.
+ * Distributions are described by a specification :
+ * <ul>
+ * <li>fixed:&lt;latency&gt; : every request takes the same time,</li>
+ * <li>uniform:&lt;min&gt;:&lt;max&gt; : latencies are uniformly distributed,</li>
+ * <li>exponential:&lt;mean&gt; : latencies are exponentially distributed,</li>
+ * <li>lognormal:&lt;median&gt;:&lt;sigma&gt; : latencies are log-normally
+ * distributed, as those of mobile networks, with a long tail growing with
+ * sigma.</li>
+ * </ul>
+ * All latencies are in ms.
+ */
+public abstract class LatencyDistribution {
+
+    private final String specification;
+
+    protected LatencyDistribution(String specification) {
+        this.specification = specification;
+    }
+
+    /**
+     * @param random
+     *            the source of randomness.
+     * @return a latency, in ms.
+     */
+    public abstract long nextLatency(Random random);
+
+    @Override
+    public String toString() {
+        return specification;
+    }
+
+    /**
+     * @param specification
+     *            see {@link LatencyDistribution}.
+     * @return the distribution described by specification.
+     */
+    public static LatencyDistribution parse(final String specification) {
+        final String[] parts = specification.split(":");
+        try {
+            if ("fixed".equals(parts[0]) && parts.length == 2) {
+                final long latency = Long.parseLong(parts[1]);
+                return new LatencyDistribution(specification) {
+                    @Override
+                    public long nextLatency(Random random) {
+                        return latency;
+                    }
+                };
+            }
+            if ("uniform".equals(parts[0]) && parts.length == 3) {
+                final long min = Long.parseLong(parts[1]);
+                final long max = Long.parseLong(parts[2]);
+                return new LatencyDistribution(specification) {
+                    @Override
+                    public long nextLatency(Random random) {
+                        return min + (long) (random.nextDouble() * (max - min));
+                    }
+                };
+            }
+            if ("exponential".equals(parts[0]) && parts.length == 2) {
+                final double mean = Double.parseDouble(parts[1]);
+                return new LatencyDistribution(specification) {
+                    @Override
+                    public long nextLatency(Random random) {
+                        return Math.round(-mean * Math.log(1 - random.nextDouble()));
+                    }
+                };
+            }
+            if ("lognormal".equals(parts[0]) && parts.length == 3) {
+                final double mu = Math.log(Double.parseDouble(parts[1]));
+                final double sigma = Double.parseDouble(parts[2]);
+                return new LatencyDistribution(specification) {
+                    @Override
+                    public long nextLatency(Random random) {
+                        return Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+                    }
+                };
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency distribution : " + specification, e);
+        }
+        throw new IllegalArgumentException("Invalid latency distribution : " + specification);
+    }
+}
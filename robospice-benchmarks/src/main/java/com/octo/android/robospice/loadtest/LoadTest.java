@@ -0,0 +1,175 @@
+package com.octo.android.robospice.loadtest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import roboguice.util.temp.Ln;
+import android.util.Log;
+
+/**
+ * Runs {@link LoadTestScenario}s for every combination of the given thread
+ * counts and aggregation ratios, each in its own JVM, and writes their results
+ * as a JSON array. Options, all optional, are passed as --name=value :
+ * <ul>
+ * <li>threadCounts : comma separated thread counts of the service (1,4,16),</li>
+ * <li>aggregationRatios : comma separated ratios of aggregated requests
+ * (0,0.5,0.9),</li>
+ * <li>requests : number of measured requests per scenario (5000),</li>
+ * <li>warmupRequests : number of requests executed before them (1000),</li>
+ * <li>latency : distribution of network latencies, see
+ * {@link LatencyDistribution} (lognormal:50:0.5),</li>
+ * <li>failureRate : probability that a network call fails (0.01),</li>
+ * <li>seed : seed of latencies and failures (42),</li>
+ * <li>timeOut : maximum time, in ms, to wait for a burst of requests
+ * (600000),</li>
+ * <li>output : file the results are written to (loadtest-result.json),</li>
+ * <li>fork : false to run the only scenario in this JVM (true).</li>
+ * </ul>
+ */
+public final class LoadTest {
+
+    private static final Map<String, String> DEFAULT_OPTIONS = new HashMap<String, String>();
+    static {
+        DEFAULT_OPTIONS.put("threadCounts", "1,4,16");
+        DEFAULT_OPTIONS.put("aggregationRatios", "0,0.5,0.9");
+        DEFAULT_OPTIONS.put("requests", "5000");
+        DEFAULT_OPTIONS.put("warmupRequests", "1000");
+        DEFAULT_OPTIONS.put("latency", "lognormal:50:0.5");
+        DEFAULT_OPTIONS.put("failureRate", "0.01");
+        DEFAULT_OPTIONS.put("seed", "42");
+        DEFAULT_OPTIONS.put("timeOut", "600000");
+        DEFAULT_OPTIONS.put("output", "loadtest-result.json");
+        DEFAULT_OPTIONS.put("fork", "true");
+    }
+
+    private static final String JSON_PREFIX = "{";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        // logs as in release builds
+        Ln.getConfig().setLoggingLevel(Log.INFO);
+        final Map<String, String> options = parseOptions(args);
+        final String[] threadCounts = options.get("threadCounts").split(",");
+        final String[] aggregationRatios = options.get("aggregationRatios").split(",");
+
+        if (!Boolean.parseBoolean(options.get("fork"))) {
+            if (threadCounts.length != 1 || aggregationRatios.length != 1) {
+                throw new IllegalArgumentException("Only 1 scenario can run without fork");
+            }
+            runScenario(createScenario(options, threadCounts[0], aggregationRatios[0]));
+            return;
+        }
+
+        final List<String> jsonResults = new ArrayList<String>();
+        for (final String threadCount : threadCounts) {
+            for (final String aggregationRatio : aggregationRatios) {
+                final Map<String, String> scenarioOptions = new HashMap<String, String>(options);
+                scenarioOptions.put("threadCounts", threadCount);
+                scenarioOptions.put("aggregationRatios", aggregationRatio);
+                scenarioOptions.put("fork", "false");
+                jsonResults.add(runInForkedJvm(scenarioOptions));
+            }
+        }
+        writeResults(new File(options.get("output")), jsonResults);
+    }
+
+    /**
+     * Runs a scenario in this JVM, prints its result, then as JSON, on the
+     * standard output stream, and exits : threads of the service are not
+     * daemons.
+     */
+    private static void runScenario(LoadTestScenario scenario) {
+        int exitValue = 0;
+        try {
+            final LoadTestResult result = scenario.run();
+            System.out.println(result);
+            System.out.println(result.toJson());
+        } catch (Throwable e) {
+            e.printStackTrace();
+            exitValue = 1;
+        } finally {
+            System.exit(exitValue);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        final Map<String, String> options = new HashMap<String, String>(DEFAULT_OPTIONS);
+        for (final String arg : args) {
+            final int separatorIndex = arg.indexOf('=');
+            final String name = separatorIndex < 0 ? null : arg.substring(2, separatorIndex);
+            if (!arg.startsWith("--") || !options.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown option : " + arg + ", valid options are " + DEFAULT_OPTIONS.keySet());
+            }
+            options.put(name, arg.substring(separatorIndex + 1));
+        }
+        return options;
+    }
+
+    private static LoadTestScenario createScenario(Map<String, String> options, String threadCount, String aggregationRatio) {
+        return new LoadTestScenario(Integer.parseInt(threadCount), Double.parseDouble(aggregationRatio), Integer.parseInt(options.get("requests")),
+            Integer.parseInt(options.get("warmupRequests")), LatencyDistribution.parse(options.get("latency")), Double.parseDouble(options.get("failureRate")),
+            Long.parseLong(options.get("seed")), Long.parseLong(options.get("timeOut")));
+    }
+
+    /**
+     * Runs a scenario in a new JVM, with the class path of this one, so that
+     * it starts with a fresh service.
+     * @return the result of the scenario, as JSON.
+     */
+    private static String runInForkedJvm(Map<String, String> scenarioOptions) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LoadTest.class.getName());
+        for (final Map.Entry<String, String> option : scenarioOptions.entrySet()) {
+            command.add("--" + option.getKey() + "=" + option.getValue());
+        }
+        final Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+        String jsonResult = null;
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(JSON_PREFIX)) {
+                    jsonResult = line;
+                } else {
+                    System.out.println(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        final int exitValue = process.waitFor();
+        if (exitValue != 0 || jsonResult == null) {
+            throw new IllegalStateException("Scenario failed with exit value " + exitValue + " : " + scenarioOptions);
+        }
+        return jsonResult;
+    }
+
+    private static void writeResults(File outputFile, List<String> jsonResults) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8");
+        try {
+            writer.write("[\n");
+            for (int i = 0; i < jsonResults.size(); i++) {
+                writer.write("  " + jsonResults.get(i) + (i < jsonResults.size() - 1 ? ",\n" : "\n"));
+            }
+            writer.write("]\n");
+        } finally {
+            writer.close();
+        }
+        System.err.println("Results written to " + outputFile.getAbsolutePath());
+    }
+}
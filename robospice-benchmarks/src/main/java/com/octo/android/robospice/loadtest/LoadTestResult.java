@@ -0,0 +1,99 @@
+package com.octo.android.robospice.loadtest;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures of a {@link LoadTestScenario} : throughput of requests and
+ * percentiles of their end-to-end latency, from
+ * {@link com.octo.android.robospice.SpiceManager#execute} to the notification
+ * of their listener on the main looper.
+ */
+public final class LoadTestResult {
+
+    private static final double PERCENT = 100;
+    private static final double MILLIS_PER_SECOND = 1000;
+    private static final int PERCENTILE_50 = 50;
+    private static final int PERCENTILE_99 = 99;
+
+    private final LoadTestScenario scenario;
+    private final long[] latencies;
+    private final long duration;
+    private final int failureCount;
+    private final int networkCallCount;
+
+    /**
+     * @param scenario
+     *            the measured scenario.
+     * @param latencies
+     *            the end-to-end latency of each request, in ns.
+     * @param duration
+     *            the time, in ns, between the execution of the first request
+     *            and the notification of the last one.
+     * @param failureCount
+     *            the number of requests whose listener has been notified of a
+     *            failure.
+     * @param networkCallCount
+     *            the number of network calls made, fewer than requests when
+     *            requests are aggregated.
+     */
+    LoadTestResult(LoadTestScenario scenario, long[] latencies, long duration, int failureCount, int networkCallCount) {
+        this.scenario = scenario;
+        this.latencies = latencies.clone();
+        Arrays.sort(this.latencies);
+        this.duration = duration;
+        this.failureCount = failureCount;
+        this.networkCallCount = networkCallCount;
+    }
+
+    public LoadTestScenario getScenario() {
+        return scenario;
+    }
+
+    /** @return the number of requests completed per second. */
+    public double getThroughput() {
+        return latencies.length * MILLIS_PER_SECOND / toMillis(duration);
+    }
+
+    /**
+     * @param percentile
+     *            between 0 and 100.
+     * @return the latency, in ms, below which this percentage of latencies
+     *         fall.
+     */
+    public double getLatencyPercentile(double percentile) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        final int rank = Math.max(1, (int) Math.ceil(latencies.length * percentile / PERCENT));
+        return toMillis(latencies[rank - 1]);
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    public int getNetworkCallCount() {
+        return networkCallCount;
+    }
+
+    /** @return this result as a JSON object, on a single line. */
+    public String toJson() {
+        return String.format(Locale.US, "{\"threadCount\":%d,\"aggregationRatio\":%s,\"requestCount\":%d,\"latency\":\"%s\",\"failureRate\":%s,"
+            + "\"networkCallCount\":%d,\"failureCount\":%d,\"throughput\":%.1f,\"p50\":%.2f,\"p99\":%.2f,\"max\":%.2f}", scenario.getThreadCount(),
+            scenario.getAggregationRatio(), scenario.getRequestCount(), scenario.getLatency(), scenario.getFailureRate(), networkCallCount, failureCount,
+            getThroughput(), getLatencyPercentile(PERCENTILE_50), getLatencyPercentile(PERCENTILE_99), getLatencyPercentile(PERCENT));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "threads=%-3d aggregation=%-4s requests=%-6d network calls=%-6d failures=%-5d throughput=%8.1f req/s p50=%8.2f ms p99=%8.2f ms",
+            scenario.getThreadCount(), scenario.getAggregationRatio(), scenario.getRequestCount(), networkCallCount, failureCount, getThroughput(),
+            getLatencyPercentile(PERCENTILE_50), getLatencyPercentile(PERCENTILE_99));
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,192 @@
+package com.octo.android.robospice.loadtest;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.app.Application;
+
+import com.octo.android.robospice.SpiceManager;
+import com.octo.android.robospice.persistence.DurationInMillis;
+import com.octo.android.robospice.persistence.exception.SpiceException;
+import com.octo.android.robospice.request.listener.RequestListener;
+
+/**
+ * A load test of the whole request lifecycle : a burst of stub network
+ * requests is executed by a {@link SpiceManager}, processed by a
+ * {@link LoadTestSpiceService} hosted in process, and their listeners are
+ * notified on the main looper. A part of the requests share their cache key
+ * with others, so that they are aggregated. <br/>
+ * A scenario runs once per JVM, as the in process service keeps the number of
+ * threads it has been created with.
+ */
+public final class LoadTestScenario {
+
+    private final int threadCount;
+    private final double aggregationRatio;
+    private final int requestCount;
+    private final int warmupRequestCount;
+    private final LatencyDistribution latency;
+    private final double failureRate;
+    private final long seed;
+    private final long timeOut;
+
+    /**
+     * @param threadCount
+     *            the number of threads of the service.
+     * @param aggregationRatio
+     *            the ratio of requests that share their cache key with
+     *            another request, between 0 and 1.
+     * @param requestCount
+     *            the number of measured requests.
+     * @param warmupRequestCount
+     *            the number of requests executed, and not measured, before
+     *            the measured ones.
+     * @param latency
+     *            the distribution of network latencies.
+     * @param failureRate
+     *            the probability that a network call fails, between 0 and 1.
+     * @param seed
+     *            the seed of latencies and failures, so that runs can be
+     *            compared.
+     * @param timeOut
+     *            the maximum time, in ms, to wait for each burst of requests.
+     */
+    public LoadTestScenario(int threadCount, double aggregationRatio, int requestCount, int warmupRequestCount, LatencyDistribution latency,
+        double failureRate, long seed, long timeOut) {
+        if (threadCount <= 0 || requestCount <= 0 || warmupRequestCount < 0) {
+            throw new IllegalArgumentException("Thread and request counts must be >= 1");
+        }
+        if (aggregationRatio < 0 || aggregationRatio >= 1 || failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("Aggregation ratio must be in [0, 1[ and failure rate in [0, 1]");
+        }
+        this.threadCount = threadCount;
+        this.aggregationRatio = aggregationRatio;
+        this.requestCount = requestCount;
+        this.warmupRequestCount = warmupRequestCount;
+        this.latency = latency;
+        this.failureRate = failureRate;
+        this.seed = seed;
+        this.timeOut = timeOut;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public double getAggregationRatio() {
+        return aggregationRatio;
+    }
+
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    public int getWarmupRequestCount() {
+        return warmupRequestCount;
+    }
+
+    public LatencyDistribution getLatency() {
+        return latency;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getTimeOut() {
+        return timeOut;
+    }
+
+    /**
+     * Runs this scenario. Must be called at most once per JVM.
+     * @return the measures of the measured requests.
+     * @throws InterruptedException
+     *             if interrupted while waiting for requests.
+     */
+    public LoadTestResult run() throws InterruptedException {
+        LoadTestSpiceService.setThreadCount(threadCount);
+        final Application application = new Application();
+        final SpiceManager spiceManager = new SpiceManager(LoadTestSpiceService.class, true);
+        spiceManager.start(application);
+        try {
+            final Random random = new Random(seed);
+            if (warmupRequestCount > 0) {
+                runBurst(spiceManager, random, warmupRequestCount, "warmup-");
+            }
+            return runBurst(spiceManager, random, requestCount, "");
+        } finally {
+            spiceManager.shouldStop();
+        }
+    }
+
+    private LoadTestResult runBurst(final SpiceManager spiceManager, final Random random, final int burstRequestCount, final String cacheKeyPrefix)
+        throws InterruptedException {
+        final int cacheKeyCount = Math.max(1, (int) Math.round(burstRequestCount * (1 - aggregationRatio)));
+        final AtomicInteger networkCallCount = new AtomicInteger();
+        final StubNetworkRequest[] requests = new StubNetworkRequest[burstRequestCount];
+        for (int i = 0; i < burstRequestCount; i++) {
+            requests[i] = new StubNetworkRequest(latency.nextLatency(random), random.nextDouble() < failureRate, networkCallCount);
+        }
+
+        final long[] latencies = new long[burstRequestCount];
+        final AtomicInteger failureCount = new AtomicInteger();
+        final CountDownLatch completionLatch = new CountDownLatch(burstRequestCount);
+        final long start = System.nanoTime();
+        for (int i = 0; i < burstRequestCount; i++) {
+            final LatencyRecorderRequestListener requestListener = new LatencyRecorderRequestListener(latencies, i, failureCount, completionLatch);
+            spiceManager.execute(requests[i], cacheKeyPrefix + i % cacheKeyCount, DurationInMillis.ALWAYS_EXPIRED, requestListener);
+        }
+        if (!completionLatch.await(timeOut, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException(completionLatch.getCount() + " requests not completed after " + timeOut + " ms");
+        }
+        final long duration = System.nanoTime() - start;
+        return new LoadTestResult(this, latencies, duration, failureCount.get(), networkCallCount.get());
+    }
+
+    // ============================================================================================
+    // INNER CLASSES
+    // ============================================================================================
+
+    /**
+     * Records the time between its creation, just before its request is
+     * executed, and its notification.
+     */
+    private static final class LatencyRecorderRequestListener implements RequestListener<String> {
+        private final long start = System.nanoTime();
+        private final long[] latencies;
+        private final int index;
+        private final AtomicInteger failureCount;
+        private final CountDownLatch completionLatch;
+
+        LatencyRecorderRequestListener(long[] latencies, int index, AtomicInteger failureCount, CountDownLatch completionLatch) {
+            this.latencies = latencies;
+            this.index = index;
+            this.failureCount = failureCount;
+            this.completionLatch = completionLatch;
+        }
+
+        @Override
+        public void onRequestFailure(SpiceException spiceException) {
+            failureCount.incrementAndGet();
+            onRequestComplete();
+        }
+
+        @Override
+        public void onRequestSuccess(String result) {
+            onRequestComplete();
+        }
+
+        private void onRequestComplete() {
+            // listeners are notified on the main looper, and the latch
+            // publishes latencies to the thread that waits for it.
+            latencies[index] = System.nanoTime() - start;
+            completionLatch.countDown();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.octo.android.robospice.loadtest;
+
+import android.app.Application;
+import android.content.Context;
+
+import com.octo.android.robospice.SpiceService;
+import com.octo.android.robospice.networkstate.NetworkStateChecker;
+import com.octo.android.robospice.persistence.CacheManager;
+import com.octo.android.robospice.persistence.memory.LruCacheStringObjectPersister;
+
+/**
+ * The {@link SpiceService} hosted in process during a load test. Results are
+ * cached in memory only, and network is always available. As the service is
+ * created once per JVM, its number of threads must be set before the first
+ * {@link com.octo.android.robospice.SpiceManager} is started.
+ */
+public class LoadTestSpiceService extends SpiceService {
+
+    private static final int LRU_CACHE_SIZE = 1024;
+
+    private static volatile int threadCount = DEFAULT_THREAD_COUNT;
+
+    public static void setThreadCount(int threadCount) {
+        LoadTestSpiceService.threadCount = threadCount;
+    }
+
+    @Override
+    public CacheManager createCacheManager(Application application) {
+        final CacheManager cacheManager = new CacheManager();
+        cacheManager.addPersister(new LruCacheStringObjectPersister(LRU_CACHE_SIZE));
+        return cacheManager;
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    @Override
+    protected NetworkStateChecker getNetworkStateChecker() {
+        return new NetworkStateChecker() {
+            @Override
+            public boolean isNetworkAvailable(Context context) {
+                return true;
+            }
+
+            @Override
+            public void checkPermissions(Context context) {
+            }
+        };
+    }
+}
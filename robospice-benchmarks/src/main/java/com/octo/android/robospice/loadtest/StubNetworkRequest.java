@@ -0,0 +1,46 @@
+package com.octo.android.robospice.loadtest;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.octo.android.robospice.request.SpiceRequest;
+
+/**
+ * A request that simulates a network call : it blocks its thread during a
+ * given latency, then returns data or fails. It is never retried, so that
+ * failures don't add retry delays to latencies.
+ */
+final class StubNetworkRequest extends SpiceRequest<String> {
+
+    private static final String RETURNED_DATA = "coucou";
+
+    private final long latency;
+    private final boolean isFailing;
+    private final AtomicInteger networkCallCount;
+
+    /**
+     * @param latency
+     *            the time, in ms, the network call takes.
+     * @param isFailing
+     *            whether or not the network call fails.
+     * @param networkCallCount
+     *            incremented by each network call.
+     */
+    StubNetworkRequest(long latency, boolean isFailing, AtomicInteger networkCallCount) {
+        super(String.class);
+        this.latency = latency;
+        this.isFailing = isFailing;
+        this.networkCallCount = networkCallCount;
+        setRetryPolicy(null);
+    }
+
+    @Override
+    public String loadDataFromNetwork() throws Exception {
+        networkCallCount.incrementAndGet();
+        Thread.sleep(latency);
+        if (isFailing) {
+            throw new IOException("Simulated network failure");
+        }
+        return RETURNED_DATA;
+    }
+}
@@ -0,0 +1,150 @@
+package com.octo.android.robospice.persistence;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Currency;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.octo.android.robospice.persistence.exception.CacheCreationException;
+import com.octo.android.robospice.persistence.memory.CacheItem;
+import com.octo.android.robospice.persistence.memory.LruCache;
+import com.octo.android.robospice.persistence.memory.LruCacheObjectPersister;
+
+/**
+ * Measures how long {@link CacheManager} takes to find the
+ * {@link ObjectPersister} of a class, which it does for every cache read and
+ * write. The class looked for is either the last one registered, the worst
+ * case of a chain of responsibility, or each registered class in turn, as an
+ * application with many model classes does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheManagerBenchmark {
+
+    private static final Class<?>[] HANDLED_CLASSES = {Boolean.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class,
+        Character.class, String.class, StringBuilder.class, BigInteger.class, BigDecimal.class, Date.class, UUID.class, URI.class, URL.class, File.class,
+        Locale.class, Currency.class, Calendar.class, TimeZone.class, Pattern.class, BitSet.class, Properties.class, ArrayList.class, HashMap.class,
+        Object.class, Number.class, Thread.class, Class.class, Enum.class, Throwable.class };
+
+    @Param({"1", "8", "32" })
+    public int persisterCount;
+
+    private CacheManager cacheManagerWithPersisters;
+    private CacheManager cacheManagerWithFactory;
+    private Class<?> lastHandledClass;
+    private Class<?>[] handledClasses;
+    private int lookupIndex;
+
+    @Setup
+    public void setUp() throws CacheCreationException {
+        final List<Class<?>> handledClasses = Arrays.asList(HANDLED_CLASSES).subList(0, persisterCount);
+        lastHandledClass = handledClasses.get(persisterCount - 1);
+        this.handledClasses = handledClasses.toArray(new Class<?>[persisterCount]);
+
+        cacheManagerWithPersisters = new CacheManager();
+        for (Class<?> handledClass : handledClasses) {
+            cacheManagerWithPersisters.addPersister(createObjectPersister(handledClass));
+        }
+
+        cacheManagerWithFactory = new CacheManager();
+        cacheManagerWithFactory.addPersister(new LruCacheObjectPersisterFactory(new ArrayList<Class<?>>(handledClasses)));
+        // the factory creates persisters on first use
+        for (Class<?> handledClass : handledClasses) {
+            cacheManagerWithFactory.getObjectPersister(handledClass);
+        }
+    }
+
+    @Benchmark
+    public ObjectPersister<?> getObjectPersister_among_persisters() throws CacheCreationException {
+        return cacheManagerWithPersisters.getObjectPersister(lastHandledClass);
+    }
+
+    @Benchmark
+    public ObjectPersister<?> getObjectPersister_from_factory() throws CacheCreationException {
+        return cacheManagerWithFactory.getObjectPersister(lastHandledClass);
+    }
+
+    @Benchmark
+    public ObjectPersister<?> getObjectPersister_of_each_class_from_factory() throws CacheCreationException {
+        return cacheManagerWithFactory.getObjectPersister(nextHandledClass());
+    }
+
+    /** Lookups of many threads, as when all request threads read the cache. */
+    @Benchmark
+    @Threads(4)
+    public ObjectPersister<?> getObjectPersister_of_each_class_from_factory_concurrently() throws CacheCreationException {
+        return cacheManagerWithFactory.getObjectPersister(nextHandledClass());
+    }
+
+    /** Lookups right after the chain of responsibility changed. */
+    @Benchmark
+    public ObjectPersister<?> getObjectPersister_after_chain_change() throws CacheCreationException {
+        final ObjectPersister<Void> persister = createObjectPersister(Void.class);
+        cacheManagerWithFactory.addPersister(persister);
+        cacheManagerWithFactory.removePersister(persister);
+        return cacheManagerWithFactory.getObjectPersister(lastHandledClass);
+    }
+
+    // ============================================================================================
+    // PRIVATE METHODS
+    // ============================================================================================
+
+    /* Racy on purpose when threads share this state : any class will do. */
+    private Class<?> nextHandledClass() {
+        final int index = lookupIndex;
+        lookupIndex = index + 1 == handledClasses.length ? 0 : index + 1;
+        return handledClasses[index];
+    }
+
+    private static <T> ObjectPersister<T> createObjectPersister(Class<T> clazz) {
+        return new LruCacheObjectPersister<T>(clazz, new LruCache<Object, CacheItem<T>>(1));
+    }
+
+    // ============================================================================================
+    // INNER CLASSES
+    // ============================================================================================
+
+    private static final class LruCacheObjectPersisterFactory extends ObjectPersisterFactory {
+
+        LruCacheObjectPersisterFactory(List<Class<?>> listHandledClasses) {
+            super(null, listHandledClasses);
+        }
+
+        @Override
+        public <DATA> ObjectPersister<DATA> createObjectPersister(Class<DATA> clazz) {
+            return CacheManagerBenchmark.createObjectPersister(clazz);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.octo.android.robospice.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import roboguice.util.temp.Ln;
+import android.app.Application;
+import android.util.Log;
+
+import com.google.api.client.util.Key;
+import com.octo.android.robospice.persistence.exception.CacheCreationException;
+import com.octo.android.robospice.persistence.exception.CacheLoadingException;
+import com.octo.android.robospice.persistence.exception.CacheSavingException;
+import com.octo.android.robospice.persistence.file.InFileObjectPersister;
+import com.octo.android.robospice.persistence.file.InFileObjectPersisterFactory;
+
+/**
+ * Measures a round trip, a write followed by a read, of a POJO through each
+ * JSON {@link ObjectPersister} of the extensions. Writes are synchronous, so
+ * that serialization is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonObjectPersisterBenchmark {
+
+    private static final String CACHE_KEY = "items";
+    private static final List<String> TAGS = Arrays.asList("android", "network", "cache");
+
+    @Param({"spring-android-jackson", "spring-android-jackson2", "spring-android-gson", "google-http-client-jackson", "google-http-client-jackson2",
+        "google-http-client-gson", "retrofit-jackson", "retrofit-gson" })
+    public String persister;
+
+    @Param({"1", "100" })
+    public int itemCount;
+
+    private InFileObjectPersister<ItemList> objectPersister;
+    private ItemList itemList;
+
+    @Setup
+    public void setUp() throws CacheCreationException {
+        // logs as in release builds
+        Ln.getConfig().setLoggingLevel(Log.INFO);
+        final InFileObjectPersisterFactory objectPersisterFactory = createObjectPersisterFactory(persister, new Application());
+        objectPersister = objectPersisterFactory.createObjectPersister(ItemList.class);
+        objectPersister.setAsyncSaveEnabled(false);
+
+        itemList = new ItemList();
+        itemList.items = new ArrayList<Item>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            final Item item = new Item();
+            item.id = i;
+            item.name = "item " + i;
+            item.tags = TAGS;
+            itemList.items.add(item);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        objectPersister.removeAllDataFromCache();
+    }
+
+    @Benchmark
+    public ItemList roundTrip() throws CacheSavingException, CacheLoadingException {
+        objectPersister.saveDataToCacheAndReturnData(itemList, CACHE_KEY);
+        return objectPersister.loadDataFromCache(CACHE_KEY, DurationInMillis.ALWAYS_RETURNED);
+    }
+
+    // ============================================================================================
+    // PRIVATE METHODS
+    // ============================================================================================
+
+    private static InFileObjectPersisterFactory createObjectPersisterFactory(String persister, Application application) throws CacheCreationException {
+        if ("spring-android-jackson".equals(persister)) {
+            return new com.octo.android.robospice.persistence.springandroid.json.jackson.JacksonObjectPersisterFactory(application);
+        } else if ("spring-android-jackson2".equals(persister)) {
+            return new com.octo.android.robospice.persistence.springandroid.json.jackson2.Jackson2ObjectPersisterFactory(application);
+        } else if ("spring-android-gson".equals(persister)) {
+            return new com.octo.android.robospice.persistence.springandroid.json.gson.GsonObjectPersisterFactory(application);
+        } else if ("google-http-client-jackson".equals(persister)) {
+            return new com.octo.android.robospice.persistence.googlehttpclient.json.JacksonObjectPersisterFactory(application);
+        } else if ("google-http-client-jackson2".equals(persister)) {
+            return new com.octo.android.robospice.persistence.googlehttpclient.json.Jackson2ObjectPersisterFactory(application);
+        } else if ("google-http-client-gson".equals(persister)) {
+            return new com.octo.android.robospice.persistence.googlehttpclient.json.GsonObjectPersisterFactory(application);
+        } else if ("retrofit-jackson".equals(persister)) {
+            return new com.octo.android.robospice.persistence.retrofit.JacksonRetrofitObjectPersisterFactory(application);
+        } else if ("retrofit-gson".equals(persister)) {
+            return new com.octo.android.robospice.persistence.retrofit.GsonRetrofitObjectPersisterFactory(application);
+        }
+        throw new IllegalArgumentException("Unknown persister " + persister);
+    }
+
+    // ============================================================================================
+    // INNER CLASSES
+    // ============================================================================================
+
+    /**
+     * Public fields, annotated for google-http-client, so that every JSON
+     * library can (de)serialize it without configuration.
+     */
+    public static class ItemList {
+        @Key
+        public List<Item> items;
+    }
+
+    /** An element of {@link ItemList}. */
+    public static class Item {
+        @Key
+        public int id;
+        @Key
+        public String name;
+        @Key
+        public List<String> tags;
+    }
+}
@@ -0,0 +1,78 @@
+package com.octo.android.robospice.persistence.file;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import roboguice.util.temp.Ln;
+import android.app.Application;
+import android.util.Log;
+
+import com.octo.android.robospice.persistence.DurationInMillis;
+import com.octo.android.robospice.persistence.exception.CacheCreationException;
+import com.octo.android.robospice.persistence.exception.CacheLoadingException;
+import com.octo.android.robospice.persistence.exception.CacheSavingException;
+import com.octo.android.robospice.persistence.string.InFileStringObjectPersister;
+
+/**
+ * Measures reads and writes of an {@link InFileObjectPersister}, for a small
+ * and a large payload. Writes are synchronous, so that they are measured
+ * entirely rather than the staging of a write behind.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InFileObjectPersisterBenchmark {
+
+    private static final String READ_CACHE_KEY = "read";
+    private static final String WRITE_CACHE_KEY = "write";
+
+    /** Lengths of the payload, in chars : 1 KB and 1 MB. */
+    @Param({"1024", "1048576" })
+    public int payloadLength;
+
+    private InFileObjectPersister<String> inFileObjectPersister;
+    private String payload;
+
+    @Setup
+    public void setUp() throws CacheCreationException, CacheSavingException {
+        // logs as in release builds
+        Ln.getConfig().setLoggingLevel(Log.INFO);
+        inFileObjectPersister = new InFileStringObjectPersister(new Application());
+        inFileObjectPersister.setAsyncSaveEnabled(false);
+        final char[] chars = new char[payloadLength];
+        Arrays.fill(chars, 'a');
+        payload = new String(chars);
+        inFileObjectPersister.saveDataToCacheAndReturnData(payload, READ_CACHE_KEY);
+    }
+
+    @TearDown
+    public void tearDown() {
+        inFileObjectPersister.removeAllDataFromCache();
+    }
+
+    @Benchmark
+    public String loadDataFromCache() throws CacheLoadingException {
+        return inFileObjectPersister.loadDataFromCache(READ_CACHE_KEY, DurationInMillis.ALWAYS_RETURNED);
+    }
+
+    @Benchmark
+    public String saveDataToCacheAndReturnData() throws CacheSavingException {
+        return inFileObjectPersister.saveDataToCacheAndReturnData(payload, WRITE_CACHE_KEY);
+    }
+}
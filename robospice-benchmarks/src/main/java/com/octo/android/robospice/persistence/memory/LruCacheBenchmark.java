@@ -0,0 +1,94 @@
+package com.octo.android.robospice.persistence.memory;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link LruCache} reads and writes, alone and when several threads
+ * share the cache, as request runner threads do with memory persisters. Keys
+ * are drawn among twice as many keys as the cache holds, so that a part of the
+ * reads miss and a part of the writes evict entries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Group)
+public class LruCacheBenchmark {
+
+    private static final int CACHE_SIZE = 1024;
+    private static final int KEY_COUNT = 2 * CACHE_SIZE;
+    private static final String VALUE = "coucou";
+
+    private LruCache<Integer, String> lruCache;
+    private Integer[] keys;
+
+    @Setup
+    public void setUp() {
+        lruCache = new LruCache<Integer, String>(CACHE_SIZE);
+        keys = new Integer[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = i;
+        }
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            lruCache.put(keys[i], VALUE);
+        }
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    public String get(KeyPicker keyPicker) {
+        return lruCache.get(keys[keyPicker.nextKeyIndex()]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public String contendedGet(KeyPicker keyPicker) {
+        return lruCache.get(keys[keyPicker.nextKeyIndex()]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public String contendedPut(KeyPicker keyPicker) {
+        return lruCache.put(keys[keyPicker.nextKeyIndex()], VALUE);
+    }
+
+    // ============================================================================================
+    // INNER CLASSES
+    // ============================================================================================
+
+    /**
+     * Picks keys pseudo randomly, with a xorshift generator per thread : a
+     * shared {@link java.util.Random} would add its own contention.
+     */
+    @State(Scope.Thread)
+    public static class KeyPicker {
+        private static final int SHIFT_1 = 13;
+        private static final int SHIFT_2 = 17;
+        private static final int SHIFT_3 = 5;
+
+        private int seed = System.identityHashCode(this) | 1;
+
+        int nextKeyIndex() {
+            seed ^= seed << SHIFT_1;
+            seed ^= seed >>> SHIFT_2;
+            seed ^= seed << SHIFT_3;
+            return (seed & Integer.MAX_VALUE) % KEY_COUNT;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.octo.android.robospice.request;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import roboguice.util.temp.Ln;
+import android.util.Log;
+
+import com.octo.android.robospice.request.listener.RequestStatus;
+
+/**
+ * Measures the cost of the debug and verbose logs of a request when they are
+ * disabled, as in release builds. Each benchmark writes the logs of one
+ * request : its processing, its progress updates and the notification of its
+ * listeners. It compares the eager concatenation requests used to log with,
+ * format-style logs, and format-style logs guarded by
+ * {@link Ln#isDebugEnabled()} or {@link Ln#isVerboseEnabled()}. Run it with
+ * -Djmh.args="-prof gc" to compare the allocations of each style too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    private static final RequestStatus[] PROGRESS_STATUSES = {RequestStatus.PENDING, RequestStatus.READING_FROM_CACHE, RequestStatus.LOADING_FROM_NETWORK,
+        RequestStatus.WRITING_TO_CACHE, RequestStatus.COMPLETE };
+
+    private Object request;
+    private int queueSize;
+    private int listenerCount;
+
+    @Setup
+    public void setUp() {
+        // logs as in release builds
+        Ln.getConfig().setLoggingLevel(Log.INFO);
+        request = new Object() {
+            @Override
+            public String toString() {
+                return "CachedSpiceRequest [requestCacheKey=12345, cacheDuration=-1]";
+            }
+        };
+        queueSize = 1;
+        listenerCount = 2;
+    }
+
+    /** The logs of a request, as they were written by concatenation. */
+    @Benchmark
+    public int eager() {
+        int result = Ln.d("Adding request to queue " + hashCode() + ": " + request + " size is " + queueSize);
+        result += Ln.d("Processing request : " + request);
+        result += Ln.d("Loading request from cache : " + request);
+        for (final RequestStatus status : PROGRESS_STATUSES) {
+            result += Ln.d("Sending progress " + status);
+            result += Ln.v("Notifying " + listenerCount + " listeners of progress " + status);
+        }
+        result += Ln.v("Notifying " + listenerCount + " listeners of request success");
+        result += Ln.v("Removing " + request + "  size is " + queueSize);
+        return result;
+    }
+
+    /** The logs of a request, formatted by Ln only if they are output. */
+    @Benchmark
+    public int formatted() {
+        int result = Ln.d("Adding request to queue %d: %s size is %d", hashCode(), request, queueSize);
+        result += Ln.d("Processing request : %s", request);
+        result += Ln.d("Loading request from cache : %s", request);
+        for (final RequestStatus status : PROGRESS_STATUSES) {
+            result += Ln.d("Sending progress %s", status);
+            result += Ln.v("Notifying %d listeners of progress %s", listenerCount, status);
+        }
+        result += Ln.v("Notifying %d listeners of request %s", listenerCount, "success");
+        result += Ln.v("Removing %s  size is %d", request, queueSize);
+        return result;
+    }
+
+    /** The logs of a request, as they are written now. */
+    @Benchmark
+    public int guarded() {
+        int result = 0;
+        if (Ln.isDebugEnabled()) {
+            result += Ln.d("Adding request to queue %d: %s size is %d", hashCode(), request, queueSize);
+        }
+        if (Ln.isDebugEnabled()) {
+            result += Ln.d("Processing request : %s", request);
+        }
+        if (Ln.isDebugEnabled()) {
+            result += Ln.d("Loading request from cache : %s", request);
+        }
+        for (final RequestStatus status : PROGRESS_STATUSES) {
+            if (Ln.isDebugEnabled()) {
+                result += Ln.d("Sending progress %s", status);
+            }
+            if (Ln.isVerboseEnabled()) {
+                result += Ln.v("Notifying %d listeners of progress %s", listenerCount, status);
+            }
+        }
+        if (Ln.isVerboseEnabled()) {
+            result += Ln.v("Notifying %d listeners of request %s", listenerCount, "success");
+        }
+        if (Ln.isVerboseEnabled()) {
+            result += Ln.v("Removing %s  size is %d", request, queueSize);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,146 @@
+package com.octo.android.robospice.request;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import roboguice.util.temp.Ln;
+import android.app.Application;
+import android.content.Context;
+import android.util.Log;
+
+import com.octo.android.robospice.networkstate.NetworkStateChecker;
+import com.octo.android.robospice.persistence.CacheManager;
+import com.octo.android.robospice.persistence.DurationInMillis;
+import com.octo.android.robospice.persistence.exception.SpiceException;
+import com.octo.android.robospice.persistence.memory.LruCacheStringObjectPersister;
+import com.octo.android.robospice.priority.PriorityThreadPoolExecutor;
+import com.octo.android.robospice.request.listener.RequestListener;
+import com.octo.android.robospice.request.notifier.DefaultRequestListenerNotifier;
+import com.octo.android.robospice.request.notifier.SpiceServiceListenerNotifier;
+
+/**
+ * Measures {@link RequestProcessor#addRequest(CachedSpiceRequest, Set)} when
+ * many threads add requests at the same time. Requests share a few cache keys
+ * and stay in flight during a simulated network latency, so that most of them
+ * are aggregated to a pending request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestProcessorBenchmark {
+
+    private static final int THREAD_COUNT = 8;
+    private static final int LRU_CACHE_SIZE = 64;
+    private static final String RETURNED_DATA = "coucou";
+
+    /** Number of distinct cache keys requests are spread over. */
+    @Param({"1", "16" })
+    public int cacheKeyCount;
+
+    /** Time, in ms, a request takes to load its data from network. */
+    @Param({"1", "10" })
+    public long networkLatency;
+
+    private RequestProcessor requestProcessor;
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        // logs as in release builds
+        Ln.getConfig().setLoggingLevel(Log.INFO);
+        final CacheManager cacheManager = new CacheManager();
+        cacheManager.addPersister(new LruCacheStringObjectPersister(LRU_CACHE_SIZE));
+        final RequestProcessorListener requestProcessorListener = new RequestProcessorListener() {
+            @Override
+            public void requestsInProgress() {
+            }
+
+            @Override
+            public void allRequestComplete() {
+            }
+        };
+        final RequestProgressManager requestProgressManager = new RequestProgressManager(requestProcessorListener, new DefaultRequestListenerNotifier(),
+            new SpiceServiceListenerNotifier());
+        final ExecutorService executorService = PriorityThreadPoolExecutor.getPriorityExecutor(THREAD_COUNT);
+        final RequestRunner requestRunner = new DefaultRequestRunner(new Application(), cacheManager, executorService, requestProgressManager,
+            new AlwaysConnectedNetworkStateChecker());
+        requestProcessor = new RequestProcessor(cacheManager, requestProgressManager, requestRunner);
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestProcessor.shouldStop();
+    }
+
+    @Benchmark
+    @Threads(THREAD_COUNT)
+    public CachedSpiceRequest<String> addRequest() {
+        final String cacheKey = String.valueOf(requestCount.incrementAndGet() % cacheKeyCount);
+        final CachedSpiceRequest<String> request = new CachedSpiceRequest<String>(new SlowSpiceRequest(networkLatency), cacheKey,
+            DurationInMillis.ALWAYS_EXPIRED);
+        final Set<RequestListener<?>> requestListeners = new HashSet<RequestListener<?>>();
+        requestListeners.add(new NoOpRequestListener());
+        requestProcessor.addRequest(request, requestListeners);
+        return request;
+    }
+
+    // ============================================================================================
+    // INNER CLASSES
+    // ============================================================================================
+
+    private static final class SlowSpiceRequest extends SpiceRequest<String> {
+        private final long networkLatency;
+
+        SlowSpiceRequest(long networkLatency) {
+            super(String.class);
+            this.networkLatency = networkLatency;
+        }
+
+        @Override
+        public String loadDataFromNetwork() throws Exception {
+            Thread.sleep(networkLatency);
+            return RETURNED_DATA;
+        }
+    }
+
+    private static final class NoOpRequestListener implements RequestListener<String> {
+        @Override
+        public void onRequestFailure(SpiceException spiceException) {
+        }
+
+        @Override
+        public void onRequestSuccess(String result) {
+        }
+    }
+
+    private static final class AlwaysConnectedNetworkStateChecker implements NetworkStateChecker {
+        @Override
+        public boolean isNetworkAvailable(Context context) {
+            return true;
+        }
+
+        @Override
+        public void checkPermissions(Context context) {
+        }
+    }
+}
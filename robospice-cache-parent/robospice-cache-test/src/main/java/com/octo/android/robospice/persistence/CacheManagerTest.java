@@ -1,7 +1,11 @@
 package com.octo.android.robospice.persistence;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.SmallTest;
@@ -14,6 +18,7 @@ import com.octo.android.robospice.persistence.exception.CacheSavingException;
 public class CacheManagerTest extends AndroidTestCase {
     private static final String TEST_PERSISTED_STRING = "TEST";
     private static final Integer TEST_PERSISTED_INTEGER = Integer.valueOf(0);
+    private static final long CREATION_TIME_OUT = 1000;
 
     private CacheManager cacheManager;
 
@@ -123,6 +128,106 @@ public class CacheManagerTest extends AndroidTestCase {
         assertEquals(mockIntegerPersistenceManager, persisterInteger);
     }
 
+    public void testGetObjectPersister_returns_a_persister_registered_after_a_failed_lookup() throws CacheCreationException {
+        // given
+        try {
+            cacheManager.getObjectPersister(String.class);
+            fail("No data class persistence manager should have been found as none had been registered");
+        } catch (RuntimeException ex) {
+            assertTrue(true);
+        }
+        MockStringPersistenceManager mockStringPersistenceManager = new MockStringPersistenceManager();
+        cacheManager.addPersister(mockStringPersistenceManager);
+
+        // when
+        ObjectPersister<?> actual = cacheManager.getObjectPersister(String.class);
+
+        // then
+        assertEquals(mockStringPersistenceManager, actual);
+    }
+
+    public void testGetObjectPersister_creates_a_single_persister_per_class_from_many_threads() throws Exception {
+        // given
+        final MockStringPersisterFactory mockStringPersisterFactory = new MockStringPersisterFactory();
+        cacheManager.addPersister(mockStringPersisterFactory);
+        final int threadCount = 10;
+        final List<ObjectPersister<?>> listPersister = Collections.synchronizedList(new ArrayList<ObjectPersister<?>>());
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        List<Thread> listThread = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        listPersister.add(cacheManager.getObjectPersister(String.class));
+                    } catch (Exception e) {
+                        fail(e.getMessage());
+                    }
+                }
+            });
+            thread.start();
+            listThread.add(thread);
+        }
+
+        // when
+        startLatch.countDown();
+        for (Thread thread : listThread) {
+            thread.join();
+        }
+
+        // then
+        assertEquals(1, mockStringPersisterFactory.getCreatedPersisterCount());
+        assertEquals(threadCount, listPersister.size());
+        for (ObjectPersister<?> objectPersister : listPersister) {
+            assertSame(listPersister.get(0), objectPersister);
+        }
+        // persisters created by a factory survive changes of the chain.
+        cacheManager.addPersister(new MockIntegerPersistenceManager());
+        assertSame(listPersister.get(0), cacheManager.getObjectPersister(String.class));
+        assertEquals(1, mockStringPersisterFactory.getCreatedPersisterCount());
+    }
+
+    public void testGetObjectPersister_doesnt_wait_for_the_creation_of_the_persister_of_another_class() throws Exception {
+        // given
+        final CountDownLatch creationStartLatch = new CountDownLatch(1);
+        final CountDownLatch creationReleaseLatch = new CountDownLatch(1);
+        final MockStringPersisterFactory mockStringPersisterFactory = new MockStringPersisterFactory(creationStartLatch, creationReleaseLatch);
+        cacheManager.addPersister(mockStringPersisterFactory);
+        MockIntegerPersistenceManager mockIntegerPersistenceManager = new MockIntegerPersistenceManager();
+        cacheManager.addPersister(mockIntegerPersistenceManager);
+        final List<ObjectPersister<?>> listPersister = Collections.synchronizedList(new ArrayList<ObjectPersister<?>>());
+        Thread creatingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    listPersister.add(cacheManager.getObjectPersister(String.class));
+                } catch (Exception e) {
+                    fail(e.getMessage());
+                }
+            }
+        });
+        creatingThread.start();
+        assertTrue(creationStartLatch.await(CREATION_TIME_OUT, TimeUnit.MILLISECONDS));
+
+        // when
+        ObjectPersister<?> persisterInteger;
+        int createdPersisterCountDuringLookup;
+        try {
+            persisterInteger = cacheManager.getObjectPersister(Integer.class);
+            createdPersisterCountDuringLookup = mockStringPersisterFactory.getCreatedPersisterCount();
+        } finally {
+            creationReleaseLatch.countDown();
+        }
+        creatingThread.join(CREATION_TIME_OUT);
+
+        // then
+        assertSame(mockIntegerPersistenceManager, persisterInteger);
+        assertEquals(0, createdPersisterCountDuringLookup);
+        assertEquals(1, listPersister.size());
+        assertEquals(1, mockStringPersisterFactory.getCreatedPersisterCount());
+    }
+
     // ----------------------------------
     // CLASSES UNDER TEST
     // ----------------------------------
@@ -179,6 +284,47 @@ public class CacheManagerTest extends AndroidTestCase {
         }
     }
 
+    private class MockStringPersisterFactory extends ObjectPersisterFactory {
+
+        private final AtomicInteger createdPersisterCount = new AtomicInteger();
+        private final CountDownLatch creationStartLatch;
+        private final CountDownLatch creationReleaseLatch;
+
+        public MockStringPersisterFactory() {
+            this(null, null);
+        }
+
+        public MockStringPersisterFactory(CountDownLatch creationStartLatch, CountDownLatch creationReleaseLatch) {
+            super(null);
+            this.creationStartLatch = creationStartLatch;
+            this.creationReleaseLatch = creationReleaseLatch;
+        }
+
+        @Override
+        public boolean canHandleClass(Class<?> arg0) {
+            return arg0.equals(String.class);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> ObjectPersister<T> createObjectPersister(Class<T> clazz) throws CacheCreationException {
+            if (creationStartLatch != null) {
+                creationStartLatch.countDown();
+                try {
+                    creationReleaseLatch.await(CREATION_TIME_OUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    throw new CacheCreationException(e);
+                }
+            }
+            createdPersisterCount.incrementAndGet();
+            return (ObjectPersister<T>) new MockStringPersistenceManager();
+        }
+
+        public int getCreatedPersisterCount() {
+            return createdPersisterCount.get();
+        }
+    }
+
     private class MockIntegerPersistenceManager extends ObjectPersister<Integer> {
 
         public MockIntegerPersistenceManager() {
@@ -0,0 +1,171 @@
+package com.octo.android.robospice.persistence.file;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class WriteBehindQueueTest extends AndroidTestCase {
+
+    private static final long WRITE_TIMEOUT = 1000;
+    private static final long WRITE_DURATION = 200;
+    private static final String TEST_DATA = "TEST_DATA";
+    private static final String TEST_DATA2 = "TEST_DATA2";
+
+    private WriteBehindQueue writeBehindQueue;
+    private File file;
+    private File file2;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        writeBehindQueue = new WriteBehindQueue();
+        file = new File(getContext().getCacheDir(), "file");
+        file2 = new File(getContext().getCacheDir(), "file2");
+    }
+
+    public void testEnqueue_stages_data_until_written() throws Exception {
+        // given
+        final CountDownLatch writeStartedLatch = new CountDownLatch(1);
+        final CountDownLatch releaseWriteLatch = new CountDownLatch(1);
+
+        // when
+        writeBehindQueue.enqueue(file, TEST_DATA, new WriteBehindQueue.Writer() {
+            @Override
+            public void write() throws Exception {
+                writeStartedLatch.countDown();
+                releaseWriteLatch.await();
+            }
+        });
+
+        // then
+        assertTrue(writeStartedLatch.await(WRITE_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(TEST_DATA, writeBehindQueue.getPendingWrite(file).getStagedData());
+        releaseWriteLatch.countDown();
+        assertTrue(writeBehindQueue.awaitPendingWrites(WRITE_TIMEOUT));
+        assertNull(writeBehindQueue.getPendingWrite(file));
+    }
+
+    public void testEnqueue_coalesces_writes_of_same_file() throws Exception {
+        // given
+        final CountDownLatch releaseWriteLatch = new CountDownLatch(1);
+        final AtomicInteger writeCount = new AtomicInteger();
+        // blocks the writing thread
+        writeBehindQueue.enqueue(file2, TEST_DATA, new WriteBehindQueue.Writer() {
+            @Override
+            public void write() throws Exception {
+                releaseWriteLatch.await();
+            }
+        });
+
+        // when
+        writeBehindQueue.enqueue(file, TEST_DATA, new CountingWriter(writeCount));
+        writeBehindQueue.enqueue(file, TEST_DATA2, new CountingWriter(writeCount));
+        releaseWriteLatch.countDown();
+
+        // then
+        assertTrue(writeBehindQueue.awaitPendingWrites(WRITE_TIMEOUT));
+        assertEquals(1, writeCount.get());
+    }
+
+    public void testCancel_prevents_write() throws Exception {
+        // given
+        final CountDownLatch releaseWriteLatch = new CountDownLatch(1);
+        final AtomicInteger writeCount = new AtomicInteger();
+        writeBehindQueue.enqueue(file2, TEST_DATA, new WriteBehindQueue.Writer() {
+            @Override
+            public void write() throws Exception {
+                releaseWriteLatch.await();
+            }
+        });
+        writeBehindQueue.enqueue(file, TEST_DATA, new CountingWriter(writeCount));
+
+        // when
+        writeBehindQueue.cancel(file);
+        releaseWriteLatch.countDown();
+
+        // then
+        assertTrue(writeBehindQueue.awaitPendingWrites(WRITE_TIMEOUT));
+        assertEquals(0, writeCount.get());
+    }
+
+    public void testCancel_waits_for_write_in_progress() throws Exception {
+        // given
+        final CountDownLatch writeStartedLatch = new CountDownLatch(1);
+        final AtomicBoolean isWriteOver = new AtomicBoolean();
+        writeBehindQueue.enqueue(file, TEST_DATA, new WriteBehindQueue.Writer() {
+            @Override
+            public void write() throws Exception {
+                writeStartedLatch.countDown();
+                Thread.sleep(WRITE_DURATION);
+                isWriteOver.set(true);
+            }
+        });
+        assertTrue(writeStartedLatch.await(WRITE_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // when
+        writeBehindQueue.cancel(file);
+
+        // then
+        assertTrue(isWriteOver.get());
+    }
+
+    public void testEnqueue_when_full_writes_after_write_in_progress() throws Exception {
+        // given
+        writeBehindQueue = new WriteBehindQueue(1);
+        final CountDownLatch writeStartedLatch = new CountDownLatch(1);
+        final CountDownLatch releaseWriteLatch = new CountDownLatch(1);
+        final AtomicReference<String> lastWrittenData = new AtomicReference<String>();
+        writeBehindQueue.enqueue(file, TEST_DATA, new WriteBehindQueue.Writer() {
+            @Override
+            public void write() throws Exception {
+                writeStartedLatch.countDown();
+                releaseWriteLatch.await();
+                lastWrittenData.set(TEST_DATA);
+            }
+        });
+        assertTrue(writeStartedLatch.await(WRITE_TIMEOUT, TimeUnit.MILLISECONDS));
+        // fills the queue
+        writeBehindQueue.enqueue(file2, TEST_DATA, new CountingWriter(new AtomicInteger()));
+
+        // when
+        Thread savingThread = new Thread() {
+            @Override
+            public void run() {
+                writeBehindQueue.enqueue(file, TEST_DATA2, new WriteBehindQueue.Writer() {
+                    @Override
+                    public void write() {
+                        lastWrittenData.set(TEST_DATA2);
+                    }
+                });
+            }
+        };
+        savingThread.start();
+        Thread.sleep(WRITE_DURATION);
+        releaseWriteLatch.countDown();
+        savingThread.join(WRITE_TIMEOUT);
+
+        // then
+        assertTrue(writeBehindQueue.awaitPendingWrites(WRITE_TIMEOUT));
+        assertEquals(TEST_DATA2, lastWrittenData.get());
+    }
+
+    private static final class CountingWriter implements WriteBehindQueue.Writer {
+        private final AtomicInteger writeCount;
+
+        private CountingWriter(AtomicInteger writeCount) {
+            this.writeCount = writeCount;
+        }
+
+        @Override
+        public void write() {
+            writeCount.incrementAndGet();
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.octo.android.robospice.persistence.memory;
 import android.app.Application;
 import android.test.AndroidTestCase;
 
+import com.octo.android.robospice.persistence.CacheManager;
+import com.octo.android.robospice.persistence.CacheStatistics;
 import com.octo.android.robospice.persistence.DurationInMillis;
 import com.octo.android.robospice.persistence.exception.CacheCreationException;
 import com.octo.android.robospice.persistence.string.InFileStringObjectPersister;
@@ -63,9 +65,38 @@ public class LruCacheObjectPersisterTest extends AndroidTestCase {
         assertNotNull(testPersisterWithFallback.loadDataFromCache(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
     }
 
+    public void testLoadDataFromMemory_with_expired_data() throws Exception {
+        testPersister.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_1);
+        Thread.sleep(TEST_EXPIRATION_DURATION_LONG);
+        assertNull(testPersister.loadDataFromMemory(TEST_CACHE_KEY_1, TEST_EXPIRATION_DURATION_SHORT));
+        assertNotNull(testPersister.loadDataFromMemory(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
+    }
+
+    public void testLoadDataFromMemory_doesnt_use_fallback() throws Exception {
+        testPersisterWithFallback.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_1);
+        testPersisterWithFallback.getLruCache().evictAll();
+        assertNull(testPersisterWithFallback.loadDataFromMemory(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
+    }
+
     public void testGetCreationDateInCache_works_if_data_only_in_fallback() throws Exception {
         testPersisterWithFallback.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_1);
         testPersisterWithFallback.getLruCache().evictAll();
         assertTrue(testPersisterWithFallback.getCreationDateInCache(TEST_CACHE_KEY_1) > 0);
     }
+
+    public void testGetCacheStatistics_counts_hits_and_misses_of_cache_manager() throws Exception {
+        CacheManager cacheManager = new CacheManager();
+        cacheManager.addPersister(testPersister);
+        cacheManager.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_1);
+        cacheManager.loadDataFromCache(String.class, TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED);
+        cacheManager.loadDataFromCache(String.class, TEST_CACHE_KEY_2, DurationInMillis.ALWAYS_RETURNED);
+
+        CacheStatistics cacheStatistics = cacheManager.getCacheStatistics().get(0);
+        assertEquals(String.class, cacheStatistics.getHandledClass());
+        assertEquals(1, cacheStatistics.getHitCount());
+        assertEquals(1, cacheStatistics.getMissCount());
+        assertEquals(TEST_DATA.length(), cacheStatistics.getMemorySize());
+        assertEquals(TEST_LRU_CACHE_SIZE, cacheStatistics.getMemoryMaxSize());
+        assertEquals(CacheStatistics.UNKNOWN, cacheStatistics.getSizeOnDisk());
+    }
 }
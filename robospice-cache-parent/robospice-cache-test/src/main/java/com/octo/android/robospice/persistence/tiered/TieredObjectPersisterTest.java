@@ -0,0 +1,227 @@
+package com.octo.android.robospice.persistence.tiered;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.app.Application;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.octo.android.robospice.persistence.CacheStatistics;
+import com.octo.android.robospice.persistence.DurationInMillis;
+import com.octo.android.robospice.persistence.file.WriteBehindQueue;
+import com.octo.android.robospice.persistence.memory.LruCacheStringObjectPersister;
+import com.octo.android.robospice.persistence.string.InFileStringObjectPersister;
+
+@SmallTest
+public class TieredObjectPersisterTest extends AndroidTestCase {
+
+    private static final String TEST_CACHE_KEY_1 = "cacheKey1";
+    private static final String TEST_CACHE_KEY_2 = "cacheKey2";
+    private static final String TEST_CACHE_KEY_3 = "cacheKey3";
+    private static final String TEST_DATA = "hello world!";
+    private static final int TEST_LRU_CACHE_SIZE = TEST_DATA.length() * 2;
+    private static final long TEST_MAX_TIME_IN_MEMORY = 100;
+    private static final long DEMOTION_TIMEOUT = 1000;
+    private static final long TEST_MAX_TIME_IN_FILE = DurationInMillis.ONE_MINUTE;
+
+    private LruCacheStringObjectPersister memoryPersister;
+    private InFileStringObjectPersister filePersister;
+    private WriteBehindQueue writeBehindQueue;
+    private TieredObjectPersister<String> tieredPersisterUnderTest;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Application application = (Application) getContext().getApplicationContext();
+        memoryPersister = new LruCacheStringObjectPersister(TEST_LRU_CACHE_SIZE);
+        filePersister = new InFileStringObjectPersister(application);
+        filePersister.removeAllDataFromCache();
+        writeBehindQueue = new WriteBehindQueue();
+        tieredPersisterUnderTest = new TieredObjectPersister<String>(application, String.class);
+        tieredPersisterUnderTest.addTier(memoryPersister).addTier(filePersister);
+        tieredPersisterUnderTest.setWriteBehindQueue(writeBehindQueue);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        filePersister.removeAllDataFromCache();
+        super.tearDown();
+    }
+
+    public void testSaveDataToCacheAndReturnData_writes_through_all_tiers() throws Exception {
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_1);
+
+        assertEquals(TEST_DATA, memoryPersister.loadDataFromMemory(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
+        assertTrue(filePersister.isDataInCache(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
+    }
+
+    public void testLoadDataFromCache_promotes_data_with_its_creation_date() throws Exception {
+        // given
+        filePersister.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_1);
+
+        // when
+        String data = tieredPersisterUnderTest.loadDataFromCache(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED);
+
+        // then
+        assertEquals(TEST_DATA, data);
+        assertEquals(TEST_DATA, memoryPersister.loadDataFromMemory(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
+        assertEquals(filePersister.getCreationDateInCache(TEST_CACHE_KEY_1), memoryPersister.getCreationDateInCache(TEST_CACHE_KEY_1));
+        List<CacheTier<String>> tiers = tieredPersisterUnderTest.getTiers();
+        assertEquals(1, tiers.get(0).getMissCount());
+        assertEquals(1, tiers.get(1).getHitCount());
+    }
+
+    public void testLoadDataFromCache_applies_the_expiry_of_each_tier() throws Exception {
+        // given
+        Application application = (Application) getContext().getApplicationContext();
+        tieredPersisterUnderTest = new TieredObjectPersister<String>(application, String.class);
+        tieredPersisterUnderTest.addTier(memoryPersister, TEST_MAX_TIME_IN_MEMORY).addTier(filePersister);
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_1);
+        Thread.sleep(TEST_MAX_TIME_IN_MEMORY * 2);
+
+        // when
+        String data = tieredPersisterUnderTest.loadDataFromCache(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED);
+
+        // then
+        assertEquals(TEST_DATA, data);
+        List<CacheTier<String>> tiers = tieredPersisterUnderTest.getTiers();
+        assertEquals(1, tiers.get(0).getMissCount());
+        assertEquals(1, tiers.get(1).getHitCount());
+    }
+
+    public void testSaveDataToCacheAndReturnData_with_write_back_demotes_evicted_data() throws Exception {
+        // given
+        tieredPersisterUnderTest.setWriteBackEnabled(true);
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_1);
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_2);
+        assertFalse(filePersister.isDataInCache(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
+
+        // when
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_3);
+        awaitDemotions();
+
+        // then
+        assertTrue(filePersister.isDataInCache(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
+        assertFalse(filePersister.isDataInCache(TEST_CACHE_KEY_2, DurationInMillis.ALWAYS_RETURNED));
+        assertEquals(TEST_DATA, tieredPersisterUnderTest.loadDataFromCache(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
+    }
+
+    public void testSaveDataToCacheAndReturnData_with_write_back_demotes_data_with_its_creation_date() throws Exception {
+        // given
+        tieredPersisterUnderTest.setWriteBackEnabled(true);
+        // file dates may be rounded to the second.
+        long creationDate = (System.currentTimeMillis() / DurationInMillis.ONE_SECOND - 10) * DurationInMillis.ONE_SECOND;
+        memoryPersister.saveDataToMemory(TEST_DATA, TEST_CACHE_KEY_1, creationDate);
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_2);
+
+        // when
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_3);
+        awaitDemotions();
+
+        // then
+        assertEquals(creationDate, filePersister.getCreationDateInCache(TEST_CACHE_KEY_1));
+    }
+
+    public void testSaveDataToCacheAndReturnData_with_write_back_does_not_demote_expired_data() throws Exception {
+        // given
+        Application application = (Application) getContext().getApplicationContext();
+        tieredPersisterUnderTest = new TieredObjectPersister<String>(application, String.class);
+        tieredPersisterUnderTest.addTier(memoryPersister).addTier(filePersister, TEST_MAX_TIME_IN_FILE);
+        tieredPersisterUnderTest.setWriteBehindQueue(writeBehindQueue);
+        tieredPersisterUnderTest.setWriteBackEnabled(true);
+        memoryPersister.saveDataToMemory(TEST_DATA, TEST_CACHE_KEY_1, System.currentTimeMillis() - TEST_MAX_TIME_IN_FILE * 2);
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_2);
+
+        // when
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_3);
+        awaitDemotions();
+
+        // then
+        assertFalse(filePersister.isDataInCache(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
+    }
+
+    public void testRemoveDataFromCache_with_write_back_drops_pending_demotion() throws Exception {
+        // given
+        tieredPersisterUnderTest.setWriteBackEnabled(true);
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_1);
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_2);
+        final CountDownLatch blockingLatch = blockDemotions();
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_3);
+
+        // when
+        tieredPersisterUnderTest.removeDataFromCache(TEST_CACHE_KEY_1);
+        blockingLatch.countDown();
+        awaitDemotions();
+
+        // then
+        assertFalse(filePersister.isDataInCache(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
+        assertFalse(tieredPersisterUnderTest.isDataInCache(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
+    }
+
+    public void testRemoveAllDataFromCache_with_write_back_demotes_nothing() throws Exception {
+        // given
+        tieredPersisterUnderTest.setWriteBackEnabled(true);
+        tieredPersisterUnderTest.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_1);
+
+        // when
+        tieredPersisterUnderTest.removeAllDataFromCache();
+        awaitDemotions();
+
+        // then
+        assertFalse(tieredPersisterUnderTest.isDataInCache(TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED));
+    }
+
+    public void testGetCacheStatistics_of_tiered_cache_manager_reports_each_tier() throws Exception {
+        // given
+        TieredCacheManager tieredCacheManager = new TieredCacheManager();
+        tieredCacheManager.addPersister(tieredPersisterUnderTest);
+        filePersister.saveDataToCacheAndReturnData(TEST_DATA, TEST_CACHE_KEY_1);
+
+        // when
+        tieredCacheManager.loadDataFromCache(String.class, TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED);
+        tieredCacheManager.loadDataFromCache(String.class, TEST_CACHE_KEY_1, DurationInMillis.ALWAYS_RETURNED);
+        List<CacheStatistics> listCacheStatistics = tieredCacheManager.getCacheStatistics();
+
+        // then
+        assertEquals(2, listCacheStatistics.size());
+        assertEquals(1, listCacheStatistics.get(0).getHitCount());
+        assertEquals(1, listCacheStatistics.get(0).getMissCount());
+        assertEquals(1, listCacheStatistics.get(1).getHitCount());
+        assertEquals(0, listCacheStatistics.get(1).getMissCount());
+        assertEquals(2, tieredCacheManager.getTiers(String.class).size());
+    }
+
+    // ----------------------------------
+    // PRIVATE METHODS
+    // ----------------------------------
+
+    /* Holds the thread of the queue, and the demotions after it, until the latch returned is released. */
+    private CountDownLatch blockDemotions() {
+        final CountDownLatch blockingLatch = new CountDownLatch(1);
+        assertTrue(writeBehindQueue.executeAfterPendingWrites(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blockingLatch.await(DEMOTION_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }));
+        return blockingLatch;
+    }
+
+    /* Demotions are executed in order by the thread of the queue. */
+    private void awaitDemotions() throws InterruptedException {
+        final CountDownLatch demotionLatch = new CountDownLatch(1);
+        assertTrue(writeBehindQueue.executeAfterPendingWrites(new Runnable() {
+            @Override
+            public void run() {
+                demotionLatch.countDown();
+            }
+        }));
+        assertTrue(demotionLatch.await(DEMOTION_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+}
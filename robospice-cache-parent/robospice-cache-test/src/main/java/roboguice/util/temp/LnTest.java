@@ -0,0 +1,61 @@
+package roboguice.util.temp;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+@SmallTest
+public class LnTest extends AndroidTestCase {
+
+    private int previousLoggingLevel;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        previousLoggingLevel = Ln.getConfig().getLoggingLevel();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Ln.getConfig().setLoggingLevel(previousLoggingLevel);
+        super.tearDown();
+    }
+
+    public void testD_when_debug_is_disabled_doesnt_format_arguments() {
+        // given
+        Ln.getConfig().setLoggingLevel(Log.INFO);
+        ToStringCounter argument = new ToStringCounter();
+
+        // when
+        Ln.d("Processing request : %s", argument);
+        Ln.v("Removing %s", argument);
+
+        // then
+        assertEquals(0, argument.toStringCount);
+    }
+
+    public void testD_when_debug_is_enabled_formats_arguments() {
+        // given
+        Ln.getConfig().setLoggingLevel(Log.DEBUG);
+        ToStringCounter argument = new ToStringCounter();
+
+        // when
+        Ln.d("Processing request : %s", argument);
+
+        // then
+        assertEquals(1, argument.toStringCount);
+    }
+
+    // ----------------------------------
+    // CLASSES UNDER TESTS
+    // ----------------------------------
+    private static final class ToStringCounter {
+        private int toStringCount;
+
+        @Override
+        public String toString() {
+            toStringCount++;
+            return "ToStringCounter";
+        }
+    }
+}
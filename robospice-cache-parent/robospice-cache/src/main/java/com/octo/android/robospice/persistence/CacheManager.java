@@ -4,10 +4,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import roboguice.util.temp.Ln;
 
@@ -29,33 +33,58 @@ import com.octo.android.robospice.persistence.exception.CacheSavingException;
  * Note to maintainers : concurrency must be taken care of as persister can be
  * created by factories at any time. Thx to Henri Tremblay from EasyMock for
  * peer review and concurrency checks.
+ * The persister of each class is resolved once and indexed : the index is
+ * replaced by an empty one whenever the chain of responsibility changes, so
+ * that a resolution made against an outdated chain is never reused. While a
+ * class is resolved, the index holds the resolution in progress : other
+ * threads looking for this class wait for it, the ones looking for other
+ * classes don't.
  */
 @SuppressWarnings("deprecation")
 public class CacheManager implements ICacheManager {
 
+    /** Indexed instead of a persister for classes that no persister handles. */
+    private static final Object NO_PERSISTER = new Object();
+
     /** The Chain of Responsibility list of all {@link Persister}. */
-    private Collection<Persister> listPersister = new ArrayList<Persister>();
-    private Map<ObjectPersisterFactory, List<ObjectPersister<?>>> mapFactoryToPersister = new HashMap<ObjectPersisterFactory, List<ObjectPersister<?>>>();
+    private final Collection<Persister> listPersister = new CopyOnWriteArrayList<Persister>();
+    private final Map<ObjectPersisterFactory, List<ObjectPersister<?>>> mapFactoryToPersister = new ConcurrentHashMap<ObjectPersisterFactory, List<ObjectPersister<?>>>();
+
+    /**
+     * The {@link ObjectPersister} of each class looked for, or
+     * {@link #NO_PERSISTER}, or the {@link FutureTask} resolving it.
+     */
+    private volatile ConcurrentMap<Class<?>, Object> mapClassToPersister = new ConcurrentHashMap<Class<?>, Object>();
+
+    /** Guards the modifications of the chain of responsibility. */
+    private final Object lockPersisters = new Object();
 
     /** {@inheritDoc} */
     @Override
     public void addPersister(Persister persister) {
-        listPersister.add(persister);
-        if (persister instanceof ObjectPersisterFactory) {
-            // will lead the list to be copied whenever we add a persister to it
-            // but there won't be any overhead while iterating through the list.
-            mapFactoryToPersister.put((ObjectPersisterFactory) persister, new CopyOnWriteArrayList<ObjectPersister<?>>());
-        } else if (!(persister instanceof ObjectPersister)) {
+        if (!(persister instanceof ObjectPersister) && !(persister instanceof ObjectPersisterFactory)) {
             throw new RuntimeException(getClass().getSimpleName() + " only supports " + ObjectPersister.class.getSimpleName() + " or " + ObjectPersisterFactory.class.getSimpleName() + " instances.");
         }
+        synchronized (lockPersisters) {
+            if (persister instanceof ObjectPersisterFactory) {
+                // will lead the list to be copied whenever we add a persister to it
+                // but there won't be any overhead while iterating through the list.
+                mapFactoryToPersister.put((ObjectPersisterFactory) persister, new CopyOnWriteArrayList<ObjectPersister<?>>());
+            }
+            listPersister.add(persister);
+            mapClassToPersister = new ConcurrentHashMap<Class<?>, Object>();
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     public void removePersister(Persister persister) {
-        listPersister.remove(persister);
-        if (persister instanceof ObjectPersisterFactory) {
-            mapFactoryToPersister.remove(persister);
+        synchronized (lockPersisters) {
+            listPersister.remove(persister);
+            if (persister instanceof ObjectPersisterFactory) {
+                mapFactoryToPersister.remove(persister);
+            }
+            mapClassToPersister = new ConcurrentHashMap<Class<?>, Object>();
         }
     }
 
@@ -65,7 +94,14 @@ public class CacheManager implements ICacheManager {
      */
     @Override
     public <T> T loadDataFromCache(Class<T> clazz, Object cacheKey, long maxTimeInCacheBeforeExpiry) throws CacheLoadingException, CacheCreationException {
-        return getObjectPersister(clazz).loadDataFromCache(cacheKey, maxTimeInCacheBeforeExpiry);
+        ObjectPersister<T> objectPersister = getObjectPersister(clazz);
+        T data = null;
+        try {
+            data = objectPersister.loadDataFromCache(cacheKey, maxTimeInCacheBeforeExpiry);
+            return data;
+        } finally {
+            objectPersister.recordCacheLookup(data != null);
+        }
     }
 
     @Override
@@ -154,6 +190,10 @@ public class CacheManager implements ICacheManager {
             if (persister instanceof ObjectPersisterFactory) {
                 ObjectPersisterFactory factory = (ObjectPersisterFactory) persister;
                 List<ObjectPersister<?>> listPersisterForFactory = mapFactoryToPersister.get(factory);
+                if (listPersisterForFactory == null) {
+                    // removed meanwhile
+                    continue;
+                }
                 for (ObjectPersister<?> objectPersister : listPersisterForFactory) {
                     objectPersister.removeAllDataFromCache();
                 }
@@ -162,33 +202,163 @@ public class CacheManager implements ICacheManager {
         }
     }
 
+    /**
+     * Returns the statistics of all {@link ObjectPersister}s, including the ones
+     * created so far by {@link ObjectPersisterFactory}s. Doesn't perform any
+     * I/O, and can be polled frequently.
+     * @return a snapshot of the statistics of each persister.
+     */
+    public List<CacheStatistics> getCacheStatistics() {
+        List<CacheStatistics> listCacheStatistics = new ArrayList<CacheStatistics>();
+        for (ObjectPersister<?> objectPersister : getObjectPersisters()) {
+            listCacheStatistics.add(objectPersister.getCacheStatistics());
+        }
+        return listCacheStatistics;
+    }
+
+    /**
+     * @return all {@link ObjectPersister}s : the ones registered, and the ones
+     *         created so far by {@link ObjectPersisterFactory}s, in the order
+     *         of the chain of responsibility.
+     */
+    protected List<ObjectPersister<?>> getObjectPersisters() {
+        List<ObjectPersister<?>> listObjectPersister = new ArrayList<ObjectPersister<?>>();
+        for (Persister persister : this.listPersister) {
+            if (persister instanceof ObjectPersister) {
+                listObjectPersister.add((ObjectPersister<?>) persister);
+            } else if (persister instanceof ObjectPersisterFactory) {
+                List<ObjectPersister<?>> listPersisterForFactory = mapFactoryToPersister.get(persister);
+                if (listPersisterForFactory != null) {
+                    listObjectPersister.addAll(listPersisterForFactory);
+                }
+            }
+        }
+        return listObjectPersister;
+    }
+
+    /**
+     * Returns the {@link ObjectPersister} of a class. It is looked for in the
+     * chain of responsibility, or created by a factory, only the first time a
+     * class is looked for after the chain changed. The answer of
+     * {@link Persister#canHandleClass(Class)} must not change over time.
+     * @param clazz
+     *            the class of the data to persist.
+     * @return the persister of clazz.
+     * @throws CacheCreationException
+     *             if a factory failed to create the persister of clazz.
+     */
     @SuppressWarnings("unchecked")
-    protected <T> ObjectPersister<T> getObjectPersister(Class<T> clazz) throws CacheCreationException {
+    protected <T> ObjectPersister<T> getObjectPersister(final Class<T> clazz) throws CacheCreationException {
+        final ConcurrentMap<Class<?>, Object> currentMapClassToPersister = mapClassToPersister;
+        Object persister = currentMapClassToPersister.get(clazz);
+        if (persister == null) {
+            final FutureTask<Object> resolution = new FutureTask<Object>(new Callable<Object>() {
+                @Override
+                public Object call() throws CacheCreationException {
+                    return resolveObjectPersister(clazz);
+                }
+            });
+            persister = currentMapClassToPersister.putIfAbsent(clazz, resolution);
+            if (persister == null) {
+                resolution.run();
+                persister = resolution;
+            }
+        }
+        if (persister instanceof FutureTask) {
+            persister = awaitResolution(currentMapClassToPersister, clazz, (FutureTask<Object>) persister);
+        }
+        if (persister == NO_PERSISTER) {
+            throw new RuntimeException("Class " + clazz.getName() + " is not handled by any registered ObjectPersister. Please add a Persister for this class inside the CacheManager of your SpiceService.");
+        }
+        return (ObjectPersister<T>) persister;
+    }
+
+    /*
+     * Waits for the resolution of the persister of a class, and indexes its
+     * result. A failed resolution is forgotten, so that it is tried again.
+     */
+    private Object awaitResolution(ConcurrentMap<Class<?>, Object> currentMapClassToPersister, Class<?> clazz, FutureTask<Object> resolution)
+        throws CacheCreationException {
+        boolean isInterrupted = false;
+        try {
+            while (true) {
+                try {
+                    final Object persister = resolution.get();
+                    currentMapClassToPersister.replace(clazz, resolution, persister);
+                    return persister;
+                } catch (final InterruptedException e) {
+                    // the resolution is shared : it must be waited for.
+                    isInterrupted = true;
+                }
+            }
+        } catch (final ExecutionException e) {
+            currentMapClassToPersister.remove(clazz, resolution);
+            final Throwable cause = e.getCause();
+            if (cause instanceof CacheCreationException) {
+                throw (CacheCreationException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CacheCreationException(cause);
+        } finally {
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /*
+     * Walks the chain of responsibility. A class is resolved by a single
+     * thread at once, other classes can be resolved meanwhile.
+     */
+    private <T> Object resolveObjectPersister(Class<T> clazz) throws CacheCreationException {
         for (Persister persister : this.listPersister) {
             if (persister.canHandleClass(clazz)) {
                 if (persister instanceof ObjectPersister) {
-                    return (ObjectPersister<T>) persister;
+                    return persister;
                 }
 
                 if (persister instanceof ObjectPersisterFactory) {
                     ObjectPersisterFactory factory = (ObjectPersisterFactory) persister;
-
-                    if (factory.canHandleClass(clazz)) {
-                        List<ObjectPersister<?>> listPersisterForFactory = mapFactoryToPersister.get(factory);
-                        for (ObjectPersister<?> objectPersister : listPersisterForFactory) {
-                            if (objectPersister.canHandleClass(clazz)) {
-                                return (ObjectPersister<T>) objectPersister;
-                            }
+                    List<ObjectPersister<?>> listPersisterForFactory = mapFactoryToPersister.get(factory);
+                    if (listPersisterForFactory == null) {
+                        // removed from the chain meanwhile.
+                        continue;
+                    }
+                    // persisters created before the index was invalidated are reused.
+                    ObjectPersister<?> existingPersister = findObjectPersister(listPersisterForFactory, clazz);
+                    if (existingPersister != null) {
+                        return existingPersister;
+                    }
+                    ObjectPersister<T> newPersister = factory.createObjectPersister(clazz);
+                    newPersister.setAsyncSaveEnabled(factory.isAsyncSaveEnabled());
+                    synchronized (listPersisterForFactory) {
+                        // the chain may have changed during the creation, and
+                        // the class have been resolved again.
+                        existingPersister = findObjectPersister(listPersisterForFactory, clazz);
+                        if (existingPersister != null) {
+                            return existingPersister;
                         }
-                        ObjectPersister<T> newPersister = factory.createObjectPersister(clazz);
-                        newPersister.setAsyncSaveEnabled(factory.isAsyncSaveEnabled());
                         listPersisterForFactory.add(newPersister);
-                        return newPersister;
                     }
+                    return newPersister;
                 }
             }
         }
-        throw new RuntimeException("Class " + clazz.getName() + " is not handled by any registered ObjectPersister. Please add a Persister for this class inside the CacheManager of your SpiceService.");
+        return NO_PERSISTER;
+    }
+
+    private static ObjectPersister<?> findObjectPersister(List<ObjectPersister<?>> listObjectPersister, Class<?> clazz) {
+        for (ObjectPersister<?> objectPersister : listObjectPersister) {
+            if (objectPersister.canHandleClass(clazz)) {
+                return objectPersister;
+            }
+        }
+        return null;
     }
 
 }
@@ -0,0 +1,85 @@
+package com.octo.android.robospice.persistence;
+
+/**
+ * Statistics of an {@link ObjectPersister} : how often data was found in cache,
+ * and how much room it occupies. Instances are immutable snapshots, cheap
+ * enough to be taken periodically.
+ */
+public final class CacheStatistics {
+
+    /** Value of a statistic that a persister can't measure. */
+    public static final long UNKNOWN = -1;
+
+    private final String persisterName;
+    private final Class<?> handledClass;
+    private final long hitCount;
+    private final long missCount;
+    private final long sizeOnDisk;
+    private final long memorySize;
+    private final long memoryMaxSize;
+
+    public CacheStatistics(String persisterName, Class<?> handledClass, long hitCount, long missCount, long sizeOnDisk, long memorySize, long memoryMaxSize) {
+        this.persisterName = persisterName;
+        this.handledClass = handledClass;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.sizeOnDisk = sizeOnDisk;
+        this.memorySize = memorySize;
+        this.memoryMaxSize = memoryMaxSize;
+    }
+
+    /** @return the simple class name of the persister. */
+    public String getPersisterName() {
+        return persisterName;
+    }
+
+    public Class<?> getHandledClass() {
+        return handledClass;
+    }
+
+    /** @return the number of cache lookups that returned data. */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /** @return the number of cache lookups that returned no data. */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /** @return the ratio of lookups that returned data, 0 if none happened. */
+    public float getHitRatio() {
+        final long lookupCount = hitCount + missCount;
+        return lookupCount == 0 ? 0 : (float) hitCount / lookupCount;
+    }
+
+    /**
+     * @return the number of bytes of the cache files, possibly a few seconds
+     *         old. {@link #UNKNOWN} if data is not stored on disk.
+     */
+    public long getSizeOnDisk() {
+        return sizeOnDisk;
+    }
+
+    /**
+     * @return the size of the in-memory cache, in the unit of its max size.
+     *         {@link #UNKNOWN} if data is not stored in memory.
+     */
+    public long getMemorySize() {
+        return memorySize;
+    }
+
+    /**
+     * @return the max size of the in-memory cache. {@link #UNKNOWN} if data is
+     *         not stored in memory.
+     */
+    public long getMemoryMaxSize() {
+        return memoryMaxSize;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics [persister=" + persisterName + ", handledClass=" + handledClass.getSimpleName() + ", hitCount=" + hitCount + ", missCount=" + missCount
+            + ", sizeOnDisk=" + sizeOnDisk + ", memorySize=" + memorySize + "/" + memoryMaxSize + "]";
+    }
+}
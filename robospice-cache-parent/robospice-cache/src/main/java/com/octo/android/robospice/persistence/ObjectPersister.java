@@ -1,6 +1,7 @@
 package com.octo.android.robospice.persistence;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.app.Application;
 
@@ -20,6 +21,8 @@ public abstract class ObjectPersister<T> implements Persister, CacheCleaner {
     private boolean isAsyncSaveEnabled;
     private Application application;
     private Class<T> clazz;
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong cacheMissCount = new AtomicLong();
 
     public ObjectPersister(Application application, Class<T> clazz) {
         this.application = application;
@@ -84,4 +87,40 @@ public abstract class ObjectPersister<T> implements Persister, CacheCleaner {
 
     public abstract boolean isDataInCache(Object cacheKey, long maxTimeInCacheBeforeExpiry);
 
+    /**
+     * @return the number of loads through the {@link CacheManager} that
+     *         returned data.
+     */
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    /**
+     * @return the number of loads through the {@link CacheManager} that
+     *         returned no data.
+     */
+    public long getCacheMissCount() {
+        return cacheMissCount.get();
+    }
+
+    /**
+     * Returns statistics of this persister. This method is meant to be polled
+     * frequently and must not perform any blocking I/O. Subclasses that store
+     * data should override it to report the room it occupies.
+     * @return a snapshot of the statistics of this persister.
+     */
+    public CacheStatistics getCacheStatistics() {
+        return new CacheStatistics(getClass().getSimpleName(), clazz, getCacheHitCount(), getCacheMissCount(), CacheStatistics.UNKNOWN, CacheStatistics.UNKNOWN,
+            CacheStatistics.UNKNOWN);
+    }
+
+    /* package private */
+    void recordCacheLookup(boolean isHit) {
+        if (isHit) {
+            cacheHitCount.incrementAndGet();
+        } else {
+            cacheMissCount.incrementAndGet();
+        }
+    }
+
 }
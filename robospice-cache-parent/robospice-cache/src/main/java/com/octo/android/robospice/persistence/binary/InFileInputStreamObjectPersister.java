@@ -17,6 +17,7 @@ import com.octo.android.robospice.persistence.exception.CacheCreationException;
 import com.octo.android.robospice.persistence.exception.CacheLoadingException;
 import com.octo.android.robospice.persistence.exception.CacheSavingException;
 import com.octo.android.robospice.persistence.file.InFileObjectPersister;
+import com.octo.android.robospice.persistence.file.WriteBehindQueue;
 
 public class InFileInputStreamObjectPersister extends InFileObjectPersister<InputStream> {
 
@@ -36,7 +37,7 @@ public class InFileInputStreamObjectPersister extends InFileObjectPersister<Inpu
             // Should not occur (we test before if
             // file exists)
             // Do not throw, file is not cached
-            Ln.w("file " + file.getAbsolutePath() + " does not exists", e);
+            Ln.w(e, "file %s does not exists", file.getAbsolutePath());
             return null;
         }
     }
@@ -53,18 +54,12 @@ public class InFileInputStreamObjectPersister extends InFileObjectPersister<Inpu
             byteArray = IOUtils.toByteArray(data);
 
             if (isAsyncSaveEnabled()) {
-                Thread t = new Thread() {
-
+                saveDataToCacheFileAsync(cacheKey, byteArray, new WriteBehindQueue.Writer() {
                     @Override
-                    public void run() {
-                        try {
-                            FileUtils.writeByteArrayToFile(getCacheFile(cacheKey), byteArray);
-                        } catch (IOException e) {
-                            Ln.e(e, "An error occured on saving request " + cacheKey + " data asynchronously");
-                        }
-                    };
-                };
-                t.start();
+                    public void write() throws IOException {
+                        FileUtils.writeByteArrayToFile(getCacheFile(cacheKey), byteArray);
+                    }
+                });
             } else {
                 FileUtils.writeByteArrayToFile(getCacheFile(cacheKey), byteArray);
             }
@@ -75,6 +70,12 @@ public class InFileInputStreamObjectPersister extends InFileObjectPersister<Inpu
         }
     }
 
+    @Override
+    protected InputStream readStagedData(Object stagedData) {
+        // staged data is the content of the input stream.
+        return new ByteArrayInputStream((byte[]) stagedData);
+    }
+
     @Override
     public boolean canHandleClass(Class<?> clazz) {
         try {
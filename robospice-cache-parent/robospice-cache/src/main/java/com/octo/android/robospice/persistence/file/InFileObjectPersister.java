@@ -6,10 +6,12 @@ import java.io.FilenameFilter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import roboguice.util.temp.Ln;
 import android.app.Application;
 
+import com.octo.android.robospice.persistence.CacheStatistics;
 import com.octo.android.robospice.persistence.DurationInMillis;
 import com.octo.android.robospice.persistence.ObjectPersister;
 import com.octo.android.robospice.persistence.exception.CacheCreationException;
@@ -35,6 +37,9 @@ public abstract class InFileObjectPersister<T> extends ObjectPersister<T> {
     /* package private */
     static final String DEFAULT_ROOT_CACHE_DIR = "robospice-cache";
 
+    /* package private */
+    static final long SIZE_ON_DISK_REFRESH_PERIOD = 30 * DurationInMillis.ONE_SECOND;
+
     // ----------------------------------
     // ATTRIBUTES
     // ----------------------------------
@@ -44,6 +49,13 @@ public abstract class InFileObjectPersister<T> extends ObjectPersister<T> {
 
     private String factoryCachePrefix = "";
 
+    private WriteBehindQueue writeBehindQueue = WriteBehindQueue.getDefault();
+
+    /* Size of the cache files, measured in background by SizeOnDiskTask. */
+    private volatile long sizeOnDisk = CacheStatistics.UNKNOWN;
+    private volatile long sizeOnDiskDate;
+    private final AtomicBoolean isMeasuringSizeOnDisk = new AtomicBoolean();
+
     // ----------------------------------
     // CONSTRUCTOR
     // ----------------------------------
@@ -87,9 +99,26 @@ public abstract class InFileObjectPersister<T> extends ObjectPersister<T> {
         return cacheFolder;
     }
 
+    /**
+     * @param writeBehindQueue
+     *            the queue used to save data when asynchronous saving is
+     *            enabled. Defaults to {@link WriteBehindQueue#getDefault()}.
+     */
+    public void setWriteBehindQueue(WriteBehindQueue writeBehindQueue) {
+        this.writeBehindQueue = writeBehindQueue;
+    }
+
+    public final WriteBehindQueue getWriteBehindQueue() {
+        return writeBehindQueue;
+    }
+
     @Override
     public long getCreationDateInCache(Object cacheKey) throws CacheLoadingException {
         File cacheFile = getCacheFile(cacheKey);
+        WriteBehindQueue.PendingWrite pendingWrite = writeBehindQueue.getPendingWrite(cacheFile);
+        if (pendingWrite != null) {
+            return pendingWrite.getCreationDate();
+        }
         if (cacheFile.exists()) {
             return cacheFile.lastModified();
         } else {
@@ -98,6 +127,20 @@ public abstract class InFileObjectPersister<T> extends ObjectPersister<T> {
         }
     }
 
+    /**
+     * Sets the creation date of data in cache, typically to keep the date of
+     * data copied from another cache.
+     * @param cacheKey
+     *            the key of data.
+     * @param creationDate
+     *            the date data was created in cache, in ms since epoch.
+     * @return false if there is no data for cacheKey, or its date could not
+     *         be set.
+     */
+    public boolean setCreationDateInCache(Object cacheKey, long creationDate) {
+        return writeBehindQueue.setCreationDate(getCacheFile(cacheKey), creationDate);
+    }
+
     @Override
     public List<Object> getAllCacheKeys() {
         final String prefix = getCachePrefix();
@@ -133,19 +176,23 @@ public abstract class InFileObjectPersister<T> extends ObjectPersister<T> {
 
     @Override
     public boolean removeDataFromCache(Object cacheKey) {
-        return getCacheFile(cacheKey).delete();
+        File cacheFile = getCacheFile(cacheKey);
+        writeBehindQueue.cancel(cacheFile);
+        return cacheFile.delete();
     }
 
     @Override
     public void removeAllDataFromCache() {
         File cacheFolder = getCacheFolder();
-        File[] cacheFileList = cacheFolder.listFiles(new FileFilter() {
+        FileFilter cacheFileFilter = new FileFilter() {
 
             @Override
             public boolean accept(File file) {
                 return file.getName().startsWith(getCachePrefix());
             }
-        });
+        };
+        writeBehindQueue.cancel(cacheFileFilter);
+        File[] cacheFileList = cacheFolder.listFiles(cacheFileFilter);
 
         boolean allDeleted = true;
         for (File cacheFile : cacheFileList) {
@@ -160,6 +207,13 @@ public abstract class InFileObjectPersister<T> extends ObjectPersister<T> {
     public T loadDataFromCache(Object cacheKey, long maxTimeInCache) throws CacheLoadingException {
 
         File file = getCacheFile(cacheKey);
+        WriteBehindQueue.PendingWrite pendingWrite = writeBehindQueue.getPendingWrite(file);
+        if (pendingWrite != null) {
+            if (isNotExpired(pendingWrite.getCreationDate(), maxTimeInCache)) {
+                return readStagedData(pendingWrite.getStagedData());
+            }
+            return null;
+        }
         if (isCachedAndNotExpired(file, maxTimeInCache)) {
             return readCacheDataFromFile(file);
         }
@@ -170,9 +224,30 @@ public abstract class InFileObjectPersister<T> extends ObjectPersister<T> {
     @Override
     public boolean isDataInCache(Object cacheKey, long maxTimeInCacheBeforeExpiry) {
         File file = getCacheFile(cacheKey);
+        WriteBehindQueue.PendingWrite pendingWrite = writeBehindQueue.getPendingWrite(file);
+        if (pendingWrite != null) {
+            return isNotExpired(pendingWrite.getCreationDate(), maxTimeInCacheBeforeExpiry);
+        }
         return isCachedAndNotExpired(file, maxTimeInCacheBeforeExpiry);
     }
 
+    /**
+     * {@inheritDoc} The size on disk is measured in background, after pending
+     * writes and at most every 30 seconds : the value returned can be a few
+     * seconds old, and is {@link CacheStatistics#UNKNOWN} until the first
+     * measure is over.
+     */
+    @Override
+    public CacheStatistics getCacheStatistics() {
+        if (System.currentTimeMillis() - sizeOnDiskDate > SIZE_ON_DISK_REFRESH_PERIOD && isMeasuringSizeOnDisk.compareAndSet(false, true)) {
+            if (!writeBehindQueue.executeAfterPendingWrites(new SizeOnDiskTask())) {
+                isMeasuringSizeOnDisk.set(false);
+            }
+        }
+        return new CacheStatistics(getClass().getSimpleName(), getHandledClass(), getCacheHitCount(), getCacheMissCount(), sizeOnDisk, CacheStatistics.UNKNOWN,
+            CacheStatistics.UNKNOWN);
+    }
+
     /**
      * @return Whether or not this {@link InFileObjectPersister} uses a
      *         {@link KeySanitizer}.
@@ -256,6 +331,36 @@ public abstract class InFileObjectPersister<T> extends ObjectPersister<T> {
 
     protected abstract T readCacheDataFromFile(File file) throws CacheLoadingException;
 
+    /**
+     * Saves data in the cache file of cacheKey, through the
+     * {@link WriteBehindQueue} : the file will be written later, but data can
+     * be read from cache immediately.
+     * @param cacheKey
+     *            the cache key of data.
+     * @param stagedData
+     *            the data that is saved, returned by
+     *            {@link #readStagedData(Object)} until the file is written.
+     * @param writer
+     *            writes data into the cache file.
+     */
+    protected final void saveDataToCacheFileAsync(Object cacheKey, Object stagedData, WriteBehindQueue.Writer writer) {
+        writeBehindQueue.enqueue(getCacheFile(cacheKey), stagedData, writer);
+    }
+
+    /**
+     * Reads data that has been saved asynchronously but is not written yet.
+     * Override this method if staged data is not of type T.
+     * @param stagedData
+     *            the data passed to
+     *            {@link #saveDataToCacheFileAsync(Object, Object, WriteBehindQueue.Writer)}
+     *            .
+     * @return the data cached.
+     */
+    @SuppressWarnings("unchecked")
+    protected T readStagedData(Object stagedData) {
+        return (T) stagedData;
+    }
+
     protected final String getCachePrefix() {
         return factoryCachePrefix + getClass().getSimpleName() + CACHE_PREFIX_END + getHandledClass().getSimpleName() + CACHE_PREFIX_END;
     }
@@ -266,13 +371,42 @@ public abstract class InFileObjectPersister<T> extends ObjectPersister<T> {
     }
 
     protected boolean isCachedAndNotExpired(File cacheFile, long maxTimeInCacheBeforeExpiry) {
-        if (cacheFile.exists()) {
-            long timeInCache = System.currentTimeMillis() - cacheFile.lastModified();
-            if (maxTimeInCacheBeforeExpiry == DurationInMillis.ALWAYS_RETURNED || timeInCache <= maxTimeInCacheBeforeExpiry) {
-                return true;
+        return cacheFile.exists() && isNotExpired(cacheFile.lastModified(), maxTimeInCacheBeforeExpiry);
+    }
+
+    private static boolean isNotExpired(long creationDate, long maxTimeInCacheBeforeExpiry) {
+        long timeInCache = System.currentTimeMillis() - creationDate;
+        return maxTimeInCacheBeforeExpiry == DurationInMillis.ALWAYS_RETURNED || timeInCache <= maxTimeInCacheBeforeExpiry;
+    }
+
+    // ----------------------------------
+    // INNER CLASSES
+    // ----------------------------------
+
+    /* Sums the length of the cache files of this persister. */
+    private final class SizeOnDiskTask implements Runnable {
+        @Override
+        public void run() {
+            try {
+                final String prefix = getCachePrefix();
+                File[] cacheFileList = getCacheFolder().listFiles(new FileFilter() {
+                    @Override
+                    public boolean accept(File file) {
+                        return file.getName().startsWith(prefix);
+                    }
+                });
+                long size = 0;
+                if (cacheFileList != null) {
+                    for (File cacheFile : cacheFileList) {
+                        size += cacheFile.length();
+                    }
+                }
+                sizeOnDisk = size;
+            } finally {
+                sizeOnDiskDate = System.currentTimeMillis();
+                isMeasuringSizeOnDisk.set(false);
             }
         }
-        return false;
     }
 
 }
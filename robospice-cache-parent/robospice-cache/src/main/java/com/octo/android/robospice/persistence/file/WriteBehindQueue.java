@@ -0,0 +1,337 @@
+package com.octo.android.robospice.persistence.file;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import roboguice.util.temp.Ln;
+
+/**
+ * Writes cache files asynchronously, on behalf of {@link InFileObjectPersister}
+ * s whose asynchronous saving is enabled. All writes are executed by a single
+ * thread, in order. <br/>
+ * Writes are coalesced per cache file : if a file is saved again before its
+ * previous write started, only the last data is written. Until a write is
+ * over, its data is staged and can be read instead of the file. <br/>
+ * The queue is bounded : when it is full, data is written synchronously by the
+ * thread that saves it. A file is never written by two threads at the same
+ * time : such a write waits for the write in progress, then writes the last
+ * data saved. <br/>
+ * Once a write is cancelled, the file is not written anymore.
+ */
+public class WriteBehindQueue {
+
+    // ----------------------------------
+    // CONSTANTS
+    // ----------------------------------
+
+    /** The default maximum number of writes waiting to be executed. */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final String WRITE_BEHIND_THREAD_NAME = "RoboSpice write behind";
+    private static final long KEEP_ALIVE_TIME = 1;
+
+    // ----------------------------------
+    // ATTRIBUTES
+    // ----------------------------------
+
+    private static WriteBehindQueue defaultWriteBehindQueue;
+
+    private final ThreadPoolExecutor executorService;
+
+    /**
+     * Writes that are not over, by file. Iterations and modifications must be
+     * synchronized on this map.
+     */
+    private final Map<File, PendingWrite> mapFileToPendingWrite = new HashMap<File, PendingWrite>();
+
+    /** Writes in progress, by file. Guarded by mapFileToPendingWrite. */
+    private final Map<File, Thread> mapFileToWritingThread = new HashMap<File, Thread>();
+
+    // ----------------------------------
+    // CONSTRUCTORS
+    // ----------------------------------
+
+    /**
+     * @param capacity
+     *            the maximum number of writes waiting to be executed.
+     */
+    public WriteBehindQueue(int capacity) {
+        executorService = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(capacity), new WriteBehindThreadFactory(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        executorService.allowCoreThreadTimeOut(true);
+    }
+
+    public WriteBehindQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return the {@link WriteBehindQueue} shared by default by all
+     *         {@link InFileObjectPersister}s.
+     */
+    public static synchronized WriteBehindQueue getDefault() {
+        if (defaultWriteBehindQueue == null) {
+            defaultWriteBehindQueue = new WriteBehindQueue();
+        }
+        return defaultWriteBehindQueue;
+    }
+
+    // ----------------------------------
+    // PUBLIC API
+    // ----------------------------------
+
+    /**
+     * Enqueues a write.
+     * @param file
+     *            the file written by writer.
+     * @param stagedData
+     *            the data written by writer, that can be read until the write
+     *            is over.
+     * @param writer
+     *            writes data into file.
+     */
+    public void enqueue(File file, Object stagedData, Writer writer) {
+        final PendingWrite pendingWrite = new PendingWrite(stagedData, writer);
+        synchronized (mapFileToPendingWrite) {
+            final PendingWrite previousPendingWrite = mapFileToPendingWrite.put(file, pendingWrite);
+            if (previousPendingWrite != null && !previousPendingWrite.isStarted) {
+                // the write task of the previous data will write this one.
+                Ln.v("Coalescing write of file %s", file.getName());
+                return;
+            }
+        }
+        executorService.execute(new WriteTask(file));
+    }
+
+    /**
+     * @param file
+     *            a cache file.
+     * @return the write of this file that is not over yet. Null if there is
+     *         none.
+     */
+    public PendingWrite getPendingWrite(File file) {
+        synchronized (mapFileToPendingWrite) {
+            return mapFileToPendingWrite.get(file);
+        }
+    }
+
+    /**
+     * Cancels the write of a file. If the file is being written, waits for
+     * the write to be over : the file can then be deleted safely.
+     * @param file
+     *            the file not to write.
+     */
+    public void cancel(File file) {
+        synchronized (mapFileToPendingWrite) {
+            mapFileToPendingWrite.remove(file);
+            mapFileToPendingWrite.notifyAll();
+            awaitWriteOver(file);
+        }
+    }
+
+    /**
+     * Cancels the writes of all files accepted by a filter. If some of them
+     * are being written, waits for the writes to be over.
+     * @param fileFilter
+     *            selects the files not to write.
+     */
+    public void cancel(FileFilter fileFilter) {
+        synchronized (mapFileToPendingWrite) {
+            final Iterator<File> iterator = mapFileToPendingWrite.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (fileFilter.accept(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+            mapFileToPendingWrite.notifyAll();
+            for (File file : new ArrayList<File>(mapFileToWritingThread.keySet())) {
+                if (fileFilter.accept(file)) {
+                    awaitWriteOver(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the creation date of a cache file, typically to keep the date of
+     * data copied from another cache. If the file is not written yet, its date
+     * is set once it is written.
+     * @param file
+     *            a cache file.
+     * @param creationDate
+     *            the date data was created in cache, in ms since epoch.
+     * @return false if the date of the file could not be set.
+     */
+    public boolean setCreationDate(File file, long creationDate) {
+        synchronized (mapFileToPendingWrite) {
+            final PendingWrite pendingWrite = mapFileToPendingWrite.get(file);
+            if (pendingWrite != null) {
+                pendingWrite.creationDate = creationDate;
+                pendingWrite.isCreationDateSet = true;
+                return true;
+            }
+            return file.setLastModified(creationDate);
+        }
+    }
+
+    /**
+     * Waits for all writes to be over. Typically used before the process ends.
+     * @param timeout
+     *            maximum time to wait, in ms.
+     * @return true if all writes are over, false if timeout elapsed.
+     * @throws InterruptedException
+     *             if interrupted while waiting.
+     */
+    public boolean awaitPendingWrites(long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        synchronized (mapFileToPendingWrite) {
+            while (!mapFileToPendingWrite.isEmpty() || !mapFileToWritingThread.isEmpty()) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                mapFileToPendingWrite.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes a background task, such as a scan of the cache folder, after
+     * the writes enqueued so far. Unlike writes, the task is never executed by
+     * the calling thread.
+     * @param task
+     *            the task to execute.
+     * @return false if the queue is full and the task was not accepted.
+     */
+    public boolean executeAfterPendingWrites(Runnable task) {
+        // bypasses the CallerRunsPolicy used for writes.
+        if (!executorService.getQueue().offer(task)) {
+            return false;
+        }
+        // the writing thread may have timed out.
+        executorService.prestartCoreThread();
+        return true;
+    }
+
+    /** @return the number of writes that are not over yet. */
+    public int getPendingWriteCount() {
+        synchronized (mapFileToPendingWrite) {
+            return mapFileToPendingWrite.size();
+        }
+    }
+
+    // ----------------------------------
+    // PRIVATE
+    // ----------------------------------
+
+    /**
+     * Waits, uninterruptibly, until file is not written by an other thread.
+     * Must be invoked while holding the lock of mapFileToPendingWrite.
+     */
+    private void awaitWriteOver(File file) {
+        boolean isInterrupted = false;
+        Thread writingThread = mapFileToWritingThread.get(file);
+        while (writingThread != null && writingThread != Thread.currentThread()) {
+            try {
+                mapFileToPendingWrite.wait();
+            } catch (InterruptedException e) {
+                isInterrupted = true;
+            }
+            writingThread = mapFileToWritingThread.get(file);
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ----------------------------------
+    // INNER CLASSES
+    // ----------------------------------
+
+    /** Writes data into a cache file. */
+    public interface Writer {
+        void write() throws Exception;
+    }
+
+    /** A write that is not over yet. */
+    public static final class PendingWrite {
+        private final Object stagedData;
+        private final Writer writer;
+        private volatile long creationDate = System.currentTimeMillis();
+        /* Guarded by mapFileToPendingWrite. */
+        private boolean isStarted;
+        /* Guarded by mapFileToPendingWrite. */
+        private boolean isCreationDateSet;
+
+        private PendingWrite(Object stagedData, Writer writer) {
+            this.stagedData = stagedData;
+            this.writer = writer;
+        }
+
+        public Object getStagedData() {
+            return stagedData;
+        }
+
+        public long getCreationDate() {
+            return creationDate;
+        }
+    }
+
+    private final class WriteTask implements Runnable {
+        private final File file;
+
+        private WriteTask(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            final PendingWrite pendingWrite;
+            synchronized (mapFileToPendingWrite) {
+                // executed by the saving thread when the queue is full.
+                awaitWriteOver(file);
+                pendingWrite = mapFileToPendingWrite.get(file);
+                if (pendingWrite == null) {
+                    // cancelled, or written by a previous task.
+                    return;
+                }
+                pendingWrite.isStarted = true;
+                mapFileToWritingThread.put(file, Thread.currentThread());
+            }
+            try {
+                pendingWrite.writer.write();
+            } catch (Exception e) {
+                Ln.e(e, "An error occured on saving file %s asynchronously", file.getName());
+            } finally {
+                synchronized (mapFileToPendingWrite) {
+                    mapFileToWritingThread.remove(file);
+                    if (mapFileToPendingWrite.get(file) == pendingWrite) {
+                        mapFileToPendingWrite.remove(file);
+                        if (pendingWrite.isCreationDateSet && !file.setLastModified(pendingWrite.creationDate)) {
+                            Ln.d("Creation date of file %s could not be set", file.getName());
+                        }
+                    }
+                    mapFileToPendingWrite.notifyAll();
+                }
+            }
+        }
+    }
+
+    private static final class WriteBehindThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, WRITE_BEHIND_THREAD_NAME);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
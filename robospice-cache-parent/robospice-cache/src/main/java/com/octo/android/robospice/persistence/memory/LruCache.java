@@ -43,6 +43,8 @@ public class LruCache<K, V> {
     private int hitCount;
     private int missCount;
 
+    private volatile EvictionListener<K, V> evictionListener;
+
     /**
      * @param maxSize
      *            for caches that do not override {@link #sizeOf}, this is the
@@ -169,9 +171,24 @@ public class LruCache<K, V> {
             }
 
             entryRemoved(true, key, value, null);
+            // evictAll() is not an eviction to make space.
+            final EvictionListener<K, V> currentEvictionListener = evictionListener;
+            if (maxSize >= 0 && currentEvictionListener != null) {
+                currentEvictionListener.onEntryEvicted(key, value);
+            }
         }
     }
 
+    /**
+     * @param evictionListener
+     *            will be notified of entries evicted to make space, but not
+     *            of entries removed, replaced or cleared by
+     *            {@link #evictAll()}. Can be null.
+     */
+    public void setEvictionListener(EvictionListener<K, V> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
     /**
      * Removes the entry for {@code key} if it exists.
      * @return the previous value mapped by {@code key}.
@@ -327,4 +344,13 @@ public class LruCache<K, V> {
         int hitPercent = accesses != 0 ? MAX_PERCENT * hitCount / accesses : 0;
         return String.format("LruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]", maxSize, hitCount, missCount, hitPercent);
     }
+
+    /**
+     * Notified of the entries evicted from a {@link LruCache} to make space.
+     * It is invoked without synchronization, by the thread that added an
+     * entry.
+     */
+    public interface EvictionListener<K, V> {
+        void onEntryEvicted(K key, V value);
+    }
 }
@@ -6,6 +6,7 @@ import java.util.Map;
 
 import roboguice.util.temp.Ln;
 
+import com.octo.android.robospice.persistence.CacheStatistics;
 import com.octo.android.robospice.persistence.DurationInMillis;
 import com.octo.android.robospice.persistence.ObjectPersister;
 import com.octo.android.robospice.persistence.exception.CacheLoadingException;
@@ -44,7 +45,9 @@ public class LruCacheObjectPersister<T> extends ObjectPersister<T> {
         CacheItem<T> cacheItem = lruCache.get(cacheKey);
 
         if (cacheItem == null) {
-            Ln.d("Miss from lru cache for %s", cacheKey);
+            if (Ln.isDebugEnabled()) {
+                Ln.d("Miss from lru cache for %s", cacheKey);
+            }
             if (decoratedPersister != null) {
                 T data = decoratedPersister.loadDataFromCache(cacheKey, maxTimeInCacheBeforeExpiry);
                 if (data == null) {
@@ -57,7 +60,9 @@ public class LruCacheObjectPersister<T> extends ObjectPersister<T> {
             }
             return null;
         } else {
-            Ln.d("Hit from lru cache for %s", cacheKey);
+            if (Ln.isDebugEnabled()) {
+                Ln.d("Hit from lru cache for %s", cacheKey);
+            }
             boolean dataCanExpire = maxTimeInCacheBeforeExpiry != DurationInMillis.ALWAYS_RETURNED;
             boolean dataIsNotExpired = System.currentTimeMillis() - cacheItem.getCreationDate() <= maxTimeInCacheBeforeExpiry;
             if (!dataCanExpire || dataIsNotExpired) {
@@ -67,11 +72,50 @@ public class LruCacheObjectPersister<T> extends ObjectPersister<T> {
         }
     }
 
+    /**
+     * Looks for data in memory only, the decorated persister is never used.
+     * As it doesn't perform any I/O, it can be invoked from the UI thread.
+     * @param cacheKey
+     *            the key of data.
+     * @param maxTimeInCacheBeforeExpiry
+     *            see {@link DurationInMillis}.
+     * @return data in memory if it is not expired, null otherwise.
+     */
+    public T loadDataFromMemory(Object cacheKey, long maxTimeInCacheBeforeExpiry) {
+        CacheItem<T> cacheItem = lruCache.get(cacheKey);
+
+        if (cacheItem == null) {
+            return null;
+        }
+        boolean dataCanExpire = maxTimeInCacheBeforeExpiry != DurationInMillis.ALWAYS_RETURNED;
+        boolean dataIsNotExpired = System.currentTimeMillis() - cacheItem.getCreationDate() <= maxTimeInCacheBeforeExpiry;
+        if (!dataCanExpire || dataIsNotExpired) {
+            return cacheItem.getData();
+        }
+        return null;
+    }
+
+    /**
+     * Saves data in memory only, the decorated persister is never used. Used
+     * to copy data from another persister without changing its creation date.
+     * @param data
+     *            the data to save.
+     * @param cacheKey
+     *            the key of data.
+     * @param creationDate
+     *            the date data was created in cache, in ms since epoch.
+     */
+    public void saveDataToMemory(T data, Object cacheKey, long creationDate) {
+        lruCache.put(cacheKey, new CacheItem<T>(creationDate, data));
+    }
+
     @Override
     public T saveDataToCacheAndReturnData(T data, Object cacheKey) throws CacheSavingException {
         CacheItem<T> itemToCache = new CacheItem<T>(data);
         lruCache.put(cacheKey, itemToCache);
-        Ln.d("Put in lru cache for %s", cacheKey);
+        if (Ln.isDebugEnabled()) {
+            Ln.d("Put in lru cache for %s", cacheKey);
+        }
 
         if (decoratedPersister != null) {
             decoratedPersister.saveDataToCacheAndReturnData(data, cacheKey);
@@ -133,6 +177,20 @@ public class LruCacheObjectPersister<T> extends ObjectPersister<T> {
         }
     }
 
+    /**
+     * {@inheritDoc} The size on disk is the one of the decorated persister, if
+     * any.
+     */
+    @Override
+    public CacheStatistics getCacheStatistics() {
+        long sizeOnDisk = CacheStatistics.UNKNOWN;
+        if (decoratedPersister != null) {
+            sizeOnDisk = decoratedPersister.getCacheStatistics().getSizeOnDisk();
+        }
+        return new CacheStatistics(getClass().getSimpleName(), getHandledClass(), getCacheHitCount(), getCacheMissCount(), sizeOnDisk, lruCache.size(),
+            lruCache.maxSize());
+    }
+
     @Override
     public boolean removeDataFromCache(Object cacheKey) {
         boolean result = false;
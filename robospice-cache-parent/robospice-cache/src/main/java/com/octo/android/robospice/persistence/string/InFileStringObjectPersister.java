@@ -14,6 +14,7 @@ import com.octo.android.robospice.persistence.exception.CacheCreationException;
 import com.octo.android.robospice.persistence.exception.CacheLoadingException;
 import com.octo.android.robospice.persistence.exception.CacheSavingException;
 import com.octo.android.robospice.persistence.file.InFileObjectPersister;
+import com.octo.android.robospice.persistence.file.WriteBehindQueue;
 
 public class InFileStringObjectPersister extends InFileObjectPersister<String> {
 
@@ -34,7 +35,7 @@ public class InFileStringObjectPersister extends InFileObjectPersister<String> {
             // Should not occur (we test before if
             // file exists)
             // Do not throw, file is not cached
-            Ln.w("file " + file.getAbsolutePath() + " does not exists", e);
+            Ln.w(e, "file %s does not exists", file.getAbsolutePath());
             return null;
         } catch (Exception e) {
             throw new CacheLoadingException(e);
@@ -43,21 +44,17 @@ public class InFileStringObjectPersister extends InFileObjectPersister<String> {
 
     @Override
     public String saveDataToCacheAndReturnData(final String data, final Object cacheKey) throws CacheSavingException {
-        Ln.v("Saving String " + data + " into cacheKey = " + cacheKey);
+        if (Ln.isVerboseEnabled()) {
+            Ln.v("Saving String %s into cacheKey = %s", data, cacheKey);
+        }
         try {
             if (isAsyncSaveEnabled()) {
-
-                Thread t = new Thread() {
+                saveDataToCacheFileAsync(cacheKey, data, new WriteBehindQueue.Writer() {
                     @Override
-                    public void run() {
-                        try {
-                            FileUtils.writeStringToFile(getCacheFile(cacheKey), data, CharEncoding.UTF_8);
-                        } catch (IOException e) {
-                            Ln.e(e, "An error occured on saving request " + cacheKey + " data asynchronously");
-                        }
-                    };
-                };
-                t.start();
+                    public void write() throws IOException {
+                        FileUtils.writeStringToFile(getCacheFile(cacheKey), data, CharEncoding.UTF_8);
+                    }
+                });
             } else {
                 FileUtils.writeStringToFile(getCacheFile(cacheKey), data, CharEncoding.UTF_8);
             }
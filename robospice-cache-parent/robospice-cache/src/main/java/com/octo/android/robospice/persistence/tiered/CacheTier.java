@@ -0,0 +1,100 @@
+package com.octo.android.robospice.persistence.tiered;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.octo.android.robospice.persistence.CacheStatistics;
+import com.octo.android.robospice.persistence.DurationInMillis;
+import com.octo.android.robospice.persistence.ObjectPersister;
+
+/**
+ * A tier of a {@link TieredObjectPersister} : an {@link ObjectPersister} and
+ * the maximum time data can stay in it. Counts the lookups it answered.
+ * @param <T>
+ *            the class of the data of this tier.
+ */
+public final class CacheTier<T> {
+
+    private final ObjectPersister<T> objectPersister;
+    private final long maxTimeInTier;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    CacheTier(ObjectPersister<T> objectPersister, long maxTimeInTier) {
+        this.objectPersister = objectPersister;
+        this.maxTimeInTier = maxTimeInTier;
+    }
+
+    public ObjectPersister<T> getObjectPersister() {
+        return objectPersister;
+    }
+
+    /**
+     * @return the time after which data of this tier is considered expired,
+     *         whatever the expiry requested. {@link DurationInMillis#ALWAYS_RETURNED}
+     *         if data of this tier only expires as requested.
+     */
+    public long getMaxTimeInTier() {
+        return maxTimeInTier;
+    }
+
+    /** @return the number of lookups this tier answered with data. */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of lookups this tier couldn't answer. Lower tiers
+     *         are only looked up after a miss of upper tiers.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the statistics of this tier : its own hits and misses, and the
+     *         room occupied by its persister.
+     */
+    public CacheStatistics getCacheStatistics() {
+        final CacheStatistics persisterStatistics = objectPersister.getCacheStatistics();
+        return new CacheStatistics(persisterStatistics.getPersisterName(), persisterStatistics.getHandledClass(), getHitCount(), getMissCount(),
+            persisterStatistics.getSizeOnDisk(), persisterStatistics.getMemorySize(), persisterStatistics.getMemoryMaxSize());
+    }
+
+    /**
+     * @param maxTimeInCacheBeforeExpiry
+     *            the expiry requested.
+     * @return the expiry to use in this tier : the shortest of the expiry
+     *         requested and of {@link #getMaxTimeInTier()}.
+     */
+    long getMaxTimeInCache(long maxTimeInCacheBeforeExpiry) {
+        if (maxTimeInTier == DurationInMillis.ALWAYS_RETURNED) {
+            return maxTimeInCacheBeforeExpiry;
+        }
+        if (maxTimeInCacheBeforeExpiry == DurationInMillis.ALWAYS_RETURNED) {
+            return maxTimeInTier;
+        }
+        return Math.min(maxTimeInTier, maxTimeInCacheBeforeExpiry);
+    }
+
+    /**
+     * @return whether or not data created at creationDate is not expired in
+     *         this tier.
+     */
+    boolean isNotExpired(long creationDate) {
+        return maxTimeInTier == DurationInMillis.ALWAYS_RETURNED || System.currentTimeMillis() - creationDate <= maxTimeInTier;
+    }
+
+    void recordLookup(boolean isHit) {
+        if (isHit) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CacheTier [persister=" + objectPersister.getClass().getSimpleName() + ", maxTimeInTier=" + maxTimeInTier + ", hitCount=" + hitCount + ", missCount="
+            + missCount + "]";
+    }
+}
@@ -0,0 +1,61 @@
+package com.octo.android.robospice.persistence.tiered;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import roboguice.util.temp.Ln;
+
+import com.octo.android.robospice.persistence.CacheManager;
+import com.octo.android.robospice.persistence.CacheStatistics;
+import com.octo.android.robospice.persistence.ObjectPersister;
+import com.octo.android.robospice.persistence.exception.CacheCreationException;
+
+/**
+ * A {@link CacheManager} whose persisters chain tiers, from memory to disk or
+ * database : {@link TieredObjectPersister}s, registered directly or created by
+ * a {@link TieredObjectPersisterFactory}. Other persisters can be registered
+ * too, they are used as single tiers. <br/>
+ * Unlike a {@link CacheManager}, it reports the statistics of each tier,
+ * including its own hit rate.
+ */
+public class TieredCacheManager extends CacheManager {
+
+    /**
+     * {@inheritDoc} The statistics of a {@link TieredObjectPersister} are the
+     * ones of each of its tiers, from the fastest to the slowest.
+     */
+    @Override
+    public List<CacheStatistics> getCacheStatistics() {
+        List<CacheStatistics> listCacheStatistics = new ArrayList<CacheStatistics>();
+        for (ObjectPersister<?> objectPersister : getObjectPersisters()) {
+            if (objectPersister instanceof TieredObjectPersister) {
+                for (CacheTier<?> tier : ((TieredObjectPersister<?>) objectPersister).getTiers()) {
+                    listCacheStatistics.add(tier.getCacheStatistics());
+                }
+            } else {
+                listCacheStatistics.add(objectPersister.getCacheStatistics());
+            }
+        }
+        return listCacheStatistics;
+    }
+
+    /**
+     * @param clazz
+     *            a class of data.
+     * @return the tiers of the persister of clazz, from the fastest to the
+     *         slowest. Empty if it is not a {@link TieredObjectPersister} or
+     *         can't be created.
+     */
+    public <T> List<CacheTier<T>> getTiers(Class<T> clazz) {
+        try {
+            ObjectPersister<T> objectPersister = getObjectPersister(clazz);
+            if (objectPersister instanceof TieredObjectPersister) {
+                return ((TieredObjectPersister<T>) objectPersister).getTiers();
+            }
+        } catch (CacheCreationException e) {
+            Ln.e(e);
+        }
+        return Collections.emptyList();
+    }
+}
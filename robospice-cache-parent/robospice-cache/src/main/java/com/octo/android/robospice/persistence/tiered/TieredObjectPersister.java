@@ -0,0 +1,374 @@
+package com.octo.android.robospice.persistence.tiered;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import roboguice.util.temp.Ln;
+import android.app.Application;
+
+import com.octo.android.robospice.persistence.CacheStatistics;
+import com.octo.android.robospice.persistence.DurationInMillis;
+import com.octo.android.robospice.persistence.ObjectPersister;
+import com.octo.android.robospice.persistence.exception.CacheLoadingException;
+import com.octo.android.robospice.persistence.exception.CacheSavingException;
+import com.octo.android.robospice.persistence.file.InFileObjectPersister;
+import com.octo.android.robospice.persistence.file.WriteBehindQueue;
+import com.octo.android.robospice.persistence.memory.CacheItem;
+import com.octo.android.robospice.persistence.memory.LruCache;
+import com.octo.android.robospice.persistence.memory.LruCacheObjectPersister;
+
+/**
+ * An {@link ObjectPersister} that chains tiers, from the fastest to the
+ * slowest, typically memory, then disk, then database. Each tier is an
+ * {@link ObjectPersister} with its own expiry.<br/>
+ * Data is looked for in each tier, in order. Data found in a lower tier is
+ * promoted into the upper tiers, with its original creation date. <br/>
+ * By default, data is saved in all tiers (write through). When write back is
+ * enabled, data is saved in the upper memory tiers only, and entries evicted
+ * from a memory tier are demoted asynchronously into the tier below, with
+ * their original creation date too. Expired data is neither promoted nor
+ * demoted, and removing data drops its pending demotion.<br/>
+ * Creation dates are kept in memory and file tiers. Other tiers date the data
+ * they receive from the time it is copied.<br/>
+ * A memory tier is an {@link LruCacheObjectPersister}, it should not decorate
+ * another persister : use a tier instead.
+ * @param <T>
+ *            the class of the data to load/save.
+ */
+public class TieredObjectPersister<T> extends ObjectPersister<T> {
+
+    // ----------------------------------
+    // ATTRIBUTES
+    // ----------------------------------
+
+    private final List<CacheTier<T>> listTier = new CopyOnWriteArrayList<CacheTier<T>>();
+
+    private volatile boolean isWriteBackEnabled;
+
+    private WriteBehindQueue writeBehindQueue = WriteBehindQueue.getDefault();
+
+    /** Data evicted from memory and not demoted yet, by cache key. */
+    private final ConcurrentMap<Object, CacheItem<T>> mapCacheKeyToPendingDemotion = new ConcurrentHashMap<Object, CacheItem<T>>();
+
+    /** Prevents a demotion from saving data that is being removed. */
+    private final Object demotionLock = new Object();
+
+    // ----------------------------------
+    // CONSTRUCTOR
+    // ----------------------------------
+
+    public TieredObjectPersister(Application application, Class<T> clazz) {
+        super(application, clazz);
+    }
+
+    // ----------------------------------
+    // PUBLIC API
+    // ----------------------------------
+
+    /**
+     * Adds a tier below the existing ones. Tiers must be added before data is
+     * loaded or saved.
+     * @param objectPersister
+     *            the persister of the tier. Must handle the class of this
+     *            persister.
+     * @param maxTimeInTier
+     *            the time after which data of this tier is considered
+     *            expired, whatever the expiry requested.
+     *            {@link DurationInMillis#ALWAYS_RETURNED} if data of this tier
+     *            only expires as requested.
+     * @return this persister.
+     */
+    public TieredObjectPersister<T> addTier(ObjectPersister<T> objectPersister, long maxTimeInTier) {
+        if (!objectPersister.canHandleClass(getHandledClass())) {
+            throw new IllegalArgumentException(objectPersister.getClass().getSimpleName() + " can't handle class " + getHandledClass().getName());
+        }
+        final CacheTier<T> tier = new CacheTier<T>(objectPersister, maxTimeInTier);
+        listTier.add(tier);
+        if (objectPersister instanceof LruCacheObjectPersister) {
+            ((LruCacheObjectPersister<T>) objectPersister).getLruCache().setEvictionListener(new DemotingEvictionListener(tier));
+        }
+        return this;
+    }
+
+    /**
+     * Adds a tier, whose data only expires as requested, below the existing
+     * ones.
+     * @param objectPersister
+     *            the persister of the tier.
+     * @return this persister.
+     */
+    public TieredObjectPersister<T> addTier(ObjectPersister<T> objectPersister) {
+        return addTier(objectPersister, DurationInMillis.ALWAYS_RETURNED);
+    }
+
+    /** @return the tiers of this persister, from the fastest to the slowest. */
+    public List<CacheTier<T>> getTiers() {
+        return Collections.unmodifiableList(listTier);
+    }
+
+    public boolean isWriteBackEnabled() {
+        return isWriteBackEnabled;
+    }
+
+    /**
+     * @param isWriteBackEnabled
+     *            whether data is saved in the upper memory tiers only. Data
+     *            evicted from memory is then demoted to the tier below. Data
+     *            that is still in memory is lost if the process is killed.
+     *            Defaults to false.
+     */
+    public void setWriteBackEnabled(boolean isWriteBackEnabled) {
+        this.isWriteBackEnabled = isWriteBackEnabled;
+    }
+
+    /**
+     * @param writeBehindQueue
+     *            the queue whose thread demotes data evicted from memory.
+     *            Defaults to {@link WriteBehindQueue#getDefault()}.
+     */
+    public void setWriteBehindQueue(WriteBehindQueue writeBehindQueue) {
+        this.writeBehindQueue = writeBehindQueue;
+    }
+
+    @Override
+    public T loadDataFromCache(Object cacheKey, long maxTimeInCache) throws CacheLoadingException {
+        return loadDataFromTiers(cacheKey, maxTimeInCache, true);
+    }
+
+    @Override
+    public List<T> loadAllDataFromCache() throws CacheLoadingException {
+        List<Object> allCacheKeys = getAllCacheKeys();
+        List<T> result = new ArrayList<T>(allCacheKeys.size());
+        for (Object cacheKey : allCacheKeys) {
+            T data = loadDataFromTiers(cacheKey, DurationInMillis.ALWAYS_RETURNED, false);
+            if (data != null) {
+                result.add(data);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Object> getAllCacheKeys() {
+        Set<Object> setCacheKey = new LinkedHashSet<Object>();
+        for (CacheTier<T> tier : listTier) {
+            setCacheKey.addAll(tier.getObjectPersister().getAllCacheKeys());
+        }
+        return new ArrayList<Object>(setCacheKey);
+    }
+
+    @Override
+    public T saveDataToCacheAndReturnData(T data, Object cacheKey) throws CacheSavingException {
+        T result = data;
+        for (int index = 0; index < listTier.size(); index++) {
+            final CacheTier<T> tier = listTier.get(index);
+            // with write back, lower tiers get data when it is evicted.
+            if (isWriteBackEnabled && index > 0 && !isMemoryTier(tier)) {
+                break;
+            }
+            final T savedData = tier.getObjectPersister().saveDataToCacheAndReturnData(data, cacheKey);
+            if (index == 0) {
+                result = savedData;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean removeDataFromCache(Object cacheKey) {
+        synchronized (demotionLock) {
+            mapCacheKeyToPendingDemotion.remove(cacheKey);
+        }
+        boolean result = false;
+        for (CacheTier<T> tier : listTier) {
+            result = tier.getObjectPersister().removeDataFromCache(cacheKey) || result;
+        }
+        return result;
+    }
+
+    @Override
+    public void removeAllDataFromCache() {
+        synchronized (demotionLock) {
+            mapCacheKeyToPendingDemotion.clear();
+        }
+        for (CacheTier<T> tier : listTier) {
+            tier.getObjectPersister().removeAllDataFromCache();
+        }
+    }
+
+    @Override
+    public long getCreationDateInCache(Object cacheKey) throws CacheLoadingException {
+        for (CacheTier<T> tier : listTier) {
+            try {
+                return tier.getObjectPersister().getCreationDateInCache(cacheKey);
+            } catch (CacheLoadingException e) {
+                // look in the tier below.
+                Ln.v("No creation date in tier %s for cacheKey %s", tier, cacheKey);
+            }
+        }
+        throw new CacheLoadingException("Data could not be found in cache for cacheKey=" + cacheKey);
+    }
+
+    @Override
+    public boolean isDataInCache(Object cacheKey, long maxTimeInCacheBeforeExpiry) {
+        for (CacheTier<T> tier : listTier) {
+            if (tier.getObjectPersister().isDataInCache(cacheKey, tier.getMaxTimeInCache(maxTimeInCacheBeforeExpiry))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc} Sizes are the ones of the first memory tier and the sum of
+     * the sizes on disk of the tiers. See {@link #getTiers()} for the
+     * statistics of each tier.
+     */
+    @Override
+    public CacheStatistics getCacheStatistics() {
+        long sizeOnDisk = CacheStatistics.UNKNOWN;
+        long memorySize = CacheStatistics.UNKNOWN;
+        long memoryMaxSize = CacheStatistics.UNKNOWN;
+        for (CacheTier<T> tier : listTier) {
+            CacheStatistics tierStatistics = tier.getObjectPersister().getCacheStatistics();
+            if (tierStatistics.getSizeOnDisk() != CacheStatistics.UNKNOWN) {
+                sizeOnDisk = Math.max(sizeOnDisk, 0) + tierStatistics.getSizeOnDisk();
+            }
+            if (memorySize == CacheStatistics.UNKNOWN && tierStatistics.getMemorySize() != CacheStatistics.UNKNOWN) {
+                memorySize = tierStatistics.getMemorySize();
+                memoryMaxSize = tierStatistics.getMemoryMaxSize();
+            }
+        }
+        return new CacheStatistics(getClass().getSimpleName(), getHandledClass(), getCacheHitCount(), getCacheMissCount(), sizeOnDisk, memorySize, memoryMaxSize);
+    }
+
+    // ----------------------------------
+    // PRIVATE METHODS
+    // ----------------------------------
+
+    private T loadDataFromTiers(Object cacheKey, long maxTimeInCache, boolean isPromoting) throws CacheLoadingException {
+        for (int index = 0; index < listTier.size(); index++) {
+            final CacheTier<T> tier = listTier.get(index);
+            final T data = tier.getObjectPersister().loadDataFromCache(cacheKey, tier.getMaxTimeInCache(maxTimeInCache));
+            tier.recordLookup(data != null);
+            if (data != null) {
+                if (isPromoting && index > 0) {
+                    promote(data, cacheKey, index);
+                }
+                return data;
+            }
+        }
+        return null;
+    }
+
+    /* Copies data found in a tier into the tiers above it. */
+    private void promote(T data, Object cacheKey, int tierIndex) {
+        long creationDate;
+        try {
+            creationDate = listTier.get(tierIndex).getObjectPersister().getCreationDateInCache(cacheKey);
+        } catch (CacheLoadingException e) {
+            // removed meanwhile
+            return;
+        }
+        for (int index = 0; index < tierIndex; index++) {
+            final CacheTier<T> tier = listTier.get(index);
+            if (!tier.isNotExpired(creationDate)) {
+                continue;
+            }
+            try {
+                copyToTier(tier, data, cacheKey, creationDate);
+            } catch (CacheSavingException e) {
+                Ln.e(e, "Data of cacheKey %s could not be promoted to tier %s", cacheKey, tier);
+            }
+        }
+    }
+
+    /* Demotes data evicted from a memory tier, unless it was removed or evicted again meanwhile. */
+    private void demotePendingData(CacheTier<T> evictingTier, Object cacheKey, CacheItem<T> cacheItem) {
+        synchronized (demotionLock) {
+            if (mapCacheKeyToPendingDemotion.remove(cacheKey, cacheItem)) {
+                demote(evictingTier, cacheKey, cacheItem);
+            }
+        }
+    }
+
+    /* Saves data evicted from a memory tier into the tier below, unless it already holds it. */
+    private void demote(CacheTier<T> evictingTier, Object cacheKey, CacheItem<T> cacheItem) {
+        final int lowerTierIndex = listTier.indexOf(evictingTier) + 1;
+        if (lowerTierIndex == 0 || lowerTierIndex == listTier.size()) {
+            return;
+        }
+        final CacheTier<T> lowerTier = listTier.get(lowerTierIndex);
+        if (!lowerTier.isNotExpired(cacheItem.getCreationDate())) {
+            Ln.v("Data of cacheKey %s is expired in tier %s, not demoting it", cacheKey, lowerTier);
+            return;
+        }
+        try {
+            if (lowerTier.getObjectPersister().getCreationDateInCache(cacheKey) >= cacheItem.getCreationDate()) {
+                // promoted from this tier, or saved through.
+                return;
+            }
+        } catch (CacheLoadingException e) {
+            Ln.v("Demoting data of cacheKey %s to tier %s", cacheKey, lowerTier);
+        }
+        try {
+            copyToTier(lowerTier, cacheItem.getData(), cacheKey, cacheItem.getCreationDate());
+        } catch (CacheSavingException e) {
+            Ln.e(e, "Data of cacheKey %s could not be demoted to tier %s", cacheKey, lowerTier);
+        }
+    }
+
+    /* Saves data copied from another tier, with the creation date it had there. */
+    private void copyToTier(CacheTier<T> tier, T data, Object cacheKey, long creationDate) throws CacheSavingException {
+        final ObjectPersister<T> objectPersister = tier.getObjectPersister();
+        if (objectPersister instanceof LruCacheObjectPersister) {
+            ((LruCacheObjectPersister<T>) objectPersister).saveDataToMemory(data, cacheKey, creationDate);
+            return;
+        }
+        objectPersister.saveDataToCacheAndReturnData(data, cacheKey);
+        if (!(objectPersister instanceof InFileObjectPersister) || !((InFileObjectPersister<T>) objectPersister).setCreationDateInCache(cacheKey, creationDate)) {
+            Ln.d("Creation date of cacheKey %s could not be kept in tier %s", cacheKey, tier);
+        }
+    }
+
+    private static boolean isMemoryTier(CacheTier<?> tier) {
+        return tier.getObjectPersister() instanceof LruCacheObjectPersister;
+    }
+
+    // ----------------------------------
+    // INNER CLASSES
+    // ----------------------------------
+
+    /* Demotes entries evicted from a memory tier, when write back is enabled. */
+    private final class DemotingEvictionListener implements LruCache.EvictionListener<Object, CacheItem<T>> {
+        private final CacheTier<T> tier;
+
+        private DemotingEvictionListener(CacheTier<T> tier) {
+            this.tier = tier;
+        }
+
+        @Override
+        public void onEntryEvicted(final Object cacheKey, final CacheItem<T> cacheItem) {
+            if (!isWriteBackEnabled) {
+                return;
+            }
+            mapCacheKeyToPendingDemotion.put(cacheKey, cacheItem);
+            final Runnable demotionTask = new Runnable() {
+                @Override
+                public void run() {
+                    demotePendingData(tier, cacheKey, cacheItem);
+                }
+            };
+            // evictions happen on threads saving data, they must not wait for I/O.
+            if (!writeBehindQueue.executeAfterPendingWrites(demotionTask)) {
+                demotionTask.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.octo.android.robospice.persistence.tiered;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.app.Application;
+
+import com.octo.android.robospice.persistence.DurationInMillis;
+import com.octo.android.robospice.persistence.ObjectPersister;
+import com.octo.android.robospice.persistence.ObjectPersisterFactory;
+import com.octo.android.robospice.persistence.exception.CacheCreationException;
+import com.octo.android.robospice.persistence.memory.CacheItem;
+import com.octo.android.robospice.persistence.memory.LruCache;
+import com.octo.android.robospice.persistence.memory.LruCacheObjectPersister;
+
+/**
+ * Creates a {@link TieredObjectPersister} for each class, with the same tiers :
+ * an optional memory tier, then a tier per {@link ObjectPersisterFactory}
+ * added, typically a file or database one. This gives all the classes of an
+ * application a consistent memory plus disk setup.
+ */
+public class TieredObjectPersisterFactory extends ObjectPersisterFactory {
+
+    private final List<FactoryTier> listFactoryTier = new CopyOnWriteArrayList<FactoryTier>();
+    private int memoryTierMaxEntryCount;
+    private long memoryTierMaxTime = DurationInMillis.ALWAYS_RETURNED;
+    private boolean isWriteBackEnabled;
+
+    public TieredObjectPersisterFactory(Application application) {
+        super(application);
+    }
+
+    /**
+     * @param application
+     *            the android application.
+     * @param listHandledClasses
+     *            the classes handled by this factory. All classes will be
+     *            handled if null.
+     */
+    public TieredObjectPersisterFactory(Application application, List<Class<?>> listHandledClasses) {
+        super(application, listHandledClasses);
+    }
+
+    /**
+     * Sets a memory tier above the tiers of factories. Must be invoked before
+     * the first persister is created.
+     * @param maxEntryCount
+     *            the maximum number of entries in memory, per class.
+     * @param maxTimeInTier
+     *            the time after which data in memory is considered expired,
+     *            whatever the expiry requested.
+     *            {@link DurationInMillis#ALWAYS_RETURNED} if data in memory
+     *            only expires as requested.
+     */
+    public void setMemoryTier(int maxEntryCount, long maxTimeInTier) {
+        this.memoryTierMaxEntryCount = maxEntryCount;
+        this.memoryTierMaxTime = maxTimeInTier;
+    }
+
+    /**
+     * Adds a tier, below the existing ones, to the persisters that will be
+     * created.
+     * @param objectPersisterFactory
+     *            creates the persister of the tier for each class.
+     * @param maxTimeInTier
+     *            the time after which data of this tier is considered
+     *            expired, whatever the expiry requested.
+     *            {@link DurationInMillis#ALWAYS_RETURNED} if data of this tier
+     *            only expires as requested.
+     */
+    public void addTier(ObjectPersisterFactory objectPersisterFactory, long maxTimeInTier) {
+        listFactoryTier.add(new FactoryTier(objectPersisterFactory, maxTimeInTier));
+    }
+
+    public boolean isWriteBackEnabled() {
+        return isWriteBackEnabled;
+    }
+
+    /**
+     * @param isWriteBackEnabled
+     *            see {@link TieredObjectPersister#setWriteBackEnabled(boolean)}
+     *            .
+     */
+    public void setWriteBackEnabled(boolean isWriteBackEnabled) {
+        this.isWriteBackEnabled = isWriteBackEnabled;
+    }
+
+    @Override
+    public boolean canHandleClass(Class<?> clazz) {
+        if (!super.canHandleClass(clazz)) {
+            return false;
+        }
+        for (FactoryTier factoryTier : listFactoryTier) {
+            if (!factoryTier.objectPersisterFactory.canHandleClass(clazz)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public <DATA> TieredObjectPersister<DATA> createObjectPersister(Class<DATA> clazz) throws CacheCreationException {
+        TieredObjectPersister<DATA> tieredObjectPersister = new TieredObjectPersister<DATA>(getApplication(), clazz);
+        if (memoryTierMaxEntryCount > 0) {
+            LruCache<Object, CacheItem<DATA>> lruCache = new LruCache<Object, CacheItem<DATA>>(memoryTierMaxEntryCount);
+            tieredObjectPersister.addTier(new LruCacheObjectPersister<DATA>(clazz, lruCache), memoryTierMaxTime);
+        }
+        for (FactoryTier factoryTier : listFactoryTier) {
+            ObjectPersister<DATA> objectPersister = factoryTier.objectPersisterFactory.createObjectPersister(clazz);
+            objectPersister.setAsyncSaveEnabled(factoryTier.objectPersisterFactory.isAsyncSaveEnabled());
+            tieredObjectPersister.addTier(objectPersister, factoryTier.maxTimeInTier);
+        }
+        tieredObjectPersister.setWriteBackEnabled(isWriteBackEnabled);
+        return tieredObjectPersister;
+    }
+
+    private static final class FactoryTier {
+        private final ObjectPersisterFactory objectPersisterFactory;
+        private final long maxTimeInTier;
+
+        private FactoryTier(ObjectPersisterFactory objectPersisterFactory, long maxTimeInTier) {
+            this.objectPersisterFactory = objectPersisterFactory;
+            this.maxTimeInTier = maxTimeInTier;
+        }
+    }
+}
@@ -30,7 +30,14 @@ import android.util.Log;
  * insert them into the log message using %s or another similar format parameter
  * Usage Examples: Ln.v("hello there"); Ln.d("%s %s", "hello", "there"); Ln.e(
  * exception, "Error during some operation"); Ln.w( exception,
- * "Error during %s operation", "some other");
+ * "Error during %s operation", "some other"); PERFORMANCE: never build a log
+ * message by concatenation, pass its arguments instead. In hot paths, also
+ * guard the statement with {@link #isDebugEnabled()} or
+ * {@link #isVerboseEnabled()}, so that disabled logs allocate neither the
+ * varargs array nor boxed arguments. Release builds can strip debug and
+ * verbose statements with the ProGuard rule
+ * <code>-assumenosideeffects class roboguice.util.temp.Ln { public static *** v(...); public static *** d(...); }</code>
+ * .
  */
 public final class Ln {
     /**
@@ -170,10 +177,12 @@ public final class Ln {
         return print.println(Log.ERROR, message);
     }
 
+    /** @return whether debug logs are output. Cheap enough to guard hot paths. */
     public static boolean isDebugEnabled() {
         return CONFIG.minimumLogLevel <= Log.DEBUG;
     }
 
+    /** @return whether verbose logs are output. Cheap enough to guard hot paths. */
     public static boolean isVerboseEnabled() {
         return CONFIG.minimumLogLevel <= Log.VERBOSE;
     }
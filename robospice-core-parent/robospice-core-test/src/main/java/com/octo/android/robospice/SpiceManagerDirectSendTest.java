@@ -0,0 +1,182 @@
+package com.octo.android.robospice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Intent;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.octo.android.robospice.core.test.SpiceTestService;
+import com.octo.android.robospice.persistence.exception.SpiceException;
+import com.octo.android.robospice.request.SpiceRequest;
+import com.octo.android.robospice.request.listener.RequestListener;
+
+/**
+ * Checks that requests sent directly to the bound {@link SpiceService} from
+ * several threads are all processed, and never overtake the removal of their
+ * listeners. Latency of direct sends is measured by SpiceManagerBenchmark, in
+ * robospice-benchmarks.
+ */
+@LargeTest
+public class SpiceManagerDirectSendTest extends AndroidTestCase {
+
+    private static final int WARM_UP_REQUEST_COUNT = 50;
+    private static final long REQUEST_COMPLETION_TIME_OUT = 5000;
+    private static final long SPICE_MANAGER_WAIT_TIMEOUT = 700;
+    private static final int SUBMITTER_COUNT = 4;
+    private static final int REQUEST_COUNT_PER_SUBMITTER = 50;
+
+    private SpiceManager spiceManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        spiceManager = new SpiceManager(SpiceTestService.class);
+        spiceManager.start(getContext());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (spiceManager.isStarted()) {
+            spiceManager.shouldStopAndJoin(SPICE_MANAGER_WAIT_TIMEOUT);
+        }
+        getContext().stopService(new Intent(getContext(), SpiceTestService.class));
+        super.tearDown();
+    }
+
+    public void testExecute_from_several_threads_is_serialized_with_listener_removal() throws Exception {
+        // given
+        // requests are then sent directly by the threads that execute them.
+        executeAndAwaitStart(WARM_UP_REQUEST_COUNT);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final AtomicInteger loadCount = new AtomicInteger();
+        final AtomicInteger removedListenerNotificationCount = new AtomicInteger();
+        final int keptListenerCount = SUBMITTER_COUNT * REQUEST_COUNT_PER_SUBMITTER / 2;
+        final CountDownLatch keptListenerLatch = new CountDownLatch(keptListenerCount);
+        final List<Throwable> listSubmitterError = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch submitterLatch = new CountDownLatch(SUBMITTER_COUNT);
+
+        // when
+        for (int submitterIndex = 0; submitterIndex < SUBMITTER_COUNT; submitterIndex++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < REQUEST_COUNT_PER_SUBMITTER; i++) {
+                            BlockedSpiceRequest request = new BlockedSpiceRequest(releaseLatch, loadCount);
+                            if (i % 2 == 0) {
+                                spiceManager.execute(request, new CountingRequestListener(keptListenerLatch, null));
+                            } else {
+                                spiceManager.execute(request, new CountingRequestListener(null, removedListenerNotificationCount));
+                                // must be applied after the request was sent.
+                                spiceManager.dontNotifyRequestListenersForRequestInternal(request);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        listSubmitterError.add(e);
+                    } finally {
+                        submitterLatch.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue(submitterLatch.await(REQUEST_COMPLETION_TIME_OUT, TimeUnit.MILLISECONDS));
+        releaseLatch.countDown();
+
+        // then
+        assertTrue(listSubmitterError.isEmpty());
+        assertTrue(keptListenerLatch.await(REQUEST_COMPLETION_TIME_OUT, TimeUnit.MILLISECONDS));
+        // removed listeners would have been notified with the last requests.
+        Thread.sleep(SPICE_MANAGER_WAIT_TIMEOUT);
+        assertEquals(SUBMITTER_COUNT * REQUEST_COUNT_PER_SUBMITTER, loadCount.get());
+        assertEquals(0, removedListenerNotificationCount.get());
+    }
+
+    // ============================================================================================
+    // PRIVATE METHODS
+    // ============================================================================================
+
+    private void executeAndAwaitStart(int requestCount) throws InterruptedException {
+        for (int i = 0; i < requestCount; i++) {
+            StartLatchSpiceRequest request = new StartLatchSpiceRequest();
+            spiceManager.execute(request, null);
+            assertTrue(request.awaitStart(REQUEST_COMPLETION_TIME_OUT));
+        }
+    }
+
+    // ============================================================================================
+    // INNER CLASSES
+    // ============================================================================================
+
+    private static final class BlockedSpiceRequest extends SpiceRequest<String> {
+        private final CountDownLatch releaseLatch;
+        private final AtomicInteger loadCount;
+
+        private BlockedSpiceRequest(CountDownLatch releaseLatch, AtomicInteger loadCount) {
+            super(String.class);
+            this.releaseLatch = releaseLatch;
+            this.loadCount = loadCount;
+            setRetryPolicy(null);
+        }
+
+        @Override
+        public String loadDataFromNetwork() throws Exception {
+            releaseLatch.await(REQUEST_COMPLETION_TIME_OUT, TimeUnit.MILLISECONDS);
+            loadCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    private static final class CountingRequestListener implements RequestListener<String> {
+        private final CountDownLatch notificationLatch;
+        private final AtomicInteger notificationCount;
+
+        private CountingRequestListener(CountDownLatch notificationLatch, AtomicInteger notificationCount) {
+            this.notificationLatch = notificationLatch;
+            this.notificationCount = notificationCount;
+        }
+
+        @Override
+        public void onRequestFailure(SpiceException spiceException) {
+            onNotified();
+        }
+
+        @Override
+        public void onRequestSuccess(String result) {
+            onNotified();
+        }
+
+        private void onNotified() {
+            if (notificationLatch != null) {
+                notificationLatch.countDown();
+            }
+            if (notificationCount != null) {
+                notificationCount.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class StartLatchSpiceRequest extends SpiceRequest<String> {
+        private final CountDownLatch startLatch = new CountDownLatch(1);
+
+        private StartLatchSpiceRequest() {
+            super(String.class);
+            setRetryPolicy(null);
+        }
+
+        @Override
+        public String loadDataFromNetwork() throws Exception {
+            startLatch.countDown();
+            return null;
+        }
+
+        private boolean awaitStart(long timeout) throws InterruptedException {
+            return startLatch.await(timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+}
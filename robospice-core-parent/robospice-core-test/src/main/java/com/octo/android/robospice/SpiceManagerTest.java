@@ -818,6 +818,26 @@ public class SpiceManagerTest extends AndroidTestCase {
         assertEquals(0, spiceManagerThreadCount);
     }
 
+    public void test_execute_executes_1_request_in_process_without_binding() throws InterruptedException {
+        // given
+        SpiceManager inProcessSpiceManager = new SpiceManager(SpiceTestService.class, true);
+        inProcessSpiceManager.start(getContext());
+        SpiceRequestStub<String> spiceRequestStub = new SpiceRequestSucceedingStub<String>(TEST_CLASS, TEST_RETURNED_DATA);
+        RequestListenerStub<String> requestListenerStub = new RequestListenerStub<String>();
+
+        // when
+        assertTrue(inProcessSpiceManager.isBound());
+        inProcessSpiceManager.execute(spiceRequestStub, TEST_CACHE_KEY, TEST_DURATION, requestListenerStub);
+        requestListenerStub.await(REQUEST_COMPLETION_TIME_OUT);
+        inProcessSpiceManager.shouldStopAndJoin(SPICE_MANAGER_WAIT_TIMEOUT);
+
+        // test
+        assertEquals(0, inProcessSpiceManager.getRequestToLaunchCount());
+        assertTrue(spiceRequestStub.isLoadDataFromNetworkCalled());
+        assertTrue(requestListenerStub.isSuccessful());
+        assertTrue(requestListenerStub.isExecutedInUIThread());
+    }
+
     // ----------------------------------
     // INNER CLASS
     // ----------------------------------
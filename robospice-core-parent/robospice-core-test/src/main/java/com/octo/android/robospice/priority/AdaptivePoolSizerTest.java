@@ -0,0 +1,113 @@
+package com.octo.android.robospice.priority;
+
+import java.util.concurrent.TimeUnit;
+
+import android.test.AndroidTestCase;
+
+import com.octo.android.robospice.priority.AdaptivePoolSizer.PoolSizeDecision;
+import com.octo.android.robospice.priority.AdaptivePoolSizer.PoolSizeListener;
+
+public class AdaptivePoolSizerTest extends AndroidTestCase {
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int MIN_THREAD_COUNT = 1;
+    private static final int MAX_THREAD_COUNT = CPU_COUNT + 2;
+    private static final int SAMPLE_COUNT = 10;
+    private static final long LONG_QUEUE_WAIT = TimeUnit.SECONDS.toNanos(1);
+    private static final long NETWORK_TIME = TimeUnit.SECONDS.toNanos(1);
+    private static final long CACHE_CPU_TIME = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private PriorityThreadPoolExecutor executor;
+    private AdaptivePoolSizer adaptivePoolSizer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = PriorityThreadPoolExecutor.getPriorityExecutor(MIN_THREAD_COUNT, MAX_THREAD_COUNT, Thread.MIN_PRIORITY);
+        adaptivePoolSizer = new AdaptivePoolSizer(executor, MIN_THREAD_COUNT, MAX_THREAD_COUNT);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testEvaluate_grows_pool_when_requests_wait_for_network() {
+        // given
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            adaptivePoolSizer.recordQueueWait(LONG_QUEUE_WAIT);
+            adaptivePoolSizer.recordNetworkTime(NETWORK_TIME);
+        }
+
+        // when
+        PoolSizeDecision decision = adaptivePoolSizer.evaluateNow();
+
+        // then
+        assertTrue(decision.isPoolSizeChanged());
+        assertEquals(MAX_THREAD_COUNT, decision.getThreadCount());
+        assertEquals(MAX_THREAD_COUNT, executor.getCorePoolSize());
+    }
+
+    public void testEvaluate_does_not_grow_pool_when_requests_dont_wait() {
+        // given
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            adaptivePoolSizer.recordQueueWait(0);
+            adaptivePoolSizer.recordNetworkTime(NETWORK_TIME);
+        }
+
+        // when
+        PoolSizeDecision decision = adaptivePoolSizer.evaluateNow();
+
+        // then
+        assertFalse(decision.isPoolSizeChanged());
+        assertEquals(MIN_THREAD_COUNT, executor.getCorePoolSize());
+    }
+
+    public void testEvaluate_shrinks_pool_when_requests_are_cpu_bound() {
+        // given
+        executor.setCorePoolSize(MAX_THREAD_COUNT);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            adaptivePoolSizer.recordQueueWait(LONG_QUEUE_WAIT);
+            adaptivePoolSizer.recordCacheCpuTime(CACHE_CPU_TIME);
+        }
+
+        // when
+        PoolSizeDecision decision = adaptivePoolSizer.evaluateNow();
+
+        // then
+        assertEquals(CPU_COUNT, decision.getOptimalThreadCount());
+        assertEquals(MAX_THREAD_COUNT - 1, executor.getCorePoolSize());
+    }
+
+    public void testRecordQueueWait_publishes_decisions_to_listener() {
+        // given
+        PoolSizeListenerStub poolSizeListener = new PoolSizeListenerStub();
+        adaptivePoolSizer.setPoolSizeListener(poolSizeListener);
+        adaptivePoolSizer.setEvaluationPeriod(0);
+        adaptivePoolSizer.setMinSampleCount(SAMPLE_COUNT);
+
+        // when
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            adaptivePoolSizer.recordNetworkTime(NETWORK_TIME);
+            adaptivePoolSizer.recordQueueWait(LONG_QUEUE_WAIT);
+        }
+
+        // then
+        assertNotNull(poolSizeListener.decision);
+        assertEquals(SAMPLE_COUNT, poolSizeListener.decision.getSampleCount());
+        assertEquals(MAX_THREAD_COUNT, poolSizeListener.decision.getThreadCount());
+    }
+
+    // ----------------------------------
+    // CLASSES UNDER TESTS
+    // ----------------------------------
+    private static final class PoolSizeListenerStub implements PoolSizeListener {
+        private PoolSizeDecision decision;
+
+        @Override
+        public void onPoolSizeEvaluated(PoolSizeDecision decision) {
+            this.decision = decision;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.octo.android.robospice.priority;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.octo.android.robospice.request.SpiceRequest;
+
+@SmallTest
+public class HostAwareSchedulerTest extends AndroidTestCase {
+
+    private static final String HOST_CDN = "cdn.example.com";
+    private static final String HOST_API = "api.example.com";
+    private static final int THREAD_COUNT = 2;
+    private static final long TASK_TIMEOUT = 1000;
+
+    private PriorityThreadPoolExecutor executor;
+    private HostAwareScheduler hostAwareScheduler;
+    private CountDownLatch releaseTasksLatch;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = PriorityThreadPoolExecutor.getPriorityExecutor(THREAD_COUNT);
+        hostAwareScheduler = new HostAwareScheduler(executor, 1);
+        releaseTasksLatch = new CountDownLatch(1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        releaseTasksLatch.countDown();
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testSubmit_limits_tasks_per_host() throws Exception {
+        // given
+        BlockingTask firstCdnTask = new BlockingTask();
+        BlockingTask secondCdnTask = new BlockingTask();
+        BlockingTask apiTask = new BlockingTask();
+
+        // when
+        hostAwareScheduler.submit(firstCdnTask, HOST_CDN);
+        hostAwareScheduler.submit(secondCdnTask, HOST_CDN);
+        hostAwareScheduler.submit(apiTask, HOST_API);
+
+        // then
+        assertTrue(firstCdnTask.startedLatch.await(TASK_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(apiTask.startedLatch.await(TASK_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(1, hostAwareScheduler.getSubmittedTaskCount(HOST_CDN));
+        assertEquals(1, hostAwareScheduler.getWaitingTaskCount(HOST_CDN));
+        assertEquals(1, secondCdnTask.startedLatch.getCount());
+    }
+
+    public void testSubmit_submits_waiting_task_when_task_of_host_is_over() throws Exception {
+        // given
+        BlockingTask firstCdnTask = new BlockingTask();
+        BlockingTask secondCdnTask = new BlockingTask();
+        hostAwareScheduler.submit(firstCdnTask, HOST_CDN);
+        hostAwareScheduler.submit(secondCdnTask, HOST_CDN);
+
+        // when
+        releaseTasksLatch.countDown();
+
+        // then
+        assertTrue(secondCdnTask.startedLatch.await(TASK_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    public void testCancel_removes_waiting_task() throws Exception {
+        // given
+        BlockingTask firstCdnTask = new BlockingTask();
+        hostAwareScheduler.submit(firstCdnTask, HOST_CDN);
+        Future<?> secondCdnFuture = hostAwareScheduler.submit(new BlockingTask(), HOST_CDN);
+
+        // when
+        secondCdnFuture.cancel(false);
+
+        // then
+        assertEquals(0, hostAwareScheduler.getWaitingTaskCount(HOST_CDN));
+        assertEquals(1, hostAwareScheduler.getSubmittedTaskCount(HOST_CDN));
+    }
+
+    public void testHoldCurrentTaskSlot_keeps_slot_of_host_until_released() throws Exception {
+        // given
+        final AtomicReference<Runnable> slotRelease = new AtomicReference<Runnable>();
+        final CountDownLatch heldLatch = new CountDownLatch(1);
+        hostAwareScheduler.submit(new PriorityRunnable() {
+            @Override
+            public int getPriority() {
+                return SpiceRequest.PRIORITY_NORMAL;
+            }
+
+            @Override
+            public void run() {
+                slotRelease.set(hostAwareScheduler.holdCurrentTaskSlot());
+                heldLatch.countDown();
+            }
+        }, HOST_CDN);
+        assertTrue(heldLatch.await(TASK_TIMEOUT, TimeUnit.MILLISECONDS));
+        BlockingTask secondCdnTask = new BlockingTask();
+        hostAwareScheduler.submit(secondCdnTask, HOST_CDN);
+        assertFalse(secondCdnTask.startedLatch.await(TASK_TIMEOUT / 10, TimeUnit.MILLISECONDS));
+
+        // when
+        slotRelease.get().run();
+
+        // then
+        assertTrue(secondCdnTask.startedLatch.await(TASK_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(1, hostAwareScheduler.getSubmittedTaskCount(HOST_CDN));
+    }
+
+    public void testHoldCurrentTaskSlot_returns_null_outside_of_a_task_of_a_host() {
+        // when
+        Runnable slotRelease = hostAwareScheduler.holdCurrentTaskSlot();
+
+        // then
+        assertNull(slotRelease);
+    }
+
+    // ----------------------------------
+    // CLASSES UNDER TESTS
+    // ----------------------------------
+    private final class BlockingTask implements PriorityRunnable {
+        private final CountDownLatch startedLatch = new CountDownLatch(1);
+
+        @Override
+        public int getPriority() {
+            return SpiceRequest.PRIORITY_NORMAL;
+        }
+
+        @Override
+        public void run() {
+            startedLatch.countDown();
+            try {
+                releaseTasksLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.octo.android.robospice.priority;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.octo.android.robospice.request.SpiceRequest;
+
+@SmallTest
+public class PriorityThreadPoolExecutorTest extends AndroidTestCase {
+
+    private static final long AGING_PERIOD = 1;
+    private static final long LONG_AGING_PERIOD = TimeUnit.HOURS.toMillis(1);
+    private static final long WAIT_TIME = 200;
+    private static final long TERMINATION_TIMEOUT = 1000;
+    private static final int TASK_COUNT = 3;
+
+    public void testCompareTo_orders_futures_of_same_priority_by_submission() {
+        // given
+        PriorityFuture<Void> firstFuture = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_NORMAL), SpiceRequest.PRIORITY_NORMAL, null);
+        PriorityFuture<Void> secondFuture = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_NORMAL), SpiceRequest.PRIORITY_NORMAL, null);
+
+        // when
+        int comparison = firstFuture.compareTo(secondFuture);
+
+        // then
+        assertTrue(comparison < 0);
+        assertTrue(secondFuture.compareTo(firstFuture) > 0);
+    }
+
+    public void testCompareTo_orders_futures_by_priority_without_aging() throws InterruptedException {
+        // given
+        PriorityFuture<Void> lowFuture = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_LOW), SpiceRequest.PRIORITY_LOW, null);
+        Thread.sleep(WAIT_TIME);
+        PriorityFuture<Void> normalFuture = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_NORMAL), SpiceRequest.PRIORITY_NORMAL, null);
+
+        // when
+        int comparison = normalFuture.compareTo(lowFuture);
+
+        // then
+        assertTrue(comparison < 0);
+    }
+
+    public void testCompareTo_lets_waiting_futures_gain_priority_with_aging() throws InterruptedException {
+        // given
+        PriorityFuture<Void> lowFuture = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_LOW), SpiceRequest.PRIORITY_LOW, null, AGING_PERIOD);
+        Thread.sleep(WAIT_TIME);
+        PriorityFuture<Void> normalFuture = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_NORMAL), SpiceRequest.PRIORITY_NORMAL, null,
+            AGING_PERIOD);
+
+        // when
+        int comparison = lowFuture.compareTo(normalFuture);
+
+        // then
+        assertTrue(comparison < 0);
+    }
+
+    public void testCompareTo_lets_waiting_futures_gain_one_priority_level_per_aging_period() throws InterruptedException {
+        // given
+        long agingPeriod = WAIT_TIME / 2;
+        PriorityFuture<Void> lowFuture = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_LOW), SpiceRequest.PRIORITY_LOW, null, agingPeriod);
+        Thread.sleep(WAIT_TIME);
+        PriorityFuture<Void> normalFuture = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_NORMAL), SpiceRequest.PRIORITY_NORMAL, null,
+            agingPeriod);
+
+        // when
+        int comparison = lowFuture.compareTo(normalFuture);
+
+        // then
+        assertTrue(comparison < 0);
+    }
+
+    public void testCompareTo_orders_futures_of_same_priority_by_deadline_with_aging() {
+        // given
+        long now = System.currentTimeMillis();
+        PriorityFuture<Void> lateFuture = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_NORMAL), SpiceRequest.PRIORITY_NORMAL, null,
+            LONG_AGING_PERIOD, now + WAIT_TIME, 0);
+        PriorityFuture<Void> earlyFuture = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_NORMAL), SpiceRequest.PRIORITY_NORMAL, null,
+            LONG_AGING_PERIOD, now, 0);
+
+        // when
+        int comparison = earlyFuture.compareTo(lateFuture);
+
+        // then
+        assertTrue(comparison < 0);
+    }
+
+    public void testCompareTo_orders_futures_of_same_priority_by_deadline() {
+        // given
+        long now = System.currentTimeMillis();
+        PriorityFuture<Void> lateFuture = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_NORMAL), SpiceRequest.PRIORITY_NORMAL, null, 0,
+            now + WAIT_TIME, 0);
+        PriorityFuture<Void> earlyFuture = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_NORMAL), SpiceRequest.PRIORITY_NORMAL, null, 0, now, 0);
+        PriorityFuture<Void> futureWithoutDeadline = new PriorityFuture<Void>(new PriorityRunnableStub(SpiceRequest.PRIORITY_NORMAL), SpiceRequest.PRIORITY_NORMAL, null);
+
+        // when
+        int comparison = earlyFuture.compareTo(lateFuture);
+
+        // then
+        assertTrue(comparison < 0);
+        assertTrue(lateFuture.compareTo(futureWithoutDeadline) < 0);
+    }
+
+    public void testGetWaitTimeStatistics_records_wait_time_per_priority() throws InterruptedException {
+        // given
+        PriorityThreadPoolExecutor executor = PriorityThreadPoolExecutor.getPriorityExecutor(1);
+
+        // when
+        for (int i = 0; i < TASK_COUNT; i++) {
+            executor.submit(new PriorityRunnableStub(SpiceRequest.PRIORITY_LOW));
+        }
+        executor.submit(new PriorityRunnableStub(SpiceRequest.PRIORITY_HIGH));
+        executor.shutdown();
+
+        // then
+        assertTrue(executor.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS));
+        Map<Integer, WaitTimeStatistics> mapPriorityToWaitTimeStatistics = executor.getWaitTimeStatistics();
+        assertEquals(2, mapPriorityToWaitTimeStatistics.size());
+        assertEquals(TASK_COUNT, mapPriorityToWaitTimeStatistics.get(SpiceRequest.PRIORITY_LOW).getTaskCount());
+        assertEquals(1, mapPriorityToWaitTimeStatistics.get(SpiceRequest.PRIORITY_HIGH).getTaskCount());
+    }
+
+    // ----------------------------------
+    // CLASSES UNDER TESTS
+    // ----------------------------------
+    private static final class PriorityRunnableStub implements PriorityRunnable {
+        private final int priority;
+
+        private PriorityRunnableStub(int priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
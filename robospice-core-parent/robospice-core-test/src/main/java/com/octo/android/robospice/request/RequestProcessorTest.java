@@ -2,10 +2,15 @@ package com.octo.android.robospice.request;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 
 import roboguice.util.temp.Ln;
 import android.content.Context;
@@ -14,6 +19,7 @@ import android.test.suitebuilder.annotation.SmallTest;
 
 import com.octo.android.robospice.exception.NoNetworkException;
 import com.octo.android.robospice.exception.RequestCancelledException;
+import com.octo.android.robospice.exception.RequestExpiredException;
 import com.octo.android.robospice.networkstate.NetworkStateChecker;
 import com.octo.android.robospice.persistence.CacheManager;
 import com.octo.android.robospice.persistence.DurationInMillis;
@@ -21,13 +27,22 @@ import com.octo.android.robospice.persistence.exception.CacheCreationException;
 import com.octo.android.robospice.persistence.exception.CacheLoadingException;
 import com.octo.android.robospice.persistence.exception.CacheSavingException;
 import com.octo.android.robospice.persistence.exception.SpiceException;
+import com.octo.android.robospice.priority.AdaptivePoolSizer;
+import com.octo.android.robospice.priority.AdaptivePoolSizer.PoolSizeDecision;
+import com.octo.android.robospice.priority.HostAwareScheduler;
 import com.octo.android.robospice.priority.PausableThreadPoolExecutor;
 import com.octo.android.robospice.priority.PriorityThreadPoolExecutor;
+import com.octo.android.robospice.priority.ThreadPoolStatistics;
 import com.octo.android.robospice.request.listener.RequestListener;
+import com.octo.android.robospice.request.listener.RequestStatus;
+import com.octo.android.robospice.request.listener.RequestTimingListener;
 import com.octo.android.robospice.request.listener.SpiceServiceListener;
 import com.octo.android.robospice.request.listener.SpiceServiceListener.RequestProcessingContext;
 import com.octo.android.robospice.request.notifier.DefaultRequestListenerNotifier;
 import com.octo.android.robospice.request.notifier.SpiceServiceListenerNotifier;
+import com.octo.android.robospice.request.timing.RequestTimingRecorder;
+import com.octo.android.robospice.request.timing.RequestTimings;
+import com.octo.android.robospice.request.timing.RequestTimings.Phase;
 import com.octo.android.robospice.retry.DefaultRetryPolicy;
 import com.octo.android.robospice.stub.CachedSpiceRequestStub;
 import com.octo.android.robospice.stub.PendingRequestListenerWithProgressStub;
@@ -36,6 +51,7 @@ import com.octo.android.robospice.stub.RequestListenerWithProgressStub;
 import com.octo.android.robospice.stub.SpiceRequestFailingStub;
 import com.octo.android.robospice.stub.SpiceRequestStub;
 import com.octo.android.robospice.stub.SpiceRequestSucceedingStub;
+import com.octo.android.robospice.stub.SpiceRequestSucceedingWithSemaphoresStub;
 
 @SmallTest
 public class RequestProcessorTest extends AndroidTestCase {
@@ -43,6 +59,7 @@ public class RequestProcessorTest extends AndroidTestCase {
     private static final Class<String> TEST_CLASS = String.class;
     private static final String TEST_CACHE_KEY = "12345";
     private static final String TEST_CACHE_KEY2 = "12345_2";
+    private static final String TEST_HOST_KEY = "host";
     private static final long TEST_DURATION = DurationInMillis.ONE_SECOND;
     private static final String TEST_RETURNED_DATA = "coucou";
     private static final String TEST_RETURNED_DATA2 = "toto";
@@ -1283,6 +1300,472 @@ public class RequestProcessorTest extends AndroidTestCase {
         assertTrue(mockRequestListener.getReceivedException() instanceof NoNetworkException);
     }
 
+    // ============================================================================================
+    // ASYNCHRONOUS REQUESTS
+    // ============================================================================================
+
+    public void testAddRequest_with_async_request_when_nothing_is_found_in_cache_and_request_succeeds() throws Exception {
+        // given
+        AsyncSpiceRequestStub asyncRequest = new AsyncSpiceRequestStub(TEST_RETURNED_DATA);
+        CachedSpiceRequest<String> cachedRequest = new CachedSpiceRequest<String>(asyncRequest, TEST_CACHE_KEY, TEST_DURATION);
+
+        RequestListenerWithProgressStub<String> mockRequestListener = new RequestListenerWithProgressStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+
+        EasyMock.expect(mockCacheManager.loadDataFromCache(EasyMock.eq(TEST_CLASS), EasyMock.eq(TEST_CACHE_KEY), EasyMock.eq(TEST_DURATION))).andReturn(null);
+        EasyMock.expect(mockCacheManager.saveDataToCacheAndReturnData(EasyMock.eq(TEST_RETURNED_DATA), EasyMock.eq(TEST_CACHE_KEY))).andReturn(TEST_RETURNED_DATA);
+        EasyMock.replay(mockCacheManager);
+
+        // when
+        requestProcessorUnderTest.addRequest(cachedRequest, requestListenerSet);
+        // the only worker thread is released while the network operation is
+        // pending.
+        CachedSpiceRequestStub<String> stubRequest = createSuccessfulRequest(TEST_CLASS, TEST_RETURNED_DATA2);
+        requestProcessorUnderTest.addRequest(stubRequest, new HashSet<RequestListener<?>>());
+        stubRequest.await(REQUEST_COMPLETION_TIME_OUT);
+        assertTrue(stubRequest.isLoadDataFromNetworkCalled());
+        asyncRequest.complete();
+
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+
+        // then
+        EasyMock.verify(mockCacheManager);
+        assertTrue(mockRequestListener.isExecutedInUIThread());
+        assertTrue(mockRequestListener.isSuccessful());
+        assertTrue(mockRequestListener.isComplete());
+    }
+
+    public void testAddRequest_with_async_request_when_request_fails() throws Exception {
+        // given
+        AsyncSpiceRequestStub asyncRequest = new AsyncSpiceRequestStub(null);
+        asyncRequest.setRetryPolicy(null);
+        CachedSpiceRequest<String> cachedRequest = new CachedSpiceRequest<String>(asyncRequest, null, DurationInMillis.ALWAYS_EXPIRED);
+
+        RequestListenerWithProgressStub<String> mockRequestListener = new RequestListenerWithProgressStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+
+        EasyMock.replay(mockCacheManager);
+
+        // when
+        requestProcessorUnderTest.addRequest(cachedRequest, requestListenerSet);
+        asyncRequest.complete();
+
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+
+        // then
+        EasyMock.verify(mockCacheManager);
+        assertFalse(mockRequestListener.isSuccessful());
+        assertTrue(mockRequestListener.isComplete());
+    }
+
+    // ============================================================================================
+    // STAGED PROCESSING
+    // ============================================================================================
+
+    public void testAddRequest_with_cache_executors_when_request_is_found_in_cache_while_network_is_busy() throws Exception {
+        // given
+        mockRequestRunner.setCacheExecutorServices(PriorityThreadPoolExecutor.getPriorityExecutor(1), PriorityThreadPoolExecutor.getPriorityExecutor(1));
+        SpiceRequestSucceedingWithSemaphoresStub<String> blockingRequest = new SpiceRequestSucceedingWithSemaphoresStub<String>(TEST_CLASS, TEST_RETURNED_DATA2);
+        CachedSpiceRequest<String> blockingCachedRequest = new CachedSpiceRequest<String>(blockingRequest, null, DurationInMillis.ALWAYS_EXPIRED);
+        CachedSpiceRequestStub<String> stubRequest = createSuccessfulRequest(TEST_CLASS, TEST_CACHE_KEY, TEST_DURATION, TEST_RETURNED_DATA);
+
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+
+        EasyMock.expect(mockCacheManager.loadDataFromCache(EasyMock.eq(TEST_CLASS), EasyMock.eq(TEST_CACHE_KEY), EasyMock.eq(TEST_DURATION))).andReturn(TEST_RETURNED_DATA);
+        EasyMock.replay(mockCacheManager);
+
+        // when
+        // the only network thread is busy.
+        requestProcessorUnderTest.addRequest(blockingCachedRequest, new HashSet<RequestListener<?>>());
+        blockingRequest.waitForLoadFromNetwork();
+        requestProcessorUnderTest.addRequest(stubRequest, requestListenerSet);
+
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+        blockingRequest.allowRequestToFinish();
+
+        // then
+        EasyMock.verify(mockCacheManager);
+        assertFalse(stubRequest.isLoadDataFromNetworkCalled());
+        assertTrue(mockRequestListener.isSuccessful());
+        assertTrue(mockRequestListener.isExecutedInUIThread());
+    }
+
+    public void testAddRequest_with_cache_executors_when_request_is_not_found_in_cache() throws Exception {
+        // given
+        mockRequestRunner.setCacheExecutorServices(PriorityThreadPoolExecutor.getPriorityExecutor(1), PriorityThreadPoolExecutor.getPriorityExecutor(1));
+        CachedSpiceRequestStub<String> stubRequest = createSuccessfulRequest(TEST_CLASS, TEST_CACHE_KEY, TEST_DURATION, TEST_RETURNED_DATA);
+
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+
+        EasyMock.expect(mockCacheManager.loadDataFromCache(EasyMock.eq(TEST_CLASS), EasyMock.eq(TEST_CACHE_KEY), EasyMock.eq(TEST_DURATION))).andReturn(null);
+        EasyMock.expect(mockCacheManager.saveDataToCacheAndReturnData(EasyMock.eq(TEST_RETURNED_DATA), EasyMock.eq(TEST_CACHE_KEY))).andReturn(TEST_RETURNED_DATA);
+        EasyMock.replay(mockCacheManager);
+
+        // when
+        requestProcessorUnderTest.addRequest(stubRequest, requestListenerSet);
+
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+
+        // then
+        EasyMock.verify(mockCacheManager);
+        assertTrue(stubRequest.isLoadDataFromNetworkCalled());
+        assertTrue(mockRequestListener.isSuccessful());
+        assertEquals(0, mockRequestRunner.getQueueDepth(DefaultRequestRunner.Stage.CACHE_WRITE));
+    }
+
+    public void testAddRequest_records_cache_cpu_time_of_the_network_executor_in_its_pool_sizer() throws Exception {
+        // given
+        AdaptivePoolSizer adaptivePoolSizer = createRequestRunnerWithAdaptivePoolSizer();
+
+        // when
+        processRequestNotFoundInCache();
+
+        // then
+        PoolSizeDecision decision = adaptivePoolSizer.evaluateNow();
+        assertTrue(decision.getCacheCpuTime() > 0);
+    }
+
+    public void testAddRequest_with_cache_executors_records_no_cache_cpu_time_in_pool_sizer() throws Exception {
+        // given
+        AdaptivePoolSizer adaptivePoolSizer = createRequestRunnerWithAdaptivePoolSizer();
+        mockRequestRunner.setCacheExecutorServices(PriorityThreadPoolExecutor.getPriorityExecutor(1), PriorityThreadPoolExecutor.getPriorityExecutor(1));
+
+        // when
+        processRequestNotFoundInCache();
+
+        // then
+        PoolSizeDecision decision = adaptivePoolSizer.evaluateNow();
+        assertEquals(0, decision.getCacheCpuTime());
+        assertTrue(decision.getNetworkTime() > 0);
+    }
+
+    // ============================================================================================
+    // DEADLINES
+    // ============================================================================================
+
+    public void testAddRequest_when_deadline_has_passed_before_network_stage() throws Exception {
+        // given
+        CachedSpiceRequestStub<String> stubRequest = createSuccessfulRequest(TEST_CLASS, TEST_RETURNED_DATA);
+        stubRequest.setDeadline(System.currentTimeMillis() - 1);
+
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+        EasyMock.replay(mockCacheManager);
+
+        // when
+        requestProcessorUnderTest.addRequest(stubRequest, requestListenerSet);
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+
+        // then
+        EasyMock.verify(mockCacheManager);
+        assertFalse(stubRequest.isLoadDataFromNetworkCalled());
+        assertFalse(mockRequestListener.isSuccessful());
+        assertTrue(mockRequestListener.getReceivedException() instanceof RequestExpiredException);
+    }
+
+    public void testAddRequest_when_deadline_has_not_passed() throws Exception {
+        // given
+        CachedSpiceRequestStub<String> stubRequest = createSuccessfulRequest(TEST_CLASS, TEST_RETURNED_DATA);
+        stubRequest.setTimeToLive(REQUEST_COMPLETION_TIME_OUT_LARGE);
+
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+        EasyMock.replay(mockCacheManager);
+
+        // when
+        requestProcessorUnderTest.addRequest(stubRequest, requestListenerSet);
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+
+        // then
+        EasyMock.verify(mockCacheManager);
+        assertTrue(stubRequest.isLoadDataFromNetworkCalled());
+        assertTrue(mockRequestListener.isSuccessful());
+    }
+
+    // ============================================================================================
+    // BATCHES
+    // ============================================================================================
+
+    public void testAddRequest_with_batchable_requests_loads_them_in_a_single_network_call() throws Exception {
+        // given
+        mockRequestRunner.setBatchWindow(WAIT_BEFORE_REQUEST_EXECUTION);
+        AtomicInteger networkCallCount = new AtomicInteger();
+        CachedSpiceRequest<String> cachedRequest = new CachedSpiceRequest<String>(new BatchableSpiceRequestStub(TEST_RETURNED_DATA, networkCallCount), null,
+            DurationInMillis.ALWAYS_EXPIRED);
+        CachedSpiceRequest<String> cachedRequest2 = new CachedSpiceRequest<String>(new BatchableSpiceRequestStub(TEST_RETURNED_DATA2, networkCallCount), null,
+            DurationInMillis.ALWAYS_EXPIRED);
+
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+        RequestListenerStub<String> mockRequestListener2 = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet2 = new HashSet<RequestListener<?>>();
+        requestListenerSet2.add(mockRequestListener2);
+        EasyMock.replay(mockCacheManager);
+
+        // when
+        requestProcessorUnderTest.addRequest(cachedRequest, requestListenerSet);
+        requestProcessorUnderTest.addRequest(cachedRequest2, requestListenerSet2);
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+        mockRequestListener2.await(REQUEST_COMPLETION_TIME_OUT);
+
+        // then
+        EasyMock.verify(mockCacheManager);
+        assertEquals(1, networkCallCount.get());
+        assertTrue(mockRequestListener.isSuccessful());
+        assertEquals(TEST_RETURNED_DATA, mockRequestListener.getResultHistory().get(0));
+        assertTrue(mockRequestListener2.isSuccessful());
+        assertEquals(TEST_RETURNED_DATA2, mockRequestListener2.getResultHistory().get(0));
+    }
+
+    public void testAddRequest_with_batchable_requests_fails_expired_ones_before_the_network_call() throws Exception {
+        // given
+        mockRequestRunner.setBatchWindow(WAIT_BEFORE_REQUEST_EXECUTION);
+        AtomicInteger networkCallCount = new AtomicInteger();
+        CachedSpiceRequest<String> cachedRequest = new CachedSpiceRequest<String>(new BatchableSpiceRequestStub(TEST_RETURNED_DATA, networkCallCount), null,
+            DurationInMillis.ALWAYS_EXPIRED);
+        CachedSpiceRequest<String> cachedRequest2 = new CachedSpiceRequest<String>(new BatchableSpiceRequestStub(TEST_RETURNED_DATA2, networkCallCount), null,
+            DurationInMillis.ALWAYS_EXPIRED);
+        // expires while waiting for the end of the batch window.
+        cachedRequest2.setDeadline(System.currentTimeMillis() + WAIT_BEFORE_REQUEST_EXECUTION / 2);
+
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+        RequestListenerStub<String> mockRequestListener2 = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet2 = new HashSet<RequestListener<?>>();
+        requestListenerSet2.add(mockRequestListener2);
+        EasyMock.replay(mockCacheManager);
+
+        // when
+        requestProcessorUnderTest.addRequest(cachedRequest, requestListenerSet);
+        requestProcessorUnderTest.addRequest(cachedRequest2, requestListenerSet2);
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+        mockRequestListener2.await(REQUEST_COMPLETION_TIME_OUT);
+
+        // then
+        EasyMock.verify(mockCacheManager);
+        assertEquals(1, networkCallCount.get());
+        assertTrue(mockRequestListener.isSuccessful());
+        assertEquals(TEST_RETURNED_DATA, mockRequestListener.getResultHistory().get(0));
+        assertFalse(mockRequestListener2.isSuccessful());
+        assertTrue(mockRequestListener2.getReceivedException() instanceof RequestExpiredException);
+    }
+
+    public void testShouldStop_cancels_batchable_requests_waiting_for_their_batch() throws Exception {
+        // given
+        mockRequestRunner.setBatchWindow(REQUEST_COMPLETION_TIME_OUT_LARGE);
+        AtomicInteger networkCallCount = new AtomicInteger();
+        CachedSpiceRequest<String> cachedRequest = new CachedSpiceRequest<String>(new BatchableSpiceRequestStub(TEST_RETURNED_DATA, networkCallCount), null,
+            DurationInMillis.ALWAYS_EXPIRED);
+
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+        EasyMock.replay(mockCacheManager);
+        requestProcessorUnderTest.addRequest(cachedRequest, requestListenerSet);
+        // lets the request reach its batch.
+        Thread.sleep(WAIT_BEFORE_REQUEST_EXECUTION);
+
+        // when
+        requestProcessorUnderTest.shouldStop();
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+
+        // then
+        assertEquals(0, networkCallCount.get());
+        assertTrue(cachedRequest.isCancelled());
+        assertNotNull(mockRequestListener.isSuccessful());
+        assertFalse(mockRequestListener.isSuccessful());
+        assertTrue(mockRequestListener.getReceivedException() instanceof RequestCancelledException);
+    }
+
+    public void testAddRequest_with_batchable_requests_submits_the_batch_through_the_host_aware_scheduler() throws Exception {
+        // given
+        PriorityThreadPoolExecutor executorService = PriorityThreadPoolExecutor.getPriorityExecutor(1);
+        final HostAwareScheduler hostAwareScheduler = new HostAwareScheduler(executorService, 1);
+        mockRequestRunner = new DefaultRequestRunner(getContext(), mockCacheManager, executorService, mockRequestProgressManager, networkStateChecker);
+        mockRequestRunner.setHostAwareScheduler(hostAwareScheduler);
+        mockRequestRunner.setBatchWindow(WAIT_BEFORE_REQUEST_EXECUTION);
+        requestProcessorUnderTest = new RequestProcessor(mockCacheManager, mockRequestProgressManager, mockRequestRunner);
+
+        final AtomicInteger submittedTaskCountOfHost = new AtomicInteger();
+        BatchableSpiceRequestStub batchableSpiceRequest = new BatchableSpiceRequestStub(TEST_RETURNED_DATA, new AtomicInteger()) {
+            @Override
+            public List<String> loadDataFromNetwork(List<BatchableSpiceRequest<String>> requests) {
+                submittedTaskCountOfHost.set(hostAwareScheduler.getSubmittedTaskCount(TEST_HOST_KEY));
+                return super.loadDataFromNetwork(requests);
+            }
+        };
+        batchableSpiceRequest.setHostKey(TEST_HOST_KEY);
+        CachedSpiceRequest<String> cachedRequest = new CachedSpiceRequest<String>(batchableSpiceRequest, null, DurationInMillis.ALWAYS_EXPIRED);
+
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+        EasyMock.replay(mockCacheManager);
+
+        // when
+        requestProcessorUnderTest.addRequest(cachedRequest, requestListenerSet);
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+
+        // then
+        EasyMock.verify(mockCacheManager);
+        assertTrue(mockRequestListener.isSuccessful());
+        // the network stage of the request is over, only the batch is.
+        assertEquals(1, submittedTaskCountOfHost.get());
+    }
+
+    // ============================================================================================
+    // TIMINGS
+    // ============================================================================================
+
+    public void testAddRequest_records_the_timings_of_its_phases() throws Exception {
+        // given
+        RequestTimingRecorder requestTimingRecorder = new RequestTimingRecorder();
+        mockRequestRunner.setRequestTimingRecorder(requestTimingRecorder);
+        final CountDownLatch timingLatch = new CountDownLatch(1);
+        final List<RequestTimings> timingsHistory = new ArrayList<RequestTimings>();
+        requestTimingRecorder.addRequestTimingListener(new RequestTimingListener() {
+            @Override
+            public void onRequestTimed(CachedSpiceRequest<?> request, RequestTimings requestTimings) {
+                timingsHistory.add(requestTimings);
+                timingLatch.countDown();
+            }
+        });
+        CachedSpiceRequestStub<String> stubRequest = createSuccessfulRequest(TEST_CLASS, TEST_CACHE_KEY, TEST_DURATION, TEST_RETURNED_DATA, WAIT_BEFORE_REQUEST_EXECUTION);
+
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+
+        EasyMock.expect(mockCacheManager.loadDataFromCache(EasyMock.eq(TEST_CLASS), EasyMock.eq(TEST_CACHE_KEY), EasyMock.eq(TEST_DURATION))).andReturn(null);
+        EasyMock.expect(mockCacheManager.saveDataToCacheAndReturnData(EasyMock.eq(TEST_RETURNED_DATA), EasyMock.eq(TEST_CACHE_KEY))).andReturn(TEST_RETURNED_DATA);
+        EasyMock.replay(mockCacheManager);
+
+        // when
+        requestProcessorUnderTest.addRequest(stubRequest, requestListenerSet);
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+        boolean isTimed = timingLatch.await(REQUEST_COMPLETION_TIME_OUT, TimeUnit.MILLISECONDS);
+
+        // then
+        EasyMock.verify(mockCacheManager);
+        assertTrue(mockRequestListener.isSuccessful());
+        assertTrue(isTimed);
+        assertEquals(1, timingsHistory.size());
+        RequestTimings requestTimings = timingsHistory.get(0);
+        assertSame(requestTimings, stubRequest.getRequestTimings());
+        assertTrue(requestTimings.getDuration(Phase.NETWORK) >= TimeUnit.MILLISECONDS.toNanos(WAIT_BEFORE_REQUEST_EXECUTION));
+        assertTrue(requestTimings.getDuration(Phase.CACHE_READ) >= 0);
+        assertTrue(requestTimings.getDuration(Phase.CACHE_WRITE) >= 0);
+        assertTrue(requestTimings.getDuration(Phase.NOTIFICATION) > 0);
+        assertTrue(requestTimings.getTotalDuration() >= requestTimings.getDuration(Phase.NETWORK));
+        assertEquals(1, requestTimingRecorder.getHistogram(stubRequest.getSpiceRequest().getClass(), Phase.NETWORK).getCount());
+        assertEquals(1, requestTimingRecorder.getHistogram(stubRequest.getSpiceRequest().getClass(), null).getCount());
+    }
+
+    public void testAddRequest_found_in_cache_records_only_the_phases_it_executed() throws Exception {
+        // given
+        RequestTimingRecorder requestTimingRecorder = new RequestTimingRecorder();
+        mockRequestRunner.setRequestTimingRecorder(requestTimingRecorder);
+        final CountDownLatch timingLatch = new CountDownLatch(1);
+        requestTimingRecorder.addRequestTimingListener(new RequestTimingListener() {
+            @Override
+            public void onRequestTimed(CachedSpiceRequest<?> request, RequestTimings requestTimings) {
+                timingLatch.countDown();
+            }
+        });
+        CachedSpiceRequestStub<String> stubRequest = createSuccessfulRequest(TEST_CLASS, TEST_CACHE_KEY, TEST_DURATION, TEST_RETURNED_DATA);
+
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+
+        EasyMock.expect(mockCacheManager.loadDataFromCache(EasyMock.eq(TEST_CLASS), EasyMock.eq(TEST_CACHE_KEY), EasyMock.eq(TEST_DURATION))).andReturn(TEST_RETURNED_DATA);
+        EasyMock.replay(mockCacheManager);
+
+        // when
+        requestProcessorUnderTest.addRequest(stubRequest, requestListenerSet);
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+        boolean isTimed = timingLatch.await(REQUEST_COMPLETION_TIME_OUT, TimeUnit.MILLISECONDS);
+
+        // then
+        EasyMock.verify(mockCacheManager);
+        assertTrue(isTimed);
+        RequestTimings requestTimings = stubRequest.getRequestTimings();
+        assertTrue(requestTimings.isExecuted(Phase.CACHE_READ));
+        assertFalse(requestTimings.isExecuted(Phase.NETWORK));
+        assertFalse(requestTimings.isExecuted(Phase.CACHE_WRITE));
+        Class<?> requestClass = stubRequest.getSpiceRequest().getClass();
+        assertEquals(1, requestTimingRecorder.getHistogram(requestClass, Phase.CACHE_READ).getCount());
+        assertEquals(0, requestTimingRecorder.getHistogram(requestClass, Phase.NETWORK).getCount());
+        assertEquals(0, requestTimingRecorder.getHistogram(requestClass, Phase.CACHE_WRITE).getCount());
+    }
+
+    public void testAddRequest_without_timing_recorder_records_no_timings() throws Exception {
+        // given
+        CachedSpiceRequestStub<String> stubRequest = createSuccessfulRequest(TEST_CLASS, TEST_CACHE_KEY, TEST_DURATION, TEST_RETURNED_DATA);
+
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+
+        EasyMock.expect(mockCacheManager.loadDataFromCache(EasyMock.eq(TEST_CLASS), EasyMock.eq(TEST_CACHE_KEY), EasyMock.eq(TEST_DURATION))).andReturn(TEST_RETURNED_DATA);
+        EasyMock.replay(mockCacheManager);
+
+        // when
+        requestProcessorUnderTest.addRequest(stubRequest, requestListenerSet);
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+
+        // then
+        EasyMock.verify(mockCacheManager);
+        assertTrue(mockRequestListener.isSuccessful());
+        assertNull(stubRequest.getRequestTimings());
+    }
+
+    public void testGetRequestCountPerStatus_and_aggregation_counts() throws Exception {
+        // given
+        requestProcessorUnderTest.shouldStop();
+        PausableThreadPoolExecutor executorService = PriorityThreadPoolExecutor.getPriorityExecutor(1);
+        mockRequestRunner = new DefaultRequestRunner(getContext(), mockCacheManager, executorService, mockRequestProgressManager, networkStateChecker);
+        requestProcessorUnderTest = new RequestProcessor(mockCacheManager, mockRequestProgressManager, mockRequestRunner);
+
+        EasyMock.expect(mockCacheManager.loadDataFromCache(EasyMock.eq(TEST_CLASS), EasyMock.eq(TEST_CACHE_KEY), EasyMock.eq(TEST_DURATION))).andReturn(TEST_RETURNED_DATA);
+        EasyMock.expectLastCall().anyTimes();
+        EasyMock.replay(mockCacheManager);
+
+        CachedSpiceRequestStub<String> stubRequest = createSuccessfulRequest(TEST_CLASS, TEST_CACHE_KEY, TEST_DURATION, TEST_RETURNED_DATA);
+        CachedSpiceRequestStub<String> stubRequest2 = createSuccessfulRequest(TEST_CLASS, TEST_CACHE_KEY, TEST_DURATION, TEST_RETURNED_DATA);
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+
+        // when
+        executorService.pause();
+        requestProcessorUnderTest.addRequest(stubRequest, requestListenerSet);
+        requestProcessorUnderTest.addRequest(stubRequest2, requestListenerSet);
+
+        // then
+        assertEquals(2, requestProcessorUnderTest.getProcessableRequestCount());
+        assertEquals(1, requestProcessorUnderTest.getAggregatedRequestCount());
+        assertEquals(Integer.valueOf(1), requestProcessorUnderTest.getRequestCountPerStatus().get(RequestStatus.PENDING));
+        ThreadPoolStatistics threadPoolStatistics = mockRequestRunner.getThreadPoolStatistics(DefaultRequestRunner.Stage.CACHE_READ);
+        assertEquals(1, threadPoolStatistics.getQueueDepth());
+        assertEquals(Integer.valueOf(1), threadPoolStatistics.getQueueDepthPerPriority().get(SpiceRequest.PRIORITY_NORMAL));
+
+        executorService.resume();
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+        assertTrue(mockRequestListener.isSuccessful());
+        assertEquals(0, mockRequestRunner.getPendingRetryCount());
+    }
+
     // ============================================================================================
     // EXECUTOR SERVICE DEPENDENCY
     // ============================================================================================
@@ -1309,6 +1792,48 @@ public class RequestProcessorTest extends AndroidTestCase {
     // PRIVATE METHODS
     // ============================================================================================
 
+    /** Replaces the request runner by one whose network executor is adapted. */
+    private AdaptivePoolSizer createRequestRunnerWithAdaptivePoolSizer() {
+        requestProcessorUnderTest.shouldStop();
+        PriorityThreadPoolExecutor executorService = PriorityThreadPoolExecutor.getPriorityExecutor(1);
+        AdaptivePoolSizer adaptivePoolSizer = new AdaptivePoolSizer(executorService, 1, 1);
+        mockRequestRunner = new DefaultRequestRunner(getContext(), mockCacheManager, executorService, mockRequestProgressManager, networkStateChecker);
+        mockRequestRunner.setAdaptivePoolSizer(adaptivePoolSizer);
+        requestProcessorUnderTest = new RequestProcessor(mockCacheManager, mockRequestProgressManager, mockRequestRunner);
+        return adaptivePoolSizer;
+    }
+
+    /** Processes a request that is not found in cache, whose cache operations take CPU time. */
+    private void processRequestNotFoundInCache() throws Exception {
+        CachedSpiceRequestStub<String> stubRequest = createSuccessfulRequest(TEST_CLASS, TEST_CACHE_KEY, TEST_DURATION, TEST_RETURNED_DATA, WAIT_BEFORE_REQUEST_EXECUTION);
+        RequestListenerStub<String> mockRequestListener = new RequestListenerStub<String>();
+        Set<RequestListener<?>> requestListenerSet = new HashSet<RequestListener<?>>();
+        requestListenerSet.add(mockRequestListener);
+
+        EasyMock.expect(mockCacheManager.loadDataFromCache(EasyMock.eq(TEST_CLASS), EasyMock.eq(TEST_CACHE_KEY), EasyMock.eq(TEST_DURATION))).andAnswer(new IAnswer<String>() {
+            @Override
+            public String answer() {
+                spendCpuTime();
+                return null;
+            }
+        });
+        EasyMock.expect(mockCacheManager.saveDataToCacheAndReturnData(EasyMock.eq(TEST_RETURNED_DATA), EasyMock.eq(TEST_CACHE_KEY))).andReturn(TEST_RETURNED_DATA);
+        EasyMock.replay(mockCacheManager);
+
+        requestProcessorUnderTest.addRequest(stubRequest, requestListenerSet);
+        mockRequestListener.await(REQUEST_COMPLETION_TIME_OUT);
+
+        EasyMock.verify(mockCacheManager);
+        assertTrue(mockRequestListener.isSuccessful());
+    }
+
+    private static void spendCpuTime() {
+        final long endTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_BEFORE_REQUEST_EXECUTION / 10);
+        while (System.nanoTime() < endTime) {
+            // busy wait
+        }
+    }
+
     private <T> CachedSpiceRequestStub<T> createSuccessfulRequest(Class<T> clazz, T returnedData) {
         SpiceRequestStub<T> stubContentRequest = new SpiceRequestSucceedingStub<T>(clazz, returnedData);
         return new CachedSpiceRequestStub<T>(stubContentRequest, null, 0 /*
@@ -1333,6 +1858,72 @@ public class RequestProcessorTest extends AndroidTestCase {
         return new CachedSpiceRequestStub<T>(stubContentRequest, cacheKey, maxTimeInCache);
     }
 
+    /**
+     * An {@link AsyncSpiceRequest} whose network operation completes when
+     * {@link #complete()} is called. It fails if it has no result.
+     */
+    private static final class AsyncSpiceRequestStub extends AsyncSpiceRequest<String> {
+        private final String result;
+        private final CountDownLatch startedLatch = new CountDownLatch(1);
+        private volatile Callback<String> callback;
+
+        private AsyncSpiceRequestStub(String result) {
+            super(String.class);
+            this.result = result;
+        }
+
+        @Override
+        public void loadDataFromNetwork(Callback<String> callback) {
+            this.callback = callback;
+            startedLatch.countDown();
+        }
+
+        private void complete() throws InterruptedException {
+            assertTrue(startedLatch.await(REQUEST_COMPLETION_TIME_OUT, TimeUnit.MILLISECONDS));
+            final Callback<String> callback = this.callback;
+            new Thread() {
+                @Override
+                public void run() {
+                    if (result == null) {
+                        callback.onFailure(new Exception());
+                    } else {
+                        callback.onSuccess(result);
+                    }
+                }
+            }.start();
+        }
+    }
+
+    /**
+     * A {@link BatchableSpiceRequest} whose result is known in advance. All
+     * instances share the same batch key.
+     */
+    private static class BatchableSpiceRequestStub extends BatchableSpiceRequest<String> {
+        private final String result;
+        private final AtomicInteger networkCallCount;
+
+        private BatchableSpiceRequestStub(String result, AtomicInteger networkCallCount) {
+            super(String.class);
+            this.result = result;
+            this.networkCallCount = networkCallCount;
+        }
+
+        @Override
+        public Object getBatchKey() {
+            return TEST_CACHE_KEY;
+        }
+
+        @Override
+        public List<String> loadDataFromNetwork(List<BatchableSpiceRequest<String>> requests) {
+            networkCallCount.incrementAndGet();
+            List<String> results = new ArrayList<String>();
+            for (BatchableSpiceRequest<String> request : requests) {
+                results.add(((BatchableSpiceRequestStub) request).result);
+            }
+            return results;
+        }
+    }
+
     private class MockNetworkStateChecker implements NetworkStateChecker {
 
         private boolean networkAvailable = true;
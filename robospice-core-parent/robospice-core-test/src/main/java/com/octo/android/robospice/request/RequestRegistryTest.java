@@ -0,0 +1,103 @@
+package com.octo.android.robospice.request;
+
+import java.util.Collections;
+import java.util.Set;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.octo.android.robospice.persistence.DurationInMillis;
+import com.octo.android.robospice.request.listener.RequestListener;
+import com.octo.android.robospice.stub.CachedSpiceRequestStub;
+import com.octo.android.robospice.stub.RequestListenerStub;
+import com.octo.android.robospice.stub.SpiceRequestSucceedingStub;
+
+@SmallTest
+public class RequestRegistryTest extends AndroidTestCase {
+
+    private static final Class<String> TEST_CLASS = String.class;
+    private static final String TEST_CACHE_KEY = "12345";
+    private static final long TEST_DURATION = DurationInMillis.ONE_SECOND;
+    private static final String TEST_RETURNED_DATA = "coucou";
+
+    private RequestRegistry requestRegistryUnderTest;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        requestRegistryUnderTest = new RequestRegistry();
+    }
+
+    public void testRegisterIfAbsent_aggregates_equal_requests() {
+        // given
+        CachedSpiceRequestStub<String> stubRequest = createRequest();
+        CachedSpiceRequestStub<String> stubRequest2 = createRequest();
+
+        // when
+        boolean registered = requestRegistryUnderTest.registerIfAbsent(stubRequest);
+        boolean registered2 = requestRegistryUnderTest.registerIfAbsent(stubRequest2);
+
+        // then
+        assertTrue(registered);
+        assertFalse(registered2);
+        assertEquals(1, requestRegistryUnderTest.size());
+        assertSame(stubRequest, requestRegistryUnderTest.getRegisteredRequest(stubRequest2));
+    }
+
+    public void testAddListeners_shares_listeners_between_equal_requests() {
+        // given
+        CachedSpiceRequestStub<String> stubRequest = createRequest();
+        CachedSpiceRequestStub<String> stubRequest2 = createRequest();
+        RequestListenerStub<String> requestListener = new RequestListenerStub<String>();
+        RequestListenerStub<String> requestListener2 = new RequestListenerStub<String>();
+        requestRegistryUnderTest.registerIfAbsent(stubRequest);
+
+        // when
+        requestRegistryUnderTest.addListeners(stubRequest, Collections.<RequestListener<?>> singleton(requestListener));
+        requestRegistryUnderTest.addListeners(stubRequest2, Collections.<RequestListener<?>> singleton(requestListener2));
+
+        // then
+        Set<RequestListener<?>> listeners = requestRegistryUnderTest.getListeners(stubRequest);
+        assertEquals(2, listeners.size());
+        assertTrue(listeners.contains(requestListener));
+        assertTrue(listeners.contains(requestListener2));
+    }
+
+    public void testAddListeners_when_request_is_not_registered() {
+        // given
+        CachedSpiceRequestStub<String> stubRequest = createRequest();
+        RequestListenerStub<String> requestListener = new RequestListenerStub<String>();
+
+        // when
+        boolean found = requestRegistryUnderTest.addListeners(stubRequest, Collections.<RequestListener<?>> singleton(requestListener));
+
+        // then
+        assertFalse(found);
+        assertNull(requestRegistryUnderTest.getListeners(stubRequest));
+    }
+
+    public void testRemove_returns_listeners_and_empties_registry() {
+        // given
+        CachedSpiceRequestStub<String> stubRequest = createRequest();
+        RequestListenerStub<String> requestListener = new RequestListenerStub<String>();
+        requestRegistryUnderTest.registerIfAbsent(stubRequest);
+        requestRegistryUnderTest.addListeners(stubRequest, Collections.<RequestListener<?>> singleton(requestListener));
+
+        // when
+        Set<RequestListener<?>> listeners = requestRegistryUnderTest.remove(stubRequest);
+
+        // then
+        assertTrue(listeners.contains(requestListener));
+        assertTrue(requestRegistryUnderTest.isEmpty());
+        assertFalse(requestRegistryUnderTest.contains(stubRequest));
+        assertNull(requestRegistryUnderTest.remove(stubRequest));
+    }
+
+    // ============================================================================================
+    // PRIVATE METHODS
+    // ============================================================================================
+
+    private CachedSpiceRequestStub<String> createRequest() {
+        return new CachedSpiceRequestStub<String>(new SpiceRequestSucceedingStub<String>(TEST_CLASS, TEST_RETURNED_DATA), TEST_CACHE_KEY, TEST_DURATION);
+    }
+}
@@ -1,7 +1,9 @@
 package com.octo.android.robospice.request;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpStatus;
 
@@ -11,6 +13,7 @@ import android.test.suitebuilder.annotation.LargeTest;
 import com.google.mockwebserver.MockResponse;
 import com.google.mockwebserver.MockWebServer;
 import com.octo.android.robospice.core.test.R;
+import com.octo.android.robospice.exception.RequestCancelledException;
 import com.octo.android.robospice.request.simple.SimpleTextRequest;
 
 /**
@@ -50,6 +53,20 @@ public class SimpleTextRequestTest extends AndroidTestCase {
         assertTrue(stringReturned.startsWith("Lorem ipsum"));
     }
 
+    public void test_loadDataFromNetwork_reads_a_non_http_url() throws Exception {
+        // given;
+        File file = new File(getContext().getCacheDir(), "lorem_ipsum.txt");
+        FileUtils.writeStringToFile(file, "Lorem ipsum", "UTF-8");
+
+        // when
+        SimpleTextRequest loremIpsumTextRequest = new SimpleTextRequest(file.toURI().toURL().toString());
+        String stringReturned = loremIpsumTextRequest.loadDataFromNetwork();
+
+        // then
+        assertEquals("Lorem ipsum", stringReturned);
+        FileUtils.deleteQuietly(file);
+    }
+
     public void test_loadDataFromNetwork_throws_exception() throws Exception {
         // given;
         mockWebServer.enqueue(new MockResponse().setResponseCode(HttpStatus.SC_NOT_FOUND));
@@ -68,4 +85,24 @@ public class SimpleTextRequestTest extends AndroidTestCase {
             return;
         }
     }
+
+    public void test_loadDataFromNetwork_throws_exception_when_request_is_cancelled() throws Exception {
+        // given;
+        mockWebServer.enqueue(new MockResponse().setBody("Lorem ipsum"));
+        mockWebServer.play();
+        SimpleTextRequest loremIpsumTextRequest = new SimpleTextRequest(mockWebServer.getUrl("/").toString());
+
+        // when
+        loremIpsumTextRequest.cancel();
+
+        try {
+            loremIpsumTextRequest.loadDataFromNetwork();
+
+            // expected exception
+            fail();
+        } catch (RequestCancelledException e) {
+            // success
+            return;
+        }
+    }
 }
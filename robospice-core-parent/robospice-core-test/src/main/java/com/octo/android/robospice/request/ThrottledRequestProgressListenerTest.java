@@ -0,0 +1,104 @@
+package com.octo.android.robospice.request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.octo.android.robospice.request.listener.RequestProgress;
+import com.octo.android.robospice.request.listener.RequestProgressListener;
+import com.octo.android.robospice.request.listener.RequestStatus;
+
+@SmallTest
+public class ThrottledRequestProgressListenerTest extends AndroidTestCase {
+
+    private static final long LONG_INTERVAL = 10000;
+    private static final long SHORT_INTERVAL = 200;
+    private static final float MIN_STEP = 0.1f;
+    private static final int UPDATE_COUNT = 1000;
+
+    private ProgressHistoryListener progressHistoryListener;
+    private ThrottledRequestProgressListener throttledRequestProgressListener;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        progressHistoryListener = new ProgressHistoryListener();
+        throttledRequestProgressListener = new ThrottledRequestProgressListener(progressHistoryListener, LONG_INTERVAL, MIN_STEP);
+    }
+
+    public void testOnRequestProgressUpdate_forwards_progress_by_steps() {
+        // given
+        throttledRequestProgressListener.onRequestProgressUpdate(new RequestProgress(RequestStatus.LOADING_FROM_NETWORK));
+
+        // when
+        for (int i = 1; i <= UPDATE_COUNT; i++) {
+            throttledRequestProgressListener.onRequestProgressUpdate(new RequestProgress(RequestStatus.LOADING_FROM_NETWORK, (float) i / UPDATE_COUNT));
+        }
+
+        // then
+        // initial status, then about one update per step, the last one is complete.
+        assertTrue(progressHistoryListener.progressHistory.size() <= 1 / MIN_STEP + 2);
+        assertEquals(1f, progressHistoryListener.getLastProgress().getProgress());
+    }
+
+    public void testOnRequestProgressUpdate_forwards_the_last_progress_held_back_at_the_end_of_the_interval() throws Exception {
+        // given
+        throttledRequestProgressListener = new ThrottledRequestProgressListener(progressHistoryListener, SHORT_INTERVAL, MIN_STEP);
+        throttledRequestProgressListener.onRequestProgressUpdate(new RequestProgress(RequestStatus.LOADING_FROM_NETWORK));
+
+        // when
+        throttledRequestProgressListener.onRequestProgressUpdate(new RequestProgress(RequestStatus.LOADING_FROM_NETWORK, MIN_STEP / 4));
+        throttledRequestProgressListener.onRequestProgressUpdate(new RequestProgress(RequestStatus.LOADING_FROM_NETWORK, MIN_STEP / 2));
+        Thread.sleep(SHORT_INTERVAL * 5);
+
+        // then
+        // initial status, then only the last progress held back.
+        assertEquals(2, progressHistoryListener.progressHistory.size());
+        assertEquals(MIN_STEP / 2, progressHistoryListener.getLastProgress().getProgress());
+    }
+
+    public void testOnRequestProgressUpdate_always_forwards_status_changes() {
+        // given
+        throttledRequestProgressListener.onRequestProgressUpdate(new RequestProgress(RequestStatus.READING_FROM_CACHE));
+
+        // when
+        throttledRequestProgressListener.onRequestProgressUpdate(new RequestProgress(RequestStatus.LOADING_FROM_NETWORK));
+        throttledRequestProgressListener.onRequestProgressUpdate(new RequestProgress(RequestStatus.WRITING_TO_CACHE));
+        throttledRequestProgressListener.onRequestProgressUpdate(new RequestProgress(RequestStatus.COMPLETE));
+
+        // then
+        assertEquals(4, progressHistoryListener.progressHistory.size());
+        assertEquals(RequestStatus.COMPLETE, progressHistoryListener.getLastProgress().getStatus());
+    }
+
+    public void testOnRequestProgressUpdate_forwards_snapshots() {
+        // given
+        RequestProgress progress = new RequestProgress(RequestStatus.LOADING_FROM_NETWORK);
+
+        // when
+        throttledRequestProgressListener.onRequestProgressUpdate(progress);
+        progress.setProgress(1);
+
+        // then
+        assertEquals(0f, progressHistoryListener.getLastProgress().getProgress());
+    }
+
+    // ----------------------------------
+    // CLASSES UNDER TESTS
+    // ----------------------------------
+    private static final class ProgressHistoryListener implements RequestProgressListener {
+        private final List<RequestProgress> progressHistory = Collections.synchronizedList(new ArrayList<RequestProgress>());
+
+        @Override
+        public void onRequestProgressUpdate(RequestProgress progress) {
+            progressHistory.add(progress);
+        }
+
+        private RequestProgress getLastProgress() {
+            return progressHistory.get(progressHistory.size() - 1);
+        }
+    }
+}
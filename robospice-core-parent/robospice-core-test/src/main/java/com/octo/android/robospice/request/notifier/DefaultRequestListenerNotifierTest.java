@@ -0,0 +1,136 @@
+package com.octo.android.robospice.request.notifier;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.octo.android.robospice.persistence.DurationInMillis;
+import com.octo.android.robospice.request.CachedSpiceRequest;
+import com.octo.android.robospice.request.listener.RequestListener;
+import com.octo.android.robospice.stub.CachedSpiceRequestStub;
+import com.octo.android.robospice.stub.RequestListenerStub;
+import com.octo.android.robospice.stub.SpiceRequestSucceedingStub;
+
+@SmallTest
+public class DefaultRequestListenerNotifierTest extends AndroidTestCase {
+
+    private static final String TEST_CACHE_KEY = "12345";
+    private static final String TEST_CACHE_KEY2 = "12345_2";
+    private static final String TEST_RETURNED_DATA = "coucou";
+    private static final int REQUEST_COUNT = 50;
+    private static final long REQUEST_COMPLETION_TIME_OUT = 2000;
+
+    private DefaultRequestListenerNotifier notifier;
+    private CountDownLatch releaseUiThreadLatch;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        notifier = new DefaultRequestListenerNotifier();
+        releaseUiThreadLatch = new CountDownLatch(1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        releaseUiThreadLatch.countDown();
+        super.tearDown();
+    }
+
+    public void testNotifyListenersOfRequestSuccess_delivers_all_notifications_in_order() throws Exception {
+        // given
+        blockUiThread();
+        CountingRequestListener listener = new CountingRequestListener(REQUEST_COUNT);
+
+        // when
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            CachedSpiceRequest<Integer> request = new CachedSpiceRequestStub<Integer>(new SpiceRequestSucceedingStub<Integer>(Integer.class, i), TEST_CACHE_KEY + i,
+                DurationInMillis.ALWAYS_EXPIRED);
+            notifier.notifyListenersOfRequestSuccess(request, i, createListenerSet(listener));
+        }
+        releaseUiThreadLatch.countDown();
+
+        // then
+        assertTrue(listener.latch.await(REQUEST_COMPLETION_TIME_OUT, TimeUnit.MILLISECONDS));
+        assertTrue(listener.isInOrder);
+    }
+
+    public void testClearNotificationsForRequest_removes_notifications_not_delivered_yet() throws Exception {
+        // given
+        blockUiThread();
+        CachedSpiceRequest<String> clearedRequest = createRequest(TEST_CACHE_KEY);
+        RequestListenerStub<String> clearedListener = new RequestListenerStub<String>();
+        RequestListenerStub<String> listener = new RequestListenerStub<String>();
+        notifier.notifyListenersOfRequestSuccess(clearedRequest, TEST_RETURNED_DATA, createListenerSet(clearedListener));
+        notifier.notifyListenersOfRequestSuccess(createRequest(TEST_CACHE_KEY2), TEST_RETURNED_DATA, createListenerSet(listener));
+
+        // when
+        notifier.clearNotificationsForRequest(clearedRequest, null);
+        releaseUiThreadLatch.countDown();
+
+        // then
+        listener.await(REQUEST_COMPLETION_TIME_OUT);
+        assertTrue(listener.isSuccessful());
+        assertNull(clearedListener.isSuccessful());
+    }
+
+    // ----------------------------------
+    // PRIVATE METHODS
+    // ----------------------------------
+
+    /** Prevents notifications from being delivered until the latch is released. */
+    private void blockUiThread() throws InterruptedException {
+        final CountDownLatch uiThreadBlockedLatch = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                uiThreadBlockedLatch.countDown();
+                try {
+                    releaseUiThreadLatch.await(REQUEST_COMPLETION_TIME_OUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(uiThreadBlockedLatch.await(REQUEST_COMPLETION_TIME_OUT, TimeUnit.MILLISECONDS));
+    }
+
+    private static CachedSpiceRequest<String> createRequest(String cacheKey) {
+        return new CachedSpiceRequestStub<String>(new SpiceRequestSucceedingStub<String>(String.class, TEST_RETURNED_DATA), cacheKey, DurationInMillis.ALWAYS_EXPIRED);
+    }
+
+    private static Set<RequestListener<?>> createListenerSet(RequestListener<?> listener) {
+        return Collections.synchronizedSet(new HashSet<RequestListener<?>>(Collections.singleton(listener)));
+    }
+
+    // ----------------------------------
+    // CLASSES UNDER TESTS
+    // ----------------------------------
+    private static final class CountingRequestListener implements RequestListener<Integer> {
+        private final CountDownLatch latch;
+        private int expectedResult;
+        private boolean isInOrder = true;
+
+        private CountingRequestListener(int requestCount) {
+            latch = new CountDownLatch(requestCount);
+        }
+
+        @Override
+        public void onRequestSuccess(Integer result) {
+            isInOrder &= result == expectedResult++;
+            latch.countDown();
+        }
+
+        @Override
+        public void onRequestFailure(com.octo.android.robospice.persistence.exception.SpiceException spiceException) {
+            isInOrder = false;
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.octo.android.robospice.request.notifier;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.octo.android.robospice.persistence.DurationInMillis;
+import com.octo.android.robospice.request.CachedSpiceRequest;
+import com.octo.android.robospice.request.listener.FilteredSpiceServiceListener;
+import com.octo.android.robospice.request.listener.RequestListener;
+import com.octo.android.robospice.request.listener.RequestProgress;
+import com.octo.android.robospice.request.listener.RequestStatus;
+import com.octo.android.robospice.request.listener.SpiceServiceAdapter;
+import com.octo.android.robospice.stub.CachedSpiceRequestStub;
+import com.octo.android.robospice.stub.SpiceRequestSucceedingStub;
+
+@SmallTest
+public class SpiceServiceListenerNotifierTest extends AndroidTestCase {
+
+    private static final String TEST_CACHE_KEY = "12345";
+    private static final String TEST_RETURNED_DATA = "coucou";
+    private static final int PROGRESS_UPDATE_COUNT = 10;
+    private static final int LIFECYCLE_EVENT_COUNT = PROGRESS_UPDATE_COUNT + 3;
+    private static final long REQUEST_COMPLETION_TIME_OUT = 2000;
+
+    private SpiceServiceListenerNotifier notifier;
+    private CachedSpiceRequest<String> request;
+    private Set<RequestListener<?>> requestListeners;
+    private RequestProgress requestProgress;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        notifier = new SpiceServiceListenerNotifier();
+        request = new CachedSpiceRequestStub<String>(new SpiceRequestSucceedingStub<String>(String.class, TEST_RETURNED_DATA), TEST_CACHE_KEY,
+            DurationInMillis.ALWAYS_EXPIRED);
+        requestListeners = new HashSet<RequestListener<?>>();
+        requestProgress = new RequestProgress(RequestStatus.LOADING_FROM_NETWORK);
+    }
+
+    public void testNotifyObservers_doesnt_allocate_without_listener() {
+        // given
+        notifyLifecycle();
+
+        // when
+        int allocationCount = countLifecycleAllocations();
+
+        // then
+        assertEquals(0, allocationCount);
+    }
+
+    public void testNotifyObservers_doesnt_allocate_for_ignored_events() {
+        // given
+        CountingSpiceServiceListener listener = new CountingSpiceServiceListener(FilteredSpiceServiceListener.EVENT_FAILED, 0);
+        notifier.addSpiceServiceListener(listener);
+        notifyLifecycle();
+
+        // when
+        int allocationCount = countLifecycleAllocations();
+
+        // then
+        assertEquals(0, allocationCount);
+        assertEquals(0, listener.eventCount.get());
+    }
+
+    public void testNotifyObservers_reuses_event_records() throws Exception {
+        // given
+        CountingSpiceServiceListener listener = new CountingSpiceServiceListener(FilteredSpiceServiceListener.ALL_EVENTS, LIFECYCLE_EVENT_COUNT);
+        notifier.addSpiceServiceListener(listener);
+        notifyLifecycle();
+        assertTrue(listener.latch.await(REQUEST_COMPLETION_TIME_OUT, TimeUnit.MILLISECONDS));
+        awaitEventsRecycled();
+
+        // when
+        int allocationCount = countLifecycleAllocations();
+
+        // then
+        assertEquals(0, allocationCount);
+    }
+
+    public void testNotifyObservers_notifies_listener_of_declared_events_only() throws Exception {
+        // given
+        CountingSpiceServiceListener listener = new CountingSpiceServiceListener(FilteredSpiceServiceListener.EVENT_PROCESSED, 1);
+        notifier.addSpiceServiceListener(listener);
+
+        // when
+        notifyLifecycle();
+
+        // then
+        assertTrue(listener.latch.await(REQUEST_COMPLETION_TIME_OUT, TimeUnit.MILLISECONDS));
+        assertEquals(1, listener.eventCount.get());
+        assertEquals(1, listener.processedCount.get());
+    }
+
+    // ----------------------------------
+    // PRIVATE METHODS
+    // ----------------------------------
+
+    /** Notifies the events of a cached request, from its addition to its end. */
+    private void notifyLifecycle() {
+        notifier.notifyObserversOfRequestAdded(request, requestListeners);
+        for (int i = 0; i < PROGRESS_UPDATE_COUNT; i++) {
+            notifier.notifyObserversOfRequestProgress(request, requestProgress);
+        }
+        notifier.notifyObserversOfRequestSuccess(request);
+        notifier.notifyObserversOfRequestProcessed(request, requestListeners);
+    }
+
+    /** Events are recycled after listeners are notified, on the ui thread. */
+    private void awaitEventsRecycled() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(REQUEST_COMPLETION_TIME_OUT, TimeUnit.MILLISECONDS));
+    }
+
+    @SuppressWarnings("deprecation")
+    private int countLifecycleAllocations() {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            notifyLifecycle();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return Debug.getThreadAllocCount();
+    }
+
+    // ----------------------------------
+    // CLASSES UNDER TESTS
+    // ----------------------------------
+    private static final class CountingSpiceServiceListener extends SpiceServiceAdapter implements FilteredSpiceServiceListener {
+        private final int eventTypes;
+        private final CountDownLatch latch;
+        private final AtomicInteger eventCount = new AtomicInteger();
+        private final AtomicInteger processedCount = new AtomicInteger();
+
+        private CountingSpiceServiceListener(int eventTypes, int expectedEventCount) {
+            this.eventTypes = eventTypes;
+            latch = new CountDownLatch(expectedEventCount);
+        }
+
+        @Override
+        public int getEventTypes() {
+            return eventTypes;
+        }
+
+        @Override
+        public void onRequestAdded(CachedSpiceRequest<?> request, RequestProcessingContext requestProcessingContext) {
+            onEvent();
+        }
+
+        @Override
+        public void onRequestProgressUpdated(CachedSpiceRequest<?> request, RequestProcessingContext requestProcessingContext) {
+            onEvent();
+        }
+
+        @Override
+        public void onRequestSucceeded(CachedSpiceRequest<?> request, RequestProcessingContext requestProcessingContext) {
+            onEvent();
+        }
+
+        @Override
+        public void onRequestFailed(CachedSpiceRequest<?> request, RequestProcessingContext requestProcessingContext) {
+            onEvent();
+        }
+
+        @Override
+        public void onRequestProcessed(CachedSpiceRequest<?> request, RequestProcessingContext requestProcessingContext) {
+            processedCount.incrementAndGet();
+            onEvent();
+        }
+
+        private void onEvent() {
+            eventCount.incrementAndGet();
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.octo.android.robospice.request.timing;
+
+import java.util.concurrent.TimeUnit;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class LatencyHistogramTest extends AndroidTestCase {
+
+    private LatencyHistogram latencyHistogramUnderTest;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        latencyHistogramUnderTest = new LatencyHistogram();
+    }
+
+    public void testEmptyHistogram_has_no_latency() {
+        // given
+
+        // when
+
+        // then
+        assertEquals(0, latencyHistogramUnderTest.getCount());
+        assertEquals(0, latencyHistogramUnderTest.getAverage());
+        assertEquals(0, latencyHistogramUnderTest.getMax());
+        assertEquals(0, latencyHistogramUnderTest.getPercentile(50));
+    }
+
+    public void testAdd_computes_count_average_and_max() {
+        // given
+
+        // when
+        latencyHistogramUnderTest.add(TimeUnit.MILLISECONDS.toNanos(10));
+        latencyHistogramUnderTest.add(TimeUnit.MILLISECONDS.toNanos(20));
+        latencyHistogramUnderTest.add(TimeUnit.MILLISECONDS.toNanos(30));
+
+        // then
+        assertEquals(3, latencyHistogramUnderTest.getCount());
+        assertEquals(20, latencyHistogramUnderTest.getAverage());
+        assertEquals(30, latencyHistogramUnderTest.getMax());
+    }
+
+    public void testGetPercentile_returns_the_upper_bound_of_the_bucket() {
+        // given
+        final int fastLatencyCount = 90;
+        final int slowLatencyCount = 10;
+        for (int i = 0; i < fastLatencyCount; i++) {
+            latencyHistogramUnderTest.add(TimeUnit.MILLISECONDS.toNanos(3));
+        }
+        for (int i = 0; i < slowLatencyCount; i++) {
+            latencyHistogramUnderTest.add(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+
+        // when
+        long p50 = latencyHistogramUnderTest.getPercentile(50);
+        long p90 = latencyHistogramUnderTest.getPercentile(90);
+        long p99 = latencyHistogramUnderTest.getPercentile(99);
+
+        // then
+        assertEquals(4, p50);
+        assertEquals(4, p90);
+        assertEquals(100, p99);
+    }
+
+    public void testGetPercentile_of_very_long_latencies_returns_the_max() {
+        // given
+        latencyHistogramUnderTest.add(TimeUnit.HOURS.toNanos(1));
+
+        // when
+        long p99 = latencyHistogramUnderTest.getPercentile(99);
+
+        // then
+        assertEquals(TimeUnit.HOURS.toMillis(1), p99);
+    }
+
+    public void testCopyConstructor_creates_an_independent_snapshot() {
+        // given
+        latencyHistogramUnderTest.add(TimeUnit.MILLISECONDS.toNanos(10));
+
+        // when
+        LatencyHistogram snapshot = new LatencyHistogram(latencyHistogramUnderTest);
+        latencyHistogramUnderTest.add(TimeUnit.MILLISECONDS.toNanos(20));
+
+        // then
+        assertEquals(1, snapshot.getCount());
+        assertEquals(10, snapshot.getMax());
+        assertEquals(2, latencyHistogramUnderTest.getCount());
+    }
+}
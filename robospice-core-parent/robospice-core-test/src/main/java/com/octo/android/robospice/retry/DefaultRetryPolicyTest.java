@@ -0,0 +1,92 @@
+package com.octo.android.robospice.retry;
+
+import android.test.AndroidTestCase;
+
+import com.octo.android.robospice.persistence.exception.SpiceException;
+import com.octo.android.robospice.retry.DefaultRetryPolicy.Jitter;
+
+public class DefaultRetryPolicyTest extends AndroidTestCase {
+
+    private static final int TEST_RETRY_COUNT = 5;
+    private static final long TEST_DELAY_BEFORE_RETRY = 100;
+    private static final float TEST_BACKOFF_MULTIPLIER = 2f;
+    private static final int TEST_LONG_RETRY_COUNT = 50;
+    private static final long TEST_MAX_DELAY_BEFORE_RETRY = 1000;
+
+    private DefaultRetryPolicy retryPolicy;
+
+    public void testRetry_without_jitter_uses_exponential_back_off() {
+        // given
+        retryPolicy = new DefaultRetryPolicy(TEST_RETRY_COUNT, TEST_DELAY_BEFORE_RETRY, TEST_BACKOFF_MULTIPLIER);
+        long expectedDelay = TEST_DELAY_BEFORE_RETRY;
+
+        for (int i = 0; i < TEST_RETRY_COUNT; i++) {
+            // when
+            retryPolicy.retry(new SpiceException(""));
+            expectedDelay *= TEST_BACKOFF_MULTIPLIER;
+
+            // then
+            assertEquals(expectedDelay, retryPolicy.getDelayBeforeRetry());
+        }
+        assertEquals(0, retryPolicy.getRetryCount());
+    }
+
+    public void testRetry_with_full_jitter_stays_below_exponential_back_off() {
+        // given
+        retryPolicy = new DefaultRetryPolicy(TEST_RETRY_COUNT, TEST_DELAY_BEFORE_RETRY, TEST_BACKOFF_MULTIPLIER, Jitter.FULL);
+        long maxDelay = TEST_DELAY_BEFORE_RETRY;
+
+        for (int i = 0; i < TEST_RETRY_COUNT; i++) {
+            // when
+            retryPolicy.retry(new SpiceException(""));
+            maxDelay *= TEST_BACKOFF_MULTIPLIER;
+
+            // then
+            assertTrue(retryPolicy.getDelayBeforeRetry() >= 0);
+            assertTrue(retryPolicy.getDelayBeforeRetry() <= maxDelay);
+        }
+    }
+
+    public void testRetry_with_decorrelated_jitter_stays_above_initial_delay() {
+        // given
+        retryPolicy = new DefaultRetryPolicy(TEST_RETRY_COUNT, TEST_DELAY_BEFORE_RETRY, TEST_BACKOFF_MULTIPLIER, Jitter.DECORRELATED);
+        long previousDelay = TEST_DELAY_BEFORE_RETRY;
+
+        for (int i = 0; i < TEST_RETRY_COUNT; i++) {
+            // when
+            retryPolicy.retry(new SpiceException(""));
+
+            // then
+            assertTrue(retryPolicy.getDelayBeforeRetry() >= TEST_DELAY_BEFORE_RETRY);
+            assertTrue(retryPolicy.getDelayBeforeRetry() <= 3 * previousDelay);
+            previousDelay = retryPolicy.getDelayBeforeRetry();
+        }
+    }
+
+    public void testRetry_with_decorrelated_jitter_never_exceeds_max_delay() {
+        // given
+        retryPolicy = new DefaultRetryPolicy(TEST_LONG_RETRY_COUNT, TEST_DELAY_BEFORE_RETRY, TEST_BACKOFF_MULTIPLIER, Jitter.DECORRELATED, TEST_MAX_DELAY_BEFORE_RETRY);
+
+        for (int i = 0; i < TEST_LONG_RETRY_COUNT; i++) {
+            // when
+            retryPolicy.retry(new SpiceException(""));
+
+            // then
+            assertTrue(retryPolicy.getDelayBeforeRetry() >= TEST_DELAY_BEFORE_RETRY);
+            assertTrue(retryPolicy.getDelayBeforeRetry() <= TEST_MAX_DELAY_BEFORE_RETRY);
+        }
+    }
+
+    public void testRetry_caps_exponential_back_off_to_max_delay() {
+        // given
+        retryPolicy = new DefaultRetryPolicy(TEST_LONG_RETRY_COUNT, TEST_DELAY_BEFORE_RETRY, TEST_BACKOFF_MULTIPLIER, Jitter.NONE, TEST_MAX_DELAY_BEFORE_RETRY);
+
+        for (int i = 0; i < TEST_LONG_RETRY_COUNT; i++) {
+            // when
+            retryPolicy.retry(new SpiceException(""));
+        }
+
+        // then
+        assertEquals(TEST_MAX_DELAY_BEFORE_RETRY, retryPolicy.getDelayBeforeRetry());
+    }
+}
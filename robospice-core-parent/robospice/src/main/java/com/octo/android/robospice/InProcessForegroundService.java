@@ -0,0 +1,49 @@
+package com.octo.android.robospice;
+
+import android.app.Notification;
+import android.app.Service;
+import android.content.Intent;
+import android.os.IBinder;
+
+/**
+ * Keeps the application process in foreground while a {@link SpiceService}
+ * hosted in process has pending requests. Such a {@link SpiceService} is not
+ * known to Android and can't be promoted to foreground itself : when
+ * {@link SpiceService#isInProcessForegroundEnabled()} returns true, it starts
+ * this service once requests have been pending for
+ * {@link SpiceService#getInProcessForegroundDelay()}, and stops it as soon as
+ * all requests are complete. This service must then be declared in
+ * AndroidManifest.xml.
+ */
+public class InProcessForegroundService extends Service {
+
+    private static volatile int notificationId;
+    private static volatile Notification notification;
+
+    /**
+     * Sets the notification shown while the process is in foreground. Must be
+     * invoked before this service is started.
+     */
+    static void setNotification(final int notificationId, final Notification notification) {
+        InProcessForegroundService.notificationId = notificationId;
+        InProcessForegroundService.notification = notification;
+    }
+
+    @Override
+    public int onStartCommand(final Intent intent, final int flags, final int startId) {
+        super.onStartCommand(intent, flags, startId);
+        startForeground(notificationId, notification);
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(final Intent intent) {
+        return null;
+    }
+
+    @Override
+    public void onDestroy() {
+        stopForeground(true);
+        super.onDestroy();
+    }
+}
@@ -12,11 +12,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -26,7 +28,9 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.os.Build;
 import android.os.IBinder;
+import android.os.Looper;
 
 import com.octo.android.robospice.SpiceService.SpiceServiceBinder;
 import com.octo.android.robospice.command.AddSpiceServiceListenerCommand;
@@ -41,15 +45,20 @@ import com.octo.android.robospice.command.RemoveDataClassFromCacheCommand;
 import com.octo.android.robospice.command.RemoveDataFromCacheCommand;
 import com.octo.android.robospice.command.RemoveSpiceServiceListenerCommand;
 import com.octo.android.robospice.command.SetFailOnCacheErrorCommand;
+import com.octo.android.robospice.exception.RequestCancelledException;
 import com.octo.android.robospice.persistence.CacheManager;
 import com.octo.android.robospice.persistence.DurationInMillis;
 import com.octo.android.robospice.persistence.exception.CacheCreationException;
 import com.octo.android.robospice.persistence.exception.CacheLoadingException;
 import com.octo.android.robospice.persistence.exception.CacheSavingException;
+import com.octo.android.robospice.persistence.memory.LruCacheObjectPersister;
 import com.octo.android.robospice.request.CachedSpiceRequest;
 import com.octo.android.robospice.request.SpiceRequest;
 import com.octo.android.robospice.request.listener.PendingRequestListener;
 import com.octo.android.robospice.request.listener.RequestListener;
+import com.octo.android.robospice.request.listener.RequestProgress;
+import com.octo.android.robospice.request.listener.RequestProgressListener;
+import com.octo.android.robospice.request.listener.RequestStatus;
 import com.octo.android.robospice.request.listener.SpiceServiceAdapter;
 import com.octo.android.robospice.request.listener.SpiceServiceListener;
 
@@ -96,8 +105,14 @@ public class SpiceManager implements Runnable {
     /** The class of the {@link SpiceService} to bind to. */
     private final Class<? extends SpiceService> spiceServiceClass;
 
+    /**
+     * Whether or not the {@link SpiceService} is hosted in the application
+     * process, instead of being bound.
+     */
+    private final boolean isInProcess;
+
     /** A reference on the {@link SpiceService} obtained by local binding. */
-    private SpiceService spiceService;
+    private volatile SpiceService spiceService;
     /** {@link SpiceService} binder. */
     private SpiceServiceConnection spiceServiceConnection = new SpiceServiceConnection();
 
@@ -110,9 +125,27 @@ public class SpiceManager implements Runnable {
      */
     private volatile boolean isStopped = true;
 
-    /** The queue of requests to be sent to the service. */
+    /**
+     * The queue of requests executed before the {@link SpiceService} is bound.
+     * They are sent to the service all at once when binding succeeds.
+     */
     protected final BlockingQueue<CachedSpiceRequest<?>> requestQueue = new PriorityBlockingQueue<CachedSpiceRequest<?>>();
 
+    /**
+     * Identity set of the requests of {@link #requestQueue}, to know in
+     * constant time whether a request has been sent to the service.
+     */
+    private final Set<CachedSpiceRequest<?>> setQueuedRequest = Collections.synchronizedSet(Collections
+        .newSetFromMap(new IdentityHashMap<CachedSpiceRequest<?>, Boolean>()));
+
+    /**
+     * Whether or not requests are sent to the {@link SpiceService} directly
+     * from the thread that executes them. This is the case once the requests
+     * of {@link #requestQueue} have been sent to the bound service. Must be
+     * volatile to ensure multi-thread consistency.
+     */
+    private volatile boolean isSendingRequestsDirectly = false;
+
     /**
      * The list of all requests that have not yet been passed to the service.
      * All iterations must be synchronized. This is an identity list as we want
@@ -128,6 +161,32 @@ public class SpiceManager implements Runnable {
      */
     private final Map<CachedSpiceRequest<?>, Set<RequestListener<?>>> mapPendingRequestToRequestListener = Collections.synchronizedMap(new HashMap<CachedSpiceRequest<?>, Set<RequestListener<?>>>());
 
+    /**
+     * Index of the keys of {@link #mapPendingRequestToRequestListener} by
+     * result type and cache key. As pending requests are aggregated, it gives
+     * the very instance that is used as a key for any equal request. Must be
+     * accessed while holding the lock of
+     * {@link #mapPendingRequestToRequestListener}.
+     */
+    private final Map<CachedSpiceRequest<?>, CachedSpiceRequest<?>> mapPendingRequestToPendingRequestKey = new HashMap<CachedSpiceRequest<?>, CachedSpiceRequest<?>>();
+
+    /**
+     * Identity index of all requests that are keys of
+     * {@link #mapRequestToLaunchToRequestListener} or
+     * {@link #mapPendingRequestToRequestListener}. Both a
+     * {@link CachedSpiceRequest} and the {@link SpiceRequest} it wraps are
+     * indexed, so that a request can be found without iterating over those
+     * maps.
+     */
+    private final Map<SpiceRequest<?>, CachedSpiceRequest<?>> mapSpiceRequestToCachedSpiceRequest = Collections
+        .synchronizedMap(new IdentityHashMap<SpiceRequest<?>, CachedSpiceRequest<?>>());
+
+    /**
+     * In-memory caches looked up by {@link #execute(CachedSpiceRequest, RequestListener)}
+     * before requests are sent to the {@link SpiceService}.
+     */
+    private final List<LruCacheObjectPersister<?>> listMemoryCache = new CopyOnWriteArrayList<LruCacheObjectPersister<?>>();
+
     /** Will execute internal commands of the SpiceManager. */
     private ExecutorService executorService;
 
@@ -147,6 +206,19 @@ public class SpiceManager implements Runnable {
      */
     private final ReentrantLock lockSendRequestsToService = new ReentrantLock();
 
+    /**
+     * Number of requests being sent directly, without holding
+     * {@link #lockSendRequestsToService}.
+     */
+    private final AtomicInteger directSendCount = new AtomicInteger();
+
+    /**
+     * Whether or not listeners are being removed, or the service unbound.
+     * Requests are then sent while holding {@link #lockSendRequestsToService}.
+     * Must be volatile to ensure multi-thread consistency.
+     */
+    private volatile boolean isDirectSendExcluded = false;
+
     /** Thread running runnable code. */
     protected Thread runner;
 
@@ -177,7 +249,26 @@ public class SpiceManager implements Runnable {
      *            the service class to bind to.
      */
     public SpiceManager(final Class<? extends SpiceService> spiceServiceClass) {
+        this(spiceServiceClass, false);
+    }
+
+    /**
+     * Creates a {@link SpiceManager}, that may use a {@link SpiceService}
+     * hosted directly in the application process. In that case, the service
+     * is neither started nor bound : requests are sent to it as soon as this
+     * {@link SpiceManager} is started. The same instance of the service is
+     * shared by all {@link SpiceManager}s started in process, it is never
+     * stopped and it doesn't need to be declared in AndroidManifest.xml. It is
+     * not promoted to foreground either, unless
+     * {@link SpiceService#isInProcessForegroundEnabled()} is overriden.
+     * @param spiceServiceClass
+     *            the service class to bind to or to host in process.
+     * @param isInProcess
+     *            whether or not the service is hosted in process.
+     */
+    public SpiceManager(final Class<? extends SpiceService> spiceServiceClass, final boolean isInProcess) {
         this.spiceServiceClass = spiceServiceClass;
+        this.isInProcess = isInProcess;
     }
 
     /**
@@ -191,7 +282,8 @@ public class SpiceManager implements Runnable {
 
     /**
      * Start the {@link SpiceManager}. It will bind asynchronously to the
-     * {@link SpiceService}.
+     * {@link SpiceService}, or attach synchronously to the service hosted in
+     * process.
      * @param context
      *            a context that will be used to bind to the service. Typically,
      *            the Activity or Fragment that needs to interact with the
@@ -202,12 +294,20 @@ public class SpiceManager implements Runnable {
         if (isStarted()) {
             throw new IllegalStateException("Already started.");
         } else {
+            if (isInProcess) {
+                attachToInProcessService(context);
+            }
             executorService = Executors.newFixedThreadPool(getThreadCount(), new MinPriorityThreadFactory());
-            // start the binding to the service
-            runner = new Thread(this, SPICE_MANAGER_THREAD_NAME_PREFIX + spiceManagerThreadIndex++);
-            runner.setPriority(Thread.MIN_PRIORITY);
             isStopped = false;
-            runner.start();
+            if (isInProcess) {
+                // from now on, requests are sent directly to the service.
+                sendQueuedRequestsToService();
+            } else {
+                // start the binding to the service
+                runner = new Thread(this, SPICE_MANAGER_THREAD_NAME_PREFIX + spiceManagerThreadIndex++);
+                runner.setPriority(Thread.MIN_PRIORITY);
+                runner.start();
+            }
 
             Ln.d("SpiceManager started.");
         }
@@ -258,36 +358,106 @@ public class SpiceManager implements Runnable {
                 Ln.d("No spice service bound.");
                 return;
             }
-            while (!requestQueue.isEmpty() || !isStopped && !Thread.interrupted()) {
-                try {
-                    sendRequestToService(requestQueue.take());
-                } catch (final InterruptedException ex) {
-                    Ln.d("Interrupted while waiting for new request.");
-                    // we receive an interrupted exception while waiting
-                    // see java spec : http://stackoverflow.com/a/6699006/693752
-                    break;
-                }
-            }
-            Ln.d("SpiceManager request runner terminated. Requests count: %d, stopped %b, interrupted %b", requestQueue.size(), isStopped, Thread.interrupted());
+            // from now on, requests are sent directly to the service.
+            sendQueuedRequestsToService();
+            Ln.d("SpiceManager request runner terminated. Stopped %b", isStopped);
         } catch (final InterruptedException e) {
             Ln.d(e, "Interrupted while waiting for acquiring service.");
         }
     }
 
-    private void sendRequestToService(final CachedSpiceRequest<?> spiceRequest) {
+    /**
+     * Sends a request to the {@link SpiceService} from the calling thread.
+     * Requests are sent without locking, unless listeners are being removed
+     * concurrently : sending is then serialized with the removal, like sending
+     * queued requests.
+     * @param spiceRequest
+     *            the request to send.
+     * @return false if no service is bound, the request has then not been
+     *         sent.
+     */
+    private boolean sendRequestToService(final CachedSpiceRequest<?> spiceRequest) {
+        directSendCount.incrementAndGet();
+        try {
+            // a removal that starts now waits for this request to be sent.
+            if (!isDirectSendExcluded) {
+                return sendRequestToBoundService(spiceRequest);
+            }
+        } finally {
+            directSendCount.decrementAndGet();
+        }
         lockSendRequestsToService.lock();
         try {
-            if (spiceRequest != null && spiceService != null) {
-                if (isStopped) {
-                    Ln.d("Sending request to service without listeners : " + spiceRequest.getClass().getSimpleName());
-                    spiceService.addRequest(spiceRequest, null);
-                } else {
-                    final Set<RequestListener<?>> listRequestListener = mapRequestToLaunchToRequestListener.get(spiceRequest);
-                    Ln.d("Sending request to service : " + spiceRequest.getClass().getSimpleName());
-                    spiceService.addRequest(spiceRequest, listRequestListener);
-                }
+            return sendRequestToBoundService(spiceRequest);
+        } finally {
+            lockSendRequestsToService.unlock();
+        }
+    }
+
+    private boolean sendRequestToBoundService(final CachedSpiceRequest<?> spiceRequest) {
+        final SpiceService boundSpiceService = spiceService;
+        if (boundSpiceService == null) {
+            return false;
+        }
+        if (isStopped) {
+            Ln.d("Sending request to service without listeners : %s", spiceRequest.getClass().getSimpleName());
+            boundSpiceService.addRequest(spiceRequest, null);
+        } else {
+            final Set<RequestListener<?>> listRequestListener = mapRequestToLaunchToRequestListener.get(spiceRequest);
+            if (Ln.isDebugEnabled()) {
+                Ln.d("Sending request to service : %s", spiceRequest.getClass().getSimpleName());
+            }
+            boundSpiceService.addRequest(spiceRequest, listRequestListener);
+        }
+        return true;
+    }
+
+    /**
+     * Prevents requests from being sent without holding
+     * {@link #lockSendRequestsToService}, and waits for the ones being sent
+     * that way. Must be called while holding
+     * {@link #lockSendRequestsToService}, and followed by
+     * {@link #allowDirectSends()}.
+     */
+    private void excludeDirectSends() {
+        isDirectSendExcluded = true;
+        // sending a request is short : it is only registered by the service.
+        while (directSendCount.get() != 0) {
+            Thread.yield();
+        }
+    }
+
+    private void allowDirectSends() {
+        isDirectSendExcluded = false;
+    }
+
+    /**
+     * Sends all requests of {@link #requestQueue} to the bound
+     * {@link SpiceService} at once. Next requests will be sent directly.
+     */
+    private void sendQueuedRequestsToService() {
+        lockSendRequestsToService.lock();
+        try {
+            if (spiceService == null) {
+                Ln.d("Service was null");
+                return;
+            }
+            // must be set before draining the queue : a request added to the
+            // queue after it has been drained will then be sent by the thread
+            // that executes it.
+            isSendingRequestsDirectly = true;
+            final List<CachedSpiceRequest<?>> listRequest = new ArrayList<CachedSpiceRequest<?>>(requestQueue.size());
+            requestQueue.drainTo(listRequest);
+            setQueuedRequest.removeAll(listRequest);
+            if (listRequest.isEmpty()) {
+                return;
+            }
+            if (isStopped) {
+                Ln.d("Sending %d requests to service without listeners", listRequest.size());
+                spiceService.addRequests(listRequest, null);
             } else {
-                Ln.d("Service or request was null");
+                Ln.d("Sending %d requests to service", listRequest.size());
+                spiceService.addRequests(listRequest, mapRequestToLaunchToRequestListener);
             }
         } finally {
             lockSendRequestsToService.unlock();
@@ -326,17 +496,20 @@ public class SpiceManager implements Runnable {
         Ln.d("SpiceManager stopping. Joining");
         this.isStopped = true;
         dontNotifyAnyRequestListenersInternal();
-        if (requestQueue.isEmpty()) {
-            this.runner.interrupt();
-        }
-        long start = System.currentTimeMillis();
-        try {
-            this.runner.join(timeOut);
-        } catch (InterruptedException e) {
-            throw e;
-        } finally {
-            long end = System.currentTimeMillis();
-            Ln.d("Runner join time (ms) when should stop %d", end - start);
+        // there is no runner when the service is hosted in process.
+        if (runner != null) {
+            if (requestQueue.isEmpty()) {
+                this.runner.interrupt();
+            }
+            long start = System.currentTimeMillis();
+            try {
+                this.runner.join(timeOut);
+            } catch (InterruptedException e) {
+                throw e;
+            } finally {
+                long end = System.currentTimeMillis();
+                Ln.d("Runner join time (ms) when should stop %d", end - start);
+            }
         }
         unbindFromService();
         this.runner = null;
@@ -485,9 +658,83 @@ public class SpiceManager implements Runnable {
      *            the listener to notify when the request will finish
      */
     public <T> void execute(final CachedSpiceRequest<T> cachedSpiceRequest, final RequestListener<T> requestListener) {
+        if (deliverFromMemoryCache(cachedSpiceRequest, requestListener)) {
+            return;
+        }
         addRequestListenerToListOfRequestListeners(cachedSpiceRequest, requestListener);
+        if (isSendingRequestsDirectly && sendRequestToService(cachedSpiceRequest)) {
+            return;
+        }
         Ln.d("adding request to request queue");
+        setQueuedRequest.add(cachedSpiceRequest);
         this.requestQueue.add(cachedSpiceRequest);
+        // service may have been bound in the meantime, and the queue already
+        // sent to it.
+        if (isSendingRequestsDirectly) {
+            sendQueuedRequestsToService();
+        }
+    }
+
+    /**
+     * Fast path of execution : delivers a result found in a registered memory
+     * cache from the UI thread. Cache duration semantics are the same as in
+     * the {@link SpiceService}, and the listener receives the same progress
+     * updates as for a result read from cache by the service. A cancelled
+     * request is not served from memory : the service notifies its
+     * cancellation.
+     * @return true if the request has been served from memory.
+     */
+    private <T> boolean deliverFromMemoryCache(final CachedSpiceRequest<T> cachedSpiceRequest, final RequestListener<T> requestListener) {
+        if (listMemoryCache.isEmpty() || isStopped || cachedSpiceRequest.isCancelled() || !cachedSpiceRequest.isProcessable() || cachedSpiceRequest.getRequestCacheKey() == null
+            || cachedSpiceRequest.getCacheDuration() == DurationInMillis.ALWAYS_EXPIRED || Looper.myLooper() != Looper.getMainLooper()) {
+            return false;
+        }
+        final Class<T> resultType = cachedSpiceRequest.getResultType();
+        for (final LruCacheObjectPersister<?> memoryCache : listMemoryCache) {
+            if (memoryCache.canHandleClass(resultType)) {
+                final Object data = memoryCache.loadDataFromMemory(cachedSpiceRequest.getRequestCacheKey(), cachedSpiceRequest.getCacheDuration());
+                if (data != null) {
+                    if (Ln.isDebugEnabled()) {
+                        Ln.d("Request loaded from memory cache : %s", cachedSpiceRequest);
+                    }
+                    if (requestListener instanceof RequestProgressListener) {
+                        ((RequestProgressListener) requestListener).onRequestProgressUpdate(new RequestProgress(RequestStatus.READING_FROM_CACHE));
+                        ((RequestProgressListener) requestListener).onRequestProgressUpdate(new RequestProgress(RequestStatus.COMPLETE));
+                    }
+                    if (requestListener == null) {
+                        return true;
+                    }
+                    // a progress listener may have cancelled the request.
+                    if (cachedSpiceRequest.isCancelled()) {
+                        requestListener.onRequestFailure(new RequestCancelledException("Request has been cancelled explicitely."));
+                    } else {
+                        requestListener.onRequestSuccess(resultType.cast(data));
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registers an in-memory cache, typically the
+     * {@link LruCacheObjectPersister} also used by the {@link CacheManager} of
+     * the {@link SpiceService}. When a request is executed from the UI thread,
+     * registered memory caches are looked up first : if they contain a result
+     * that is not expired, it is delivered to the listener immediately, before
+     * execute returns, without binding to the service, queueing the request
+     * or switching threads. In that case, the request is not seen by the
+     * {@link SpiceService} and its {@link SpiceServiceListener}s.
+     * @param memoryCache
+     *            an in-memory cache to look up.
+     */
+    public void addMemoryCache(final LruCacheObjectPersister<?> memoryCache) {
+        listMemoryCache.add(memoryCache);
+    }
+
+    public void removeMemoryCache(final LruCacheObjectPersister<?> memoryCache) {
+        listMemoryCache.remove(memoryCache);
     }
 
     /**
@@ -660,10 +907,11 @@ public class SpiceManager implements Runnable {
      */
     protected void dontNotifyRequestListenersForRequestInternal(final SpiceRequest<?> request) {
         lockSendRequestsToService.lock();
+        excludeDirectSends();
         try {
 
             final boolean requestNotPassedToServiceYet = removeListenersOfCachedRequestToLaunch(request);
-            Ln.v("Removed from requests to launch list : " + requestNotPassedToServiceYet);
+            Ln.v("Removed from requests to launch list : %s", requestNotPassedToServiceYet);
 
             // if the request was already passed to service, bind to
             // service and
@@ -676,13 +924,15 @@ public class SpiceManager implements Runnable {
         } catch (final InterruptedException e) {
             Ln.e(e, "Interrupted while removing listeners.");
         } finally {
+            allowDirectSends();
             lockSendRequestsToService.unlock();
         }
     }
 
     /**
      * Remove all listeners of a request that has not yet been passed to the
-     * {@link SpiceService}.
+     * {@link SpiceService}, or that has been sent to it but not yet notified
+     * as added.
      * @param request
      *            the request for which listeners must be unregistered.
      * @return a boolean indicating if the request could be found inside the
@@ -690,16 +940,23 @@ public class SpiceManager implements Runnable {
      *         already passed to the service.
      */
     private boolean removeListenersOfCachedRequestToLaunch(final SpiceRequest<?> request) {
-        synchronized (mapRequestToLaunchToRequestListener) {
-            for (final CachedSpiceRequest<?> cachedSpiceRequest : mapRequestToLaunchToRequestListener.keySet()) {
-                if (match(cachedSpiceRequest, request)) {
-                    final Set<RequestListener<?>> setRequestListeners = mapRequestToLaunchToRequestListener.get(cachedSpiceRequest);
-                    setRequestListeners.clear();
-                    return true;
-                }
-            }
+        final CachedSpiceRequest<?> cachedSpiceRequest = mapSpiceRequestToCachedSpiceRequest.get(request);
+        if (cachedSpiceRequest == null) {
+            return false;
+        }
+        final Set<RequestListener<?>> setRequestListeners = mapRequestToLaunchToRequestListener.get(cachedSpiceRequest);
+        if (setRequestListeners == null) {
             return false;
         }
+        // a request sent directly is known by the service before it is
+        // notified as added. Direct sends are excluded, it can't be in
+        // progress.
+        final SpiceService boundSpiceService = spiceService;
+        if (boundSpiceService != null && !setQueuedRequest.contains(cachedSpiceRequest)) {
+            boundSpiceService.dontNotifyRequestListenersForRequest(cachedSpiceRequest, setRequestListeners);
+        }
+        setRequestListeners.clear();
+        return true;
     }
 
     /**
@@ -711,19 +968,23 @@ public class SpiceManager implements Runnable {
      *            the request for which listeners must be unregistered.
      */
     private void removeListenersOfPendingCachedRequest(final SpiceRequest<?> request) throws InterruptedException {
+        final CachedSpiceRequest<?> cachedSpiceRequest = mapSpiceRequestToCachedSpiceRequest.get(request);
+        if (cachedSpiceRequest == null) {
+            return;
+        }
         synchronized (mapPendingRequestToRequestListener) {
-            for (final CachedSpiceRequest<?> cachedSpiceRequest : mapPendingRequestToRequestListener.keySet()) {
-                if (match(cachedSpiceRequest, request)) {
-                    waitForServiceToBeBound();
-                    if (spiceService == null) {
-                        return;
-                    }
-                    final Set<RequestListener<?>> setRequestListeners = mapPendingRequestToRequestListener.get(cachedSpiceRequest);
-                    spiceService.dontNotifyRequestListenersForRequest(cachedSpiceRequest, setRequestListeners);
-                    mapPendingRequestToRequestListener.remove(cachedSpiceRequest);
-                    break;
-                }
+            // only the request used as a key is known, not the ones that
+            // have been aggregated to it.
+            if (mapPendingRequestToPendingRequestKey.get(cachedSpiceRequest) != cachedSpiceRequest) {
+                return;
+            }
+            waitForServiceToBeBound();
+            if (spiceService == null) {
+                return;
             }
+            final Set<RequestListener<?>> setRequestListeners = mapPendingRequestToRequestListener.get(cachedSpiceRequest);
+            spiceService.dontNotifyRequestListenersForRequest(cachedSpiceRequest, setRequestListeners);
+            removePendingRequest(cachedSpiceRequest);
         }
     }
 
@@ -748,6 +1009,7 @@ public class SpiceManager implements Runnable {
      */
     protected void dontNotifyAnyRequestListenersInternal() {
         lockSendRequestsToService.lock();
+        excludeDirectSends();
         try {
             if (spiceService == null) {
                 return;
@@ -757,9 +1019,10 @@ public class SpiceManager implements Runnable {
                     for (final CachedSpiceRequest<?> cachedSpiceRequest : mapRequestToLaunchToRequestListener.keySet()) {
                         final Set<RequestListener<?>> setRequestListeners = mapRequestToLaunchToRequestListener.get(cachedSpiceRequest);
                         if (setRequestListeners != null) {
-                            Ln.d("Removing listeners of request to launch : " + cachedSpiceRequest.toString() + " : " + setRequestListeners.size());
+                            Ln.d("Removing listeners of request to launch : %s : %d", cachedSpiceRequest, setRequestListeners.size());
                             spiceService.dontNotifyRequestListenersForRequest(cachedSpiceRequest, setRequestListeners);
                         }
+                        unindexRequest(cachedSpiceRequest);
                     }
                 }
                 mapRequestToLaunchToRequestListener.clear();
@@ -770,6 +1033,7 @@ public class SpiceManager implements Runnable {
         } catch (final InterruptedException e) {
             Ln.e(e, "Interrupted while removing listeners.");
         } finally {
+            allowDirectSends();
             lockSendRequestsToService.unlock();
         }
     }
@@ -786,33 +1050,18 @@ public class SpiceManager implements Runnable {
 
                     final Set<RequestListener<?>> setRequestListeners = mapPendingRequestToRequestListener.get(cachedSpiceRequest);
                     if (setRequestListeners != null) {
-                        Ln.d("Removing listeners of pending request : " + cachedSpiceRequest.toString() + " : " + setRequestListeners.size());
+                        Ln.d("Removing listeners of pending request : %s : %d", cachedSpiceRequest, setRequestListeners.size());
                         spiceService.dontNotifyRequestListenersForRequest(cachedSpiceRequest, setRequestListeners);
                     }
+                    unindexRequest(cachedSpiceRequest);
                 }
                 mapPendingRequestToRequestListener.clear();
+                mapPendingRequestToPendingRequestKey.clear();
             }
         }
         Ln.v("Cleared listeners of all pending requests");
     }
 
-    /**
-     * Wether or not a given {@link CachedSpiceRequest} matches a
-     * {@link SpiceRequest}.
-     * @param cachedSpiceRequest
-     *            the request know by the {@link SpiceManager}.
-     * @param spiceRequest
-     *            the request that we wish to remove notification for.
-     * @return true if {@link CachedSpiceRequest} matches contentRequest.
-     */
-    private boolean match(final CachedSpiceRequest<?> cachedSpiceRequest, final SpiceRequest<?> spiceRequest) {
-        if (spiceRequest instanceof CachedSpiceRequest) {
-            return spiceRequest == cachedSpiceRequest;
-        } else {
-            return cachedSpiceRequest.getSpiceRequest() == spiceRequest;
-        }
-    }
-
     // ============================================================================================
     // PUBLIC EXPOSED METHODS : content service driving.
     // ============================================================================================
@@ -1017,18 +1266,101 @@ public class SpiceManager implements Runnable {
             if (listeners == null) {
                 listeners = Collections.synchronizedSet(new HashSet<RequestListener<?>>());
                 this.mapRequestToLaunchToRequestListener.put(cachedSpiceRequest, listeners);
+                indexRequest(cachedSpiceRequest);
             }
             listeners.add(requestListener);
         }
 
     }
 
+    /**
+     * Makes a request retrievable, in constant time, by itself or by the
+     * {@link SpiceRequest} it wraps.
+     * @param cachedSpiceRequest
+     *            a request that is a key of
+     *            {@link #mapRequestToLaunchToRequestListener} or
+     *            {@link #mapPendingRequestToRequestListener}.
+     */
+    private void indexRequest(final CachedSpiceRequest<?> cachedSpiceRequest) {
+        synchronized (mapSpiceRequestToCachedSpiceRequest) {
+            mapSpiceRequestToCachedSpiceRequest.put(cachedSpiceRequest, cachedSpiceRequest);
+            mapSpiceRequestToCachedSpiceRequest.put(cachedSpiceRequest.getSpiceRequest(), cachedSpiceRequest);
+        }
+    }
+
+    /**
+     * Reverts {@link #indexRequest(CachedSpiceRequest)}. Entries that have
+     * been overridden by another request wrapping the same
+     * {@link SpiceRequest} are left untouched.
+     * @param cachedSpiceRequest
+     *            a request that is no longer a key of
+     *            {@link #mapRequestToLaunchToRequestListener} nor
+     *            {@link #mapPendingRequestToRequestListener}.
+     */
+    private void unindexRequest(final CachedSpiceRequest<?> cachedSpiceRequest) {
+        synchronized (mapSpiceRequestToCachedSpiceRequest) {
+            if (mapSpiceRequestToCachedSpiceRequest.get(cachedSpiceRequest) == cachedSpiceRequest) {
+                mapSpiceRequestToCachedSpiceRequest.remove(cachedSpiceRequest);
+            }
+            final SpiceRequest<?> spiceRequest = cachedSpiceRequest.getSpiceRequest();
+            if (mapSpiceRequestToCachedSpiceRequest.get(spiceRequest) == cachedSpiceRequest) {
+                mapSpiceRequestToCachedSpiceRequest.remove(spiceRequest);
+            }
+        }
+    }
+
+    /**
+     * Adds a request to {@link #mapPendingRequestToRequestListener} unless an
+     * equal request is already pending. Must be called while holding the lock
+     * of {@link #mapPendingRequestToRequestListener}.
+     * @return the listeners of the pending request equal to
+     *         cachedSpiceRequest.
+     */
+    private Set<RequestListener<?>> addPendingRequestIfAbsent(final CachedSpiceRequest<?> cachedSpiceRequest, final Set<RequestListener<?>> listeners) {
+        final Set<RequestListener<?>> pendingListeners = mapPendingRequestToRequestListener.get(cachedSpiceRequest);
+        if (pendingListeners != null) {
+            return pendingListeners;
+        }
+        mapPendingRequestToRequestListener.put(cachedSpiceRequest, listeners);
+        mapPendingRequestToPendingRequestKey.put(cachedSpiceRequest, cachedSpiceRequest);
+        indexRequest(cachedSpiceRequest);
+        return listeners;
+    }
+
+    /**
+     * Removes the pending request equal to cachedSpiceRequest. Must be called
+     * while holding the lock of {@link #mapPendingRequestToRequestListener}.
+     */
+    private void removePendingRequest(final CachedSpiceRequest<?> cachedSpiceRequest) {
+        mapPendingRequestToRequestListener.remove(cachedSpiceRequest);
+        final CachedSpiceRequest<?> pendingRequestKey = mapPendingRequestToPendingRequestKey.remove(cachedSpiceRequest);
+        if (pendingRequestKey != null) {
+            unindexRequest(pendingRequestKey);
+        }
+    }
+
     // -------------------------------
     // -------Listeners notification
     // -------------------------------
 
     /**
-     * Dumps request processor state.
+     * Takes a snapshot of the state of the {@link SpiceService}. Unlike
+     * {@link #dumpState()}, it doesn't wait for the service nor lock the
+     * requests of this {@link SpiceManager}, and can be polled from the UI
+     * thread.
+     * @return the current state of the service, null if it is not bound yet.
+     */
+    public SpiceServiceSnapshot getSpiceServiceSnapshot() {
+        final SpiceService currentSpiceService = spiceService;
+        if (currentSpiceService == null) {
+            return null;
+        }
+        return currentSpiceService.getSnapshot();
+    }
+
+    /**
+     * Logs the state of this {@link SpiceManager} and of its
+     * {@link SpiceService}, at verbose level.
      */
     public void dumpState() {
 
@@ -1047,6 +1379,7 @@ public class SpiceManager implements Runnable {
                     dumpMap(stringBuilder, mapPendingRequestToRequestListener);
 
                     stringBuilder.append(']');
+                    Ln.v(stringBuilder.toString());
 
                     waitForServiceToBeBound();
                     if (spiceService == null) {
@@ -1085,7 +1418,7 @@ public class SpiceManager implements Runnable {
                 if (service instanceof SpiceServiceBinder) {
                     spiceService = ((SpiceServiceBinder) service).getSpiceService();
                     spiceService.addSpiceServiceListener(removerSpiceServiceListener);
-                    Ln.d("Bound to service : " + spiceService.getClass().getSimpleName());
+                    Ln.d("Bound to service : %s", spiceService.getClass().getSimpleName());
                     conditionServiceBound.signalAll();
                 } else {
                     Ln.e("Unexpected IBinder service at onServiceConnected :%s ", service.getClass().getName());
@@ -1101,7 +1434,8 @@ public class SpiceManager implements Runnable {
             lockAcquireService.lock();
             try {
                 if (spiceService != null) {
-                    Ln.d("Unbound from service start : " + spiceService.getClass().getSimpleName());
+                    Ln.d("Unbound from service start : %s", spiceService.getClass().getSimpleName());
+                    isSendingRequestsDirectly = false;
                     spiceService = null;
                     isUnbinding = false;
                     conditionServiceUnbound.signalAll();
@@ -1120,33 +1454,49 @@ public class SpiceManager implements Runnable {
         public void onRequestAdded(CachedSpiceRequest<?> cachedSpiceRequest, RequestProcessingContext requestProcessingContext) {
             Set<RequestListener<?>> listeners = mapRequestToLaunchToRequestListener.remove(cachedSpiceRequest);
             if (listeners != null) {
-                mapPendingRequestToRequestListener.put(cachedSpiceRequest, listeners);
+                synchronized (mapPendingRequestToRequestListener) {
+                    if (addPendingRequestIfAbsent(cachedSpiceRequest, listeners) != listeners) {
+                        mapPendingRequestToRequestListener.put(cachedSpiceRequest, listeners);
+                        unindexRequestIfNotPendingKey(cachedSpiceRequest);
+                    }
+                }
             }
         }
 
         @Override
         public void onRequestAggregated(CachedSpiceRequest<?> cachedSpiceRequest, RequestProcessingContext requestProcessingContext) {
-            Set<RequestListener<?>> listeners = mapPendingRequestToRequestListener.get(cachedSpiceRequest);
-            if (listeners == null) {
-                listeners = Collections.synchronizedSet(new HashSet<RequestListener<?>>());
-                mapPendingRequestToRequestListener.put(cachedSpiceRequest, listeners);
-            }
-            Set<RequestListener<?>> listenersToLaunch = mapRequestToLaunchToRequestListener.remove(cachedSpiceRequest);
-            if (listenersToLaunch != null) {
-                synchronized (mapPendingRequestToRequestListener) {
+            synchronized (mapPendingRequestToRequestListener) {
+                final Set<RequestListener<?>> listeners = addPendingRequestIfAbsent(cachedSpiceRequest, Collections.synchronizedSet(new HashSet<RequestListener<?>>()));
+                Set<RequestListener<?>> listenersToLaunch = mapRequestToLaunchToRequestListener.remove(cachedSpiceRequest);
+                if (listenersToLaunch != null) {
                     listeners.addAll(listenersToLaunch);
                 }
+                unindexRequestIfNotPendingKey(cachedSpiceRequest);
             }
         }
 
         @Override
         public void onRequestNotFound(CachedSpiceRequest<?> cachedSpiceRequest, RequestProcessingContext requestProcessingContext) {
-            mapRequestToLaunchToRequestListener.remove(cachedSpiceRequest);
+            if (mapRequestToLaunchToRequestListener.remove(cachedSpiceRequest) != null) {
+                unindexRequest(cachedSpiceRequest);
+            }
         }
 
         @Override
         public void onRequestProcessed(final CachedSpiceRequest<?> cachedSpiceRequest, RequestProcessingContext requestProcessingContext) {
-            mapPendingRequestToRequestListener.remove(cachedSpiceRequest);
+            synchronized (mapPendingRequestToRequestListener) {
+                removePendingRequest(cachedSpiceRequest);
+            }
+        }
+
+        /**
+         * A request that has been aggregated to an other pending request can't
+         * be looked up anymore.
+         */
+        private void unindexRequestIfNotPendingKey(CachedSpiceRequest<?> cachedSpiceRequest) {
+            if (mapPendingRequestToPendingRequestKey.get(cachedSpiceRequest) != cachedSpiceRequest) {
+                unindexRequest(cachedSpiceRequest);
+            }
         }
     }
 
@@ -1167,12 +1517,12 @@ public class SpiceManager implements Runnable {
         if (context != null) {
             checkServiceIsProperlyDeclaredInAndroidManifest(context);
             final Intent intent = new Intent(context, spiceServiceClass);
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 context.startForegroundService(intent);
             } else {
                 context.startService(intent);
             }
-                        success = true;
+            success = true;
         }
 
         return success;
@@ -1204,8 +1554,27 @@ public class SpiceManager implements Runnable {
         } catch (Exception t) {
             // this should not happen in apps, but can happen during tests.
             Ln.d(t, "Binding to service failed.");
-            Ln.d("Context is" + context);
-            Ln.d("ApplicationContext is " + context.getApplicationContext());
+            Ln.d("Context is %s", context);
+            Ln.d("ApplicationContext is %s", context.getApplicationContext());
+        } finally {
+            lockSendRequestsToService.unlock();
+            lockAcquireService.unlock();
+        }
+    }
+
+    /**
+     * Attaches to the instance of {@link #spiceServiceClass} hosted in process,
+     * as if it had been bound.
+     */
+    private void attachToInProcessService(final Context context) {
+        final SpiceService inProcessSpiceService = SpiceService.getInProcessInstance(spiceServiceClass, context);
+        lockAcquireService.lock();
+        lockSendRequestsToService.lock();
+        try {
+            spiceService = inProcessSpiceService;
+            spiceService.addSpiceServiceListener(removerSpiceServiceListener);
+            Ln.d("Attached to service in process : %s", spiceService.getClass().getSimpleName());
+            conditionServiceBound.signalAll();
         } finally {
             lockSendRequestsToService.unlock();
             lockAcquireService.unlock();
@@ -1214,27 +1583,35 @@ public class SpiceManager implements Runnable {
 
     private void unbindFromService() {
         Context context = getContextReference();
-        if (context == null) {
+        if (context == null && !isInProcess) {
             return;
         }
 
         lockAcquireService.lock();
         // fix issue 144 and 86
         lockSendRequestsToService.lock();
+        excludeDirectSends();
         try {
             Ln.v("Unbinding from service start.");
             if (spiceService != null && !isUnbinding) {
                 isUnbinding = true;
+                isSendingRequestsDirectly = false;
                 spiceService.removeSpiceServiceListener(removerSpiceServiceListener);
-                Ln.v("Unbinding from service.");
-                context.getApplicationContext().unbindService(this.spiceServiceConnection);
-                Ln.d("Unbound from service : " + spiceService.getClass().getSimpleName());
+                if (isInProcess) {
+                    Ln.v("Detaching from service in process.");
+                    conditionServiceUnbound.signalAll();
+                } else {
+                    Ln.v("Unbinding from service.");
+                    context.getApplicationContext().unbindService(this.spiceServiceConnection);
+                }
+                Ln.d("Unbound from service : %s", spiceService.getClass().getSimpleName());
                 spiceService = null;
                 isUnbinding = false;
             }
         } catch (final Exception e) {
             Ln.e(e, "Could not unbind from service.");
         } finally {
+            allowDirectSends();
             lockSendRequestsToService.unlock();
             lockAcquireService.unlock();
         }
@@ -4,10 +4,15 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import roboguice.util.temp.Ln;
 
@@ -15,10 +20,13 @@ import android.app.Application;
 import android.app.Notification;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 
 import com.octo.android.robospice.networkstate.DefaultNetworkStateChecker;
 import com.octo.android.robospice.networkstate.NetworkStateChecker;
@@ -27,18 +35,25 @@ import com.octo.android.robospice.persistence.DurationInMillis;
 import com.octo.android.robospice.persistence.exception.CacheCreationException;
 import com.octo.android.robospice.persistence.exception.CacheLoadingException;
 import com.octo.android.robospice.persistence.exception.CacheSavingException;
+import com.octo.android.robospice.priority.AdaptivePoolSizer;
+import com.octo.android.robospice.priority.AdaptivePoolSizer.PoolSizeListener;
+import com.octo.android.robospice.priority.HostAwareScheduler;
 import com.octo.android.robospice.priority.PriorityThreadPoolExecutor;
+import com.octo.android.robospice.priority.ThreadPoolStatistics;
 import com.octo.android.robospice.request.CachedSpiceRequest;
 import com.octo.android.robospice.request.DefaultRequestRunner;
+import com.octo.android.robospice.request.DefaultRequestRunner.Stage;
 import com.octo.android.robospice.request.RequestProcessor;
 import com.octo.android.robospice.request.RequestProcessorListener;
 import com.octo.android.robospice.request.RequestProgressManager;
 import com.octo.android.robospice.request.RequestRunner;
 import com.octo.android.robospice.request.listener.RequestListener;
+import com.octo.android.robospice.request.listener.RequestTimingListener;
 import com.octo.android.robospice.request.listener.SpiceServiceListener;
 import com.octo.android.robospice.request.notifier.DefaultRequestListenerNotifier;
 import com.octo.android.robospice.request.notifier.RequestListenerNotifier;
 import com.octo.android.robospice.request.notifier.SpiceServiceListenerNotifier;
+import com.octo.android.robospice.request.timing.RequestTimingRecorder;
 
 /**
  * This is an abstract class used to manage the cache and provide web service
@@ -64,21 +79,34 @@ public abstract class SpiceService extends Service {
     protected static final int DEFAULT_NOTIFICATION_ID = 42;
 
     protected static final int DEFAULT_THREAD_COUNT = 1;
+    /** Default implies cache is read and written by the threads processing requests. */
+    protected static final int DEFAULT_CACHE_THREAD_COUNT = 0;
     protected static final int DEFAULT_THREAD_PRIORITY = Thread.MIN_PRIORITY;
     /** Default in TimeUnit.NANOSECONDS implies core threads are not disposed when idle.*/
     protected static final int DEFAULT_THREAD_KEEP_ALIVE_TIME = 0;
+    /** Default in ms implies priorities of waiting requests don't change. */
+    protected static final long DEFAULT_PRIORITY_AGING_PERIOD = 0;
+    /** Default implies requests are not limited per host. */
+    protected static final int DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST = 0;
+
+    protected static final long DEFAULT_IN_PROCESS_FOREGROUND_DELAY = DurationInMillis.ONE_SECOND;
 
     private static final boolean DEFAULT_FAIL_ON_CACHE_ERROR = false;
 
     // ----------------------------------
     // ATTRIBUTES
     // ----------------------------------
+
+    /** Services hosted in process, by class. Guarded by SpiceService.class. */
+    private static final Map<Class<? extends SpiceService>, SpiceService> MAP_CLASS_TO_IN_PROCESS_SPICE_SERVICE = new HashMap<Class<? extends SpiceService>, SpiceService>();
+
     private SpiceServiceBinder mSpiceServiceBinder;
 
     /** Responsible for processing requests. */
     private RequestProcessor requestProcessor;
 
-    private int currentPendingRequestCount = 0;
+    /** Incremented by the threads that send requests. */
+    private final AtomicInteger currentPendingRequestCount = new AtomicInteger();
 
     private boolean isBound;
 
@@ -87,8 +115,44 @@ public abstract class SpiceService extends Service {
     /** Responsible for persisting data. */
     private CacheManager cacheManager;
 
+    /** Collects the timings of requests, null if timing is disabled. */
+    private RequestTimingRecorder requestTimingRecorder;
+
     private boolean isCreated;
 
+    /**
+     * Whether or not this instance is hosted directly in the application
+     * process, instead of being created and bound by Android.
+     */
+    private boolean isInProcess;
+
+    /** Guards the state of {@link InProcessForegroundService}. */
+    private final Object inProcessForegroundLock = new Object();
+
+    /**
+     * Whether or not {@link InProcessForegroundService} is started, when this
+     * instance is hosted in process. Guarded by inProcessForegroundLock.
+     */
+    private boolean isInProcessForeground;
+
+    /**
+     * Whether or not requests are pending, when this instance is hosted in
+     * process. Guarded by inProcessForegroundLock.
+     */
+    private boolean hasInProcessPendingRequests;
+
+    /**
+     * Incremented each time requests start being pending. Guarded by
+     * inProcessForegroundLock.
+     */
+    private int inProcessBusyPeriod;
+
+    /**
+     * Starts and stops {@link InProcessForegroundService} on the main thread.
+     * Guarded by inProcessForegroundLock.
+     */
+    private Handler inProcessForegroundHandler;
+
     // ----------------------------------
     // CONSTRUCTOR
     // ----------------------------------
@@ -100,22 +164,67 @@ public abstract class SpiceService extends Service {
         mSpiceServiceBinder = new SpiceServiceBinder(this);
     }
 
+    /**
+     * Gets the instance of a {@link SpiceService} hosted directly in the
+     * application process, and shared by all {@link SpiceManager}s started
+     * in process. It is created on first call, without Android : it is never
+     * bound nor started, and it never stops. It doesn't need to be declared
+     * in AndroidManifest.xml. As Android doesn't know it, it can't be promoted
+     * to foreground : see {@link #isInProcessForegroundEnabled()} for an
+     * equivalent. Outside of Android, it can also be hosted in a plain JVM,
+     * provided JVM implementations of the Android classes it uses are on the
+     * classpath, as robospice-benchmarks does.
+     * @param spiceServiceClass
+     *            the class of the service, it must have a public default
+     *            constructor.
+     * @param context
+     *            any context of the application.
+     * @return the instance of spiceServiceClass hosted in process.
+     */
+    static synchronized SpiceService getInProcessInstance(final Class<? extends SpiceService> spiceServiceClass, final Context context) {
+        SpiceService spiceService = MAP_CLASS_TO_IN_PROCESS_SPICE_SERVICE.get(spiceServiceClass);
+        if (spiceService == null) {
+            try {
+                spiceService = spiceServiceClass.getDeclaredConstructor().newInstance();
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException("Impossible to create service of class : " + spiceServiceClass.getName(), e);
+            } catch (InvocationTargetException e) {
+                throw new RuntimeException("Impossible to create service of class : " + spiceServiceClass.getName(), e);
+            } catch (InstantiationException e) {
+                throw new RuntimeException("Impossible to create service of class : " + spiceServiceClass.getName(), e);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Impossible to create service of class : " + spiceServiceClass.getName(), e);
+            }
+            spiceService.isInProcess = true;
+            spiceService.attachBaseContext(context.getApplicationContext());
+            spiceService.onCreate();
+            if (!spiceService.isCreated) {
+                throw new RuntimeException("Impossible to create service of class : " + spiceServiceClass.getName() + ", see logs.");
+            }
+            MAP_CLASS_TO_IN_PROCESS_SPICE_SERVICE.put(spiceServiceClass, spiceService);
+            Ln.d("SpiceService instance created in process.");
+        }
+        return spiceService;
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
-        
-        startForeground(1,new Notification());
+
+        if (!isInProcess) {
+            startForeground(1, new Notification());
+        }
 
         try {
-            cacheManager = createCacheManager(getApplication());
+            cacheManager = createCacheManager(getSpiceApplication());
         } catch (CacheCreationException e) {
             Ln.e(e);
-            stopSelf();
+            stopSelfIfNotInProcess();
             return;
         }
         if (cacheManager == null) {
             Ln.e(new CacheCreationException("createCacheManager() can't create a null cacheManager"));
-            stopSelf();
+            stopSelfIfNotInProcess();
             return;
         }
 
@@ -130,7 +239,11 @@ public abstract class SpiceService extends Service {
         requestProcessor = createRequestProcessor(cacheManager, requestProgressManager, requestRunner);
         requestProcessor.setFailOnCacheError(DEFAULT_FAIL_ON_CACHE_ERROR);
 
-        notification = createDefaultNotification();
+        // a service hosted in process can't be promoted to foreground, it
+        // uses InProcessForegroundService instead, if enabled.
+        if (!isInProcess || isInProcessForegroundEnabled()) {
+            notification = createDefaultNotification();
+        }
 
         isCreated = true;
         Ln.d("SpiceService instance created.");
@@ -142,12 +255,28 @@ public abstract class SpiceService extends Service {
     }
 
     protected RequestRunner createRequestRunner(final ExecutorService executorService, final NetworkStateChecker networkStateChecker, RequestProgressManager requestProgressManager) {
-        return new DefaultRequestRunner(getApplicationContext(), cacheManager, executorService, requestProgressManager, networkStateChecker);
+        final DefaultRequestRunner requestRunner = new DefaultRequestRunner(getApplicationContext(), cacheManager, executorService, requestProgressManager, networkStateChecker);
+        requestRunner.setCacheExecutorServices(getCacheExecutorService(), getCacheExecutorService());
+        if (isThreadCountAdaptive() && executorService instanceof ThreadPoolExecutor) {
+            final AdaptivePoolSizer adaptivePoolSizer = new AdaptivePoolSizer((ThreadPoolExecutor) executorService, getCoreThreadCount(), getMaximumThreadCount());
+            adaptivePoolSizer.setPoolSizeListener(getPoolSizeListener());
+            requestRunner.setAdaptivePoolSizer(adaptivePoolSizer);
+        }
+        if (getMaxConcurrentRequestsPerHost() > 0 && executorService instanceof PriorityThreadPoolExecutor) {
+            requestRunner.setHostAwareScheduler(new HostAwareScheduler((PriorityThreadPoolExecutor) executorService, getMaxConcurrentRequestsPerHost()));
+        }
+        if (isRequestTimingEnabled()) {
+            requestTimingRecorder = new RequestTimingRecorder();
+            requestRunner.setRequestTimingRecorder(requestTimingRecorder);
+        }
+        return requestRunner;
     }
 
     private RequestProgressManager createRequestProgressManager(final RequestProcessorListener requestProcessorListener, final RequestListenerNotifier progressReporter,
         final SpiceServiceListenerNotifier spiceServiceListenerNotifier) {
-        return new RequestProgressManager(requestProcessorListener, progressReporter, spiceServiceListenerNotifier);
+        final RequestProgressManager requestProgressManager = new RequestProgressManager(requestProcessorListener, progressReporter, spiceServiceListenerNotifier);
+        requestProgressManager.setProgressThrottling(getProgressMinInterval(), getProgressMinStep());
+        return requestProgressManager;
     }
 
     @Override
@@ -243,6 +372,7 @@ public abstract class SpiceService extends Service {
             PriorityThreadPoolExecutor executor = PriorityThreadPoolExecutor
                 .getPriorityExecutor(coreThreadCount, maxThreadCount,
                     threadPriority);
+            executor.setPriorityAgingPeriod(getPriorityAgingPeriod());
             executor.setKeepAliveTime(getKeepAliveTime(), TimeUnit.NANOSECONDS);
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
                 executor.allowCoreThreadTimeOut(getKeepAliveTime() != 0 && isCoreThreadDisposable());
@@ -251,6 +381,32 @@ public abstract class SpiceService extends Service {
         }
     }
 
+    /**
+     * Factory method to create the {@link ExecutorService}s that will be used
+     * to read and write cache, so that requests found in cache don't wait for
+     * network requests. It is invoked once for reading and once for writing.
+     * The default implementation of this method will create an
+     * {@link ExecutorService} with the number of threads returned by
+     * {@link #getCacheThreadCount()}, or return null if it is 0 : cache is
+     * then read and written by the threads of {@link #getExecutorService()}.
+     * This method will have no effect if you override
+     * {@link #createRequestRunner}.
+     * @return the {@link ExecutorService} to be used to read or write cache.
+     */
+    protected ExecutorService getCacheExecutorService() {
+        final int cacheThreadCount = getCacheThreadCount();
+        if (cacheThreadCount <= 0) {
+            return null;
+        }
+        PriorityThreadPoolExecutor executor = PriorityThreadPoolExecutor.getPriorityExecutor(cacheThreadCount, getThreadPriority());
+        executor.setPriorityAgingPeriod(getPriorityAgingPeriod());
+        executor.setKeepAliveTime(getKeepAliveTime(), TimeUnit.NANOSECONDS);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+            executor.allowCoreThreadTimeOut(getKeepAliveTime() != 0 && isCoreThreadDisposable());
+        }
+        return executor;
+    }
+
     /**
      * Creates the SpiceServiceListenerNotifier.
      * @return {@link SpiceServiceListenerNotifier}
@@ -346,6 +502,20 @@ public abstract class SpiceService extends Service {
         return getThreadCount();
     }
 
+    /**
+     * Override this method to read cache with dedicated threads, and write
+     * cache with other dedicated threads, so that requests found in cache
+     * don't wait behind network requests. This adds twice this number of
+     * threads to the service. This method will have no effect if you override
+     * {@link #getCacheExecutorService()}.
+     * @return the number of threads used to read, and to write, cache. 0 to
+     *         read and write cache with the threads used to process requests.
+     *         Defaults to {@link #DEFAULT_CACHE_THREAD_COUNT}.
+     */
+    public int getCacheThreadCount() {
+        return DEFAULT_CACHE_THREAD_COUNT;
+    }
+
     /**
      * Override this method to set the keep alive time for core threads
      * {@link #getExecutorService()}.
@@ -377,12 +547,161 @@ public abstract class SpiceService extends Service {
         return DEFAULT_THREAD_PRIORITY;
     }
 
+    /**
+     * Override this method to let waiting requests gain one priority level
+     * every period, so that requests of low priority are executed even under a
+     * steady load of requests of higher priority. A level is the difference
+     * between {@link com.octo.android.robospice.request.SpiceRequest#PRIORITY_HIGH}
+     * and {@link com.octo.android.robospice.request.SpiceRequest#PRIORITY_NORMAL}.
+     * Requests of the same priority are always executed in the order they
+     * were added. This method will have no effect if you override
+     * {@link #getExecutorService()}.
+     * @return the time, in ms, after which a waiting request gains one
+     *         priority level. Defaults to {@link #DEFAULT_PRIORITY_AGING_PERIOD}
+     *         : aging is disabled.
+     */
+    public long getPriorityAgingPeriod() {
+        return DEFAULT_PRIORITY_AGING_PERIOD;
+    }
+
+    /**
+     * Override this method to limit the number of requests of the same host
+     * that load data from network at the same time, so that a burst of
+     * requests for one host doesn't occupy every thread. Requests of the same
+     * priority are executed round robin between hosts. Only requests that have
+     * a host key are limited, see
+     * {@link com.octo.android.robospice.request.SpiceRequest#setHostKey(Object)}
+     * .
+     * This method will have no effect if you override
+     * {@link #createRequestRunner} or {@link #getExecutorService()}.
+     * @return the maximum number of requests processed at the same time per
+     *         host. Defaults to {@link #DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST}
+     *         : requests are not limited.
+     */
+    public int getMaxConcurrentRequestsPerHost() {
+        return DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST;
+    }
+
+    /**
+     * Override this method to change how often listeners are notified of the
+     * progress of requests that load data from network. Status changes and
+     * completion are always notified.
+     * @return the minimum time between 2 progress updates of a request, in
+     *         ms. 0 notifies all updates. Defaults to
+     *         {@link RequestProgressManager#DEFAULT_PROGRESS_MIN_INTERVAL}.
+     */
+    public long getProgressMinInterval() {
+        return RequestProgressManager.DEFAULT_PROGRESS_MIN_INTERVAL;
+    }
+
+    /**
+     * Override this method to change the progress change of a request that is
+     * notified immediately, whatever {@link #getProgressMinInterval()}.
+     * @return a progress change between 0 and 1. Defaults to
+     *         {@link RequestProgressManager#DEFAULT_PROGRESS_MIN_STEP}.
+     */
+    public float getProgressMinStep() {
+        return RequestProgressManager.DEFAULT_PROGRESS_MIN_STEP;
+    }
+
+    /**
+     * Override this method to let the number of threads adapt to the
+     * behaviour of requests, between {@link #getCoreThreadCount()} and
+     * {@link #getMaximumThreadCount()}. The pool grows when requests wait for a
+     * thread while other threads are blocked on network, and shrinks when
+     * requests are mostly CPU bound (cache reads and writes). See
+     * {@link AdaptivePoolSizer}. This method will have no effect if you
+     * override {@link #createRequestRunner}.
+     * @return whether the number of threads is adaptive or not
+     *         (DEFAULT=false).
+     */
+    public boolean isThreadCountAdaptive() {
+        return false;
+    }
+
+    /**
+     * Override this method to be notified of the decisions taken when the
+     * number of threads is adaptive.
+     * @return a listener of the evaluations of the number of threads. Defaults
+     *         to null.
+     * @see #isThreadCountAdaptive()
+     */
+    protected PoolSizeListener getPoolSizeListener() {
+        return null;
+    }
+
+    /**
+     * Override this method to enable the timing of requests. When enabled,
+     * the time each request spends waiting for a thread, reading cache,
+     * loading data from network, writing cache and notifying listeners is
+     * aggregated into latency histograms per request class, dumped by
+     * {@link #dumpState()}, and passed on to {@link RequestTimingListener}s.
+     * This method will have no effect if you override
+     * {@link #createRequestRunner}.
+     * @return whether or not requests are timed (DEFAULT=false).
+     */
+    public boolean isRequestTimingEnabled() {
+        return false;
+    }
+
+    /**
+     * Override this method to keep the application process in foreground while
+     * this service, hosted in process, has pending requests. It is the
+     * equivalent of the foreground promotion of a bound service : this
+     * service starts {@link InProcessForegroundService} with the notification
+     * created by {@link #createDefaultNotification()} once requests have been
+     * pending for {@link #getInProcessForegroundDelay()}, and stops it when
+     * all requests are complete.
+     * {@link InProcessForegroundService} must then be declared in
+     * AndroidManifest.xml. This method has no effect if this service is not
+     * hosted in process.
+     * @return whether or not this service keeps the process in foreground
+     *         when hosted in process (DEFAULT=false).
+     */
+    public boolean isInProcessForegroundEnabled() {
+        return false;
+    }
+
+    /**
+     * Override this method to change how long requests must be pending before
+     * {@link InProcessForegroundService} is started. Short requests, such as
+     * cache hits, complete before and never show a notification. This method
+     * has no effect if {@link #isInProcessForegroundEnabled()} returns false.
+     * @return the delay, in ms, before this service, hosted in process, keeps
+     *         the process in foreground. Defaults to
+     *         {@link #DEFAULT_IN_PROCESS_FOREGROUND_DELAY}.
+     */
+    public long getInProcessForegroundDelay() {
+        return DEFAULT_IN_PROCESS_FOREGROUND_DELAY;
+    }
+
     public void addRequest(final CachedSpiceRequest<?> request, final Set<RequestListener<?>> listRequestListener) {
-        currentPendingRequestCount++;
+        currentPendingRequestCount.incrementAndGet();
         requestProcessor.addRequest(request, listRequestListener);
         showNotificationIfNotBoundAndHasPendingRequestsOtherwiseHideNotification();
     }
 
+    /**
+     * Adds several requests at once. This is used by {@link SpiceManager}s to
+     * send the requests they received before being bound to the service.
+     * @param requests
+     *            the requests to add, in the order they will be added.
+     * @param mapRequestToRequestListener
+     *            the listeners of each request, looked up using the request
+     *            itself. Can be null if no listener has to be notified.
+     */
+    public void addRequests(final Collection<CachedSpiceRequest<?>> requests, final Map<CachedSpiceRequest<?>, Set<RequestListener<?>>> mapRequestToRequestListener) {
+        for (final CachedSpiceRequest<?> request : requests) {
+            currentPendingRequestCount.incrementAndGet();
+            if (mapRequestToRequestListener == null) {
+                requestProcessor.addRequest(request, null);
+            } else {
+                requestProcessor.addRequest(request, mapRequestToRequestListener.get(request));
+            }
+        }
+        showNotificationIfNotBoundAndHasPendingRequestsOtherwiseHideNotification();
+    }
+
     public boolean removeDataFromCache(final Class<?> clazz, final Object cacheKey) {
         return requestProcessor.removeDataFromCache(clazz, cacheKey);
     }
@@ -464,8 +783,11 @@ public abstract class SpiceService extends Service {
 
         @Override
         public void allRequestComplete() {
-            currentPendingRequestCount = 0;
+            currentPendingRequestCount.set(0);
             stopIfNotBoundAndHasNoPendingRequests();
+            if (isInProcess) {
+                showNotificationIfNotBoundAndHasPendingRequestsOtherwiseHideNotification();
+            }
         }
     }
 
@@ -481,8 +803,39 @@ public abstract class SpiceService extends Service {
         }
     }
 
+    /**
+     * Logs the state of this service, including the requests in progress and
+     * their listeners. Use {@link #getSnapshot()} to inspect the state
+     * periodically.
+     */
     public void dumpState() {
-        Ln.v(requestProcessor.toString());
+        if (Ln.isVerboseEnabled()) {
+            Ln.v(requestProcessor.toString());
+            Ln.v(getSnapshot().toString());
+        }
+    }
+
+    /**
+     * Takes a snapshot of the state of this service. It neither locks the
+     * requests in progress nor accesses the disk, and can be invoked
+     * frequently from any thread, including the UI thread.
+     * @return the current state of this service.
+     */
+    public SpiceServiceSnapshot getSnapshot() {
+        final Map<Stage, ThreadPoolStatistics> mapStageToThreadPoolStatistics = new EnumMap<Stage, ThreadPoolStatistics>(Stage.class);
+        int pendingRetryCount = 0;
+        if (requestProcessor.getRequestRunner() instanceof DefaultRequestRunner) {
+            final DefaultRequestRunner requestRunner = (DefaultRequestRunner) requestProcessor.getRequestRunner();
+            for (final Stage stage : Stage.values()) {
+                final ThreadPoolStatistics threadPoolStatistics = requestRunner.getThreadPoolStatistics(stage);
+                if (threadPoolStatistics != null) {
+                    mapStageToThreadPoolStatistics.put(stage, threadPoolStatistics);
+                }
+            }
+            pendingRetryCount = requestRunner.getPendingRetryCount();
+        }
+        return new SpiceServiceSnapshot(requestProcessor.getRequestCountPerStatus(), requestProcessor.getProcessableRequestCount(),
+            requestProcessor.getAggregatedRequestCount(), mapStageToThreadPoolStatistics, pendingRetryCount, requestProcessor.getCacheManager().getCacheStatistics());
     }
 
     public void addSpiceServiceListener(final SpiceServiceListener spiceServiceListener) {
@@ -493,20 +846,68 @@ public abstract class SpiceService extends Service {
         requestProcessor.removeSpiceServiceListener(spiceServiceListener);
     }
 
+    /**
+     * @param requestTimingListener
+     *            will be notified of the timings of each attempt to process a
+     *            request. Has no effect if requests are not timed, see
+     *            {@link #isRequestTimingEnabled()}.
+     */
+    public void addRequestTimingListener(final RequestTimingListener requestTimingListener) {
+        if (requestTimingRecorder != null) {
+            requestTimingRecorder.addRequestTimingListener(requestTimingListener);
+        }
+    }
+
+    public void removeRequestTimingListener(final RequestTimingListener requestTimingListener) {
+        if (requestTimingRecorder != null) {
+            requestTimingRecorder.removeRequestTimingListener(requestTimingListener);
+        }
+    }
+
+    /** @return the timings of requests, null if they are not timed. */
+    public RequestTimingRecorder getRequestTimingRecorder() {
+        return requestTimingRecorder;
+    }
+
     private void stopIfNotBoundAndHasNoPendingRequests() {
-        Ln.v("Pending requests : " + currentPendingRequestCount);
-        if (currentPendingRequestCount == 0 && !isBound) {
+        if (Ln.isVerboseEnabled()) {
+            Ln.v("Pending requests : %d", currentPendingRequestCount.get());
+        }
+        // a request may have been added since all requests completed.
+        if (currentPendingRequestCount.get() == 0 && !isBound && requestProcessor.getPendingRequestCount() == 0) {
+            stopSelfIfNotInProcess();
+        }
+    }
+
+    private void stopSelfIfNotInProcess() {
+        if (!isInProcess) {
             stopSelf();
         }
     }
 
+    /** @return whether or not this instance is hosted in process. */
+    public boolean isInProcess() {
+        return isInProcess;
+    }
+
+    private Application getSpiceApplication() {
+        // Android doesn't attach an application to services hosted in process.
+        return isInProcess ? (Application) getApplicationContext() : getApplication();
+    }
+
     private void showNotificationIfNotBoundAndHasPendingRequestsOtherwiseHideNotification() {
         // http://stackoverflow.com/a/13359680/693752
         if (notification == null || isJUnit) {
             return;
         }
-        Ln.v("Pending requests : " + currentPendingRequestCount);
-        if (isBound || currentPendingRequestCount == 0) {
+        if (isInProcess) {
+            updateInProcessForeground();
+            return;
+        }
+        if (Ln.isVerboseEnabled()) {
+            Ln.v("Pending requests : %d", currentPendingRequestCount.get());
+        }
+        if (isBound || currentPendingRequestCount.get() == 0) {
             Ln.v("Stop foreground");
             stopForeground(true);
         } else {
@@ -515,6 +916,66 @@ public abstract class SpiceService extends Service {
         }
     }
 
+    /*
+     * Starts InProcessForegroundService once requests have been pending for
+     * getInProcessForegroundDelay(), stops it when they are complete. Services
+     * are started and stopped on the main thread, in the order of the
+     * decisions taken under the lock.
+     */
+    private void updateInProcessForeground() {
+        synchronized (inProcessForegroundLock) {
+            // a request may have been added since all requests completed.
+            final boolean hasPendingRequests = currentPendingRequestCount.get() != 0 || requestProcessor.getPendingRequestCount() != 0;
+            if (hasPendingRequests == hasInProcessPendingRequests) {
+                return;
+            }
+            hasInProcessPendingRequests = hasPendingRequests;
+            if (inProcessForegroundHandler == null) {
+                inProcessForegroundHandler = new Handler(Looper.getMainLooper());
+            }
+            if (hasPendingRequests) {
+                final int busyPeriod = ++inProcessBusyPeriod;
+                inProcessForegroundHandler.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        startInProcessForeground(busyPeriod);
+                    }
+                }, getInProcessForegroundDelay());
+                return;
+            }
+            if (!isInProcessForeground) {
+                return;
+            }
+            isInProcessForeground = false;
+            inProcessForegroundHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Ln.v("Stop foreground in process");
+                    stopService(new Intent(SpiceService.this, InProcessForegroundService.class));
+                }
+            });
+        }
+    }
+
+    /* Executed on the main thread, when requests have been pending long enough. */
+    private void startInProcessForeground(final int busyPeriod) {
+        synchronized (inProcessForegroundLock) {
+            // requests may have completed, and others started, meanwhile.
+            if (!hasInProcessPendingRequests || busyPeriod != inProcessBusyPeriod || isInProcessForeground) {
+                return;
+            }
+            isInProcessForeground = true;
+        }
+        Ln.v("Start foreground in process");
+        InProcessForegroundService.setNotification(getNotificationId(), notification);
+        final Intent intent = new Intent(this, InProcessForegroundService.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            startForegroundService(intent);
+        } else {
+            startService(intent);
+        }
+    }
+
     private void startForeground(final Notification notification) {
         try {
             final Method setForegroundMethod = Service.class.getMethod("startForeground", int.class, Notification.class);
@@ -0,0 +1,94 @@
+package com.octo.android.robospice;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.octo.android.robospice.persistence.CacheStatistics;
+import com.octo.android.robospice.priority.ThreadPoolStatistics;
+import com.octo.android.robospice.request.DefaultRequestRunner.Stage;
+import com.octo.android.robospice.request.listener.RequestStatus;
+
+/**
+ * The state of a {@link SpiceService} at some point in time : requests in
+ * progress, executors, retries and caches. Instances are immutable. They are
+ * built without locking the service nor accessing the disk, so that they can be
+ * polled frequently, typically by a debug overlay.
+ * @see SpiceService#getSnapshot()
+ */
+public final class SpiceServiceSnapshot {
+
+    private final long creationDate = System.currentTimeMillis();
+    private final Map<RequestStatus, Integer> mapStatusToRequestCount;
+    private final long processableRequestCount;
+    private final long aggregatedRequestCount;
+    private final Map<Stage, ThreadPoolStatistics> mapStageToThreadPoolStatistics;
+    private final int pendingRetryCount;
+    private final List<CacheStatistics> listCacheStatistics;
+
+    SpiceServiceSnapshot(Map<RequestStatus, Integer> mapStatusToRequestCount, long processableRequestCount, long aggregatedRequestCount,
+        Map<Stage, ThreadPoolStatistics> mapStageToThreadPoolStatistics, int pendingRetryCount, List<CacheStatistics> listCacheStatistics) {
+        this.mapStatusToRequestCount = Collections.unmodifiableMap(mapStatusToRequestCount);
+        this.processableRequestCount = processableRequestCount;
+        this.aggregatedRequestCount = aggregatedRequestCount;
+        this.mapStageToThreadPoolStatistics = Collections.unmodifiableMap(mapStageToThreadPoolStatistics);
+        this.pendingRetryCount = pendingRetryCount;
+        this.listCacheStatistics = Collections.unmodifiableList(listCacheStatistics);
+    }
+
+    public long getCreationDate() {
+        return creationDate;
+    }
+
+    /** @return the number of requests in progress, by status. */
+    public Map<RequestStatus, Integer> getRequestCountPerStatus() {
+        return mapStatusToRequestCount;
+    }
+
+    /**
+     * @return the number of requests added to the service since its
+     *         creation, aggregated or not.
+     */
+    public long getProcessableRequestCount() {
+        return processableRequestCount;
+    }
+
+    /**
+     * @return the number of requests added to the service since its creation
+     *         that were aggregated to an equal request in progress.
+     */
+    public long getAggregatedRequestCount() {
+        return aggregatedRequestCount;
+    }
+
+    /** @return the ratio of requests that were aggregated, 0 if none was added. */
+    public float getAggregationRatio() {
+        return processableRequestCount == 0 ? 0 : (float) aggregatedRequestCount / processableRequestCount;
+    }
+
+    /**
+     * @return the statistics of the executor of each stage. Empty if the
+     *         service doesn't use a DefaultRequestRunner. Stages that share an
+     *         executor share their statistics.
+     */
+    public Map<Stage, ThreadPoolStatistics> getThreadPoolStatisticsPerStage() {
+        return mapStageToThreadPoolStatistics;
+    }
+
+    /** @return the number of failed requests that will be retried. */
+    public int getPendingRetryCount() {
+        return pendingRetryCount;
+    }
+
+    /** @return the statistics of each persister of the cache manager. */
+    public List<CacheStatistics> getCacheStatistics() {
+        return listCacheStatistics;
+    }
+
+    @Override
+    public String toString() {
+        return "SpiceServiceSnapshot [requestCountPerStatus=" + mapStatusToRequestCount + ", processableRequestCount=" + processableRequestCount
+            + ", aggregationRatio=" + getAggregationRatio() + ", threadPoolStatisticsPerStage=" + mapStageToThreadPoolStatistics + ", pendingRetryCount="
+            + pendingRetryCount + ", cacheStatistics=" + listCacheStatistics + "]";
+    }
+}
@@ -0,0 +1,17 @@
+package com.octo.android.robospice.exception;
+
+import com.octo.android.robospice.persistence.exception.SpiceException;
+
+/**
+ * Exception thrown when the deadline of a request has passed before it could
+ * load data from network. Such a request is not retried.
+ */
+public class RequestExpiredException extends SpiceException {
+
+    private static final long serialVersionUID = -2619163046826452398L;
+
+    public RequestExpiredException(final String detailMessage) {
+        super(detailMessage);
+    }
+
+}
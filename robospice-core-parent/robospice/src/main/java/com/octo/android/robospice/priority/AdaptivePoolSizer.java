@@ -0,0 +1,313 @@
+package com.octo.android.robospice.priority;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import roboguice.util.temp.Ln;
+import android.os.Debug;
+
+/**
+ * Adapts the number of threads of a {@link ThreadPoolExecutor} to the
+ * behaviour of the requests it executes. Request runners record, for each
+ * task, the time it waited in the queue, the time it was blocked on network and
+ * the CPU time it spent reading and writing cache. <br/>
+ * Periodically, the optimal thread count is estimated as
+ * <code>cpuCount * (1 + networkTime / cacheCpuTime)</code>, bounded by the
+ * minimum and maximum thread count :
+ * <ul>
+ * <li>if the pool is bigger than this estimation, it shrinks by one thread,</li>
+ * <li>if the pool is smaller and tasks wait in the queue longer than
+ * {@link #DEFAULT_QUEUE_WAIT_THRESHOLD}, it grows to this estimation.</li>
+ * </ul>
+ * Each evaluation is published to the {@link PoolSizeListener}, if any. <br/>
+ * As the queue of a {@link PriorityThreadPoolExecutor} is unbounded, only its
+ * core pool size limits the number of threads : it is the size adapted here.
+ */
+public class AdaptivePoolSizer {
+
+    // ----------------------------------
+    // CONSTANTS
+    // ----------------------------------
+
+    /** Default minimum time between 2 evaluations, in ms. */
+    public static final long DEFAULT_EVALUATION_PERIOD = 5000;
+    /** Default minimum number of tasks between 2 evaluations. */
+    public static final int DEFAULT_MIN_SAMPLE_COUNT = 5;
+    /** Default average queue wait above which the pool can grow, in ms. */
+    public static final long DEFAULT_QUEUE_WAIT_THRESHOLD = 50;
+
+    // ----------------------------------
+    // ATTRIBUTES
+    // ----------------------------------
+
+    private final ThreadPoolExecutor executor;
+    private final int minThreadCount;
+    private final int maxThreadCount;
+    private final int cpuCount = Runtime.getRuntime().availableProcessors();
+    private long evaluationPeriod = DEFAULT_EVALUATION_PERIOD;
+    private int minSampleCount = DEFAULT_MIN_SAMPLE_COUNT;
+    private long queueWaitThreshold = DEFAULT_QUEUE_WAIT_THRESHOLD;
+    private PoolSizeListener poolSizeListener;
+
+    /* Samples of the current evaluation period, guarded by this. */
+    private long lastEvaluationTime = System.nanoTime();
+    private int sampleCount;
+    private long totalQueueWait;
+    private long totalNetworkTime;
+    private long totalCacheCpuTime;
+
+    // ----------------------------------
+    // CONSTRUCTORS
+    // ----------------------------------
+
+    /**
+     * @param executor
+     *            the executor whose core pool size is adapted. Its maximum pool
+     *            size must be at least maxThreadCount.
+     * @param minThreadCount
+     *            the minimum number of threads, at least 1.
+     * @param maxThreadCount
+     *            the maximum number of threads, at least minThreadCount.
+     */
+    public AdaptivePoolSizer(ThreadPoolExecutor executor, int minThreadCount, int maxThreadCount) {
+        if (minThreadCount <= 0 || maxThreadCount < minThreadCount) {
+            throw new IllegalArgumentException("Thread counts must be 1 <= min <= max");
+        }
+        this.executor = executor;
+        this.minThreadCount = minThreadCount;
+        this.maxThreadCount = maxThreadCount;
+    }
+
+    // ----------------------------------
+    // PUBLIC API
+    // ----------------------------------
+
+    /**
+     * @return the CPU time of the current thread, in ns, to measure cache
+     *         operations. Falls back to wall clock time if the CPU time is not
+     *         available.
+     */
+    public static long getCurrentThreadCpuTime() {
+        final long cpuTime = Debug.threadCpuTimeNanos();
+        return cpuTime >= 0 ? cpuTime : System.nanoTime();
+    }
+
+    /**
+     * Records the time a task waited in the queue before it was executed. Each
+     * task is a sample and may trigger an evaluation of the pool size.
+     * @param queueWait
+     *            in ns.
+     */
+    public void recordQueueWait(long queueWait) {
+        final PoolSizeDecision decision;
+        synchronized (this) {
+            sampleCount++;
+            totalQueueWait += queueWait;
+            if (sampleCount < minSampleCount || System.nanoTime() - lastEvaluationTime < TimeUnit.MILLISECONDS.toNanos(evaluationPeriod)) {
+                return;
+            }
+            decision = evaluate();
+        }
+        notifyListener(decision);
+    }
+
+    /**
+     * Records the time a task was blocked waiting for a network operation.
+     * @param networkTime
+     *            in ns.
+     */
+    public synchronized void recordNetworkTime(long networkTime) {
+        totalNetworkTime += networkTime;
+    }
+
+    /**
+     * Records the CPU time a task spent reading or writing cache, including
+     * (de)serialization.
+     * @param cacheCpuTime
+     *            in ns.
+     * @see #getCurrentThreadCpuTime()
+     */
+    public synchronized void recordCacheCpuTime(long cacheCpuTime) {
+        totalCacheCpuTime += cacheCpuTime;
+    }
+
+    /**
+     * Evaluates the pool size from the samples recorded since last evaluation,
+     * whatever their number.
+     * @return the decision that has been applied.
+     */
+    public PoolSizeDecision evaluateNow() {
+        final PoolSizeDecision decision;
+        synchronized (this) {
+            decision = evaluate();
+        }
+        notifyListener(decision);
+        return decision;
+    }
+
+    public void setPoolSizeListener(PoolSizeListener poolSizeListener) {
+        this.poolSizeListener = poolSizeListener;
+    }
+
+    /**
+     * @param evaluationPeriod
+     *            the minimum time between 2 evaluations, in ms.
+     */
+    public synchronized void setEvaluationPeriod(long evaluationPeriod) {
+        this.evaluationPeriod = evaluationPeriod;
+    }
+
+    /**
+     * @param minSampleCount
+     *            the minimum number of tasks between 2 evaluations.
+     */
+    public synchronized void setMinSampleCount(int minSampleCount) {
+        this.minSampleCount = minSampleCount;
+    }
+
+    /**
+     * @param queueWaitThreshold
+     *            the average queue wait above which the pool can grow, in ms.
+     */
+    public synchronized void setQueueWaitThreshold(long queueWaitThreshold) {
+        this.queueWaitThreshold = queueWaitThreshold;
+    }
+
+    public int getMinThreadCount() {
+        return minThreadCount;
+    }
+
+    public int getMaxThreadCount() {
+        return maxThreadCount;
+    }
+
+    // ----------------------------------
+    // PRIVATE METHODS
+    // ----------------------------------
+
+    /* Must be called while holding this. */
+    private PoolSizeDecision evaluate() {
+        final int previousThreadCount = executor.getCorePoolSize();
+        final long averageQueueWait = sampleCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalQueueWait / sampleCount);
+        final int optimalThreadCount = computeOptimalThreadCount();
+
+        int threadCount = previousThreadCount;
+        if (previousThreadCount > optimalThreadCount) {
+            threadCount = previousThreadCount - 1;
+        } else if (previousThreadCount < optimalThreadCount && averageQueueWait > queueWaitThreshold) {
+            threadCount = optimalThreadCount;
+        }
+        if (threadCount != previousThreadCount) {
+            executor.setCorePoolSize(threadCount);
+        }
+
+        final PoolSizeDecision decision = new PoolSizeDecision(previousThreadCount, threadCount, optimalThreadCount, sampleCount, averageQueueWait, totalNetworkTime,
+            totalCacheCpuTime);
+        Ln.d("Pool size evaluated : %s", decision);
+
+        lastEvaluationTime = System.nanoTime();
+        sampleCount = 0;
+        totalQueueWait = 0;
+        totalNetworkTime = 0;
+        totalCacheCpuTime = 0;
+        return decision;
+    }
+
+    /* Must be called while holding this. */
+    private int computeOptimalThreadCount() {
+        final double optimalThreadCount;
+        if (totalCacheCpuTime <= 0) {
+            // nothing is CPU bound, threads only wait.
+            optimalThreadCount = totalNetworkTime > 0 ? maxThreadCount : minThreadCount;
+        } else {
+            optimalThreadCount = cpuCount * (1 + (double) totalNetworkTime / totalCacheCpuTime);
+        }
+        return (int) Math.max(minThreadCount, Math.min(maxThreadCount, Math.round(optimalThreadCount)));
+    }
+
+    private void notifyListener(PoolSizeDecision decision) {
+        final PoolSizeListener listener = poolSizeListener;
+        if (listener != null) {
+            listener.onPoolSizeEvaluated(decision);
+        }
+    }
+
+    // ----------------------------------
+    // INNER CLASSES
+    // ----------------------------------
+
+    /**
+     * Is notified of each evaluation of an {@link AdaptivePoolSizer}. It is
+     * invoked on the thread of the task that triggered the evaluation and
+     * should return quickly.
+     */
+    public interface PoolSizeListener {
+        void onPoolSizeEvaluated(PoolSizeDecision decision);
+    }
+
+    /** The result of an evaluation of the pool size and its inputs. */
+    public static final class PoolSizeDecision {
+        private final int previousThreadCount;
+        private final int threadCount;
+        private final int optimalThreadCount;
+        private final int sampleCount;
+        private final long averageQueueWait;
+        private final long networkTime;
+        private final long cacheCpuTime;
+
+        private PoolSizeDecision(int previousThreadCount, int threadCount, int optimalThreadCount, int sampleCount, long averageQueueWait, long networkTime,
+            long cacheCpuTime) {
+            this.previousThreadCount = previousThreadCount;
+            this.threadCount = threadCount;
+            this.optimalThreadCount = optimalThreadCount;
+            this.sampleCount = sampleCount;
+            this.averageQueueWait = averageQueueWait;
+            this.networkTime = networkTime;
+            this.cacheCpuTime = cacheCpuTime;
+        }
+
+        public int getPreviousThreadCount() {
+            return previousThreadCount;
+        }
+
+        public int getThreadCount() {
+            return threadCount;
+        }
+
+        /** @return the estimated optimal thread count, within bounds. */
+        public int getOptimalThreadCount() {
+            return optimalThreadCount;
+        }
+
+        /** @return the number of tasks executed since last evaluation. */
+        public int getSampleCount() {
+            return sampleCount;
+        }
+
+        /** @return the average queue wait of tasks, in ms. */
+        public long getAverageQueueWait() {
+            return averageQueueWait;
+        }
+
+        /** @return the total time tasks were blocked on network, in ns. */
+        public long getNetworkTime() {
+            return networkTime;
+        }
+
+        /** @return the total CPU time tasks spent in cache, in ns. */
+        public long getCacheCpuTime() {
+            return cacheCpuTime;
+        }
+
+        public boolean isPoolSizeChanged() {
+            return threadCount != previousThreadCount;
+        }
+
+        @Override
+        public String toString() {
+            return "PoolSizeDecision [previousThreadCount=" + previousThreadCount + ", threadCount=" + threadCount + ", optimalThreadCount=" + optimalThreadCount
+                + ", sampleCount=" + sampleCount + ", averageQueueWait=" + averageQueueWait + " ms, networkTime=" + TimeUnit.NANOSECONDS.toMillis(networkTime)
+                + " ms, cacheCpuTime=" + TimeUnit.NANOSECONDS.toMillis(cacheCpuTime) + " ms]";
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.octo.android.robospice.priority;
+
+/**
+ * A {@link PriorityRunnable} with a deadline. Among tasks of the same priority,
+ * a {@link PriorityThreadPoolExecutor} executes the task with the earliest
+ * deadline first.
+ */
+public interface DeadlineRunnable extends PriorityRunnable {
+
+    /** Deadline of tasks that have none. */
+    long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * @return the time after which the task is worthless, in ms since epoch,
+     *         or {@link #NO_DEADLINE}.
+     */
+    long getDeadline();
+
+}
@@ -0,0 +1,288 @@
+package com.octo.android.robospice.priority;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import roboguice.util.temp.Ln;
+
+/**
+ * Submits tasks to a {@link PriorityThreadPoolExecutor} on behalf of hosts, so
+ * that a burst of tasks for one host can't occupy every thread :
+ * <ul>
+ * <li>at most {@link #getMaxConcurrentTasksPerHost()} tasks of a host are
+ * submitted to the executor at the same time. Others wait in a queue of their
+ * host, by priority.</li>
+ * <li>tasks of the same priority are executed round robin between hosts : the
+ * n-th waiting task of a host is given the n-th round after the current one,
+ * and the executor executes tasks of the same priority by round.</li>
+ * </ul>
+ * Tasks without a host are submitted directly to the executor, and are
+ * executed before waiting tasks of the same priority that have a host.
+ */
+public class HostAwareScheduler {
+
+    // ----------------------------------
+    // ATTRIBUTES
+    // ----------------------------------
+
+    private final PriorityThreadPoolExecutor executor;
+    private final int maxConcurrentTasksPerHost;
+
+    /** Hosts that have submitted or waiting tasks. Guarded by this. */
+    private final Map<Object, HostState> mapHostKeyToHostState = new HashMap<Object, HostState>();
+    /** The round of the last task started. Guarded by this. */
+    private long currentRound;
+    /** The task of a host running in each thread. */
+    private final ThreadLocal<HostTask> currentHostTask = new ThreadLocal<HostTask>();
+
+    // ----------------------------------
+    // CONSTRUCTORS
+    // ----------------------------------
+
+    /**
+     * @param executor
+     *            executes the tasks.
+     * @param maxConcurrentTasksPerHost
+     *            the maximum number of tasks of a host submitted to the
+     *            executor at the same time, at least 1.
+     */
+    public HostAwareScheduler(PriorityThreadPoolExecutor executor, int maxConcurrentTasksPerHost) {
+        if (maxConcurrentTasksPerHost <= 0) {
+            throw new IllegalArgumentException("Max concurrent tasks per host must be >= 1");
+        }
+        this.executor = executor;
+        this.maxConcurrentTasksPerHost = maxConcurrentTasksPerHost;
+    }
+
+    // ----------------------------------
+    // PUBLIC API
+    // ----------------------------------
+
+    /**
+     * Submits a task to the executor, or queues it until a task of the same
+     * host is over.
+     * @param task
+     *            the task to execute.
+     * @param hostKey
+     *            identifies the host of the task, typically its host name. Can
+     *            be null if the task has no host.
+     * @return the future of the task, that can be cancelled while it is
+     *         queued.
+     * @throws RejectedExecutionException
+     *             if the executor is shut down.
+     */
+    public Future<?> submit(PriorityRunnable task, Object hostKey) {
+        if (hostKey == null) {
+            return executor.submit(task);
+        }
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        final HostTask hostTask;
+        synchronized (this) {
+            HostState hostState = mapHostKeyToHostState.get(hostKey);
+            if (hostState == null) {
+                hostState = new HostState();
+                mapHostKeyToHostState.put(hostKey, hostState);
+            }
+            hostState.lastRound = Math.max(hostState.lastRound + 1, currentRound);
+            hostTask = new HostTask(task, hostKey, hostState.lastRound);
+            hostState.waitingTasks.add(hostTask);
+        }
+        dispatch(hostKey);
+        return hostTask;
+    }
+
+    /**
+     * Keeps the slot of the task running in the current thread once this task
+     * is over, typically until an asynchronous operation it started on its
+     * host completes. Other tasks of the host are not submitted meanwhile if
+     * the host is at its limit.
+     * @return releases the slot when run, once the task is over too. Null if
+     *         the current thread doesn't run a task of this scheduler with a
+     *         host, or if this task is cancelled.
+     */
+    public Runnable holdCurrentTaskSlot() {
+        final HostTask hostTask = currentHostTask.get();
+        if (hostTask == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (hostTask.isDone) {
+                return null;
+            }
+            hostTask.holdCount++;
+        }
+        final AtomicBoolean isReleased = new AtomicBoolean();
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (isReleased.compareAndSet(false, true)) {
+                    onHoldReleased(hostTask);
+                }
+            }
+        };
+    }
+
+    public int getMaxConcurrentTasksPerHost() {
+        return maxConcurrentTasksPerHost;
+    }
+
+    /**
+     * @return the number of tasks of a host submitted to the executor and not
+     *         over yet, or holding their slot.
+     */
+    public synchronized int getSubmittedTaskCount(Object hostKey) {
+        final HostState hostState = mapHostKeyToHostState.get(hostKey);
+        return hostState == null ? 0 : hostState.submittedTaskCount;
+    }
+
+    /**
+     * @return the number of tasks of a host waiting for another task of this
+     *         host to be over.
+     */
+    public synchronized int getWaitingTaskCount(Object hostKey) {
+        final HostState hostState = mapHostKeyToHostState.get(hostKey);
+        return hostState == null ? 0 : hostState.waitingTasks.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder stringBuilder = new StringBuilder("HostAwareScheduler [");
+        for (final Map.Entry<Object, HostState> entry : mapHostKeyToHostState.entrySet()) {
+            stringBuilder.append(entry.getKey());
+            stringBuilder.append(':');
+            stringBuilder.append(entry.getValue().submittedTaskCount);
+            stringBuilder.append('+');
+            stringBuilder.append(entry.getValue().waitingTasks.size());
+            stringBuilder.append(' ');
+        }
+        stringBuilder.append(']');
+        return stringBuilder.toString();
+    }
+
+    // ----------------------------------
+    // PRIVATE METHODS
+    // ----------------------------------
+
+    /** Submits the waiting tasks of a host, as long as it is below its limit. */
+    private void dispatch(Object hostKey) {
+        while (true) {
+            final HostTask hostTask;
+            synchronized (this) {
+                final HostState hostState = mapHostKeyToHostState.get(hostKey);
+                if (hostState == null || hostState.submittedTaskCount >= maxConcurrentTasksPerHost || hostState.waitingTasks.isEmpty()) {
+                    return;
+                }
+                hostTask = hostState.waitingTasks.poll();
+                hostTask.isSubmitted = true;
+                hostState.submittedTaskCount++;
+            }
+            try {
+                executor.execute(hostTask);
+            } catch (final RejectedExecutionException e) {
+                Ln.d(e, "Task of host %s rejected by executor", hostKey);
+                // releases the slot of the task.
+                hostTask.cancel(false);
+            }
+        }
+    }
+
+    private void onTaskDone(HostTask hostTask) {
+        synchronized (this) {
+            final HostState hostState = mapHostKeyToHostState.get(hostTask.hostKey);
+            if (hostTask.isSubmitted) {
+                hostTask.isDone = true;
+                if (hostTask.holdCount > 0) {
+                    // the slot is released with the last hold.
+                    return;
+                }
+                hostState.submittedTaskCount--;
+            } else {
+                // cancelled while waiting. PriorityFuture's equals can't be used.
+                final Iterator<HostTask> iterator = hostState.waitingTasks.iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next() == hostTask) {
+                        iterator.remove();
+                        break;
+                    }
+                }
+            }
+            removeIfIdle(hostTask.hostKey, hostState);
+        }
+        dispatch(hostTask.hostKey);
+    }
+
+    private void onHoldReleased(HostTask hostTask) {
+        synchronized (this) {
+            hostTask.holdCount--;
+            if (!hostTask.isDone || hostTask.holdCount > 0) {
+                return;
+            }
+            final HostState hostState = mapHostKeyToHostState.get(hostTask.hostKey);
+            hostState.submittedTaskCount--;
+            removeIfIdle(hostTask.hostKey, hostState);
+        }
+        dispatch(hostTask.hostKey);
+    }
+
+    /* Must be invoked while holding the lock of the scheduler. */
+    private void removeIfIdle(Object hostKey, HostState hostState) {
+        if (hostState.submittedTaskCount == 0 && hostState.waitingTasks.isEmpty()) {
+            mapHostKeyToHostState.remove(hostKey);
+        }
+    }
+
+    private synchronized void onTaskStarted(HostTask hostTask) {
+        currentRound = Math.max(currentRound, hostTask.round);
+    }
+
+    // ----------------------------------
+    // INNER CLASSES
+    // ----------------------------------
+
+    /* Fields are guarded by the scheduler. */
+    private static final class HostState {
+        private final PriorityQueue<HostTask> waitingTasks = new PriorityQueue<HostTask>();
+        private int submittedTaskCount;
+        private long lastRound;
+    }
+
+    private final class HostTask extends PriorityFuture<Void> {
+        private final Object hostKey;
+        private final long round;
+        /* Guarded by the scheduler. */
+        private boolean isSubmitted;
+        /* Guarded by the scheduler. */
+        private boolean isDone;
+        /* Number of holds of the slot not released yet. Guarded by the scheduler. */
+        private int holdCount;
+
+        private HostTask(PriorityRunnable task, Object hostKey, long round) {
+            super(task, task.getPriority(), null, executor.getPriorityAgingPeriod(), PriorityThreadPoolExecutor.getDeadline(task), round);
+            this.hostKey = hostKey;
+            this.round = round;
+        }
+
+        @Override
+        public void run() {
+            onTaskStarted(this);
+            currentHostTask.set(this);
+            try {
+                super.run();
+            } finally {
+                currentHostTask.remove();
+            }
+        }
+
+        @Override
+        protected void done() {
+            onTaskDone(this);
+        }
+    }
+}
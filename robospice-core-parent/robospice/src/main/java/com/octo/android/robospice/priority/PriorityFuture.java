@@ -1,30 +1,117 @@
 package com.octo.android.robospice.priority;
 
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A future with priority, from <a href=
- * "http://stackoverflow.com/q/807223/693752">SOF</a>
+ * "http://stackoverflow.com/q/807223/693752">SOF</a> <br/>
+ * Futures are ordered by rank, and futures of the same rank by submission
+ * order. Without aging, the rank is the priority. With aging, a waiting future
+ * gains one priority level, i.e. {@link #PRIORITY_LEVEL}, every aging period,
+ * so that futures of low priority can't starve. Its rank is then counted in
+ * aging periods : <code>(submissionTime + priority / PRIORITY_LEVEL *
+ * agingPeriod) / agingPeriod</code>. As ranks don't change once futures are
+ * created, they can be ordered by a priority queue. <br/>
+ * Futures of the same rank are ordered by deadline, earliest first, then by
+ * round (see {@link HostAwareScheduler}), then by submission order. Without
+ * aging, they are the futures of the same priority. With aging, they are the
+ * futures of the same priority submitted during the same aging period, or of
+ * a priority one level higher submitted one period later, and so on.
  * @author SNI
  * @param <T>
  *            the type of the future's return.
  */
 public class PriorityFuture<T> extends FutureTask<T> implements Comparable<PriorityFuture<T>> {
 
+    /**
+     * The difference between two priority levels, as between
+     * {@link com.octo.android.robospice.request.SpiceRequest#PRIORITY_HIGH}
+     * and
+     * {@link com.octo.android.robospice.request.SpiceRequest#PRIORITY_NORMAL}.
+     */
+    public static final int PRIORITY_LEVEL = 50;
+
+    /** Gives each future its submission order. */
+    private static final AtomicLong SEQUENCE_NUMBER_GENERATOR = new AtomicLong();
+    /** Submission times are counted from it, so that they are positive. */
+    private static final long TIME_ORIGIN = System.nanoTime();
+
     private int priority;
+    private final long sequenceNumber = SEQUENCE_NUMBER_GENERATOR.getAndIncrement();
+    private final long submissionTime = System.nanoTime();
+    private final long rank;
+    private final long deadline;
+    private final long round;
 
     public PriorityFuture(Runnable other, int priority, final T result) {
+        this(other, priority, result, 0);
+    }
+
+    /**
+     * @param agingPeriod
+     *            the time, in ms, after which a waiting future gains one
+     *            priority level, i.e. {@link #PRIORITY_LEVEL}. 0 disables
+     *            aging. All futures compared together must have the same
+     *            aging period.
+     */
+    public PriorityFuture(Runnable other, int priority, final T result, long agingPeriod) {
+        this(other, priority, result, agingPeriod, DeadlineRunnable.NO_DEADLINE, 0);
+    }
+
+    /**
+     * @param deadline
+     *            futures of the same rank are executed by increasing deadline.
+     *            {@link DeadlineRunnable#NO_DEADLINE} if there is none.
+     * @param round
+     *            futures of the same rank and deadline are executed by
+     *            increasing round.
+     */
+    public PriorityFuture(Runnable other, int priority, final T result, long agingPeriod, long deadline, long round) {
         super(other, result);
         this.priority = priority;
+        if (agingPeriod > 0) {
+            final long agingPeriodNanos = TimeUnit.MILLISECONDS.toNanos(agingPeriod);
+            this.rank = (submissionTime - TIME_ORIGIN + priority * (agingPeriodNanos / PRIORITY_LEVEL)) / agingPeriodNanos;
+        } else {
+            this.rank = priority;
+        }
+        this.deadline = deadline;
+        this.round = round;
     }
 
     public int getPriority() {
         return priority;
     }
 
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return the time this future was created, in ns, as
+     *         {@link System#nanoTime()}.
+     */
+    public long getSubmissionTime() {
+        return submissionTime;
+    }
+
     @Override
     public int compareTo(PriorityFuture<T> other) {
-        return priority - other.priority;
+        if (rank != other.rank) {
+            return rank < other.rank ? -1 : 1;
+        }
+        if (deadline != other.deadline) {
+            return deadline < other.deadline ? -1 : 1;
+        }
+        if (round != other.round) {
+            return round < other.round ? -1 : 1;
+        }
+        if (sequenceNumber != other.sequenceNumber) {
+            return sequenceNumber < other.sequenceNumber ? -1 : 1;
+        }
+        return 0;
     }
 
     @Override
@@ -50,8 +137,6 @@ public class PriorityFuture<T> extends FutureTask<T> implements Comparable<Prior
         if (priority != other.priority) {
             return false;
         }
-
         return true;
     }
-
 }
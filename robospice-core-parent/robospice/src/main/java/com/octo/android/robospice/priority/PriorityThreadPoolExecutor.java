@@ -1,5 +1,7 @@
 package com.octo.android.robospice.priority;
 
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.RunnableFuture;
 
@@ -10,11 +12,28 @@ import java.util.concurrent.RunnableFuture;
  * first runnable/callable passed to the executor doesn't go in the queue. Thus
  * the priority mechanism will only apply when tasks are queued, and this
  * happens when the number of current runners is exceeds the number of max
- * thread in the pool size.
+ * thread in the pool size. <br/>
+ * Tasks of the same priority are executed earliest deadline first, if they
+ * are {@link DeadlineRunnable}s, then in submission order. If an aging period
+ * is set, waiting tasks gain one priority level, i.e.
+ * {@link PriorityFuture#PRIORITY_LEVEL}, every period, so that tasks of low
+ * priority can't starve under a steady load of tasks of higher priority.
+ * Deadlines then order the tasks of the same priority submitted during the
+ * same period.
+ * The time tasks wait in the queue is recorded for each priority, see
+ * {@link #getWaitTimeStatistics()}.
  * @author SNI
  */
 public final class PriorityThreadPoolExecutor extends PausableThreadPoolExecutor {
 
+    // ----------------------------------
+    // ATTRIBUTES
+    // ----------------------------------
+    private volatile long priorityAgingPeriod;
+
+    /** Guarded by itself. */
+    private final Map<Integer, WaitTimeStatistics> mapPriorityToWaitTimeStatistics = new TreeMap<Integer, WaitTimeStatistics>();
+
     // ----------------------------------
     // CONSTRUCTORS
     // ----------------------------------
@@ -48,6 +67,36 @@ public final class PriorityThreadPoolExecutor extends PausableThreadPoolExecutor
         return new PriorityThreadPoolExecutor(nThreads);
     }
 
+    /**
+     * Sets the aging period of tasks. It must be set before tasks are
+     * submitted, as tasks submitted with different aging periods can't be
+     * ordered.
+     * @param priorityAgingPeriod
+     *            the time, in ms, after which a waiting task gains one priority
+     *            level, i.e. {@link PriorityFuture#PRIORITY_LEVEL}. 0, the
+     *            default, disables aging.
+     */
+    public void setPriorityAgingPeriod(long priorityAgingPeriod) {
+        if (priorityAgingPeriod < 0) {
+            throw new IllegalArgumentException("Aging period must be >= 0");
+        }
+        this.priorityAgingPeriod = priorityAgingPeriod;
+    }
+
+    public long getPriorityAgingPeriod() {
+        return priorityAgingPeriod;
+    }
+
+    /**
+     * @return a snapshot of the statistics of the time tasks waited in the
+     *         queue, by priority.
+     */
+    public Map<Integer, WaitTimeStatistics> getWaitTimeStatistics() {
+        synchronized (mapPriorityToWaitTimeStatistics) {
+            return new TreeMap<Integer, WaitTimeStatistics>(mapPriorityToWaitTimeStatistics);
+        }
+    }
+
     // ----------------------------------
     // OVVERRIDEN METHODS
     // ----------------------------------
@@ -61,7 +110,30 @@ public final class PriorityThreadPoolExecutor extends PausableThreadPoolExecutor
         if (runnable == null) {
             return null;
         }
-        return new PriorityFuture<T>(runnable, ((PriorityRunnable) runnable).getPriority(), value);
+        return new PriorityFuture<T>(runnable, ((PriorityRunnable) runnable).getPriority(), value, priorityAgingPeriod, getDeadline(runnable), 0);
+    }
+
+    /**
+     * @return the deadline of a task, or {@link DeadlineRunnable#NO_DEADLINE}.
+     */
+    static long getDeadline(Runnable runnable) {
+        return runnable instanceof DeadlineRunnable ? ((DeadlineRunnable) runnable).getDeadline() : DeadlineRunnable.NO_DEADLINE;
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        super.beforeExecute(thread, runnable);
+        if (runnable instanceof PriorityFuture) {
+            final PriorityFuture<?> future = (PriorityFuture<?>) runnable;
+            final long waitTime = System.currentTimeMillis() - future.getSubmissionTime();
+            synchronized (mapPriorityToWaitTimeStatistics) {
+                WaitTimeStatistics statistics = mapPriorityToWaitTimeStatistics.get(future.getPriority());
+                if (statistics == null) {
+                    statistics = new WaitTimeStatistics(future.getPriority(), 0, 0, 0);
+                }
+                mapPriorityToWaitTimeStatistics.put(future.getPriority(), statistics.add(waitTime));
+            }
+        }
     }
 
     // form JDK 1.6, to ensure backward compatibility
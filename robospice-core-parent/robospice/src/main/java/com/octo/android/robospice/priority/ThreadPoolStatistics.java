@@ -0,0 +1,83 @@
+package com.octo.android.robospice.priority;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Statistics of a {@link ThreadPoolExecutor} : its threads and the tasks
+ * waiting in its queue. Instances are immutable snapshots.
+ */
+public final class ThreadPoolStatistics {
+
+    private final int poolSize;
+    private final int activeCount;
+    private final int maximumPoolSize;
+    private final int queueDepth;
+    private final Map<Integer, Integer> mapPriorityToQueueDepth;
+
+    private ThreadPoolStatistics(int poolSize, int activeCount, int maximumPoolSize, int queueDepth, Map<Integer, Integer> mapPriorityToQueueDepth) {
+        this.poolSize = poolSize;
+        this.activeCount = activeCount;
+        this.maximumPoolSize = maximumPoolSize;
+        this.queueDepth = queueDepth;
+        this.mapPriorityToQueueDepth = Collections.unmodifiableMap(mapPriorityToQueueDepth);
+    }
+
+    /**
+     * Takes a snapshot of the statistics of an executor. It doesn't lock the
+     * executor, but copies its queue : statistics are approximate when tasks
+     * are submitted or executed meanwhile.
+     * @param threadPoolExecutor
+     *            the executor to inspect.
+     * @return a snapshot of the statistics of threadPoolExecutor.
+     */
+    public static ThreadPoolStatistics of(ThreadPoolExecutor threadPoolExecutor) {
+        final Map<Integer, Integer> mapPriorityToQueueDepth = new TreeMap<Integer, Integer>();
+        int queueDepth = 0;
+        for (Runnable runnable : threadPoolExecutor.getQueue()) {
+            queueDepth++;
+            if (runnable instanceof PriorityFuture) {
+                final int priority = ((PriorityFuture<?>) runnable).getPriority();
+                final Integer depth = mapPriorityToQueueDepth.get(priority);
+                mapPriorityToQueueDepth.put(priority, depth == null ? 1 : depth + 1);
+            }
+        }
+        return new ThreadPoolStatistics(threadPoolExecutor.getPoolSize(), threadPoolExecutor.getActiveCount(), threadPoolExecutor.getMaximumPoolSize(), queueDepth,
+            mapPriorityToQueueDepth);
+    }
+
+    /** @return the number of threads in the pool. */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /** @return the number of threads executing a task. */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    /** @return the number of tasks waiting to be executed. */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return the number of tasks waiting to be executed, by priority. Empty
+     *         if the executor doesn't queue {@link PriorityFuture}s.
+     */
+    public Map<Integer, Integer> getQueueDepthPerPriority() {
+        return mapPriorityToQueueDepth;
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadPoolStatistics [poolSize=" + poolSize + ", activeCount=" + activeCount + ", maximumPoolSize=" + maximumPoolSize + ", queueDepth=" + queueDepth
+            + ", queueDepthPerPriority=" + mapPriorityToQueueDepth + "]";
+    }
+}
@@ -0,0 +1,51 @@
+package com.octo.android.robospice.priority;
+
+/**
+ * Statistics of the time tasks of a given priority waited in the queue of a
+ * {@link PriorityThreadPoolExecutor} before being executed. Instances are
+ * immutable snapshots.
+ */
+public final class WaitTimeStatistics {
+
+    private final int priority;
+    private final long taskCount;
+    private final long totalWaitTime;
+    private final long maxWaitTime;
+
+    WaitTimeStatistics(int priority, long taskCount, long totalWaitTime, long maxWaitTime) {
+        this.priority = priority;
+        this.taskCount = taskCount;
+        this.totalWaitTime = totalWaitTime;
+        this.maxWaitTime = maxWaitTime;
+    }
+
+    /* Returns a snapshot that also accounts for a new task. */
+    WaitTimeStatistics add(long waitTime) {
+        return new WaitTimeStatistics(priority, taskCount + 1, totalWaitTime + waitTime, Math.max(maxWaitTime, waitTime));
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /** @return the number of tasks of this priority that have been executed. */
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    /** @return the average wait time of tasks of this priority, in ms. */
+    public long getAverageWaitTime() {
+        return taskCount == 0 ? 0 : totalWaitTime / taskCount;
+    }
+
+    /** @return the longest wait time of a task of this priority, in ms. */
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    @Override
+    public String toString() {
+        return "WaitTimeStatistics [priority=" + priority + ", taskCount=" + taskCount + ", averageWaitTime=" + getAverageWaitTime() + " ms, maxWaitTime=" + maxWaitTime
+            + " ms]";
+    }
+}
@@ -0,0 +1,87 @@
+package com.octo.android.robospice.request;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A {@link SpiceRequest} whose network operation is asynchronous. Override
+ * {@link #loadDataFromNetwork(Callback)} to start the network operation and
+ * return immediately, then invoke the callback when it completes. The thread
+ * that processes the request is released during the network operation and the
+ * request is resumed (cache saving and listeners notification) when the
+ * callback is invoked.<br/>
+ * Use it with network libraries that offer asynchronous calls, to keep many
+ * requests in flight without increasing the thread count of the
+ * {@link com.octo.android.robospice.SpiceService}.
+ * @param <RESULT>
+ *            the type of the result of the request.
+ */
+public abstract class AsyncSpiceRequest<RESULT> extends SpiceRequest<RESULT> {
+
+    public AsyncSpiceRequest(final Class<RESULT> clazz) {
+        super(clazz);
+    }
+
+    /**
+     * Starts the network operation of this request.
+     * @param callback
+     *            to be invoked once, from any thread, when the network
+     *            operation completes.
+     * @throws Exception
+     *             if the network operation can't be started. It has the same
+     *             effect as invoking {@link Callback#onFailure(Exception)}.
+     */
+    public abstract void loadDataFromNetwork(Callback<RESULT> callback) throws Exception;
+
+    /**
+     * Blocks until the asynchronous network operation completes. This is only
+     * used by {@link RequestRunner}s that don't support asynchronous requests.
+     */
+    @Override
+    public final RESULT loadDataFromNetwork() throws Exception {
+        final BlockingCallback<RESULT> callback = new BlockingCallback<RESULT>();
+        loadDataFromNetwork(callback);
+        return callback.await();
+    }
+
+    // ============================================================================================
+    // INNER CLASSES
+    // ============================================================================================
+
+    /**
+     * Receives the outcome of the network operation of an
+     * {@link AsyncSpiceRequest}.
+     * @param <RESULT>
+     *            the type of the result of the request.
+     */
+    public interface Callback<RESULT> {
+        void onSuccess(RESULT result);
+
+        void onFailure(Exception e);
+    }
+
+    private static final class BlockingCallback<RESULT> implements Callback<RESULT> {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile RESULT result;
+        private volatile Exception exception;
+
+        @Override
+        public void onSuccess(RESULT result) {
+            this.result = result;
+            latch.countDown();
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            this.exception = e;
+            latch.countDown();
+        }
+
+        private RESULT await() throws Exception {
+            latch.await();
+            if (exception != null) {
+                throw exception;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.octo.android.robospice.request;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link SpiceRequest} that can be merged with other requests into a single
+ * network call, typically for endpoints that accept multi-get (
+ * <code>/items?ids=1,2,3</code>). Requests of the same class and with equal
+ * {@link #getBatchKey()} that reach the network stage within the batch window
+ * of the {@link DefaultRequestRunner} are loaded by one invocation of
+ * {@link #loadDataFromNetwork(List)}, on the first of them. Each result is
+ * then cached under the cache key of its own request and delivered to its own
+ * listeners.
+ * @param <RESULT>
+ *            the type of the result of the request.
+ */
+public abstract class BatchableSpiceRequest<RESULT> extends SpiceRequest<RESULT> {
+
+    /** Default maximum number of requests loaded by a single network call. */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 20;
+
+    public BatchableSpiceRequest(final Class<RESULT> clazz) {
+        super(clazz);
+    }
+
+    /**
+     * @return identifies the requests that can be merged with this one,
+     *         typically the endpoint they load data from. Must not be null.
+     */
+    public abstract Object getBatchKey();
+
+    /**
+     * Loads the results of several requests in a single network call.
+     * @param requests
+     *            the requests to load, including this one. They all have the
+     *            same class and batch key as this request.
+     * @return the result of each request, in the same order. A null result
+     *         is delivered as a null result of the request.
+     * @throws Exception
+     *             if the network call fails. All requests fail.
+     */
+    public abstract List<RESULT> loadDataFromNetwork(List<BatchableSpiceRequest<RESULT>> requests) throws Exception;
+
+    /**
+     * Loads this request alone. This is only used by {@link RequestRunner}s
+     * that don't support batches.
+     */
+    @Override
+    public final RESULT loadDataFromNetwork() throws Exception {
+        final List<BatchableSpiceRequest<RESULT>> requests = Collections.<BatchableSpiceRequest<RESULT>> singletonList(this);
+        return loadDataFromNetwork(requests).get(0);
+    }
+
+    /**
+     * @return the maximum number of requests loaded by a single network call.
+     *         When a batch reaches this size, it is loaded without waiting for
+     *         the end of the batch window. Defaults to
+     *         {@link #DEFAULT_MAX_BATCH_SIZE}.
+     */
+    public int getMaxBatchSize() {
+        return DEFAULT_MAX_BATCH_SIZE;
+    }
+}
@@ -6,6 +6,7 @@ import com.octo.android.robospice.request.listener.RequestCancellationListener;
 import com.octo.android.robospice.request.listener.RequestProgress;
 import com.octo.android.robospice.request.listener.RequestProgressListener;
 import com.octo.android.robospice.request.listener.RequestStatus;
+import com.octo.android.robospice.request.timing.RequestTimings;
 import com.octo.android.robospice.retry.RetryPolicy;
 
 /**
@@ -25,6 +26,7 @@ public class CachedSpiceRequest<RESULT> extends SpiceRequest<RESULT> {
     private boolean isProcessable = true;
     private boolean isAcceptingDirtyCache;
     private boolean isOffline;
+    private volatile RequestTimings requestTimings;
 
     public CachedSpiceRequest(final SpiceRequest<RESULT> spiceRequest, final Object requestCacheKey, final long cacheDuration) {
         super(spiceRequest.getResultType());
@@ -45,7 +47,12 @@ public class CachedSpiceRequest<RESULT> extends SpiceRequest<RESULT> {
 
     @Override
     public RESULT loadDataFromNetwork() throws Exception {
-        return spiceRequest.loadDataFromNetwork();
+        spiceRequest.setNetworkThread(Thread.currentThread());
+        try {
+            return spiceRequest.loadDataFromNetwork();
+        } finally {
+            spiceRequest.setNetworkThread(null);
+        }
     }
 
     @Override
@@ -138,6 +145,26 @@ public class CachedSpiceRequest<RESULT> extends SpiceRequest<RESULT> {
         return spiceRequest.getPriority();
     }
 
+    @Override
+    public void setDeadline(long deadline) {
+        spiceRequest.setDeadline(deadline);
+    }
+
+    @Override
+    public long getDeadline() {
+        return spiceRequest.getDeadline();
+    }
+
+    @Override
+    public void setHostKey(Object hostKey) {
+        spiceRequest.setHostKey(hostKey);
+    }
+
+    @Override
+    public Object getHostKey() {
+        return spiceRequest.getHostKey();
+    }
+
     public boolean isAcceptingDirtyCache() {
         return isAcceptingDirtyCache;
     }
@@ -154,6 +181,18 @@ public class CachedSpiceRequest<RESULT> extends SpiceRequest<RESULT> {
         this.isOffline = isOffline;
     }
 
+    /**
+     * @return the timings of the current attempt to process this request.
+     *         Null if timing is disabled or the request is not processed yet.
+     */
+    public RequestTimings getRequestTimings() {
+        return requestTimings;
+    }
+
+    /* package private */void setRequestTimings(RequestTimings requestTimings) {
+        this.requestTimings = requestTimings;
+    }
+
     @Override
     public String toString() {
         return "CachedSpiceRequest [requestCacheKey=" + requestCacheKey + ", cacheDuration=" + cacheDuration + ", spiceRequest=" + spiceRequest + "]";
@@ -209,7 +248,7 @@ public class CachedSpiceRequest<RESULT> extends SpiceRequest<RESULT> {
             return -1;
         }
 
-        return this.spiceRequest.compareTo(other);
+        return super.compareTo(other);
     }
 
 }
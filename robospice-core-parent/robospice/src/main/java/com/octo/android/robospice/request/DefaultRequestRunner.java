@@ -1,7 +1,25 @@
 package com.octo.android.robospice.request;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 import roboguice.util.temp.Ln;
@@ -9,6 +27,7 @@ import android.content.Context;
 
 import com.octo.android.robospice.exception.NetworkException;
 import com.octo.android.robospice.exception.NoNetworkException;
+import com.octo.android.robospice.exception.RequestExpiredException;
 import com.octo.android.robospice.networkstate.NetworkStateChecker;
 import com.octo.android.robospice.persistence.CacheManager;
 import com.octo.android.robospice.persistence.DurationInMillis;
@@ -16,17 +35,42 @@ import com.octo.android.robospice.persistence.exception.CacheCreationException;
 import com.octo.android.robospice.persistence.exception.CacheLoadingException;
 import com.octo.android.robospice.persistence.exception.CacheSavingException;
 import com.octo.android.robospice.persistence.exception.SpiceException;
+import com.octo.android.robospice.priority.AdaptivePoolSizer;
+import com.octo.android.robospice.priority.DeadlineRunnable;
+import com.octo.android.robospice.priority.HostAwareScheduler;
 import com.octo.android.robospice.priority.PriorityRunnable;
+import com.octo.android.robospice.priority.PriorityThreadPoolExecutor;
+import com.octo.android.robospice.priority.ThreadPoolStatistics;
 import com.octo.android.robospice.request.listener.RequestProgressListener;
 import com.octo.android.robospice.request.listener.RequestStatus;
+import com.octo.android.robospice.request.timing.RequestTimingRecorder;
+import com.octo.android.robospice.request.timing.RequestTimings;
+import com.octo.android.robospice.request.timing.RequestTimings.Phase;
 
 /**
  * Default implementation of {@link RequestRunner }. Processes requests. This class is massively multi-threaded and offers good
- * performances when processing multiple requests simulaneously.
+ * performances when processing multiple requests simulaneously.<br/>
+ * The processing of a request is made of stages : {@link Stage#CACHE_READ}, {@link Stage#NETWORK} and {@link Stage#CACHE_WRITE}. By
+ * default, all stages are executed by the same {@link ExecutorService}. If cache executors are set, cache stages are executed by
+ * their own threads : a request found in cache doesn't wait for network requests to release a thread.<br/>
+ * {@link BatchableSpiceRequest}s that reach {@link Stage#NETWORK} within the batch window are merged and loaded by a single
+ * network call.<br/>
+ * If a {@link RequestTimingRecorder} is set, the time each attempt spends in
+ * each {@link Phase} is measured and reported to it.
  * @author SNI
  * @author Andrew Clark
  */
 public class DefaultRequestRunner implements RequestRunner {
+    // ============================================================================================
+    // CONSTANTS
+    // ============================================================================================
+
+    /** Name of the thread that launches requests to retry and batches. */
+    private static final String RETRY_THREAD_NAME = "RoboSpice retry";
+
+    /** Default time batchable requests wait for other requests to merge with, in ms. */
+    public static final long DEFAULT_BATCH_WINDOW = 20;
+
     // ============================================================================================
     // ATTRIBUTES
     // ============================================================================================
@@ -44,6 +88,31 @@ public class DefaultRequestRunner implements RequestRunner {
     private final RequestProgressManager requestProgressManager;
     private boolean isStopped;
     private ReentrantLock executorLock;
+    /**
+     * Waits for the delay before retry of failed requests, then executes them
+     * again. A single thread is shared by all requests to retry. It also waits
+     * for the end of the window of batches.
+     */
+    private final ScheduledExecutorService retryExecutorService;
+    /** Requests that failed and have to be retried once processed. */
+    private final Set<CachedSpiceRequest<?>> setRequestToRetry = Collections.newSetFromMap(new ConcurrentHashMap<CachedSpiceRequest<?>, Boolean>());
+    /** Requests waiting for the delay before their retry. */
+    private final Set<CachedSpiceRequest<?>> setRequestWaitingForRetry = Collections.newSetFromMap(new ConcurrentHashMap<CachedSpiceRequest<?>, Boolean>());
+    /** Executes {@link Stage#CACHE_READ}. If null, {@link #executorService} is used. */
+    private ExecutorService cacheReadExecutorService;
+    /** Executes {@link Stage#CACHE_WRITE}. If null, {@link #executorService} is used. */
+    private ExecutorService cacheWriteExecutorService;
+    /** The stage executed by the current thread, if any. */
+    private final ThreadLocal<StageContext> currentStageContext = new ThreadLocal<StageContext>();
+    /** Adapts the size of {@link #executorService}, if any. */
+    private AdaptivePoolSizer adaptivePoolSizer;
+    /** Limits network requests per host, if any. */
+    private HostAwareScheduler hostAwareScheduler;
+    /** Collects the timings of requests, if any. */
+    private RequestTimingRecorder requestTimingRecorder;
+    private long batchWindow = DEFAULT_BATCH_WINDOW;
+    /** Batches that are not loaded yet, by class and batch key. Guarded by itself. */
+    private final Map<List<Object>, Batch> mapKeyToBatch = new HashMap<List<Object>, Batch>();
 
     // ============================================================================================
     // CONSTRUCTOR
@@ -58,6 +127,7 @@ public class DefaultRequestRunner implements RequestRunner {
         this.executorLock = new ReentrantLock();
 
         this.executorService = executorService;
+        this.retryExecutorService = new ScheduledThreadPoolExecutor(1, new RetryThreadFactory());
         this.requestProgressManager = requestProgressBroadcaster;
 
         this.networkStateChecker.checkPermissions(context);
@@ -69,7 +139,7 @@ public class DefaultRequestRunner implements RequestRunner {
 
         try {
             if (isStopped) {
-                Ln.d("Dropping request : " + request + " as runner is stopped.");
+                Ln.d("Dropping request : %s as runner is stopped.", request);
                 return;
             }
             planRequestExecution(request);
@@ -79,8 +149,10 @@ public class DefaultRequestRunner implements RequestRunner {
     }
 
     protected <T> void processRequest(final CachedSpiceRequest<T> request) {
-        final long startTime = System.currentTimeMillis();
-        Ln.d("Processing request : " + request);
+        final long startTime = System.nanoTime();
+        if (Ln.isDebugEnabled()) {
+            Ln.d("Processing request : %s", request);
+        }
 
         T result = null;
 
@@ -91,16 +163,20 @@ public class DefaultRequestRunner implements RequestRunner {
 
         request.setRequestProgressListener(requestProgressListener);
 
-        if (request.getRequestCacheKey() != null && request.getCacheDuration() != DurationInMillis.ALWAYS_EXPIRED) {
+        if (isReadingFromCache(request)) {
             // First, search data in cache
             try {
-                Ln.d("Loading request from cache : " + request);
+                if (Ln.isDebugEnabled()) {
+                    Ln.d("Loading request from cache : %s", request);
+                }
                 request.setStatus(RequestStatus.READING_FROM_CACHE);
                 result = loadDataFromCache(request.getResultType(), request.getRequestCacheKey(), request.getCacheDuration());
                 // if something is found in cache, fire result and finish
                 // request
                 if (result != null) {
-                    Ln.d("Request loaded from cache : " + request + " result=" + result);
+                    if (Ln.isDebugEnabled()) {
+                        Ln.d("Request loaded from cache : %s result=%s", request, result);
+                    }
                     requestProgressManager.notifyListenersOfRequestSuccess(request, result);
                     printRequestProcessingDuration(startTime, request);
                     return;
@@ -127,6 +203,28 @@ public class DefaultRequestRunner implements RequestRunner {
 
         // if result is not in cache, load data from network
         Ln.d("Cache content not available or expired or disabled");
+        handOff(Stage.NETWORK, request, new Runnable() {
+            @Override
+            public void run() {
+                processNetworkStage(request, startTime);
+            }
+        });
+    }
+
+    private <T> void processNetworkStage(final CachedSpiceRequest<T> request, final long startTime) {
+        T result = null;
+        if (request.isExpired()) {
+            Ln.d("Deadline of request %s has passed.", request);
+
+            if (!request.isCancelled()) {
+                // an expired request is worthless, don't retry it
+                requestProgressManager.notifyListenersOfRequestFailure(request, new RequestExpiredException("Deadline passed before loading data from network"));
+            }
+
+            printRequestProcessingDuration(startTime, request);
+            return;
+        }
+
         if (!networkStateChecker.isNetworkAvailable(applicationContext) && !request.isOffline()) {
             Ln.e("Network is down.");
 
@@ -146,59 +244,48 @@ public class DefaultRequestRunner implements RequestRunner {
                 return;
             }
             Ln.d("Calling netwok request.");
+            if (request.getSpiceRequest() instanceof BatchableSpiceRequest) {
+                addToBatch(request, startTime);
+                return;
+            }
             request.setStatus(RequestStatus.LOADING_FROM_NETWORK);
-            result = request.loadDataFromNetwork();
+            if (request.getSpiceRequest() instanceof AsyncSpiceRequest) {
+                loadDataFromNetworkAsync(request, startTime);
+                return;
+            }
+            final long networkStartTime = System.nanoTime();
+            try {
+                result = request.loadDataFromNetwork();
+            } finally {
+                final long networkTime = System.nanoTime() - networkStartTime;
+                if (adaptivePoolSizer != null) {
+                    adaptivePoolSizer.recordNetworkTime(networkTime);
+                }
+                addCurrentDuration(Phase.NETWORK, networkTime);
+            }
             Ln.d("Network request call ended.");
         } catch (final Exception e) {
-            if (!request.isCancelled()) {
-                Ln.e(e, "An exception occurred during request network execution :" + e.getMessage());
-                handleRetry(request, new NetworkException("Exception occurred during invocation of web service.", e));
-            } else {
-                Ln.e("An exception occurred during request network execution but request was cancelled, so listeners are not called.");
-            }
-            printRequestProcessingDuration(startTime, request);
+            processNetworkFailure(request, e, startTime);
             return;
         }
 
+        processNetworkResult(request, result, startTime);
+    }
+
+    /**
+     * Saves the result of a network operation to cache and notifies
+     * listeners.
+     */
+    private <T> void processNetworkResult(final CachedSpiceRequest<T> request, final T result, final long startTime) {
         if (result != null && request.getRequestCacheKey() != null) {
             // request worked and result is not null, save
             // it to cache
-            try {
-                if (request.isCancelled()) {
-                    printRequestProcessingDuration(startTime, request);
-                    return;
+            handOff(Stage.CACHE_WRITE, request, new Runnable() {
+                @Override
+                public void run() {
+                    processCacheWriteStage(request, result, startTime);
                 }
-                Ln.d("Start caching content...");
-                request.setStatus(RequestStatus.WRITING_TO_CACHE);
-                result = saveDataToCacheAndReturnData(result, request.getRequestCacheKey());
-                if (request.isCancelled()) {
-                    printRequestProcessingDuration(startTime, request);
-                    return;
-                }
-                requestProgressManager.notifyListenersOfRequestSuccess(request, result);
-                printRequestProcessingDuration(startTime, request);
-                return;
-            } catch (final SpiceException e) {
-                Ln.d(e, "An exception occurred during service execution :" + e.getMessage());
-                if (failOnCacheError) {
-                    handleRetry(request, e);
-                    printRequestProcessingDuration(startTime, request);
-                    return;
-                } else {
-                    if (request.isCancelled()) {
-                        printRequestProcessingDuration(startTime, request);
-                        return;
-                    }
-                    // result can't be saved to
-                    // cache but we reached that
-                    // point after a success of load
-                    // data from
-                    // network
-                    requestProgressManager.notifyListenersOfRequestSuccess(request, result);
-                }
-                cacheManager.removeDataFromCache(request.getResultType(), request.getRequestCacheKey());
-                Ln.d(e, "Cache file deleted.");
-            }
+            });
         } else {
             // result can't be saved to cache but we reached
             // that point after a success of load data from
@@ -209,24 +296,333 @@ public class DefaultRequestRunner implements RequestRunner {
         }
     }
 
-    protected void planRequestExecution(final CachedSpiceRequest<?> request) {
-        Future<?> future = executorService.submit(new PriorityRunnable() {
+    private <T> void processCacheWriteStage(final CachedSpiceRequest<T> request, T result, final long startTime) {
+        try {
+            if (request.isCancelled()) {
+                printRequestProcessingDuration(startTime, request);
+                return;
+            }
+            Ln.d("Start caching content...");
+            request.setStatus(RequestStatus.WRITING_TO_CACHE);
+            result = saveDataToCacheAndReturnData(result, request.getRequestCacheKey());
+            if (request.isCancelled()) {
+                printRequestProcessingDuration(startTime, request);
+                return;
+            }
+            requestProgressManager.notifyListenersOfRequestSuccess(request, result);
+            printRequestProcessingDuration(startTime, request);
+            return;
+        } catch (final SpiceException e) {
+            Ln.d(e, "An exception occurred during service execution :%s", e.getMessage());
+            if (failOnCacheError) {
+                handleRetry(request, e);
+                printRequestProcessingDuration(startTime, request);
+                return;
+            } else {
+                if (request.isCancelled()) {
+                    printRequestProcessingDuration(startTime, request);
+                    return;
+                }
+                // result can't be saved to
+                // cache but we reached that
+                // point after a success of load
+                // data from
+                // network
+                requestProgressManager.notifyListenersOfRequestSuccess(request, result);
+            }
+            cacheManager.removeDataFromCache(request.getResultType(), request.getRequestCacheKey());
+            Ln.d(e, "Cache file deleted.");
+        }
+    }
+
+    private void processNetworkFailure(final CachedSpiceRequest<?> request, final Exception e, final long startTime) {
+        if (!request.isCancelled()) {
+            Ln.e(e, "An exception occurred during request network execution :%s", e.getMessage());
+            handleRetry(request, new NetworkException("Exception occurred during invocation of web service.", e));
+        } else {
+            Ln.e("An exception occurred during request network execution but request was cancelled, so listeners are not called.");
+        }
+        printRequestProcessingDuration(startTime, request);
+    }
+
+    /**
+     * Starts the network operation of an {@link AsyncSpiceRequest}. The
+     * current thread is released, request processing is resumed by
+     * {@link #executorService} when the network operation completes. Until
+     * then, the request keeps its slot in {@link #hostAwareScheduler}, if
+     * any.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void loadDataFromNetworkAsync(final CachedSpiceRequest<T> request, final long startTime) throws Exception {
+        final StageContext stageContext = currentStageContext.get();
+        final RequestAttempt attempt = stageContext != null ? stageContext.attempt : new RequestAttempt(null);
+        final AtomicBoolean isComplete = new AtomicBoolean();
+        final AsyncSpiceRequest<T> asyncSpiceRequest = (AsyncSpiceRequest<T>) request.getSpiceRequest();
+        final long networkStartTime = System.nanoTime();
+        final Runnable hostSlotRelease = hostAwareScheduler != null ? hostAwareScheduler.holdCurrentTaskSlot() : null;
+        final AsyncSpiceRequest.Callback<T> callback = new AsyncSpiceRequest.Callback<T>() {
             @Override
-            public void run() {
+            public void onSuccess(final T result) {
+                if (isComplete.compareAndSet(false, true)) {
+                    addDuration(attempt, Phase.NETWORK, System.nanoTime() - networkStartTime);
+                    Ln.d("Network request call ended.");
+                    releaseHostSlot(hostSlotRelease);
+                    // the network call is over, processing resumes without a host slot.
+                    submitStage(Stage.NETWORK, request, attempt, false, new Runnable() {
+                        @Override
+                        public void run() {
+                            processNetworkResult(request, result, startTime);
+                        }
+                    });
+                    releaseAttempt(request, attempt);
+                }
+            }
+
+            @Override
+            public void onFailure(final Exception e) {
+                if (isComplete.compareAndSet(false, true)) {
+                    addDuration(attempt, Phase.NETWORK, System.nanoTime() - networkStartTime);
+                    releaseHostSlot(hostSlotRelease);
+                    submitStage(Stage.NETWORK, request, attempt, false, new Runnable() {
+                        @Override
+                        public void run() {
+                            processNetworkFailure(request, e, startTime);
+                        }
+                    });
+                    releaseAttempt(request, attempt);
+                }
+            }
+        };
+        // the network operation holds the attempt until it completes.
+        attempt.retain();
+        try {
+            asyncSpiceRequest.loadDataFromNetwork(callback);
+        } catch (final Exception e) {
+            if (!isComplete.compareAndSet(false, true)) {
+                Ln.d(e, "Exception ignored as network operation already completed for request %s", request);
+                return;
+            }
+            // same as a synchronous failure
+            releaseHostSlot(hostSlotRelease);
+            releaseAttempt(request, attempt);
+            throw e;
+        }
+    }
+
+    private static void releaseHostSlot(final Runnable hostSlotRelease) {
+        if (hostSlotRelease != null) {
+            hostSlotRelease.run();
+        }
+    }
+
+    /**
+     * Adds a request to the batch of its class and batch key. The batch is
+     * loaded at the end of the batch window, or as soon as it is full. The
+     * current thread is released.
+     */
+    private void addToBatch(final CachedSpiceRequest<?> request, final long startTime) {
+        final BatchableSpiceRequest<?> batchableSpiceRequest = (BatchableSpiceRequest<?>) request.getSpiceRequest();
+        final StageContext stageContext = currentStageContext.get();
+        final RequestAttempt attempt = stageContext != null ? stageContext.attempt : new RequestAttempt(null);
+        final List<Object> key = Arrays.<Object> asList(batchableSpiceRequest.getClass(), batchableSpiceRequest.getBatchKey());
+        // the batch holds the attempt until it is loaded.
+        attempt.retain();
+
+        Batch batchToLoad = null;
+        synchronized (mapKeyToBatch) {
+            Batch batch = mapKeyToBatch.get(key);
+            if (batch == null) {
+                batch = new Batch(key);
+                mapKeyToBatch.put(key, batch);
+                final Batch newBatch = batch;
                 try {
-                    processRequest(request);
-                } catch (final Throwable t) {
-                    Ln.d(t, "An unexpected error occurred when processsing request %s", request.toString());
-                } finally {
-                    request.setRequestCancellationListener(null);
+                    batch.windowFuture = retryExecutorService.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (removeBatch(newBatch)) {
+                                loadBatch(newBatch);
+                            }
+                        }
+                    }, batchWindow, TimeUnit.MILLISECONDS);
+                } catch (final RejectedExecutionException e) {
+                    // runner is stopped, the batch is loaded right away.
+                    mapKeyToBatch.remove(key);
+                    batchToLoad = batch;
                 }
             }
+            batch.members.add(new BatchMember(request, attempt, startTime));
+            if (Ln.isDebugEnabled()) {
+                Ln.d("Request %s added to batch of size %d.", request, batch.members.size());
+            }
+            if (batchToLoad == null && batch.members.size() >= batchableSpiceRequest.getMaxBatchSize()) {
+                mapKeyToBatch.remove(key);
+                batch.windowFuture.cancel(false);
+                batchToLoad = batch;
+            }
+        }
+        if (batchToLoad != null) {
+            loadBatch(batchToLoad);
+        }
+    }
+
+    /** @return true if the batch was waiting and has been removed. */
+    private boolean removeBatch(final Batch batch) {
+        synchronized (mapKeyToBatch) {
+            if (mapKeyToBatch.get(batch.key) != batch) {
+                return false;
+            }
+            mapKeyToBatch.remove(batch.key);
+            return true;
+        }
+    }
 
+    /**
+     * Submits the network call of a batch, like {@link Stage#NETWORK} of a
+     * single request. Requests of a batch share a single call, they are
+     * expected to share their host : the host of the first one is used.
+     */
+    private void loadBatch(final Batch batch) {
+        int priority = Integer.MAX_VALUE;
+        long deadline = DeadlineRunnable.NO_DEADLINE;
+        for (final BatchMember member : batch.members) {
+            priority = Math.min(priority, member.request.getPriority());
+            deadline = Math.min(deadline, member.request.getDeadline());
+        }
+        final int batchPriority = priority;
+        final long batchDeadline = deadline;
+        try {
+            submit(Stage.NETWORK, batch.members.get(0).request, new DeadlineRunnable() {
+                @Override
+                public void run() {
+                    try {
+                        processBatch(batch);
+                    } catch (final Throwable t) {
+                        Ln.d(t, "An unexpected error occurred when processsing batch %s", batch.key);
+                    }
+                }
+
+                @Override
+                public int getPriority() {
+                    return batchPriority;
+                }
+
+                @Override
+                public long getDeadline() {
+                    return batchDeadline;
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            Ln.d(e, "Dropping batch : %s as runner is stopped.", batch.key);
+            cancelBatch(batch);
+        }
+    }
+
+    /**
+     * Cancels the requests of a batch that will never be loaded, as the runner
+     * is stopped. Their listeners are notified as for any cancelled request.
+     */
+    private void cancelBatch(final Batch batch) {
+        for (final BatchMember member : batch.members) {
+            member.request.cancel();
+            printRequestProcessingDuration(member.startTime, member.request);
+            releaseAttempt(member.request, member.attempt);
+        }
+    }
+
+    /**
+     * Loads the requests of a batch that are neither cancelled nor expired in
+     * a single network call, then processes the result of each of them.
+     * Expired requests fail, as they would have without a batch.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void processBatch(final Batch batch) {
+        final List<BatchMember> liveMembers = new ArrayList<BatchMember>(batch.members.size());
+        final List<BatchableSpiceRequest> requests = new ArrayList<BatchableSpiceRequest>(batch.members.size());
+        for (final BatchMember member : batch.members) {
+            if (member.request.isCancelled()) {
+                printRequestProcessingDuration(member.startTime, member.request);
+                releaseAttempt(member.request, member.attempt);
+            } else if (member.request.isExpired()) {
+                Ln.d("Deadline of request %s has passed.", member.request);
+                requestProgressManager.notifyListenersOfRequestFailure(member.request, new RequestExpiredException("Deadline passed before loading data from network"));
+                printRequestProcessingDuration(member.startTime, member.request);
+                releaseAttempt(member.request, member.attempt);
+            } else {
+                member.request.setStatus(RequestStatus.LOADING_FROM_NETWORK);
+                liveMembers.add(member);
+                requests.add((BatchableSpiceRequest) member.request.getSpiceRequest());
+            }
+        }
+        if (liveMembers.isEmpty()) {
+            return;
+        }
+
+        List<?> results = null;
+        Exception exception = null;
+        if (Ln.isDebugEnabled()) {
+            Ln.d("Calling netwok request for a batch of %d requests.", requests.size());
+        }
+        final long networkStartTime = System.nanoTime();
+        long networkTime = 0;
+        try {
+            results = requests.get(0).loadDataFromNetwork(requests);
+            if (results == null || results.size() != requests.size()) {
+                throw new IllegalStateException("Batch of " + requests.size() + " requests returned " + (results == null ? null : results.size()) + " results");
+            }
+            Ln.d("Network request call ended.");
+        } catch (final Exception e) {
+            exception = e;
+        } finally {
+            networkTime = System.nanoTime() - networkStartTime;
+            if (adaptivePoolSizer != null) {
+                adaptivePoolSizer.recordNetworkTime(networkTime);
+            }
+        }
+
+        for (int i = 0; i < liveMembers.size(); i++) {
+            final BatchMember member = liveMembers.get(i);
+            // each request of the batch waited for the whole network call.
+            addDuration(member.attempt, Phase.NETWORK, networkTime);
+            currentStageContext.set(new StageContext(Stage.NETWORK, member.attempt));
+            try {
+                if (exception != null) {
+                    processNetworkFailure(member.request, exception, member.startTime);
+                } else {
+                    processNetworkResult((CachedSpiceRequest) member.request, results.get(i), member.startTime);
+                }
+            } catch (final Throwable t) {
+                Ln.d(t, "An unexpected error occurred when processsing request %s", member.request);
+            } finally {
+                currentStageContext.remove();
+                releaseAttempt(member.request, member.attempt);
+            }
+        }
+    }
+
+    /**
+     * Invoked once a request has been processed. A request to retry must still
+     * be cancellable.
+     */
+    private void onRequestAttemptOver(final CachedSpiceRequest<?> request) {
+        if (setRequestToRetry.remove(request)) {
+            scheduleRetry(request);
+        } else {
+            request.setRequestCancellationListener(null);
+        }
+    }
+
+    protected void planRequestExecution(final CachedSpiceRequest<?> request) {
+        final Stage stage = isReadingFromCache(request) ? Stage.CACHE_READ : Stage.NETWORK;
+        final RequestTimings requestTimings = requestTimingRecorder != null ? requestTimingRecorder.startTimings(request) : null;
+        request.setRequestTimings(requestTimings);
+        final RequestAttempt attempt = new RequestAttempt(requestTimings);
+        attempt.retain();
+        Future<?> future = submit(stage, request, createStageRunnable(stage, request, attempt, new Runnable() {
             @Override
-            public int getPriority() {
-                return request.getPriority();
+            public void run() {
+                processRequest(request);
             }
-        });
+        }));
         request.setFuture(future);
     }
 
@@ -237,6 +633,128 @@ public class DefaultRequestRunner implements RequestRunner {
     public void setFailOnCacheError(boolean failOnCacheError) {
         this.failOnCacheError = failOnCacheError;
     }
+
+    /**
+     * Sets the {@link ExecutorService}s of cache stages. Must be invoked
+     * before requests are executed. They will be shut down with this runner.
+     * @param cacheReadExecutorService
+     *            executes {@link Stage#CACHE_READ}. If null, the executor of
+     *            network requests is used.
+     * @param cacheWriteExecutorService
+     *            executes {@link Stage#CACHE_WRITE}. If null, the executor of
+     *            network requests is used.
+     */
+    public void setCacheExecutorServices(ExecutorService cacheReadExecutorService, ExecutorService cacheWriteExecutorService) {
+        this.cacheReadExecutorService = cacheReadExecutorService;
+        this.cacheWriteExecutorService = cacheWriteExecutorService;
+    }
+
+    /**
+     * @param stage
+     *            a stage of request processing.
+     * @return the number of tasks waiting to be executed by the executor of
+     *         this stage, -1 if it is unknown. Stages that share an executor
+     *         share their queue.
+     */
+    public int getQueueDepth(Stage stage) {
+        final ExecutorService stageExecutorService = getExecutorService(stage);
+        if (stageExecutorService instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) stageExecutorService).getQueue().size();
+        }
+        return -1;
+    }
+
+    /**
+     * @param stage
+     *            a stage of request processing.
+     * @return a snapshot of the statistics of the executor of this stage, null
+     *         if it is not a {@link ThreadPoolExecutor}. Stages that share an
+     *         executor share their statistics.
+     */
+    public ThreadPoolStatistics getThreadPoolStatistics(Stage stage) {
+        final ExecutorService stageExecutorService = getExecutorService(stage);
+        if (stageExecutorService instanceof ThreadPoolExecutor) {
+            return ThreadPoolStatistics.of((ThreadPoolExecutor) stageExecutorService);
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of failed requests that will be retried : the ones
+     *         waiting for the delay before their retry, and the ones whose
+     *         failed attempt is not over yet.
+     */
+    public int getPendingRetryCount() {
+        int pendingRetryCount = setRequestToRetry.size();
+        final Iterator<CachedSpiceRequest<?>> iterator = setRequestWaitingForRetry.iterator();
+        while (iterator.hasNext()) {
+            // the retry of a cancelled request will never be executed.
+            if (iterator.next().isCancelled()) {
+                iterator.remove();
+            } else {
+                pendingRetryCount++;
+            }
+        }
+        return pendingRetryCount;
+    }
+
+    public AdaptivePoolSizer getAdaptivePoolSizer() {
+        return adaptivePoolSizer;
+    }
+
+    /**
+     * @param adaptivePoolSizer
+     *            will be fed with the timings of requests to adapt the size of
+     *            the executor of this runner. Must be set before requests are
+     *            executed.
+     */
+    public void setAdaptivePoolSizer(AdaptivePoolSizer adaptivePoolSizer) {
+        this.adaptivePoolSizer = adaptivePoolSizer;
+    }
+
+    public long getBatchWindow() {
+        return batchWindow;
+    }
+
+    /**
+     * @param batchWindow
+     *            the time, in ms, a {@link BatchableSpiceRequest} waits for
+     *            other requests to merge with before loading data from
+     *            network. Defaults to {@link #DEFAULT_BATCH_WINDOW}.
+     */
+    public void setBatchWindow(long batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    public HostAwareScheduler getHostAwareScheduler() {
+        return hostAwareScheduler;
+    }
+
+    /**
+     * @param hostAwareScheduler
+     *            will submit {@link Stage#NETWORK} of requests and batches
+     *            that have a host key, to limit the number of requests
+     *            processed at the same time per host. It must be layered on
+     *            the executor of this runner. Must be set before requests
+     *            are executed.
+     */
+    public void setHostAwareScheduler(HostAwareScheduler hostAwareScheduler) {
+        this.hostAwareScheduler = hostAwareScheduler;
+    }
+
+    public RequestTimingRecorder getRequestTimingRecorder() {
+        return requestTimingRecorder;
+    }
+
+    /**
+     * @param requestTimingRecorder
+     *            will collect the timings of each attempt to process a
+     *            request. Must be set before requests are executed. If null,
+     *            requests are not timed.
+     */
+    public void setRequestTimingRecorder(RequestTimingRecorder requestTimingRecorder) {
+        this.requestTimingRecorder = requestTimingRecorder;
+    }
     
     public void shouldStop() {
 
@@ -245,6 +763,25 @@ public class DefaultRequestRunner implements RequestRunner {
         try {
             isStopped = true;
             executorService.shutdown();
+            if (cacheReadExecutorService != null) {
+                cacheReadExecutorService.shutdown();
+            }
+            if (cacheWriteExecutorService != null) {
+                cacheWriteExecutorService.shutdown();
+            }
+            // the windows of pending batches are dropped with the retry
+            // executor.
+            final List<Batch> listPendingBatch;
+            synchronized (mapKeyToBatch) {
+                listPendingBatch = new ArrayList<Batch>(mapKeyToBatch.values());
+                mapKeyToBatch.clear();
+            }
+            for (final Batch batch : listPendingBatch) {
+                batch.windowFuture.cancel(false);
+                cancelBatch(batch);
+            }
+            retryExecutorService.shutdownNow();
+            setRequestWaitingForRetry.clear();
         } finally {
             executorLock.unlock();
         }
@@ -254,45 +791,345 @@ public class DefaultRequestRunner implements RequestRunner {
         return isStopped;
     }
 
+    @Override
+    public String toString() {
+        final StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append('[');
+        stringBuilder.append(getClass().getName());
+        stringBuilder.append(" : queue depth per stage = [");
+        for (final Stage stage : Stage.values()) {
+            stringBuilder.append(stage);
+            stringBuilder.append(':');
+            stringBuilder.append(getQueueDepth(stage));
+            stringBuilder.append(' ');
+        }
+        stringBuilder.append(']');
+        if (executorService instanceof PriorityThreadPoolExecutor) {
+            stringBuilder.append(", wait time per priority = ");
+            stringBuilder.append(((PriorityThreadPoolExecutor) executorService).getWaitTimeStatistics().values());
+        }
+        if (hostAwareScheduler != null) {
+            stringBuilder.append(", ");
+            stringBuilder.append(hostAwareScheduler);
+        }
+        if (requestTimingRecorder != null) {
+            stringBuilder.append(", ");
+            stringBuilder.append(requestTimingRecorder);
+        }
+        stringBuilder.append(']');
+        return stringBuilder.toString();
+    }
+
     // ============================================================================================
     // PRIVATE
     // ============================================================================================
 
     private <T> T loadDataFromCache(final Class<T> clazz, final Object cacheKey, final long maxTimeInCacheBeforeExpiry) throws CacheLoadingException, CacheCreationException {
-        return cacheManager.loadDataFromCache(clazz, cacheKey, maxTimeInCacheBeforeExpiry);
+        final long startTime = System.nanoTime();
+        final boolean isRecordingCacheCpuTime = isRecordingCacheCpuTime(Stage.CACHE_READ);
+        final long cpuStartTime = isRecordingCacheCpuTime ? AdaptivePoolSizer.getCurrentThreadCpuTime() : 0;
+        try {
+            return cacheManager.loadDataFromCache(clazz, cacheKey, maxTimeInCacheBeforeExpiry);
+        } finally {
+            if (isRecordingCacheCpuTime) {
+                adaptivePoolSizer.recordCacheCpuTime(AdaptivePoolSizer.getCurrentThreadCpuTime() - cpuStartTime);
+            }
+            addCurrentDuration(Phase.CACHE_READ, System.nanoTime() - startTime);
+        }
     }
 
     private <T> T saveDataToCacheAndReturnData(final T data, final Object cacheKey) throws CacheSavingException, CacheCreationException {
-        return cacheManager.saveDataToCacheAndReturnData(data, cacheKey);
+        final long startTime = System.nanoTime();
+        final boolean isRecordingCacheCpuTime = isRecordingCacheCpuTime(Stage.CACHE_WRITE);
+        final long cpuStartTime = isRecordingCacheCpuTime ? AdaptivePoolSizer.getCurrentThreadCpuTime() : 0;
+        try {
+            return cacheManager.saveDataToCacheAndReturnData(data, cacheKey);
+        } finally {
+            if (isRecordingCacheCpuTime) {
+                adaptivePoolSizer.recordCacheCpuTime(AdaptivePoolSizer.getCurrentThreadCpuTime() - cpuStartTime);
+            }
+            addCurrentDuration(Phase.CACHE_WRITE, System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * The pool sizer only adapts {@link #executorService} : cache CPU time is
+     * only recorded when it is spent by one of its threads.
+     * @param stage
+     *            the stage of the cache operation, if the current thread is
+     *            not executing a stage.
+     */
+    private boolean isRecordingCacheCpuTime(final Stage stage) {
+        if (adaptivePoolSizer == null) {
+            return false;
+        }
+        final StageContext stageContext = currentStageContext.get();
+        final Stage currentStage = stageContext != null ? stageContext.stage : stage;
+        return getExecutorService(currentStage) == executorService;
+    }
+
+    /** Adds time spent in a phase to the attempt executed by the current thread, if timed. */
+    private void addCurrentDuration(final Phase phase, final long duration) {
+        final StageContext stageContext = currentStageContext.get();
+        if (stageContext != null) {
+            addDuration(stageContext.attempt, phase, duration);
+        }
+    }
+
+    private static void addDuration(final RequestAttempt attempt, final Phase phase, final long duration) {
+        if (attempt.requestTimings != null) {
+            attempt.requestTimings.addDuration(phase, duration);
+        }
+    }
+
+    private static boolean isReadingFromCache(final CachedSpiceRequest<?> request) {
+        return request.getRequestCacheKey() != null && request.getCacheDuration() != DurationInMillis.ALWAYS_EXPIRED;
+    }
+
+    private ExecutorService getExecutorService(final Stage stage) {
+        switch (stage) {
+            case CACHE_READ:
+                return cacheReadExecutorService != null ? cacheReadExecutorService : executorService;
+            case CACHE_WRITE:
+                return cacheWriteExecutorService != null ? cacheWriteExecutorService : executorService;
+            default:
+                return executorService;
+        }
     }
 
+    private Future<?> submit(final Stage stage, final CachedSpiceRequest<?> request, final PriorityRunnable stageRunnable) {
+        if (stage == Stage.NETWORK && hostAwareScheduler != null) {
+            return hostAwareScheduler.submit(stageRunnable, request.getHostKey());
+        }
+        return getExecutorService(stage).submit(stageRunnable);
+    }
+
+    /**
+     * Continues the processing of a request in another stage. If this stage is
+     * executed by the same executor as the current one, it is executed by the
+     * current thread. The current stage must return right after.
+     */
+    private void handOff(final Stage stage, final CachedSpiceRequest<?> request, final Runnable task) {
+        final StageContext stageContext = currentStageContext.get();
+        if (stageContext == null || getExecutorService(stage) == getExecutorService(stageContext.stage)) {
+            task.run();
+            return;
+        }
+        submitStage(stage, request, stageContext.attempt, task);
+    }
+
+    /**
+     * Submits a stage of an attempt to the executor of this stage. It is
+     * cancellable through the future of the request.
+     */
+    private void submitStage(final Stage stage, final CachedSpiceRequest<?> request, final RequestAttempt attempt, final Runnable task) {
+        submitStage(stage, request, attempt, true, task);
+    }
+
+    /**
+     * @param isHostLimited
+     *            false to bypass {@link #hostAwareScheduler}, for a network
+     *            stage that doesn't use the network.
+     */
+    private void submitStage(final Stage stage, final CachedSpiceRequest<?> request, final RequestAttempt attempt, final boolean isHostLimited, final Runnable task) {
+        attempt.retain();
+        try {
+            final PriorityRunnable stageRunnable = createStageRunnable(stage, request, attempt, task);
+            final Future<?> future = isHostLimited ? submit(stage, request, stageRunnable) : getExecutorService(stage).submit(stageRunnable);
+            if (stage == Stage.NETWORK) {
+                request.setFuture(future);
+                // request may have been cancelled before its future was set.
+                if (request.isCancelled()) {
+                    future.cancel(true);
+                }
+            }
+        } catch (final RejectedExecutionException e) {
+            Ln.d(e, "Dropping request : %s as runner is stopped.", request);
+            releaseAttempt(request, attempt);
+        }
+    }
+
+    private DeadlineRunnable createStageRunnable(final Stage stage, final CachedSpiceRequest<?> request, final RequestAttempt attempt, final Runnable task) {
+        final long submitTime = System.nanoTime();
+        // the pool sizer only adapts the executor of network requests.
+        final boolean isRecordingQueueWait = adaptivePoolSizer != null && getExecutorService(stage) == executorService;
+        return new DeadlineRunnable() {
+            @Override
+            public void run() {
+                final long queueWait = System.nanoTime() - submitTime;
+                if (isRecordingQueueWait) {
+                    adaptivePoolSizer.recordQueueWait(queueWait);
+                }
+                addDuration(attempt, Phase.QUEUE_WAIT, queueWait);
+                currentStageContext.set(new StageContext(stage, attempt));
+                try {
+                    task.run();
+                } catch (final Throwable t) {
+                    Ln.d(t, "An unexpected error occurred when processsing request %s", request);
+                } finally {
+                    currentStageContext.remove();
+                    releaseAttempt(request, attempt);
+                }
+            }
+
+            @Override
+            public int getPriority() {
+                return request.getPriority();
+            }
+
+            @Override
+            public long getDeadline() {
+                return request.getDeadline();
+            }
+        };
+    }
+
+    private void releaseAttempt(final CachedSpiceRequest<?> request, final RequestAttempt attempt) {
+        if (attempt.release()) {
+            onRequestAttemptOver(request);
+            if (attempt.requestTimings != null) {
+                attempt.requestTimings.onAttemptOver();
+            }
+        }
+    }
+
+    /**
+     * Notifies listeners of a failure, unless the request has to be retried.
+     * In that case, the retry is scheduled when the current attempt is over.
+     */
     private void handleRetry(final CachedSpiceRequest<?> request, final SpiceException e) {
         if (request.getRetryPolicy() != null) {
             request.getRetryPolicy().retry(e);
             if (request.getRetryPolicy().getRetryCount() > 0) {
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            Thread.sleep(request.getRetryPolicy().getDelayBeforeRetry());
-                            executeRequest(request);
-                        } catch (InterruptedException e) {
-                            Ln.e(e, "Retry attempt failed for request " + request);
-                        }
-                    }
-                }).start();
+                setRequestToRetry.add(request);
                 return;
             }
         }
         requestProgressManager.notifyListenersOfRequestFailure(request, e);
     }
 
+    /**
+     * Executes a request again after the delay of its retry policy. Until
+     * then, cancelling the request cancels the retry.
+     */
+    private void scheduleRetry(final CachedSpiceRequest<?> request) {
+        executorLock.lock();
+
+        try {
+            if (isStopped) {
+                Ln.d("Dropping retry of request : %s as runner is stopped.", request);
+                return;
+            }
+            final long delayBeforeRetry = request.getRetryPolicy().getDelayBeforeRetry();
+            Ln.d("Retrying request %s in %d ms.", request, delayBeforeRetry);
+            setRequestWaitingForRetry.add(request);
+            final ScheduledFuture<?> future = retryExecutorService.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    setRequestWaitingForRetry.remove(request);
+                    executeRequest(request);
+                }
+            }, delayBeforeRetry, TimeUnit.MILLISECONDS);
+            request.setFuture(future);
+            // request may have been cancelled before its future was set.
+            if (request.isCancelled()) {
+                future.cancel(false);
+            }
+        } finally {
+            executorLock.unlock();
+        }
+    }
+
     private static String getTimeString(long millis) {
         return String.format("%02d ms", millis);
     }
 
     private static void printRequestProcessingDuration(long startTime, CachedSpiceRequest<?> request) {
-        Ln.d("It tooks %s to process request %s.", getTimeString(System.currentTimeMillis() - startTime), request.toString());
+        if (Ln.isDebugEnabled()) {
+            Ln.d("It tooks %s to process request %s.", getTimeString(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)), request);
+        }
+    }
+
+    // ============================================================================================
+    // INNER CLASSES
+    // ============================================================================================
+
+    /** Stages of the processing of a request. */
+    public enum Stage {
+        /** Looks for the result of a request in cache. */
+        CACHE_READ,
+        /** Loads the result of a request from network. */
+        NETWORK,
+        /** Saves the result of a request to cache. */
+        CACHE_WRITE
+    }
+
+    /**
+     * An attempt to process a request. It is retained by each stage submitted
+     * and by pending asynchronous network operations. The attempt is over once
+     * all of them released it.
+     */
+    private static final class RequestAttempt {
+        private final AtomicInteger retainCount = new AtomicInteger();
+        /** Null if the attempt is not timed. */
+        private final RequestTimings requestTimings;
+
+        private RequestAttempt(RequestTimings requestTimings) {
+            this.requestTimings = requestTimings;
+        }
+
+        private void retain() {
+            retainCount.incrementAndGet();
+        }
+
+        /** @return true if the attempt is over. */
+        private boolean release() {
+            return retainCount.decrementAndGet() == 0;
+        }
+    }
+
+    /** The stage of an attempt executed by a thread. */
+    private static final class StageContext {
+        private final Stage stage;
+        private final RequestAttempt attempt;
+
+        private StageContext(Stage stage, RequestAttempt attempt) {
+            this.stage = stage;
+            this.attempt = attempt;
+        }
+    }
+
+    /** Requests merged into a single network call. */
+    private static final class Batch {
+        private final List<Object> key;
+        /* Guarded by mapKeyToBatch until the batch is removed from it. */
+        private final List<BatchMember> members = new ArrayList<BatchMember>();
+        private ScheduledFuture<?> windowFuture;
+
+        private Batch(List<Object> key) {
+            this.key = key;
+        }
+    }
+
+    private static final class BatchMember {
+        private final CachedSpiceRequest<?> request;
+        private final RequestAttempt attempt;
+        private final long startTime;
+
+        private BatchMember(CachedSpiceRequest<?> request, RequestAttempt attempt, long startTime) {
+            this.request = request;
+            this.attempt = attempt;
+            this.startTime = startTime;
+        }
+    }
+
+    private static final class RetryThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, RETRY_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
 }
@@ -1,11 +1,10 @@
 package com.octo.android.robospice.request;
 
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import roboguice.util.temp.Ln;
 
@@ -13,6 +12,7 @@ import com.octo.android.robospice.SpiceService;
 import com.octo.android.robospice.persistence.CacheManager;
 import com.octo.android.robospice.request.listener.RequestCancellationListener;
 import com.octo.android.robospice.request.listener.RequestListener;
+import com.octo.android.robospice.request.listener.RequestStatus;
 import com.octo.android.robospice.request.listener.SpiceServiceListener;
 
 /**
@@ -25,11 +25,13 @@ public class RequestProcessor {
     // ATTRIBUTES
     // ============================================================================================
 
-    private final Map<CachedSpiceRequest<?>, Set<RequestListener<?>>> mapRequestToRequestListener = Collections.synchronizedMap(new LinkedHashMap<CachedSpiceRequest<?>, Set<RequestListener<?>>>());
+    private final RequestRegistry requestRegistry = new RequestRegistry();
     private final RequestProgressManager requestProgressManager;
     private final RequestRunner requestRunner;
     private final CacheManager cacheManager;
     private boolean isStopped;
+    private final AtomicLong processableRequestCount = new AtomicLong();
+    private final AtomicLong aggregatedRequestCount = new AtomicLong();
 
     // ============================================================================================
     // CONSTRUCTOR
@@ -47,7 +49,7 @@ public class RequestProcessor {
     public RequestProcessor(final CacheManager cacheManager, final RequestProgressManager requestProgressManager, final RequestRunner requestRunner) {
         this.cacheManager = cacheManager;
         this.requestProgressManager = requestProgressManager;
-        requestProgressManager.setMapRequestToRequestListener(mapRequestToRequestListener);
+        requestProgressManager.setRequestRegistry(requestRegistry);
         this.requestRunner = requestRunner;
     }
 
@@ -56,44 +58,43 @@ public class RequestProcessor {
     // ============================================================================================
     public void addRequest(final CachedSpiceRequest<?> request, final Set<RequestListener<?>> listRequestListener) {
         if (isStopped) {
-            Ln.d("Dropping request : " + request + " as processor is stopped.");
+            Ln.d("Dropping request : %s as processor is stopped.", request);
             return;
         }
 
-        Ln.d("Adding request to queue " + hashCode() + ": " + request + " size is " + mapRequestToRequestListener.size());
+        if (Ln.isDebugEnabled()) {
+            Ln.d("Adding request to queue %d: %s size is %d", hashCode(), request, requestRegistry.size());
+        }
 
         if (request.isCancelled()) {
-            synchronized (mapRequestToRequestListener) {
-                for (final CachedSpiceRequest<?> cachedSpiceRequest : mapRequestToRequestListener.keySet()) {
-                    if (request.equals(cachedSpiceRequest)) {
-                        cachedSpiceRequest.cancel();
-                        requestProgressManager.notifyListenersOfRequestCancellation(request);
-                        return;
-                    }
-                }
+            final CachedSpiceRequest<?> cachedSpiceRequest = requestRegistry.getRegisteredRequest(request);
+            if (cachedSpiceRequest != null) {
+                cachedSpiceRequest.cancel();
+                requestProgressManager.notifyListenersOfRequestCancellation(request);
+                return;
             }
         }
 
-        boolean aggregated = false;
-        Set<RequestListener<?>> listRequestListenerForThisRequest;
-
-        synchronized (mapRequestToRequestListener) {
-            listRequestListenerForThisRequest = mapRequestToRequestListener.get(request);
-
-            if (listRequestListenerForThisRequest == null) {
-                if (request.isProcessable()) {
-                    Ln.d("Adding entry for type %s and cacheKey %s.", request.getResultType(), request.getRequestCacheKey());
-                    listRequestListenerForThisRequest = Collections.synchronizedSet(new HashSet<RequestListener<?>>());
-                    this.mapRequestToRequestListener.put(request, listRequestListenerForThisRequest);
-                }
-            } else {
+        boolean aggregated;
+        boolean found;
+        if (request.isProcessable()) {
+            // an equal request may complete between aggregation and listener
+            // registration, then request has to be registered again.
+            do {
+                aggregated = !requestRegistry.registerIfAbsent(request);
+                found = requestRegistry.addListeners(request, listRequestListener);
+            } while (!found);
+
+            processableRequestCount.incrementAndGet();
+            if (aggregated) {
+                aggregatedRequestCount.incrementAndGet();
                 Ln.d("Request for type %s and cacheKey %s already exists.", request.getResultType(), request.getRequestCacheKey());
-                aggregated = true;
+            } else {
+                Ln.d("Adding entry for type %s and cacheKey %s.", request.getResultType(), request.getRequestCacheKey());
             }
-        }
-
-        if (listRequestListener != null && listRequestListenerForThisRequest != null) {
-            listRequestListenerForThisRequest.addAll(listRequestListener);
+        } else {
+            found = requestRegistry.addListeners(request, listRequestListener);
+            aggregated = found;
         }
 
         if (aggregated) {
@@ -104,7 +105,7 @@ public class RequestProcessor {
         if (request.isProcessable()) {
             requestProgressManager.notifyListenersOfRequestAdded(request, listRequestListener);
         } else {
-            if (listRequestListenerForThisRequest == null) {
+            if (!found) {
                 requestProgressManager.notifyListenersOfRequestNotFound(request, listRequestListener);
             }
             requestProgressManager.notifyOfRequestProcessed(request, listRequestListener);
@@ -118,14 +119,14 @@ public class RequestProcessor {
             @Override
             public void onRequestCancelled() {
                 requestProgressManager.notifyListenersOfRequestCancellation(request);
-                mapRequestToRequestListener.remove(request);
+                requestRegistry.remove(request);
             }
         };
         request.setRequestCancellationListener(requestCancellationListener);
 
         if (request.isCancelled()) {
             requestProgressManager.notifyListenersOfRequestCancellation(request);
-            mapRequestToRequestListener.remove(request);
+            requestRegistry.remove(request);
             return;
         } else {
             requestRunner.executeRequest(request);
@@ -166,6 +167,51 @@ public class RequestProcessor {
         requestRunner.setFailOnCacheError(failOnCacheError);
     }
 
+    /**
+     * @return the number of processable requests added so far, aggregated or
+     *         not.
+     */
+    public long getProcessableRequestCount() {
+        return processableRequestCount.get();
+    }
+
+    /**
+     * @return the number of processable requests added so far that were
+     *         aggregated to an equal request in progress.
+     */
+    public long getAggregatedRequestCount() {
+        return aggregatedRequestCount.get();
+    }
+
+    /** @return the number of requests in progress. */
+    public int getPendingRequestCount() {
+        return requestRegistry.size();
+    }
+
+    /**
+     * @return the number of requests in progress, by status. Built without
+     *         locking the requests in progress.
+     */
+    public Map<RequestStatus, Integer> getRequestCountPerStatus() {
+        final Map<RequestStatus, Integer> mapStatusToRequestCount = new EnumMap<RequestStatus, Integer>(RequestStatus.class);
+        for (final RequestStatus requestStatus : RequestStatus.values()) {
+            mapStatusToRequestCount.put(requestStatus, 0);
+        }
+        for (final CachedSpiceRequest<?> request : requestRegistry.snapshot().keySet()) {
+            final RequestStatus requestStatus = request.getProgress().getStatus();
+            mapStatusToRequestCount.put(requestStatus, mapStatusToRequestCount.get(requestStatus) + 1);
+        }
+        return mapStatusToRequestCount;
+    }
+
+    public RequestRunner getRequestRunner() {
+        return requestRunner;
+    }
+
+    public CacheManager getCacheManager() {
+        return cacheManager;
+    }
+
     @Override
     public String toString() {
         final StringBuilder stringBuilder = new StringBuilder();
@@ -174,10 +220,11 @@ public class RequestProcessor {
         stringBuilder.append(" : ");
 
         stringBuilder.append(" request count= ");
-        stringBuilder.append(mapRequestToRequestListener.keySet().size());
+        final Map<CachedSpiceRequest<?>, Set<RequestListener<?>>> snapshot = requestRegistry.snapshot();
+        stringBuilder.append(snapshot.size());
 
         stringBuilder.append(", listeners per requests = [");
-        for (final Map.Entry<CachedSpiceRequest<?>, Set<RequestListener<?>>> entry : mapRequestToRequestListener.entrySet()) {
+        for (final Map.Entry<CachedSpiceRequest<?>, Set<RequestListener<?>>> entry : snapshot.entrySet()) {
             stringBuilder.append(entry.getKey().getClass().getName());
             stringBuilder.append(":");
             stringBuilder.append(entry.getKey());
@@ -190,6 +237,8 @@ public class RequestProcessor {
         }
         stringBuilder.append(']');
 
+        stringBuilder.append(", runner = ");
+        stringBuilder.append(requestRunner);
         stringBuilder.append(']');
         return stringBuilder.toString();
     }
@@ -1,7 +1,6 @@
 package com.octo.android.robospice.request;
 
 import java.util.Collection;
-import java.util.Map;
 import java.util.Set;
 
 import roboguice.util.temp.Ln;
@@ -21,10 +20,21 @@ import com.octo.android.robospice.request.notifier.SpiceServiceListenerNotifier;
  * @author Andrew Clark
  */
 public class RequestProgressManager {
+    // ============================================================================================
+    // CONSTANTS
+    // ============================================================================================
+
+    /** Default minimum time between 2 progress updates of a request, in ms. */
+    public static final long DEFAULT_PROGRESS_MIN_INTERVAL = 100;
+    /** Default progress change of a request that is notified immediately. */
+    public static final float DEFAULT_PROGRESS_MIN_STEP = 0.05f;
+
     // ============================================================================================
     // ATTRIBUTES
     // ============================================================================================
-    private Map<CachedSpiceRequest<?>, Set<RequestListener<?>>> mapRequestToRequestListener;
+    private RequestRegistry requestRegistry;
+    private long progressMinInterval = DEFAULT_PROGRESS_MIN_INTERVAL;
+    private float progressMinStep = DEFAULT_PROGRESS_MIN_STEP;
 
     private final RequestProcessorListener requestProcessorListener;
     private final RequestListenerNotifier requestListenerNotifier;
@@ -45,8 +55,25 @@ public class RequestProgressManager {
     // API
     // ============================================================================================
 
-    public void setMapRequestToRequestListener(Map<CachedSpiceRequest<?>, Set<RequestListener<?>>> mapRequestToRequestListener) {
-        this.mapRequestToRequestListener = mapRequestToRequestListener;
+    public void setRequestRegistry(RequestRegistry requestRegistry) {
+        this.requestRegistry = requestRegistry;
+    }
+
+    /**
+     * Limits the progress updates published by requests while they load data
+     * from network. Status changes and completion are always notified. See
+     * {@link ThrottledRequestProgressListener}. Must be invoked before
+     * requests are executed.
+     * @param progressMinInterval
+     *            the minimum time between 2 progress updates of a request, in
+     *            ms. 0 notifies all updates.
+     * @param progressMinStep
+     *            the progress change of a request, between 0 and 1, that is
+     *            notified immediately.
+     */
+    public void setProgressThrottling(long progressMinInterval, float progressMinStep) {
+        this.progressMinInterval = progressMinInterval;
+        this.progressMinStep = progressMinStep;
     }
 
 
@@ -79,7 +106,9 @@ public class RequestProgressManager {
     }
 
     public <T> void notifyListenersOfRequestProgress(final CachedSpiceRequest<?> request, final Set<RequestListener<?>> listeners, final RequestProgress progress) {
-        Ln.d("Sending progress %s", progress.getStatus());
+        if (Ln.isDebugEnabled()) {
+            Ln.d("Sending progress %s", progress.getStatus());
+        }
 
         spiceServiceListenerNotifier.notifyObserversOfRequestProgress(request, progress);
         requestListenerNotifier.notifyListenersOfRequestProgress(request, listeners, progress);
@@ -87,21 +116,21 @@ public class RequestProgressManager {
     }
 
     protected void checkAllRequestComplete() {
-        if (mapRequestToRequestListener.isEmpty()) {
+        if (requestRegistry.isEmpty()) {
             Ln.d("Sending all request complete.");
             requestProcessorListener.allRequestComplete();
         }
     }
 
     public <T> void notifyListenersOfRequestSuccessButDontCompleteRequest(final CachedSpiceRequest<T> request, final T result) {
-        final Set<RequestListener<?>> listeners = mapRequestToRequestListener.get(request);
+        final Set<RequestListener<?>> listeners = requestRegistry.getListeners(request);
 
         spiceServiceListenerNotifier.notifyObserversOfRequestSuccess(request);
         requestListenerNotifier.notifyListenersOfRequestSuccess(request, result, listeners);
     }
 
     public <T> void notifyListenersOfRequestSuccess(final CachedSpiceRequest<T> request, final T result) {
-        final Set<RequestListener<?>> listeners = mapRequestToRequestListener.get(request);
+        final Set<RequestListener<?>> listeners = requestRegistry.getListeners(request);
         notifyListenersOfRequestProgress(request, listeners, RequestStatus.COMPLETE);
 
         spiceServiceListenerNotifier.notifyObserversOfRequestSuccess(request);
@@ -110,7 +139,7 @@ public class RequestProgressManager {
     }
 
     public <T> void notifyListenersOfRequestFailure(final CachedSpiceRequest<T> request, final SpiceException e) {
-        final Set<RequestListener<?>> listeners = mapRequestToRequestListener.get(request);
+        final Set<RequestListener<?>> listeners = requestRegistry.getListeners(request);
         notifyListenersOfRequestProgress(request, listeners, RequestStatus.COMPLETE);
 
         spiceServiceListenerNotifier.notifyObserversOfRequestFailure(request);
@@ -119,8 +148,8 @@ public class RequestProgressManager {
     }
 
     public void notifyListenersOfRequestCancellation(final CachedSpiceRequest<?> request) {
-        Ln.d("Not calling network request : " + request + " as it is cancelled. ");
-        final Set<RequestListener<?>> listeners = mapRequestToRequestListener.get(request);
+        Ln.d("Not calling network request : %s as it is cancelled. ", request);
+        final Set<RequestListener<?>> listeners = requestRegistry.getListeners(request);
         notifyListenersOfRequestProgress(request, listeners, RequestStatus.COMPLETE);
 
         spiceServiceListenerNotifier.notifyObserversOfRequestCancellation(request);
@@ -139,12 +168,12 @@ public class RequestProgressManager {
      *            notified
      */
     public void dontNotifyRequestListenersForRequest(final CachedSpiceRequest<?> request, final Collection<RequestListener<?>> listRequestListener) {
-        final Set<RequestListener<?>> setRequestListener = mapRequestToRequestListener.get(request);
+        final Set<RequestListener<?>> setRequestListener = requestRegistry.getListeners(request);
 
         requestListenerNotifier.clearNotificationsForRequest(request, setRequestListener);
 
         if (setRequestListener != null && listRequestListener != null) {
-            Ln.d("Removing listeners of request : " + request.toString() + " : " + setRequestListener.size());
+            Ln.d("Removing listeners of request : %s : %d", request, setRequestListener.size());
             setRequestListener.removeAll(listRequestListener);
         }
     }
@@ -158,15 +187,17 @@ public class RequestProgressManager {
     }
 
     public void notifyOfRequestProcessed(final CachedSpiceRequest<?> request, Set<RequestListener<?>> listeners) {
-        Ln.v("Removing %s  size is %d", request, mapRequestToRequestListener.size());
-        mapRequestToRequestListener.remove(request);
+        if (Ln.isVerboseEnabled()) {
+            Ln.v("Removing %s  size is %d", request, requestRegistry.size());
+        }
+        requestRegistry.remove(request);
 
         checkAllRequestComplete();
         spiceServiceListenerNotifier.notifyObserversOfRequestProcessed(request, listeners);
     }
 
     public int getPendingRequestCount() {
-        return mapRequestToRequestListener.keySet().size();
+        return requestRegistry.size();
     }
 
     public <T> RequestProgressListener createProgressListener(final CachedSpiceRequest<T> request) {
@@ -175,11 +206,14 @@ public class RequestProgressManager {
         final RequestProgressListener requestProgressListener = new RequestProgressListener() {
             @Override
             public void onRequestProgressUpdate(final RequestProgress progress) {
-                final Set<RequestListener<?>> listeners = mapRequestToRequestListener.get(request);
+                final Set<RequestListener<?>> listeners = requestRegistry.getListeners(request);
                 notifyListenersOfRequestProgress(request, listeners, progress);
             }
         };
-        return requestProgressListener;
+        if (progressMinInterval <= 0) {
+            return requestProgressListener;
+        }
+        return new ThrottledRequestProgressListener(requestProgressListener, progressMinInterval, progressMinStep);
     }
 
 }
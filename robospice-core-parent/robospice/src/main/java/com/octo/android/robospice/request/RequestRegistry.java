@@ -0,0 +1,165 @@
+package com.octo.android.robospice.request;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.octo.android.robospice.request.listener.RequestListener;
+
+/**
+ * Registry of the requests being processed by a {@link RequestProcessor} and
+ * of the listeners attached to them. Two equal {@link CachedSpiceRequest} are
+ * aggregated : the second one only adds its listeners to the first one.<br/>
+ * The registry is backed by a {@link ConcurrentHashMap}, so that adding,
+ * aggregating, looking up (for instance for every progress update) and
+ * removing requests never contend on a global lock. Each request owns its own
+ * set of listeners, synchronized on itself as the notifiers expect.
+ */
+public class RequestRegistry {
+
+    // ============================================================================================
+    // ATTRIBUTES
+    // ============================================================================================
+
+    private final ConcurrentMap<CachedSpiceRequest<?>, Entry> mapRequestToEntry = new ConcurrentHashMap<CachedSpiceRequest<?>, Entry>();
+
+    // ============================================================================================
+    // PUBLIC
+    // ============================================================================================
+
+    /**
+     * Registers a request if no equal request is already registered.
+     * @param request
+     *            the request to register.
+     * @return true if the request has been registered, false if an equal
+     *         request was already registered (and request will be aggregated
+     *         to it).
+     */
+    public boolean registerIfAbsent(final CachedSpiceRequest<?> request) {
+        if (mapRequestToEntry.containsKey(request)) {
+            return false;
+        }
+        return mapRequestToEntry.putIfAbsent(request, new Entry(request)) == null;
+    }
+
+    /**
+     * @param request
+     *            a request.
+     * @return whether or not a request equal to request is registered.
+     */
+    public boolean contains(final CachedSpiceRequest<?> request) {
+        return mapRequestToEntry.containsKey(request);
+    }
+
+    /**
+     * @param request
+     *            a request.
+     * @return the registered request that is equal to request. This is the
+     *         instance actually processed, possibly not request itself. Null if
+     *         there is no such request.
+     */
+    public CachedSpiceRequest<?> getRegisteredRequest(final CachedSpiceRequest<?> request) {
+        final Entry entry = mapRequestToEntry.get(request);
+        return entry == null ? null : entry.request;
+    }
+
+    /**
+     * @param request
+     *            a request.
+     * @return the listeners of the registered request that is equal to
+     *         request. Null if there is no such request.
+     */
+    public Set<RequestListener<?>> getListeners(final CachedSpiceRequest<?> request) {
+        final Entry entry = mapRequestToEntry.get(request);
+        return entry == null ? null : entry.listeners;
+    }
+
+    /**
+     * Attach listeners to a registered request.
+     * @param request
+     *            a request.
+     * @param listeners
+     *            the listeners to attach. May be null.
+     * @return true if a request equal to request was found.
+     */
+    public boolean addListeners(final CachedSpiceRequest<?> request, final Collection<RequestListener<?>> listeners) {
+        final Entry entry = mapRequestToEntry.get(request);
+        if (entry == null) {
+            return false;
+        }
+        if (listeners != null) {
+            entry.listeners.addAll(listeners);
+        }
+        return true;
+    }
+
+    /**
+     * Detach listeners from a registered request.
+     * @param request
+     *            a request.
+     * @param listeners
+     *            the listeners to detach. May be null.
+     * @return true if a request equal to request was found.
+     */
+    public boolean removeListeners(final CachedSpiceRequest<?> request, final Collection<RequestListener<?>> listeners) {
+        final Entry entry = mapRequestToEntry.get(request);
+        if (entry == null) {
+            return false;
+        }
+        if (listeners != null) {
+            entry.listeners.removeAll(listeners);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a request from the registry, typically when it has been
+     * processed.
+     * @param request
+     *            the request to remove.
+     * @return the listeners of the removed request, null if no request equal
+     *         to request was registered.
+     */
+    public Set<RequestListener<?>> remove(final CachedSpiceRequest<?> request) {
+        final Entry entry = mapRequestToEntry.remove(request);
+        return entry == null ? null : entry.listeners;
+    }
+
+    public boolean isEmpty() {
+        return mapRequestToEntry.isEmpty();
+    }
+
+    public int size() {
+        return mapRequestToEntry.size();
+    }
+
+    /**
+     * @return a copy of the registry content. It is built without locking the
+     *         registry and reflects its state at some point during the call.
+     */
+    public Map<CachedSpiceRequest<?>, Set<RequestListener<?>>> snapshot() {
+        final Map<CachedSpiceRequest<?>, Set<RequestListener<?>>> snapshot = new LinkedHashMap<CachedSpiceRequest<?>, Set<RequestListener<?>>>();
+        for (final Entry entry : mapRequestToEntry.values()) {
+            snapshot.put(entry.request, entry.listeners);
+        }
+        return snapshot;
+    }
+
+    // ============================================================================================
+    // INNER CLASSES
+    // ============================================================================================
+
+    private static final class Entry {
+        private final CachedSpiceRequest<?> request;
+        private final Set<RequestListener<?>> listeners = Collections.synchronizedSet(new HashSet<RequestListener<?>>());
+
+        private Entry(final CachedSpiceRequest<?> request) {
+            this.request = request;
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.octo.android.robospice.request;
 
 import java.lang.reflect.Modifier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.content.Context;
 
+import com.octo.android.robospice.priority.DeadlineRunnable;
 import com.octo.android.robospice.request.listener.RequestCancellationListener;
 import com.octo.android.robospice.request.listener.RequestProgress;
 import com.octo.android.robospice.request.listener.RequestProgressListener;
@@ -26,12 +31,23 @@ public abstract class SpiceRequest<RESULT> implements Comparable<SpiceRequest<RE
     public static final int PRIORITY_NORMAL = 50;
     public static final int PRIORITY_LOW = 100;
 
+    private static final String NETWORK_OPERATION_ABORT_THREAD_NAME = "SpiceRequest abort";
+
+    /** Gives each request its creation order. */
+    private static final AtomicLong SEQUENCE_NUMBER_GENERATOR = new AtomicLong();
+
     private final Class<RESULT> resultType;
-    private boolean isCanceled = false;
+    private final long sequenceNumber = SEQUENCE_NUMBER_GENERATOR.getAndIncrement();
+    private volatile boolean isCanceled = false;
     private Future<?> future;
     private RequestProgressListener requestProgressListener;
     private boolean isAggregatable = true;
     private int priority = PRIORITY_NORMAL;
+    private Object hostKey;
+    private volatile long deadline = DeadlineRunnable.NO_DEADLINE;
+    /** The thread loading data from network, if any. Guarded by networkLock. */
+    private Thread networkThread;
+    private final Object networkLock = new Object();
     private RequestProgress progress = new RequestProgress(RequestStatus.PENDING);
     private RequestCancellationListener requestCancellationListener;
 
@@ -77,6 +93,70 @@ public abstract class SpiceRequest<RESULT> implements Comparable<SpiceRequest<RE
         return priority;
     }
 
+    /**
+     * Sets the time after which the request is worthless, typically for
+     * typeahead requests or images of views that are not visible anymore.
+     * Requests of the same priority are executed earliest deadline first :
+     * with priority aging, the ones added during the same aging period. If
+     * the deadline of a request has passed before it loads data from network,
+     * it fails with a
+     * {@link com.octo.android.robospice.exception.RequestExpiredException}
+     * and is not retried. Results found in cache are still returned.
+     * @param deadline
+     *            in ms since epoch, as {@link System#currentTimeMillis()}.
+     *            Defaults to {@link DeadlineRunnable#NO_DEADLINE}.
+     * @see #setTimeToLive(long)
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Sets the deadline of the request relatively to now.
+     * @param timeToLive
+     *            in ms.
+     * @see #setDeadline(long)
+     */
+    public void setTimeToLive(long timeToLive) {
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("Time to live must be positive.");
+        }
+        setDeadline(System.currentTimeMillis() + timeToLive);
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /** @return whether the deadline of the request has passed. */
+    public boolean isExpired() {
+        final long requestDeadline = getDeadline();
+        return requestDeadline != DeadlineRunnable.NO_DEADLINE && System.currentTimeMillis() > requestDeadline;
+    }
+
+    /**
+     * Sets the host of the network operation of the request. The number of
+     * requests of a host processed at the same time can be limited, see
+     * {@link com.octo.android.robospice.SpiceService#getMaxConcurrentRequestsPerHost()}
+     * . Will have no effect on a request after it starts being executed.
+     * @param hostKey
+     *            identifies the host, typically its host name. Defaults to
+     *            null : the request is not limited.
+     */
+    public void setHostKey(Object hostKey) {
+        this.hostKey = hostKey;
+    }
+
+    /**
+     * Override this method to derive the host of the request from its own
+     * data, typically its URL.
+     * @return the host of the network operation of the request, or null.
+     * @see #setHostKey(Object)
+     */
+    public Object getHostKey() {
+        return hostKey;
+    }
+
     private void checkInnerClassDeclarationToPreventMemoryLeak() {
         // thanx to Cyril Mottier for this contribution
         // prevent devs from creating memory leaks by using inner
@@ -99,11 +179,58 @@ public abstract class SpiceRequest<RESULT> implements Comparable<SpiceRequest<RE
             future.cancel(true);
         }
 
+        final Runnable networkOperationAbort;
+        synchronized (networkLock) {
+            networkOperationAbort = prepareNetworkOperationAbort();
+        }
+        if (networkOperationAbort != null) {
+            // aborting may block on socket I/O, and requests are often
+            // cancelled from the UI thread.
+            AbortExecutorHolder.EXECUTOR.execute(networkOperationAbort);
+        }
+
         if (this.requestCancellationListener != null) {
             this.requestCancellationListener.onRequestCancelled();
         }
     }
 
+    /**
+     * Override this method to abort the network operation of the request when
+     * it is cancelled, typically by disconnecting its connection. Interrupting
+     * the thread that loads data from network, as {@link #cancel()} does,
+     * has no effect on blocking network I/O : aborting it frees this thread
+     * immediately.<br/>
+     * This method is invoked by {@link #cancel()}, on the thread that cancels
+     * the request, whatever the state of the request : there may be no
+     * network operation yet or anymore. While it is executed,
+     * {@link #getNetworkThread()} doesn't change. It must not block : it only
+     * captures what is to be aborted, typically the current connection, and
+     * returns the abort itself, that is run on a background thread.
+     * Implementations should check {@link #isCancelled()} once their network
+     * operation is started, in case the request was cancelled before.
+     * @return the abort of the network operation in progress, null if there
+     *         is nothing to abort.
+     */
+    protected Runnable prepareNetworkOperationAbort() {
+        return null;
+    }
+
+    /**
+     * @return the thread executing {@link #loadDataFromNetwork()}, null if
+     *         none.
+     */
+    protected Thread getNetworkThread() {
+        synchronized (networkLock) {
+            return networkThread;
+        }
+    }
+
+    /* package private */void setNetworkThread(final Thread networkThread) {
+        synchronized (networkLock) {
+            this.networkThread = networkThread;
+        }
+    }
+
     /* package private */void setStatus(final RequestStatus status) {
         this.progress = new RequestProgress(status);
         publishProgress();
@@ -150,13 +277,33 @@ public abstract class SpiceRequest<RESULT> implements Comparable<SpiceRequest<RE
         this.requestCancellationListener = requestCancellationListener;
     }
 
+    /**
+     * Orders requests by priority. Requests of the same priority are ordered
+     * by creation : the oldest comes first.
+     */
     @Override
     public int compareTo(SpiceRequest<RESULT> other) {
         if (this == other) {
             return 0;
         }
 
-        return this.priority - other.priority;
+        final int priorityComparison = this.getPriority() - other.getPriority();
+        if (priorityComparison != 0) {
+            return priorityComparison;
+        }
+        return this.sequenceNumber < other.sequenceNumber ? -1 : 1;
     }
 
+
+    /* Lazily creates the executor that runs the aborts of all requests. */
+    private static final class AbortExecutorHolder {
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, NETWORK_OPERATION_ABORT_THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
 }
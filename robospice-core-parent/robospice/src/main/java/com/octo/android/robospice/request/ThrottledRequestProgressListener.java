@@ -0,0 +1,165 @@
+package com.octo.android.robospice.request;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import roboguice.util.temp.Ln;
+
+import com.octo.android.robospice.request.listener.RequestProgress;
+import com.octo.android.robospice.request.listener.RequestProgressListener;
+import com.octo.android.robospice.request.listener.RequestStatus;
+
+/**
+ * Limits the progress updates of a request forwarded to another
+ * {@link RequestProgressListener}, so that downloads don't flood the UI thread
+ * with an update per buffer. An update is forwarded if :
+ * <ul>
+ * <li>its status differs from the last forwarded one, or</li>
+ * <li>its progress is complete, or</li>
+ * <li>its progress moved by at least the minimum step since the last forwarded
+ * update, or</li>
+ * <li>its progress moved and the minimum interval elapsed since the last
+ * forwarded update.</li>
+ * </ul>
+ * Other updates are held back : the latest one is forwarded at the end of the
+ * minimum interval, unless another update is forwarded before. So the last
+ * progress of a status is never lost. Forwarded updates are snapshots, they
+ * are not modified afterwards, and they are forwarded in order.
+ */
+public final class ThrottledRequestProgressListener implements RequestProgressListener {
+
+    private static final String THROTTLING_THREAD_NAME = "RoboSpice progress";
+
+    private final RequestProgressListener delegate;
+    private final long minIntervalNanos;
+    private final float minStep;
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    /* Guarded by this. */
+    private RequestStatus lastStatus;
+    private float lastProgress;
+    private long lastTime;
+    /** Whether or not an update has been held back since the last forwarded one. */
+    private boolean hasPendingProgress;
+    private float pendingProgress;
+    private boolean isPendingUpdateScheduled;
+
+    /**
+     * @param delegate
+     *            receives forwarded updates.
+     * @param minInterval
+     *            the minimum time between 2 updates of the same status, in ms.
+     * @param minStep
+     *            the progress change, between 0 and 1, that is forwarded
+     *            whatever the time elapsed.
+     */
+    public ThrottledRequestProgressListener(RequestProgressListener delegate, long minInterval, float minStep) {
+        this(delegate, minInterval, minStep, SchedulerHolder.SCHEDULER);
+    }
+
+    /**
+     * @param delegate
+     *            receives forwarded updates.
+     * @param minInterval
+     *            the minimum time between 2 updates of the same status, in ms.
+     * @param minStep
+     *            the progress change, between 0 and 1, that is forwarded
+     *            whatever the time elapsed.
+     * @param scheduledExecutorService
+     *            forwards updates held back at the end of the minimum
+     *            interval. By default, a daemon thread shared by all
+     *            instances.
+     */
+    public ThrottledRequestProgressListener(RequestProgressListener delegate, long minInterval, float minStep, ScheduledExecutorService scheduledExecutorService) {
+        this.delegate = delegate;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minInterval);
+        this.minStep = minStep;
+        this.scheduledExecutorService = scheduledExecutorService;
+    }
+
+    /**
+     * {@inheritDoc} The delegate is notified while holding this listener, so
+     * that updates held back are not forwarded after newer ones.
+     */
+    @Override
+    public void onRequestProgressUpdate(RequestProgress progress) {
+        final RequestStatus status = progress.getStatus();
+        final float value = progress.getProgress();
+        final long now = System.nanoTime();
+        synchronized (this) {
+            if (status == lastStatus && !isForwarded(value, now)) {
+                if (value != lastProgress) {
+                    hasPendingProgress = true;
+                    pendingProgress = value;
+                    schedulePendingUpdate(now);
+                }
+                return;
+            }
+            forward(status, value, now);
+        }
+    }
+
+    /* Must be called while holding this. */
+    private void forward(RequestStatus status, float value, long now) {
+        lastStatus = status;
+        lastProgress = value;
+        lastTime = now;
+        hasPendingProgress = false;
+        delegate.onRequestProgressUpdate(new RequestProgress(status, value));
+    }
+
+    /* Must be called while holding this. */
+    private void schedulePendingUpdate(long now) {
+        if (isPendingUpdateScheduled) {
+            return;
+        }
+        try {
+            scheduledExecutorService.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    forwardPendingUpdate();
+                }
+            }, minIntervalNanos - (now - lastTime), TimeUnit.NANOSECONDS);
+            isPendingUpdateScheduled = true;
+        } catch (final RejectedExecutionException e) {
+            Ln.d(e, "Progress updates held back won't be forwarded.");
+        }
+    }
+
+    private synchronized void forwardPendingUpdate() {
+        isPendingUpdateScheduled = false;
+        if (!hasPendingProgress) {
+            return;
+        }
+        final long now = System.nanoTime();
+        // an update may have been forwarded since this one was scheduled.
+        if (now - lastTime < minIntervalNanos) {
+            schedulePendingUpdate(now);
+        } else {
+            forward(lastStatus, pendingProgress, now);
+        }
+    }
+
+    /* Must be called while holding this. */
+    private boolean isForwarded(float value, long now) {
+        if (value == lastProgress) {
+            return false;
+        }
+        return value >= 1 || Math.abs(value - lastProgress) >= minStep || now - lastTime >= minIntervalNanos;
+    }
+
+    /* Lazily creates the scheduler shared by all instances. */
+    private static final class SchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, THROTTLING_THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
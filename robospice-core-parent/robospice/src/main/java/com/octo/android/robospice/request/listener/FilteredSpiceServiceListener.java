@@ -0,0 +1,29 @@
+package com.octo.android.robospice.request.listener;
+
+/**
+ * A {@link SpiceServiceListener} that declares the events it is interested in.
+ * The {@link com.octo.android.robospice.SpiceService} doesn't record nor post
+ * the events that no listener is interested in, and doesn't invoke a listener
+ * for the events it is not interested in.
+ */
+public interface FilteredSpiceServiceListener extends SpiceServiceListener {
+
+    int EVENT_ADDED = 1;
+    int EVENT_AGGREGATED = 1 << 1;
+    int EVENT_NOT_FOUND = 1 << 2;
+    int EVENT_PROGRESS_UPDATED = 1 << 3;
+    int EVENT_SUCCEEDED = 1 << 4;
+    int EVENT_FAILED = 1 << 5;
+    int EVENT_CANCELLED = 1 << 6;
+    int EVENT_PROCESSED = 1 << 7;
+    int ALL_EVENTS = EVENT_ADDED | EVENT_AGGREGATED | EVENT_NOT_FOUND | EVENT_PROGRESS_UPDATED | EVENT_SUCCEEDED | EVENT_FAILED | EVENT_CANCELLED
+        | EVENT_PROCESSED;
+
+    /**
+     * @return a combination of the EVENT_* flags of the events this listener
+     *         is interested in. It must not change while the listener is
+     *         registered. There is no flag for
+     *         {@link #onServiceStopped()}, that this filter doesn't apply to.
+     */
+    int getEventTypes();
+}
@@ -0,0 +1,15 @@
+package com.octo.android.robospice.request.listener;
+
+import com.octo.android.robospice.request.CachedSpiceRequest;
+import com.octo.android.robospice.request.timing.RequestTimings;
+
+/**
+ * Defines the behavior of a listener that will be notified of the timings of
+ * each attempt to process a request by the
+ * {@link com.octo.android.robospice.SpiceService}. It is invoked on the thread
+ * that completes the timings, either a thread of the service or the ui thread,
+ * and should return quickly.
+ */
+public interface RequestTimingListener {
+    void onRequestTimed(CachedSpiceRequest<?> request, RequestTimings requestTimings);
+}
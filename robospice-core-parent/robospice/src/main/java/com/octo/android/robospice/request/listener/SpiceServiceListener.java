@@ -33,6 +33,11 @@ public interface SpiceServiceListener {
     //  INNER CLASS
     // ----------------------------------
     
+    /**
+     * Describes the context of an event. Instances are recycled once all
+     * listeners have been notified : listeners must copy the values they need
+     * rather than keep a reference to the context.
+     */
     class RequestProcessingContext {
         private Thread executionThread;
         private RequestProgress requestProgress;
@@ -1,6 +1,10 @@
 package com.octo.android.robospice.request.notifier;
 
+import java.util.Iterator;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import roboguice.util.temp.Ln;
 import android.os.Handler;
@@ -14,27 +18,100 @@ import com.octo.android.robospice.request.listener.PendingRequestListener;
 import com.octo.android.robospice.request.listener.RequestListener;
 import com.octo.android.robospice.request.listener.RequestProgress;
 import com.octo.android.robospice.request.listener.RequestProgressListener;
+import com.octo.android.robospice.request.timing.RequestTimings;
+import com.octo.android.robospice.request.timing.RequestTimings.Phase;
 
 /**
  * Default implementation of RequestListenerNotifier. It will notify listeners
- * on the ui thread.
+ * on the ui thread.<br/>
+ * Notifications are queued and delivered in batches : a single message of the
+ * main looper delivers all queued notifications, in order, as long as it
+ * doesn't exceed its time budget. Remaining notifications are delivered by
+ * the next message, so that the ui thread can draw frames in between.<br/>
+ * The delivery of results is timed as {@link Phase#NOTIFICATION} of the
+ * {@link RequestTimings} of requests, if any.
  * @author Andrew Clark
  */
 public class DefaultRequestListenerNotifier implements RequestListenerNotifier {
+    // ============================================================================================
+    // CONSTANTS
+    // ============================================================================================
+
+    /** Default maximum time spent delivering notifications in one message, in ms. */
+    public static final long DEFAULT_DRAIN_TIME_BUDGET = 8;
+
     // ============================================================================================
     // ATTRIBUTES
     // ============================================================================================
     private final Handler handlerResponse;
+    private final long drainTimeBudget;
+    /** Notifications not delivered yet. */
+    private final Queue<Notification> notificationQueue = new ConcurrentLinkedQueue<Notification>();
+    /** Whether a message to deliver notifications is posted. */
+    private final AtomicBoolean isDrainPosted = new AtomicBoolean();
+    private final Runnable drainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
 
     // ============================================================================================
     // CONSTRUCTOR
     // ============================================================================================
     public DefaultRequestListenerNotifier() {
+        this(DEFAULT_DRAIN_TIME_BUDGET);
+    }
+
+    /**
+     * @param drainTimeBudget
+     *            the maximum time spent delivering notifications in one
+     *            message of the main looper, in ms. At least one notification
+     *            is delivered per message.
+     */
+    public DefaultRequestListenerNotifier(final long drainTimeBudget) {
         handlerResponse = new Handler(Looper.getMainLooper());
+        this.drainTimeBudget = drainTimeBudget;
     }
 
     private void post(final Runnable r, final Object token) {
-        handlerResponse.postAtTime(r, token, SystemClock.uptimeMillis());
+        post(r, token, null);
+    }
+
+    private void post(final Runnable r, final Object token, final RequestTimings requestTimings) {
+        notificationQueue.add(new Notification(r, token, requestTimings));
+        if (isDrainPosted.compareAndSet(false, true)) {
+            handlerResponse.post(drainRunnable);
+        }
+    }
+
+    /** Delivers queued notifications, on the ui thread. */
+    private void drain() {
+        final long deadline = SystemClock.uptimeMillis() + drainTimeBudget;
+        boolean isDrained = false;
+        try {
+            Notification notification;
+            while ((notification = notificationQueue.poll()) != null) {
+                notification.run();
+                if (SystemClock.uptimeMillis() >= deadline) {
+                    break;
+                }
+            }
+            isDrained = notificationQueue.isEmpty();
+        } finally {
+            if (!isDrained) {
+                // let a frame be drawn, the drain message stays posted.
+                handlerResponse.post(drainRunnable);
+            }
+        }
+        if (!isDrained) {
+            return;
+        }
+        isDrainPosted.set(false);
+        // a notification may have been queued after the queue was found empty.
+        if (!notificationQueue.isEmpty() && isDrainPosted.compareAndSet(false, true)) {
+            handlerResponse.post(drainRunnable);
+        }
     }
 
     @Override
@@ -61,31 +138,89 @@ public class DefaultRequestListenerNotifier implements RequestListenerNotifier {
     @Override
     public <T> void notifyListenersOfRequestSuccess(final CachedSpiceRequest<T> request, final T result, final Set<RequestListener<?>> listeners) {
 
-        post(new ResultRunnable<T>(listeners, result), request.getRequestCacheKey());
+        post(new ResultRunnable<T>(listeners, result), request.getRequestCacheKey(), getRequestTimingsToUpdate(request));
     }
 
     @Override
     public <T> void notifyListenersOfRequestFailure(final CachedSpiceRequest<T> request, final SpiceException e, final Set<RequestListener<?>> listeners) {
 
-        post(new ResultRunnable<T>(listeners, e), request.getRequestCacheKey());
+        post(new ResultRunnable<T>(listeners, e), request.getRequestCacheKey(), getRequestTimingsToUpdate(request));
     }
 
     @Override
     public <T> void notifyListenersOfRequestCancellation(final CachedSpiceRequest<T> request, final Set<RequestListener<?>> listeners) {
 
-        post(new ResultRunnable<T>(listeners, new RequestCancelledException("Request has been cancelled explicitely.")), request.getRequestCacheKey());
+        post(new ResultRunnable<T>(listeners, new RequestCancelledException("Request has been cancelled explicitely.")), request.getRequestCacheKey(),
+            getRequestTimingsToUpdate(request));
+    }
+
+    /**
+     * @return the timings of a request if the delivery of its result has to
+     *         be timed, null otherwise.
+     */
+    private static RequestTimings getRequestTimingsToUpdate(final CachedSpiceRequest<?> request) {
+        final RequestTimings requestTimings = request.getRequestTimings();
+        return requestTimings != null && requestTimings.onNotificationPosted() ? requestTimings : null;
     }
 
+    /**
+     * Removes the notifications of a request that are not delivered yet. As
+     * {@link Handler#removeCallbacksAndMessages(Object)}, if the cache key of
+     * the request is null, all notifications are removed.
+     */
     @Override
     public <T> void clearNotificationsForRequest(final CachedSpiceRequest<T> request, final Set<RequestListener<?>> listeners) {
-
-        handlerResponse.removeCallbacksAndMessages(request.getRequestCacheKey());
+        final Object token = request.getRequestCacheKey();
+        final Iterator<Notification> iterator = notificationQueue.iterator();
+        while (iterator.hasNext()) {
+            final Notification notification = iterator.next();
+            if (token == null || token.equals(notification.token)) {
+                // the notification may be delivered concurrently.
+                if (notificationQueue.remove(notification)) {
+                    notification.cancel();
+                }
+            }
+        }
     }
 
     // ============================================================================================
     // INNER CLASSES
     // ============================================================================================
 
+    /**
+     * A notification to deliver, the cache key of its request and the timings
+     * to update once delivered, if any.
+     */
+    private static final class Notification {
+        private final Runnable runnable;
+        private final Object token;
+        private final RequestTimings requestTimings;
+        private final long postTime;
+
+        private Notification(final Runnable runnable, final Object token, final RequestTimings requestTimings) {
+            this.runnable = runnable;
+            this.token = token;
+            this.requestTimings = requestTimings;
+            this.postTime = requestTimings != null ? System.nanoTime() : 0;
+        }
+
+        private void run() {
+            try {
+                runnable.run();
+            } finally {
+                if (requestTimings != null) {
+                    requestTimings.onNotificationDelivered(System.nanoTime() - postTime);
+                }
+            }
+        }
+
+        private void cancel() {
+            if (requestTimings != null) {
+                requestTimings.onNotificationCancelled();
+            }
+        }
+    }
+
     private static class NotFoundRunnable implements Runnable {
         private final Set<RequestListener<?>> listeners;
 
@@ -100,11 +235,16 @@ public class DefaultRequestListenerNotifier implements RequestListenerNotifier {
                 return;
             }
 
-            Ln.v("Notifying " + listeners.size() + " listeners of request not found");
+            final boolean isVerboseEnabled = Ln.isVerboseEnabled();
+            if (isVerboseEnabled) {
+                Ln.v("Notifying %d listeners of request not found", listeners.size());
+            }
             synchronized (listeners) {
                 for (final RequestListener<?> listener : listeners) {
                     if (listener != null && listener instanceof PendingRequestListener) {
-                        Ln.v("Notifying %s", listener.getClass().getSimpleName());
+                        if (isVerboseEnabled) {
+                            Ln.v("Notifying %s", listener.getClass().getSimpleName());
+                        }
                         ((PendingRequestListener<?>) listener).onRequestNotFound();
                     }
                 }
@@ -128,11 +268,16 @@ public class DefaultRequestListenerNotifier implements RequestListenerNotifier {
                 return;
             }
 
-            Ln.v("Notifying " + listeners.size() + " listeners of progress " + progress);
+            final boolean isVerboseEnabled = Ln.isVerboseEnabled();
+            if (isVerboseEnabled) {
+                Ln.v("Notifying %d listeners of progress %s", listeners.size(), progress);
+            }
             synchronized (listeners) {
                 for (final RequestListener<?> listener : listeners) {
                     if (listener != null && listener instanceof RequestProgressListener) {
-                        Ln.v("Notifying %s", listener.getClass().getSimpleName());
+                        if (isVerboseEnabled) {
+                            Ln.v("Notifying %s", listener.getClass().getSimpleName());
+                        }
                         ((RequestProgressListener) listener).onRequestProgressUpdate(progress);
                     }
                 }
@@ -162,14 +307,18 @@ public class DefaultRequestListenerNotifier implements RequestListenerNotifier {
                 return;
             }
 
-            final String resultMsg = spiceException == null ? "success" : "failure";
-            Ln.v("Notifying " + listeners.size() + " listeners of request " + resultMsg);
+            final boolean isVerboseEnabled = Ln.isVerboseEnabled();
+            if (isVerboseEnabled) {
+                Ln.v("Notifying %d listeners of request %s", listeners.size(), spiceException == null ? "success" : "failure");
+            }
             synchronized (listeners) {
                 for (final RequestListener<?> listener : listeners) {
                     if (listener != null) {
                         @SuppressWarnings("unchecked")
                         final RequestListener<T> listenerOfT = (RequestListener<T>) listener;
-                        Ln.v("Notifying %s", listener.getClass().getSimpleName());
+                        if (isVerboseEnabled) {
+                            Ln.v("Notifying %s", listener.getClass().getSimpleName());
+                        }
                         if (spiceException == null) {
                             listenerOfT.onRequestSuccess(result);
                         } else {
@@ -11,6 +11,7 @@ import android.os.Looper;
 import android.os.SystemClock;
 
 import com.octo.android.robospice.request.CachedSpiceRequest;
+import com.octo.android.robospice.request.listener.FilteredSpiceServiceListener;
 import com.octo.android.robospice.request.listener.RequestListener;
 import com.octo.android.robospice.request.listener.RequestProgress;
 import com.octo.android.robospice.request.listener.SpiceServiceListener;
@@ -18,17 +19,35 @@ import com.octo.android.robospice.request.listener.SpiceServiceListener.RequestP
 
 /**
  * The Observer Manager manages observers and passes on request events to the
- * interested observers.
+ * interested observers. <br/>
+ * Events are only recorded if a registered observer is interested in them (see
+ * {@link FilteredSpiceServiceListener}), so that request processing doesn't
+ * pay for events nobody listens to. Event records are pooled and recycled
+ * once all observers have been notified.
  * @author Andrew.Clark
  */
 public class SpiceServiceListenerNotifier {
 
+    /** The maximum number of event records kept for reuse. */
+    private static final int MAX_EVENT_POOL_SIZE = 32;
+
     private final List<SpiceServiceListener> spiceServiceListenerList = Collections.synchronizedList(new ArrayList<SpiceServiceListener>());
 
+    /** Union of the events registered listeners are interested in. */
+    private volatile int interestedEventTypes;
+
     private Handler messageQueue;
 
+    /* Recycled event records, guarded by eventPoolLock. */
+    private final Object eventPoolLock = new Object();
+    private Event eventPool;
+    private int eventPoolSize;
+
     public void addSpiceServiceListener(SpiceServiceListener spiceServiceListener) {
-        spiceServiceListenerList.add(spiceServiceListener);
+        synchronized (spiceServiceListenerList) {
+            spiceServiceListenerList.add(spiceServiceListener);
+            updateInterestedEventTypes();
+        }
         if (messageQueue == null) {
             Ln.d("Message Queue starting");
             messageQueue = new Handler(Looper.getMainLooper());
@@ -36,7 +55,10 @@ public class SpiceServiceListenerNotifier {
     }
 
     public void removeSpiceServiceListener(SpiceServiceListener spiceServiceListener) {
-        spiceServiceListenerList.remove(spiceServiceListener);
+        synchronized (spiceServiceListenerList) {
+            spiceServiceListenerList.remove(spiceServiceListener);
+            updateInterestedEventTypes();
+        }
     }
 
     // package private
@@ -54,9 +76,9 @@ public class SpiceServiceListenerNotifier {
      * @param request the request that couldn't be aggregated to another request.
      */
     public void notifyObserversOfRequestNotFound(CachedSpiceRequest<?> request) {
-        RequestProcessingContext requestProcessingContext = new RequestProcessingContext();
-        requestProcessingContext.setExecutionThread(Thread.currentThread());
-        post(new RequestNotFoundNotifier(request, spiceServiceListenerList, requestProcessingContext));
+        if (isObserved(FilteredSpiceServiceListener.EVENT_NOT_FOUND)) {
+            post(obtainEvent(FilteredSpiceServiceListener.EVENT_NOT_FOUND, request, null, null));
+        }
     }
 
     /**
@@ -65,10 +87,9 @@ public class SpiceServiceListenerNotifier {
      * @param request the request that has been added to processing queue.
      */
     public void notifyObserversOfRequestAdded(CachedSpiceRequest<?> request, Set<RequestListener<?>> requestListeners) {
-        RequestProcessingContext requestProcessingContext = new RequestProcessingContext();
-        requestProcessingContext.setExecutionThread(Thread.currentThread());
-        requestProcessingContext.setRequestListeners(requestListeners);
-        post(new RequestAddedNotifier(request, spiceServiceListenerList, requestProcessingContext));
+        if (isObserved(FilteredSpiceServiceListener.EVENT_ADDED)) {
+            post(obtainEvent(FilteredSpiceServiceListener.EVENT_ADDED, request, requestListeners, null));
+        }
     }
 
     /**
@@ -77,21 +98,19 @@ public class SpiceServiceListenerNotifier {
      * @param request the request that has been aggregated.
      */
     public void notifyObserversOfRequestAggregated(CachedSpiceRequest<?> request, Set<RequestListener<?>> requestListeners) {
-        RequestProcessingContext requestProcessingContext = new RequestProcessingContext();
-        requestProcessingContext.setExecutionThread(Thread.currentThread());
-        requestProcessingContext.setRequestListeners(requestListeners);
-        post(new RequestAggregatedNotifier(request, spiceServiceListenerList, requestProcessingContext));
+        if (isObserved(FilteredSpiceServiceListener.EVENT_AGGREGATED)) {
+            post(obtainEvent(FilteredSpiceServiceListener.EVENT_AGGREGATED, request, requestListeners, null));
+        }
     }
 
-
     /**
      * Notify interested observers that the request failed.
      * @param request the request that failed.
      */
     public void notifyObserversOfRequestFailure(CachedSpiceRequest<?> request) {
-        RequestProcessingContext requestProcessingContext = new RequestProcessingContext();
-        requestProcessingContext.setExecutionThread(Thread.currentThread());
-        post(new RequestFailedNotifier(request, spiceServiceListenerList, requestProcessingContext));
+        if (isObserved(FilteredSpiceServiceListener.EVENT_FAILED)) {
+            post(obtainEvent(FilteredSpiceServiceListener.EVENT_FAILED, request, null, null));
+        }
     }
 
     /**
@@ -99,9 +118,9 @@ public class SpiceServiceListenerNotifier {
      * @param request the request that succeeded.
      */
     public <T> void notifyObserversOfRequestSuccess(CachedSpiceRequest<T> request) {
-        RequestProcessingContext requestProcessingContext = new RequestProcessingContext();
-        requestProcessingContext.setExecutionThread(Thread.currentThread());
-        post(new RequestSucceededNotifier<T>(request, spiceServiceListenerList, requestProcessingContext));
+        if (isObserved(FilteredSpiceServiceListener.EVENT_SUCCEEDED)) {
+            post(obtainEvent(FilteredSpiceServiceListener.EVENT_SUCCEEDED, request, null, null));
+        }
     }
 
     /**
@@ -109,9 +128,9 @@ public class SpiceServiceListenerNotifier {
      * @param request the request that was cancelled.
      */
     public void notifyObserversOfRequestCancellation(CachedSpiceRequest<?> request) {
-        RequestProcessingContext requestProcessingContext = new RequestProcessingContext();
-        requestProcessingContext.setExecutionThread(Thread.currentThread());
-        post(new RequestCancelledNotifier(request, spiceServiceListenerList, requestProcessingContext));
+        if (isObserved(FilteredSpiceServiceListener.EVENT_CANCELLED)) {
+            post(obtainEvent(FilteredSpiceServiceListener.EVENT_CANCELLED, request, null, null));
+        }
     }
 
     /**
@@ -120,10 +139,9 @@ public class SpiceServiceListenerNotifier {
      * @param requestProgress the progress of the request.
      */
     public void notifyObserversOfRequestProgress(CachedSpiceRequest<?> request, RequestProgress requestProgress) {
-        RequestProcessingContext requestProcessingContext = new RequestProcessingContext();
-        requestProcessingContext.setExecutionThread(Thread.currentThread());
-        requestProcessingContext.setRequestProgress(requestProgress);
-        post(new RequestProgressNotifier(request, spiceServiceListenerList, requestProcessingContext));
+        if (isObserved(FilteredSpiceServiceListener.EVENT_PROGRESS_UPDATED)) {
+            post(obtainEvent(FilteredSpiceServiceListener.EVENT_PROGRESS_UPDATED, request, null, requestProgress));
+        }
     }
 
     /**
@@ -132,10 +150,9 @@ public class SpiceServiceListenerNotifier {
      * @param requestListeners the listeners to notify.
      */
     public void notifyObserversOfRequestProcessed(CachedSpiceRequest<?> request, Set<RequestListener<?>> requestListeners) {
-        RequestProcessingContext requestProcessingContext = new RequestProcessingContext();
-        requestProcessingContext.setExecutionThread(Thread.currentThread());
-        requestProcessingContext.setRequestListeners(requestListeners);
-        post(new RequestProcessedNotifier(request, spiceServiceListenerList, requestProcessingContext));
+        if (isObserved(FilteredSpiceServiceListener.EVENT_PROCESSED)) {
+            post(obtainEvent(FilteredSpiceServiceListener.EVENT_PROCESSED, request, requestListeners, null));
+        }
     }
 
     /**
@@ -143,8 +160,6 @@ public class SpiceServiceListenerNotifier {
      * @param runnable a runnable to be posted immediatly on the queue.
      */
     protected void post(Runnable runnable) {
-        Ln.d("Message queue is " + messageQueue);
-
         if (messageQueue == null) {
             return;
         }
@@ -154,219 +169,135 @@ public class SpiceServiceListenerNotifier {
     protected void onStopped() {
     }
 
-    /**
-     * Runnable to inform interested observers of request added
-     * @author Andrew.Clark
-     */
-    private static class RequestAddedNotifier implements Runnable {
-        private List<SpiceServiceListener> spiceServiceListenerList;
-        private CachedSpiceRequest<?> request;
-        private RequestProcessingContext requestProcessingContext;
-
-        public RequestAddedNotifier(CachedSpiceRequest<?> request, List<SpiceServiceListener> spiceServiceListenerList, RequestProcessingContext requestProcessingContext) {
-
-            this.spiceServiceListenerList = spiceServiceListenerList;
-            this.request = request;
-            this.requestProcessingContext = requestProcessingContext;
-        }
-
-        @Override
-        public void run() {
-            Ln.d("Processing request added: %s", request);
+    // ============================================================================================
+    // PRIVATE METHODS
+    // ============================================================================================
 
-            synchronized (spiceServiceListenerList) {
-                for (SpiceServiceListener listener : spiceServiceListenerList) {
-                    listener.onRequestAdded(request, requestProcessingContext);
-                }
-            }
-        }
+    private boolean isObserved(int eventType) {
+        return (interestedEventTypes & eventType) != 0;
     }
 
-    /**
-     * Runnable to inform interested observers of request added
-     * @author Andrew.Clark
-     */
-    private static class RequestAggregatedNotifier implements Runnable {
-        private List<SpiceServiceListener> spiceServiceListenerList;
-        private CachedSpiceRequest<?> request;
-        private RequestProcessingContext requestProcessingContext;
-
-        public RequestAggregatedNotifier(CachedSpiceRequest<?> request, List<SpiceServiceListener> spiceServiceListenerList, RequestProcessingContext requestProcessingContext) {
-
-            this.spiceServiceListenerList = spiceServiceListenerList;
-            this.request = request;
-            this.requestProcessingContext = requestProcessingContext;
-        }
-
-        @Override
-        public void run() {
-            Ln.d("Processing request added: %s", request);
-
-            synchronized (spiceServiceListenerList) {
-                for (SpiceServiceListener listener : spiceServiceListenerList) {
-                    listener.onRequestAggregated(request, requestProcessingContext);
-                }
-            }
+    private static int getEventTypes(SpiceServiceListener listener) {
+        if (listener instanceof FilteredSpiceServiceListener) {
+            return ((FilteredSpiceServiceListener) listener).getEventTypes();
         }
+        return FilteredSpiceServiceListener.ALL_EVENTS;
     }
 
-
-    /**
-     * Runnable to inform interested observers of request not found
-     * @author Andrew.Clark
-     */
-    private static class RequestNotFoundNotifier implements Runnable {
-        private List<SpiceServiceListener> spiceServiceListenerList;
-        private CachedSpiceRequest<?> request;
-        private RequestProcessingContext requestProcessingContext;
-
-        public RequestNotFoundNotifier(CachedSpiceRequest<?> request, List<SpiceServiceListener> spiceServiceListenerList, RequestProcessingContext requestProcessingContext) {
-
-            this.spiceServiceListenerList = spiceServiceListenerList;
-            this.request = request;
-            this.requestProcessingContext = requestProcessingContext;
-        }
-
-        @Override
-        public void run() {
-            Ln.d("Processing request not found: %s", request);
-
-            synchronized (spiceServiceListenerList) {
-                for (SpiceServiceListener listener : spiceServiceListenerList) {
-                    listener.onRequestNotFound(request, requestProcessingContext);
-                }
-            }
+    /* Must be called while holding spiceServiceListenerList. */
+    private void updateInterestedEventTypes() {
+        int eventTypes = 0;
+        for (int i = 0; i < spiceServiceListenerList.size(); i++) {
+            eventTypes |= getEventTypes(spiceServiceListenerList.get(i));
         }
+        interestedEventTypes = eventTypes;
     }
 
-    /**
-     * Runnable to inform interested observers of request failed
-     * @author Andrew.Clark
-     */
-    private static class RequestFailedNotifier implements Runnable {
-        private List<SpiceServiceListener> spiceServiceListenerList;
-        private CachedSpiceRequest<?> request;
-        private RequestProcessingContext requestProcessingContext;
-
-        public RequestFailedNotifier(CachedSpiceRequest<?> request, List<SpiceServiceListener> spiceServiceListenerList, RequestProcessingContext requestProcessingContext) {
-
-            this.spiceServiceListenerList = spiceServiceListenerList;
-            this.request = request;
-            this.requestProcessingContext = requestProcessingContext;
-        }
-
-        @Override
-        public void run() {
-            synchronized (spiceServiceListenerList) {
-                for (SpiceServiceListener listener : spiceServiceListenerList) {
-                    listener.onRequestFailed(request, requestProcessingContext);
-                }
+    private Event obtainEvent(int type, CachedSpiceRequest<?> request, Set<RequestListener<?>> requestListeners, RequestProgress requestProgress) {
+        Event event = null;
+        synchronized (eventPoolLock) {
+            if (eventPool != null) {
+                event = eventPool;
+                eventPool = event.next;
+                event.next = null;
+                eventPoolSize--;
             }
         }
-    }
-
-    /**
-     * Runnable to inform interested observers of request completed
-     * @author Andrew.Clark
-     * @param <T>
-     */
-    private static class RequestSucceededNotifier<T> implements Runnable {
-        private List<SpiceServiceListener> spiceServiceListenerList;
-        private CachedSpiceRequest<T> request;
-        private RequestProcessingContext requestProcessingContext;
-
-        public RequestSucceededNotifier(CachedSpiceRequest<T> request, List<SpiceServiceListener> spiceServiceListenerList, RequestProcessingContext requestProcessingContext) {
-
-            this.spiceServiceListenerList = spiceServiceListenerList;
-            this.request = request;
-            this.requestProcessingContext = requestProcessingContext;
+        if (event == null) {
+            event = new Event();
         }
+        event.type = type;
+        event.request = request;
+        event.requestProcessingContext.setExecutionThread(Thread.currentThread());
+        event.requestProcessingContext.setRequestListeners(requestListeners);
+        event.requestProcessingContext.setRequestProgress(requestProgress);
+        return event;
+    }
 
-        @Override
-        public void run() {
-            synchronized (spiceServiceListenerList) {
-                for (SpiceServiceListener listener : spiceServiceListenerList) {
-                    listener.onRequestSucceeded(request, requestProcessingContext);
-                }
+    private void recycleEvent(Event event) {
+        event.request = null;
+        event.requestProcessingContext.setExecutionThread(null);
+        event.requestProcessingContext.setRequestListeners(null);
+        event.requestProcessingContext.setRequestProgress(null);
+        synchronized (eventPoolLock) {
+            if (eventPoolSize < MAX_EVENT_POOL_SIZE) {
+                event.next = eventPool;
+                eventPool = event;
+                eventPoolSize++;
             }
         }
     }
 
-    /**
-     * Runnable to inform interested observers of request cancelled
-     * @author Andrew.Clark
-     */
-    private static class RequestCancelledNotifier implements Runnable {
-        private List<SpiceServiceListener> spiceServiceListenerList;
-        private CachedSpiceRequest<?> request;
-        private RequestProcessingContext requestProcessingContext;
-
-        public RequestCancelledNotifier(CachedSpiceRequest<?> request, List<SpiceServiceListener> spiceServiceListenerList, RequestProcessingContext requestProcessingContext) {
-            this.spiceServiceListenerList = spiceServiceListenerList;
-            this.request = request;
-            this.requestProcessingContext = requestProcessingContext;
+    private void dispatch(Event event) {
+        if (Ln.isDebugEnabled()) {
+            Ln.d("Processing request event %d: %s", event.type, event.request);
         }
-
-        @Override
-        public void run() {
-            Ln.d("Processing request cancelled: %s", request);
-
-            synchronized (spiceServiceListenerList) {
-                for (SpiceServiceListener listener : spiceServiceListenerList) {
-                    listener.onRequestCancelled(request, requestProcessingContext);
+        synchronized (spiceServiceListenerList) {
+            // indexed loop, not to allocate an iterator per event.
+            for (int i = 0; i < spiceServiceListenerList.size(); i++) {
+                final SpiceServiceListener listener = spiceServiceListenerList.get(i);
+                if ((getEventTypes(listener) & event.type) != 0) {
+                    dispatch(listener, event);
                 }
             }
         }
     }
 
-    /**
-     * Runnable to inform interested observers of request progress
-     * @author Andrew.Clark
-     */
-    private static class RequestProgressNotifier implements Runnable {
-        private List<SpiceServiceListener> spiceServiceListenerList;
-        private CachedSpiceRequest<?> request;
-        private RequestProcessingContext requestProcessingContext;
-
-        public RequestProgressNotifier(CachedSpiceRequest<?> request, List<SpiceServiceListener> spiceServiceListenerList, RequestProcessingContext requestProcessingContext) {
-
-            this.spiceServiceListenerList = spiceServiceListenerList;
-            this.request = request;
-            this.requestProcessingContext = requestProcessingContext;
-        }
-
-        @Override
-        public void run() {
-            synchronized (spiceServiceListenerList) {
-                for (SpiceServiceListener listener : spiceServiceListenerList) {
-                    listener.onRequestProgressUpdated(request, requestProcessingContext);
-                }
-            }
+    private static void dispatch(SpiceServiceListener listener, Event event) {
+        final CachedSpiceRequest<?> request = event.request;
+        final RequestProcessingContext requestProcessingContext = event.requestProcessingContext;
+        switch (event.type) {
+            case FilteredSpiceServiceListener.EVENT_ADDED:
+                listener.onRequestAdded(request, requestProcessingContext);
+                break;
+            case FilteredSpiceServiceListener.EVENT_AGGREGATED:
+                listener.onRequestAggregated(request, requestProcessingContext);
+                break;
+            case FilteredSpiceServiceListener.EVENT_NOT_FOUND:
+                listener.onRequestNotFound(request, requestProcessingContext);
+                break;
+            case FilteredSpiceServiceListener.EVENT_PROGRESS_UPDATED:
+                listener.onRequestProgressUpdated(request, requestProcessingContext);
+                break;
+            case FilteredSpiceServiceListener.EVENT_SUCCEEDED:
+                listener.onRequestSucceeded(request, requestProcessingContext);
+                break;
+            case FilteredSpiceServiceListener.EVENT_FAILED:
+                listener.onRequestFailed(request, requestProcessingContext);
+                break;
+            case FilteredSpiceServiceListener.EVENT_CANCELLED:
+                listener.onRequestCancelled(request, requestProcessingContext);
+                break;
+            case FilteredSpiceServiceListener.EVENT_PROCESSED:
+                listener.onRequestProcessed(request, requestProcessingContext);
+                break;
+            default:
+                throw new IllegalStateException("Unknown event type " + event.type);
         }
     }
 
+    // ============================================================================================
+    // INNER CLASSES
+    // ============================================================================================
+
     /**
-     * Runnable to inform interested observers of request processing end.
+     * A request event, posted to the observer message queue. It is recycled
+     * once all observers have been notified.
      * @author SNI
      */
-    private static class RequestProcessedNotifier implements Runnable {
-        private List<SpiceServiceListener> spiceServiceListenerList;
+    private final class Event implements Runnable {
+        private final RequestProcessingContext requestProcessingContext = new RequestProcessingContext();
+        private int type;
         private CachedSpiceRequest<?> request;
-        private RequestProcessingContext requestProcessingContext;
-
-        public RequestProcessedNotifier(CachedSpiceRequest<?> request, List<SpiceServiceListener> spiceServiceListenerList, RequestProcessingContext requestProcessingContext) {
-
-            this.spiceServiceListenerList = spiceServiceListenerList;
-            this.request = request;
-            this.requestProcessingContext = requestProcessingContext;
-        }
+        /* Next event of the pool. */
+        private Event next;
 
         @Override
         public void run() {
-            synchronized (spiceServiceListenerList) {
-                for (SpiceServiceListener listener : spiceServiceListenerList) {
-                    listener.onRequestProcessed(request, requestProcessingContext);
-                }
+            try {
+                dispatch(this);
+            } finally {
+                recycleEvent(this);
             }
         }
     }
@@ -10,6 +10,7 @@ import org.apache.commons.io.IOUtils;
 
 import roboguice.util.temp.Ln;
 
+import com.octo.android.robospice.exception.RequestCancelledException;
 import com.octo.android.robospice.request.ProgressByteProcessor;
 import com.octo.android.robospice.request.SpiceRequest;
 
@@ -22,6 +23,8 @@ public abstract class BinaryRequest extends SpiceRequest<InputStream> {
 
     private static final int BUF_SIZE = 4096;
     protected String url;
+    /** The connection of the download in progress, if any. */
+    private volatile HttpURLConnection httpURLConnection;
 
     public BinaryRequest(final String url) {
         super(InputStream.class);
@@ -31,7 +34,10 @@ public abstract class BinaryRequest extends SpiceRequest<InputStream> {
     @Override
     public final InputStream loadDataFromNetwork() throws Exception {
         try {
-            final HttpURLConnection httpURLConnection = (HttpURLConnection) new URL(url).openConnection();
+            httpURLConnection = (HttpURLConnection) new URL(url).openConnection();
+            if (isCancelled()) {
+                throw new RequestCancelledException("Request cancelled before download started");
+            }
             return processStream(httpURLConnection.getContentLength(), httpURLConnection.getInputStream());
         } catch (final MalformedURLException e) {
             Ln.e(e, "Unable to create URL");
@@ -39,7 +45,24 @@ public abstract class BinaryRequest extends SpiceRequest<InputStream> {
         } catch (final IOException e) {
             Ln.e(e, "Unable to download binary");
             throw e;
+        } finally {
+            httpURLConnection = null;
+        }
+    }
+
+    /** Disconnects the download in progress, that fails. */
+    @Override
+    protected Runnable prepareNetworkOperationAbort() {
+        final HttpURLConnection connection = httpURLConnection;
+        if (connection == null) {
+            return null;
         }
+        return new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        };
     }
 
     protected final String getUrl() {
@@ -15,6 +15,7 @@ import roboguice.util.temp.Ln;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
+import com.octo.android.robospice.exception.RequestCancelledException;
 import com.octo.android.robospice.request.ProgressByteProcessor;
 import com.octo.android.robospice.request.SpiceRequest;
 
@@ -30,6 +31,8 @@ public class BitmapRequest extends SpiceRequest<Bitmap> implements IBitmapReques
     private String url;
     private BitmapFactory.Options options;
     private File cacheFile;
+    /** The connection of the download in progress, if any. */
+    private volatile HttpURLConnection httpURLConnection;
 
     private int height = -1;
     private int width = -1;
@@ -83,7 +86,10 @@ public class BitmapRequest extends SpiceRequest<Bitmap> implements IBitmapReques
     @Override
     public Bitmap loadDataFromNetwork() throws Exception {
         try {
-            final HttpURLConnection httpURLConnection = (HttpURLConnection) new URL(url).openConnection();
+            httpURLConnection = (HttpURLConnection) new URL(url).openConnection();
+            if (isCancelled()) {
+                throw new RequestCancelledException("Request cancelled before download started");
+            }
             processStream(httpURLConnection.getContentLength(), httpURLConnection.getInputStream());
 
             if (width != -1 && height != -1) {
@@ -103,9 +109,26 @@ public class BitmapRequest extends SpiceRequest<Bitmap> implements IBitmapReques
         } catch (final IOException e) {
             Ln.e(e, "Unable to download binary");
             throw e;
+        } finally {
+            httpURLConnection = null;
         }
     }
 
+    /** Disconnects the download in progress, that fails. */
+    @Override
+    protected Runnable prepareNetworkOperationAbort() {
+        final HttpURLConnection connection = httpURLConnection;
+        if (connection == null) {
+            return null;
+        }
+        return new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        };
+    }
+
     protected final String getUrl() {
         return this.url;
     }
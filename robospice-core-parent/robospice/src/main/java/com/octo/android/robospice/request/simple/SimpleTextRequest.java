@@ -2,19 +2,27 @@ package com.octo.android.robospice.request.simple;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.CharEncoding;
 
 import roboguice.util.temp.Ln;
 
+import com.octo.android.robospice.exception.RequestCancelledException;
 import com.octo.android.robospice.request.SpiceRequest;
 
 public class SimpleTextRequest extends SpiceRequest<String> {
 
     private final String url;
+    /**
+     * The connection of the download in progress, if any, and if it is a HTTP
+     * one. Other connections can't be aborted.
+     */
+    private volatile HttpURLConnection httpURLConnection;
 
     public SimpleTextRequest(final String url) {
         super(String.class);
@@ -26,17 +34,41 @@ public class SimpleTextRequest extends SpiceRequest<String> {
     @Override
     public String loadDataFromNetwork() throws Exception {
         try {
-            Ln.d("Call web service " + url);
-            return IOUtils.toString(new InputStreamReader(new URL(url).openStream(), CharEncoding.UTF_8));
+            Ln.d("Call web service %s", url);
+            final URLConnection urlConnection = new URL(url).openConnection();
+            if (urlConnection instanceof HttpURLConnection) {
+                httpURLConnection = (HttpURLConnection) urlConnection;
+            }
+            if (isCancelled()) {
+                throw new RequestCancelledException("Request cancelled before download started");
+            }
+            return IOUtils.toString(new InputStreamReader(urlConnection.getInputStream(), CharEncoding.UTF_8));
         } catch (final MalformedURLException e) {
             Ln.e(e, "Unable to create URL");
             throw e;
         } catch (final IOException e) {
             Ln.e(e, "Unable to download content");
             throw e;
+        } finally {
+            httpURLConnection = null;
         }
     }
 
+    /** Disconnects the download in progress, that fails. */
+    @Override
+    protected Runnable prepareNetworkOperationAbort() {
+        final HttpURLConnection connection = httpURLConnection;
+        if (connection == null) {
+            return null;
+        }
+        return new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        };
+    }
+
     // can't use activity here or any non serializable field
     // will be invoked in remote service
     protected final String getUrl() {
@@ -0,0 +1,92 @@
+package com.octo.android.robospice.request.timing;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distribution of latencies, in buckets whose bounds are powers of 2 ms : the
+ * first bucket holds latencies below 1 ms, bucket n holds latencies between
+ * 2^(n-1) and 2^n ms, the last one holds all longer latencies. Percentiles are
+ * therefore approximated by the upper bound of their bucket. <br/>
+ * Instances are not thread safe.
+ */
+public final class LatencyHistogram {
+
+    /** Covers latencies up to 2^(BUCKET_COUNT - 2) ms, about 4 minutes. */
+    private static final int BUCKET_COUNT = 20;
+    private static final double PERCENT = 100;
+    private static final int PERCENTILE_50 = 50;
+    private static final int PERCENTILE_90 = 90;
+    private static final int PERCENTILE_99 = 99;
+
+    private final long[] buckets;
+    private long count;
+    private long totalLatency;
+    private long maxLatency;
+
+    public LatencyHistogram() {
+        buckets = new long[BUCKET_COUNT];
+    }
+
+    /** Creates a snapshot of another histogram. */
+    public LatencyHistogram(LatencyHistogram histogram) {
+        buckets = histogram.buckets.clone();
+        count = histogram.count;
+        totalLatency = histogram.totalLatency;
+        maxLatency = histogram.maxLatency;
+    }
+
+    /**
+     * @param latency
+     *            in ns.
+     */
+    public void add(long latency) {
+        final long latencyInMillis = TimeUnit.NANOSECONDS.toMillis(Math.max(0, latency));
+        final int bucket = Math.min(BUCKET_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(latencyInMillis));
+        buckets[bucket]++;
+        count++;
+        totalLatency += latency;
+        maxLatency = Math.max(maxLatency, latency);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /** @return the average latency, in ms. */
+    public long getAverage() {
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatency / count);
+    }
+
+    /** @return the longest latency, in ms. */
+    public long getMax() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatency);
+    }
+
+    /**
+     * @param percentile
+     *            between 0 and 100.
+     * @return the latency, in ms, below which this percentage of latencies
+     *         fall. It is the upper bound of a bucket, or the longest latency
+     *         if lower. 0 if there is no latency.
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(count * percentile / PERCENT));
+        long cumulatedCount = 0;
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            cumulatedCount += buckets[i];
+            if (cumulatedCount >= rank) {
+                return Math.min(1L << i, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return "[count=" + count + ", average=" + getAverage() + " ms, p50<=" + getPercentile(PERCENTILE_50) + " ms, p90<=" + getPercentile(PERCENTILE_90)
+            + " ms, p99<=" + getPercentile(PERCENTILE_99) + " ms, max=" + getMax() + " ms]";
+    }
+}
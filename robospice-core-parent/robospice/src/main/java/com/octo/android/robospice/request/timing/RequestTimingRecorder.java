@@ -0,0 +1,137 @@
+package com.octo.android.robospice.request.timing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.octo.android.robospice.request.CachedSpiceRequest;
+import com.octo.android.robospice.request.listener.RequestTimingListener;
+import com.octo.android.robospice.request.timing.RequestTimings.Phase;
+
+/**
+ * Collects the {@link RequestTimings} of requests. They are aggregated into a
+ * {@link LatencyHistogram} per request class and phase, and passed on to
+ * {@link RequestTimingListener}s. Only the phases a request executed are
+ * aggregated. Requests of different classes are recorded concurrently.
+ */
+public class RequestTimingRecorder {
+
+    // ----------------------------------
+    // ATTRIBUTES
+    // ----------------------------------
+
+    /** Histograms by request class : one per phase, then the total. Each array guards its histograms. */
+    private final ConcurrentMap<Class<?>, LatencyHistogram[]> mapRequestClassToHistograms = new ConcurrentHashMap<Class<?>, LatencyHistogram[]>();
+
+    private final List<RequestTimingListener> requestTimingListenerList = Collections.synchronizedList(new ArrayList<RequestTimingListener>());
+
+    // ----------------------------------
+    // PUBLIC API
+    // ----------------------------------
+
+    /**
+     * Starts timing an attempt to process a request.
+     * @param request
+     *            the request that is submitted.
+     * @return the timings of this attempt, to fill while processing it.
+     */
+    public RequestTimings startTimings(CachedSpiceRequest<?> request) {
+        return new RequestTimings(request, this);
+    }
+
+    public void addRequestTimingListener(RequestTimingListener requestTimingListener) {
+        requestTimingListenerList.add(requestTimingListener);
+    }
+
+    public void removeRequestTimingListener(RequestTimingListener requestTimingListener) {
+        requestTimingListenerList.remove(requestTimingListener);
+    }
+
+    /** @return the classes of the requests that have been timed. */
+    public Set<Class<?>> getRequestClasses() {
+        return Collections.unmodifiableSet(new HashSet<Class<?>>(mapRequestClassToHistograms.keySet()));
+    }
+
+    /**
+     * @param requestClass
+     *            a class of request.
+     * @param phase
+     *            a phase of request processing. If null, the total duration of
+     *            requests.
+     * @return a snapshot of the latencies of this class of requests in this
+     *         phase. Null if no request of this class has been timed. Only
+     *         requests that executed this phase are counted.
+     */
+    public LatencyHistogram getHistogram(Class<?> requestClass, Phase phase) {
+        final LatencyHistogram[] histograms = mapRequestClassToHistograms.get(requestClass);
+        if (histograms == null) {
+            return null;
+        }
+        synchronized (histograms) {
+            return new LatencyHistogram(histograms[phase == null ? Phase.values().length : phase.ordinal()]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("RequestTimingRecorder [");
+        for (final Map.Entry<Class<?>, LatencyHistogram[]> entry : mapRequestClassToHistograms.entrySet()) {
+            final LatencyHistogram[] histograms = entry.getValue();
+            synchronized (histograms) {
+                stringBuilder.append('\n');
+                stringBuilder.append(entry.getKey().getSimpleName());
+                stringBuilder.append(" : total=");
+                stringBuilder.append(histograms[Phase.values().length]);
+                for (final Phase phase : Phase.values()) {
+                    stringBuilder.append(", ");
+                    stringBuilder.append(phase);
+                    stringBuilder.append('=');
+                    stringBuilder.append(histograms[phase.ordinal()]);
+                }
+            }
+        }
+        stringBuilder.append(']');
+        return stringBuilder.toString();
+    }
+
+    // ----------------------------------
+    // PRIVATE METHODS
+    // ----------------------------------
+
+    /* Invoked once by each timings, when they are complete. */
+    void record(CachedSpiceRequest<?> request, RequestTimings requestTimings) {
+        final LatencyHistogram[] histograms = getOrCreateHistograms(requestTimings.getRequestClass());
+        synchronized (histograms) {
+            for (final Phase phase : Phase.values()) {
+                if (requestTimings.isExecuted(phase)) {
+                    histograms[phase.ordinal()].add(requestTimings.getDuration(phase));
+                }
+            }
+            histograms[Phase.values().length].add(requestTimings.getTotalDuration());
+        }
+        synchronized (requestTimingListenerList) {
+            for (final RequestTimingListener listener : requestTimingListenerList) {
+                listener.onRequestTimed(request, requestTimings);
+            }
+        }
+    }
+
+    private LatencyHistogram[] getOrCreateHistograms(Class<?> requestClass) {
+        LatencyHistogram[] histograms = mapRequestClassToHistograms.get(requestClass);
+        if (histograms != null) {
+            return histograms;
+        }
+        histograms = new LatencyHistogram[Phase.values().length + 1];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        final LatencyHistogram[] previousHistograms = mapRequestClassToHistograms.putIfAbsent(requestClass, histograms);
+        return previousHistograms != null ? previousHistograms : histograms;
+    }
+}
@@ -0,0 +1,209 @@
+package com.octo.android.robospice.request.timing;
+
+import java.util.concurrent.TimeUnit;
+
+import com.octo.android.robospice.request.CachedSpiceRequest;
+
+/**
+ * The time an attempt to process a request spent in each {@link Phase}, in ns,
+ * measured with a monotonic clock. Request runners and notifiers record
+ * durations while the request is processed. The timings are reported to their
+ * {@link RequestTimingRecorder} once the attempt is over and its result has
+ * been delivered to listeners, they don't change afterwards.
+ */
+public final class RequestTimings {
+
+    // ----------------------------------
+    // ATTRIBUTES
+    // ----------------------------------
+
+    private final CachedSpiceRequest<?> request;
+    private final RequestTimingRecorder requestTimingRecorder;
+    private final long startTime = System.nanoTime();
+
+    /* Guarded by this. */
+    private final long[] durations = new long[Phase.values().length];
+    private final boolean[] isPhaseExecuted = new boolean[Phase.values().length];
+    private long totalDuration = -1;
+    private int pendingNotificationCount;
+    private boolean isAttemptOver;
+    private boolean isReported;
+
+    // ----------------------------------
+    // CONSTRUCTORS
+    // ----------------------------------
+
+    RequestTimings(CachedSpiceRequest<?> request, RequestTimingRecorder requestTimingRecorder) {
+        this.request = request;
+        this.requestTimingRecorder = requestTimingRecorder;
+    }
+
+    // ----------------------------------
+    // PUBLIC API
+    // ----------------------------------
+
+    /** @return the class of the timed request. */
+    public Class<?> getRequestClass() {
+        return request.getSpiceRequest().getClass();
+    }
+
+    /**
+     * @param phase
+     *            a phase of request processing.
+     * @return the time spent in this phase, in ns. 0 if it wasn't executed.
+     */
+    public synchronized long getDuration(Phase phase) {
+        return durations[phase.ordinal()];
+    }
+
+    /**
+     * @param phase
+     *            a phase of request processing.
+     * @return whether or not this phase was executed, as a cache hit skips
+     *         {@link Phase#NETWORK} or a network failure skips
+     *         {@link Phase#CACHE_WRITE}.
+     */
+    public synchronized boolean isExecuted(Phase phase) {
+        return isPhaseExecuted[phase.ordinal()];
+    }
+
+    /**
+     * @return the time between the submission of the attempt and the delivery
+     *         of its result, in ns. -1 until the timings are reported.
+     */
+    public synchronized long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * Adds time spent in a phase. Phases that are executed several times, as
+     * {@link Phase#QUEUE_WAIT}, add up.
+     * @param phase
+     *            a phase of request processing.
+     * @param duration
+     *            in ns.
+     */
+    public synchronized void addDuration(Phase phase, long duration) {
+        if (!isReported) {
+            durations[phase.ordinal()] += duration;
+            isPhaseExecuted[phase.ordinal()] = true;
+        }
+    }
+
+    /**
+     * Invoked when the result of the request is posted to listeners. The
+     * timings won't be reported until it is delivered or cancelled.
+     * @return true if the delivery has to be timed, false if the timings have
+     *         already been reported.
+     */
+    public synchronized boolean onNotificationPosted() {
+        if (isReported) {
+            return false;
+        }
+        pendingNotificationCount++;
+        return true;
+    }
+
+    /**
+     * Invoked once listeners have been notified of a result posted by
+     * {@link #onNotificationPosted()}.
+     * @param latency
+     *            the time between posting and the end of delivery, in ns.
+     */
+    public void onNotificationDelivered(long latency) {
+        synchronized (this) {
+            durations[Phase.NOTIFICATION.ordinal()] += latency;
+            isPhaseExecuted[Phase.NOTIFICATION.ordinal()] = true;
+            pendingNotificationCount--;
+            if (!isComplete()) {
+                return;
+            }
+        }
+        report();
+    }
+
+    /**
+     * Invoked when a notification posted by {@link #onNotificationPosted()}
+     * is removed before being delivered.
+     */
+    public void onNotificationCancelled() {
+        synchronized (this) {
+            pendingNotificationCount--;
+            if (!isComplete()) {
+                return;
+            }
+        }
+        report();
+    }
+
+    /** Invoked once the attempt has been processed by the request runner. */
+    public void onAttemptOver() {
+        synchronized (this) {
+            isAttemptOver = true;
+            if (!isComplete()) {
+                return;
+            }
+        }
+        report();
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("RequestTimings [requestClass=");
+        stringBuilder.append(getRequestClass().getSimpleName());
+        for (final Phase phase : Phase.values()) {
+            if (!isPhaseExecuted[phase.ordinal()]) {
+                continue;
+            }
+            stringBuilder.append(", ");
+            stringBuilder.append(phase);
+            stringBuilder.append('=');
+            stringBuilder.append(TimeUnit.NANOSECONDS.toMillis(durations[phase.ordinal()]));
+            stringBuilder.append(" ms");
+        }
+        stringBuilder.append(", total=");
+        stringBuilder.append(TimeUnit.NANOSECONDS.toMillis(totalDuration));
+        stringBuilder.append(" ms]");
+        return stringBuilder.toString();
+    }
+
+    // ----------------------------------
+    // PRIVATE METHODS
+    // ----------------------------------
+
+    /*
+     * Must be called while holding this. Returns true only once, when timings
+     * have to be reported.
+     */
+    private boolean isComplete() {
+        if (isReported || !isAttemptOver || pendingNotificationCount > 0) {
+            return false;
+        }
+        isReported = true;
+        totalDuration = System.nanoTime() - startTime;
+        return true;
+    }
+
+    private void report() {
+        requestTimingRecorder.record(request, this);
+    }
+
+    // ----------------------------------
+    // INNER CLASSES
+    // ----------------------------------
+
+    /** Phases of the processing of a request. */
+    public enum Phase {
+        /** Waiting for a thread, between stages. */
+        QUEUE_WAIT,
+        /** Reading from cache, including deserialization. */
+        CACHE_READ,
+        /** Loading data from network. */
+        NETWORK,
+        /** Writing to cache, including serialization. */
+        CACHE_WRITE,
+        /** Delivering the result to listeners, on the ui thread. */
+        NOTIFICATION
+    }
+}
@@ -1,12 +1,18 @@
 package com.octo.android.robospice.retry;
 
+import java.util.Random;
+
+import com.octo.android.robospice.persistence.DurationInMillis;
 import com.octo.android.robospice.persistence.exception.SpiceException;
 
 /**
  * Default {@link RetryPolicy} implementation. Proposes an exponential back off
  * algorithm. When {@link #getRetryCount()} returns 0, the request is not
  * retried anymore and will fail. Between each retry attempt, the request
- * processor will sleep for {@link #getDelayBeforeRetry()} milliseconds.
+ * processor will sleep for {@link #getDelayBeforeRetry()} milliseconds. A
+ * {@link Jitter} can be applied to this delay so that requests failing at the
+ * same time, possibly on many devices, are not retried at the same time. The
+ * delay never exceeds a maximum delay.
  * @author SNI
  */
 public class DefaultRetryPolicy implements RetryPolicy {
@@ -20,6 +26,32 @@ public class DefaultRetryPolicy implements RetryPolicy {
     /** The default backoff multiplier. */
     public static final float DEFAULT_BACKOFF_MULT = 1f;
 
+    /** The default maximum delay before retry a request, when jittered (in ms). */
+    public static final long DEFAULT_MAX_DELAY_BEFORE_RETRY = DurationInMillis.ONE_MINUTE;
+
+    /** Used to compute jittered delays. */
+    private static final Random RANDOM = new Random();
+
+    /**
+     * Decorrelated jitter picks a delay between the initial delay and this
+     * factor times the previous delay.
+     */
+    private static final int DECORRELATED_JITTER_FACTOR = 3;
+
+    /** Randomization applied to the delay before retry. */
+    public enum Jitter {
+        /** The delay is the exponential back off. */
+        NONE,
+        /** The delay is picked between 0 and the exponential back off. */
+        FULL,
+        /**
+         * The delay is picked between the initial delay and 3 times the
+         * previous delay, without exceeding the maximum delay. The backoff
+         * multiplier is not used.
+         */
+        DECORRELATED
+    }
+
     /** The number of retry attempts. */
     private int retryCount = DEFAULT_RETRY_COUNT;
 
@@ -35,13 +67,56 @@ public class DefaultRetryPolicy implements RetryPolicy {
      */
     private float backOffMultiplier = DEFAULT_BACKOFF_MULT;
 
+    /** The randomization applied to {@link #delayBeforeRetry}. */
+    private final Jitter jitter;
+
+    /** The maximum delay to wait before next retry attempt. */
+    private final long maxDelayBeforeRetry;
+
+    /** The delay before first retry attempt. */
+    private final long initialDelayBeforeRetry;
+
+    /** The delay to wait before next retry attempt, jitter applied. */
+    private long jitteredDelayBeforeRetry;
+
     // ----------------------------------
     // CONSTRUCTORS
     // ----------------------------------
-    public DefaultRetryPolicy(int retryCount, long delayBeforeRetry, float backOffMultiplier) {
+    /**
+     * @param retryCount
+     *            the number of retry attempts.
+     * @param delayBeforeRetry
+     *            the delay before first retry attempt (in ms).
+     * @param backOffMultiplier
+     *            the multiplier applied to the delay between every retry
+     *            attempt. Not used by {@link Jitter#DECORRELATED}.
+     * @param jitter
+     *            the randomization applied to the delay.
+     * @param maxDelayBeforeRetry
+     *            the maximum delay before retry, jitter applied (in ms).
+     */
+    public DefaultRetryPolicy(int retryCount, long delayBeforeRetry, float backOffMultiplier, Jitter jitter, long maxDelayBeforeRetry) {
         this.retryCount = retryCount;
-        this.delayBeforeRetry = delayBeforeRetry;
         this.backOffMultiplier = backOffMultiplier;
+        this.jitter = jitter;
+        this.maxDelayBeforeRetry = maxDelayBeforeRetry;
+        this.delayBeforeRetry = Math.min(delayBeforeRetry, maxDelayBeforeRetry);
+        this.initialDelayBeforeRetry = this.delayBeforeRetry;
+        this.jitteredDelayBeforeRetry = this.delayBeforeRetry;
+    }
+
+    /**
+     * Same as
+     * {@link #DefaultRetryPolicy(int, long, float, Jitter, long)}, with a
+     * maximum delay of {@link #DEFAULT_MAX_DELAY_BEFORE_RETRY}.
+     */
+    public DefaultRetryPolicy(int retryCount, long delayBeforeRetry, float backOffMultiplier, Jitter jitter) {
+        this(retryCount, delayBeforeRetry, backOffMultiplier, jitter, DEFAULT_MAX_DELAY_BEFORE_RETRY);
+    }
+
+    /** Proposes an exponential back off, without jitter nor maximum delay. */
+    public DefaultRetryPolicy(int retryCount, long delayBeforeRetry, float backOffMultiplier) {
+        this(retryCount, delayBeforeRetry, backOffMultiplier, Jitter.NONE, Long.MAX_VALUE);
     }
 
     public DefaultRetryPolicy() {
@@ -60,12 +135,54 @@ public class DefaultRetryPolicy implements RetryPolicy {
     @Override
     public void retry(SpiceException e) {
         retryCount--;
-        delayBeforeRetry = (long) (delayBeforeRetry * backOffMultiplier);
+        switch (jitter) {
+            case FULL:
+                delayBeforeRetry = multiplyDelay(delayBeforeRetry, backOffMultiplier);
+                jitteredDelayBeforeRetry = randomDelay(0, delayBeforeRetry);
+                break;
+            case DECORRELATED:
+                final long maxJitteredDelay = multiplyDelay(jitteredDelayBeforeRetry, DECORRELATED_JITTER_FACTOR);
+                jitteredDelayBeforeRetry = randomDelay(initialDelayBeforeRetry, maxJitteredDelay);
+                break;
+            default:
+                delayBeforeRetry = multiplyDelay(delayBeforeRetry, backOffMultiplier);
+                jitteredDelayBeforeRetry = delayBeforeRetry;
+                break;
+        }
     }
 
     @Override
     public long getDelayBeforeRetry() {
-        return delayBeforeRetry;
+        return jitteredDelayBeforeRetry;
+    }
+
+    public Jitter getJitter() {
+        return jitter;
+    }
+
+    public long getMaxDelayBeforeRetry() {
+        return maxDelayBeforeRetry;
+    }
+
+    // ----------------------------------
+    // PRIVATE
+    // ----------------------------------
+
+    /** @return delay times multiplier, capped to the maximum delay. */
+    private long multiplyDelay(long delay, float multiplier) {
+        final double multipliedDelay = (double) delay * multiplier;
+        if (multipliedDelay >= maxDelayBeforeRetry) {
+            return maxDelayBeforeRetry;
+        }
+        return (long) multipliedDelay;
+    }
+
+    /** @return a random delay between min (inclusive) and max (exclusive). */
+    private static long randomDelay(long min, long max) {
+        if (max <= min) {
+            return min;
+        }
+        return min + (long) (RANDOM.nextDouble() * (max - min));
     }
 
 }